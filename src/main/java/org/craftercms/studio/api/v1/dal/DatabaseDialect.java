@@ -0,0 +1,30 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.api.v1.dal;
+
+/**
+ * Features of the database Studio is connected to that change which queries can be used
+ */
+public interface DatabaseDialect {
+
+    /**
+     * @return true if recursive common table expressions (WITH RECURSIVE) are supported and enabled
+     */
+    boolean isRecursiveQueriesEnabled();
+}
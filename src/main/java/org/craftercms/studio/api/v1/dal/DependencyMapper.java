@@ -35,6 +35,7 @@ public interface DependencyMapper {
     String REGEX_PARAM = "regex";
     String EDITED_STATES_PARAM = "editedStates";
     String NEW_STATES_PARAM = "newStates";
+    String DEPTH_PARAM = "depth";
 
     String SORUCE_PATH_COLUMN_NAME = "source_path";
     String TARGET_PATH_COLUMN_NAME = "target_path";
@@ -51,7 +52,7 @@ public interface DependencyMapper {
 
     void deleteDependenciesForSite(Map params);
 
-    void deleteDependenciesForSiteAndPath(Map params);
+    void deleteDependenciesForSiteAndTargetPath(Map params);
 
     List<String> getDependenciesForList(Map params);
 
@@ -63,5 +64,15 @@ public interface DependencyMapper {
 
     List<Map<String, String>> calculatePublishingDependenciesForList(Map params);
 
-    void moveDependency(Map params);
+    void moveSourceDependencies(Map params);
+
+    void moveTargetDependencies(Map params);
+
+    List<DependencyEntity> getDependenciesForSite(Map params);
+
+    List<String> getDependenciesClosure(Map params);
+
+    List<String> getItemsDependingOnClosure(Map params);
+
+    List<Map<String, String>> calculatePublishingDependenciesClosure(Map params);
 }
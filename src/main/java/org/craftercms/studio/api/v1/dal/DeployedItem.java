@@ -0,0 +1,55 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.api.v1.dal;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+
+/**
+ * Last deployment of an item to a publishing environment
+ */
+public class DeployedItem implements Serializable {
+    private static final long serialVersionUID = 4107125672950632185L;
+
+    private long id;
+    private String site;
+    private String environment;
+    private String path;
+    private ZonedDateTime lastDeployedDate;
+    private String commitId;
+
+    public long getId() { return id; }
+    public void setId(long id) { this.id = id; }
+
+    public String getSite() { return site; }
+    public void setSite(String site) { this.site = site; }
+
+    public String getEnvironment() { return environment; }
+    public void setEnvironment(String environment) { this.environment = environment; }
+
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+
+    public ZonedDateTime getLastDeployedDate() { return lastDeployedDate; }
+    public void setLastDeployedDate(ZonedDateTime lastDeployedDate) { this.lastDeployedDate = lastDeployedDate; }
+
+    public String getCommitId() { return commitId; }
+    public void setCommitId(String commitId) { this.commitId = commitId; }
+
+}
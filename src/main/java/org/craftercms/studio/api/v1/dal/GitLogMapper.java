@@ -18,12 +18,15 @@
 
 package org.craftercms.studio.api.v1.dal;
 
+import java.util.List;
 import java.util.Map;
 
 public interface GitLogMapper {
 
     GitLog getGitLog(Map params);
 
+    List<GitLog> getGitLogs(Map params);
+
     void insertGitLog(Map params);
 
     void insertGitLogList(Map params);
@@ -0,0 +1,51 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.api.v1.dal;
+
+import java.io.Serializable;
+
+/**
+ * Progress of a metadata rebuild staged for a site. The staged rows reflect the repository at {@code commitId} and,
+ * until the walk over the repository is completed, only the items up to {@code lastPath}.
+ */
+public class RebuildCheckpoint implements Serializable {
+    private static final long serialVersionUID = 3081726345219834710L;
+
+    private String site;
+    private String commitId;
+    private String lastPath;
+    private int completed;
+    private long items;
+
+    public String getSite() { return site; }
+    public void setSite(String site) { this.site = site; }
+
+    public String getCommitId() { return commitId; }
+    public void setCommitId(String commitId) { this.commitId = commitId; }
+
+    public String getLastPath() { return lastPath; }
+    public void setLastPath(String lastPath) { this.lastPath = lastPath; }
+
+    public int getCompleted() { return completed; }
+    public void setCompleted(int completed) { this.completed = completed; }
+
+    public long getItems() { return items; }
+    public void setItems(long items) { this.items = items; }
+
+}
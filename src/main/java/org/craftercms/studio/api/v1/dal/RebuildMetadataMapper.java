@@ -0,0 +1,74 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.api.v1.dal;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Staging tables a metadata rebuild writes to, and the statements that replace the metadata of a site with them
+ */
+public interface RebuildMetadataMapper {
+
+    String SITE_PARAM = "site";
+    String PATHS_PARAM = "paths";
+    String ITEM_STATES_PARAM = "itemStates";
+    String ITEM_METADATA_PARAM = "itemMetadata";
+    String DEPENDENCIES_PARAM = "dependencies";
+
+    RebuildCheckpoint getCheckpoint(Map params);
+
+    List<RebuildCheckpoint> getCheckpoints();
+
+    void insertCheckpoint(RebuildCheckpoint checkpoint);
+
+    void updateCheckpoint(RebuildCheckpoint checkpoint);
+
+    void deleteCheckpoint(Map params);
+
+    void insertStagedItemStates(Map params);
+
+    void insertStagedItemMetadata(Map params);
+
+    void insertStagedDependencies(Map params);
+
+    void deleteStagedItemStates(Map params);
+
+    void deleteStagedItemMetadata(Map params);
+
+    void deleteStagedDependencies(Map params);
+
+    void clearStagedItemStates(Map params);
+
+    void clearStagedItemMetadata(Map params);
+
+    void clearStagedDependencies(Map params);
+
+    void deleteItemStates(Map params);
+
+    void deleteItemMetadata(Map params);
+
+    void deleteDependencies(Map params);
+
+    void copyStagedItemStates(Map params);
+
+    void copyStagedItemMetadata(Map params);
+
+    void copyStagedDependencies(Map params);
+}
@@ -33,8 +33,10 @@ import org.craftercms.studio.api.v1.to.RepoOperationTO;
 import org.craftercms.studio.api.v1.to.VersionTO;
 
 import java.io.InputStream;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This interface represents the repository layer of Crafter Studio.  All interaction with the backend
@@ -53,6 +55,15 @@ public interface ContentRepository {
      */
     boolean contentExists(String site, String path);
 
+    /**
+     * Determine which of the given paths have content in the repository, all of them checked against the same commit
+     *
+     * @param site site id where the operation will be executed
+     * @param paths paths to check
+     * @return the paths that have a content object
+     */
+    Set<String> getExistingContent(String site, Collection<String> paths);
+
     /**
      * get document from wcm content
      *
@@ -71,6 +82,15 @@ public interface ContentRepository {
      */
     long getContentSize(String site, String path);
 
+    /**
+     * get the id of the content as of the last commit, it changes whenever the content changes
+     *
+     * @param site site id where the operation will be executed
+     * @param path path to content
+     * @return object id of the content, null if it does not exist
+     */
+    String getContentObjectId(String site, String path);
+
     /**
      * write content
      *
@@ -151,6 +171,23 @@ public interface ContentRepository {
      */
     VersionTO[] getContentVersionHistory(String site, String path);
 
+    /**
+     * Get the version history of many items at once
+     *
+     * @param site        site id where the operation will be executed
+     * @param paths       paths to items
+     * @param maxVersions max number of versions per item (newest first), 0 for the full history
+     * @return versions per path, in the same order as the paths
+     */
+    Map<String, VersionTO[]> getContentVersionHistory(String site, List<String> paths, int maxVersions);
+
+    /**
+     * Get version history cache statistics
+     *
+     * @return cache size, hits and misses
+     */
+    Map<String, Object> getVersionHistoryCacheStatistics();
+
     /**
      * create a version
      *
@@ -276,6 +313,18 @@ public interface ContentRepository {
      */
     List<RepoOperationTO> getOperations(String site, String commitIdFrom, String commitIdTo);
 
+    /**
+     * Get a lazy iterator over the operations between two commits. Commits are walked once in topological order and
+     * operations are computed as the iterator advances, so callers can start processing before the whole range has
+     * been diffed.
+     *
+     * @param site         site to use
+     * @param commitIdFrom commit ID to start at (exclusive), empty to start from the first commit of the repository
+     * @param commitIdTo   commit ID to end at (inclusive)
+     * @return iterator over operations, must be closed by the caller
+     */
+    RepoOperationIterator getOperationsIterator(String site, String commitIdFrom, String commitIdTo);
+
     /**
      * Get last commit id from repository for given site.
      *
@@ -321,6 +370,15 @@ public interface ContentRepository {
      */
     GitLog getGitLog(String siteId, String commitId);
 
+    /**
+     * Get git log objects of several commits from database with a single query
+     *
+     * @param siteId    site id
+     * @param commitIds commit IDs
+     * @return git log objects by commit ID, commits without git log are left out
+     */
+    Map<String, GitLog> getGitLogs(String siteId, List<String> commitIds);
+
     /**
      * Insert Git Log
      *
@@ -451,6 +509,37 @@ public interface ContentRepository {
      */
     boolean isFolder(String siteId, String path);
 
+    /**
+     * Get statistics of the registry of open site repositories (open sites, hits, opens and closes)
+     *
+     * @return statistics
+     */
+    Map<String, Object> getRepositoryRegistryStatistics();
+
+    /**
+     * Get group commit statistics (batch sizes and write latencies)
+     *
+     * @return statistics, empty if group commit is disabled
+     */
+    Map<String, Object> getGroupCommitStatistics();
+
+    /**
+     * Run maintenance (gc, repack and pack bitmaps) on the repositories of a site. Skipped if the repositories are in
+     * use.
+     *
+     * @param site  site id
+     * @param force run even if the repositories are under the maintenance thresholds
+     * @return true if maintenance ran
+     */
+    boolean runRepositoryMaintenance(String site, boolean force);
+
+    /**
+     * Get repository maintenance statistics
+     *
+     * @return runs, skips, time spent and before/after object counts of the last run per repository
+     */
+    Map<String, Object> getRepositoryMaintenanceStatistics();
+
     /*
     List<PublishTO> getPublishEvents(String site, String commitIdFrom, String commitIdTo);
     List<PublishTO> getPublishEvents(String site, String commitIdFrom);
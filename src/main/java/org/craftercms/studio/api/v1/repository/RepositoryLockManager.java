@@ -0,0 +1,80 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.api.v1.repository;
+
+import org.craftercms.studio.api.v1.constant.GitRepositories;
+
+import java.util.Map;
+
+/**
+ * Controls concurrent access to the repositories of a site. Read locks are shared and are meant for operations
+ * that only read the object database (history, diffs, commit ids). Write locks are exclusive and are meant for
+ * operations that mutate the index, the working tree or refs.
+ *
+ * Locks are independent per site and per repository type.
+ */
+public interface RepositoryLockManager {
+
+    /**
+     * Acquire shared lock
+     *
+     * @param site site id, empty for global repository
+     * @param repoType repository type
+     * @return acquired lock, must be released by the caller
+     */
+    RepositoryLock acquireRead(String site, GitRepositories repoType);
+
+    /**
+     * Acquire exclusive lock
+     *
+     * @param site site id, empty for global repository
+     * @param repoType repository type
+     * @return acquired lock, must be released by the caller
+     */
+    RepositoryLock acquireWrite(String site, GitRepositories repoType);
+
+    /**
+     * Try to acquire exclusive lock without waiting
+     *
+     * @param site site id, empty for global repository
+     * @param repoType repository type
+     * @return acquired lock, or null if the lock is held by somebody else
+     */
+    RepositoryLock tryAcquireWrite(String site, GitRepositories repoType);
+
+    /**
+     * Get lock statistics (wait and hold times) per site, repository type and lock mode
+     *
+     * @return statistics keyed by lock name
+     */
+    Map<String, Map<String, Object>> getStatistics();
+
+    /**
+     * Acquired repository lock. Use with try-with-resources to make sure it is released.
+     */
+    interface RepositoryLock extends AutoCloseable {
+
+        void release();
+
+        @Override
+        default void close() {
+            release();
+        }
+    }
+}
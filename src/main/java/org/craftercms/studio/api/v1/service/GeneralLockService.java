@@ -20,6 +20,7 @@ package org.craftercms.studio.api.v1.service;
 public interface GeneralLockService {
 
     String MASTER_LOCK = "MASTER LOCK";
+    String SYNC_DATABASE_WITH_REPO_LOCK = "SYNC DATABASE WITH REPO LOCK";
 
     void lock(String objectId);
 
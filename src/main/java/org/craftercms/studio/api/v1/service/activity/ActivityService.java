@@ -69,6 +69,19 @@ public interface ActivityService {
 	void postActivity(String site, String user, String key, ActivityType activity, ActivitySource source,
                       Map<String, String> extraInfo);
 
+	/**
+	 * build the audit entry of an activity without storing it, for callers that insert many entries together
+	 *
+	 * @param site
+	 * @param user
+	 * @param key
+	 * 			identifies the content that this activity is related to
+	 * @param activity
+	 * @return audit entry, same as the one stored by postActivity
+	 */
+	AuditFeed createActivity(String site, String user, String key, ActivityType activity, ActivitySource source,
+                             Map<String, String> extraInfo);
+
 	void renameContentId(String site, String oldUrl, String newUrl);
 
 	/**
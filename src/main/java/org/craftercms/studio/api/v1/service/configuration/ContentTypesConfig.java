@@ -19,6 +19,8 @@ package org.craftercms.studio.api.v1.service.configuration;
 
 import org.craftercms.studio.api.v1.to.ContentTypeConfigTO;
 
+import java.util.List;
+
 /**
  * provides content type configuration
  * 
@@ -46,4 +48,19 @@ public interface ContentTypesConfig {
 
     ContentTypeConfigTO reloadConfiguration(String site, String contentType);
 
+    /**
+     * get all content types of the given site
+     *
+     * @param site
+     * @return content type configurations
+     */
+    List<ContentTypeConfigTO> getContentTypes(String site);
+
+    /**
+     * drop the cached content types of the given site and load them again
+     *
+     * @param site
+     */
+    void reloadConfiguration(String site);
+
 }
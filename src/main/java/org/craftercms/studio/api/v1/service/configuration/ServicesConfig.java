@@ -22,8 +22,10 @@ import org.craftercms.studio.api.v1.to.ContentTypeConfigTO;
 import org.craftercms.studio.api.v1.to.CopyDependencyConfigTO;
 import org.craftercms.studio.api.v1.to.DeleteDependencyConfigTO;
 import org.craftercms.studio.api.v1.to.DmFolderConfigTO;
+import org.craftercms.studio.api.v1.util.PatternSet;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class provides the repository configuration information
@@ -162,6 +164,85 @@ public interface ServicesConfig {
     
     List<String> getPreviewableMimetypesPaterns(String site);
 
+    /**
+     * get the compiled page patterns
+     *
+     * @param site
+     * @return page patterns, empty if the site has no configuration
+     */
+    PatternSet getPagePatternSet(String site);
+
+    /**
+     * get the compiled component patterns
+     *
+     * @param site
+     * @return component patterns, empty if the site has no configuration
+     */
+    PatternSet getComponentPatternSet(String site);
+
+    /**
+     * get the compiled asset patterns
+     *
+     * @param site
+     * @return asset patterns, empty if the site has no configuration
+     */
+    PatternSet getAssetPatternSet(String site);
+
+    /**
+     * get the compiled document patterns
+     *
+     * @param site
+     * @return document patterns, empty if the site has no configuration
+     */
+    PatternSet getDocumentPatternSet(String site);
+
+    /**
+     * get the compiled rendering template patterns
+     *
+     * @param site
+     * @return rendering template patterns, empty if the site has no configuration
+     */
+    PatternSet getRenderingTemplatePatternSet(String site);
+
+    /**
+     * get the compiled scripts patterns
+     *
+     * @param site
+     * @return scripts patterns, empty if the site has no configuration
+     */
+    PatternSet getScriptsPatternSet(String site);
+
+    /**
+     * get the compiled level descriptor patterns
+     *
+     * @param site
+     * @return level descriptor patterns, empty if the site has no configuration
+     */
+    PatternSet getLevelDescriptorPatternSet(String site);
+
+    /**
+     * get the compiled display in widget patterns
+     *
+     * @param site
+     * @return display in widget patterns, empty if the site has no configuration
+     */
+    PatternSet getDisplayInWidgetPathPatternSet(String site);
+
+    /**
+     * get the compiled previewable mimetypes patterns
+     *
+     * @param site
+     * @return previewable mimetypes patterns, empty if the site has no configuration
+     */
+    PatternSet getPreviewableMimetypesPatternSet(String site);
+
     void reloadConfiguration(String site);
 
+    /**
+     * get site configuration cache statistics
+     *
+     * @return cached sites, hits, misses and reloads
+     */
+    Map<String, Object> getSiteConfigCacheStatistics();
+
 }
@@ -151,6 +151,16 @@ public interface ContentService {
      */
     ContentItemTO getContentItem(String site, String path, int depth);
 
+    /**
+     * get the content items (metadata) at several paths, loading their workflow and lock status in bulk
+     *
+     * @param site - the project ID
+     * @param paths - the paths of the content items
+     * @param depth - depth to get desendents
+     * @return items in the same order as the paths
+     */
+    List<ContentItemTO> getContentItems(String site, List<String> paths, int depth);
+
     /**
      * get the version history for an item
      *
@@ -159,6 +169,17 @@ public interface ContentService {
      */
     VersionTO[] getContentItemVersionHistory(String site, String path);
 
+    /**
+     * get the version history for many items at once
+     *
+     * @param site        - the project ID
+     * @param paths       - the paths of the items, at most studio.repo.versionHistory.maxItems
+     * @param maxVersions - max number of versions per item (newest first), at least 1
+     * @throws IllegalArgumentException if a path is not a secure path, there are too many paths or maxVersions is
+     *                                  not positive
+     */
+    Map<String, VersionTO[]> getContentItemsVersionHistory(String site, List<String> paths, int maxVersions);
+
     /**
      * revert a version (create a new version based on an old version)
      *
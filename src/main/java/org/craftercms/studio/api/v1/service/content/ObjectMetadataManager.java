@@ -31,6 +31,15 @@ public interface ObjectMetadataManager {
 
     ItemMetadata getProperties(String site, String path);
 
+    /**
+     * Get the metadata of several items with a single query, items without metadata are left out
+     *
+     * @param site site
+     * @param paths paths of the items
+     * @return metadata by path, paths are compared ignoring case same as in the database
+     */
+    Map<String, ItemMetadata> getProperties(String site, List<String> paths);
+
     boolean metadataExist(String site, String path);
 
     boolean isRenamed(String site, String path);
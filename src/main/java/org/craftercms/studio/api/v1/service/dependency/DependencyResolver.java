@@ -35,4 +35,11 @@ public interface DependencyResolver {
      */
     Map<String, Set<String>> resolve(String site, String path);
 
+    /**
+     * Get resolver statistics, e.g. how many times each rule matched and the time spent on it
+     *
+     * @return statistics
+     */
+    Map<String, Object> getStatistics();
+
 }
@@ -63,6 +63,28 @@ public interface DependencyService {
 	Set<String> upsertDependencies(String site, List<String> paths)
             throws SiteNotFoundException, ContentNotFoundException, ServiceException;
 
+	/**
+	 * Scan an item for direct dependencies without touching the database. It only reads
+	 * the item, so items can be scanned concurrently.
+	 *
+	 * @param site Site to operate on
+	 * @param path Path to item to scan
+	 * @return dependencies by dependency type
+	 */
+	Map<String, Set<String>> resolveDependencies(String site, String path);
+
+	/**
+	 * Synchronize dependencies already scanned with {@link #resolveDependencies(String, String)}
+	 * to the dependencies database, same as {@link #upsertDependencies(String, List)} does with
+	 * the dependencies it scans.
+	 *
+	 * @param site Site to operate on
+	 * @param dependencies Dependencies by dependency type of each item
+	 * @throws ServiceException Internal error, see exception details
+	 */
+	Set<String> upsertDependencies(String site, Map<String, Map<String, Set<String>>> dependencies)
+            throws ServiceException;
+
 	/**
 	 * Get a all publishing dependencies of a list of items. A publishing
 	 * dependency is:
@@ -168,6 +190,14 @@ public interface DependencyService {
 	 */
 	void deleteSiteDependencies(String site) throws ServiceException;
 
+	/**
+	 * Drop what is kept in memory about the dependencies of a site, for when its rows in the
+	 * database were replaced without going through this service.
+	 *
+	 * @param site Site to operate on
+	 */
+	void invalidateSiteDependencies(String site);
+
     /**
      *
      * @param site Site to operate on
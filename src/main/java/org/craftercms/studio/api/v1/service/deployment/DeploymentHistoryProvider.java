@@ -23,6 +23,7 @@ import org.craftercms.studio.api.v1.util.filter.DmFilterWrapper;
 
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Map;
 
 public interface DeploymentHistoryProvider {
 
@@ -38,6 +39,34 @@ public interface DeploymentHistoryProvider {
      */
     List<DeploymentSyncHistory> getDeploymentHistory(String site, ZonedDateTime fromDate, ZonedDateTime toDate, DmFilterWrapper dmFilterWrapper, String filterType, int numberOfItems);
 
+    /**
+     * Get a page of the publish log (items deployed by every publish) for given site, newest first
+     *
+     * @param site site id
+     * @param environment only items deployed to this environment, null for all environments
+     * @param path only items under this path, null for all items
+     * @param fromDate only items deployed on or after this date, null for no limit
+     * @param toDate only items deployed on or before this date, null for no limit
+     * @param offset index of the first entry
+     * @param limit max number of entries
+     * @return publish log entries
+     */
+    List<DeploymentSyncHistory> getPublishLog(String site, String environment, String path, ZonedDateTime fromDate,
+                                              ZonedDateTime toDate, int offset, int limit);
+
+    /**
+     * Get the number of publish log entries for given site and filters
+     *
+     * @param site site id
+     * @param environment only items deployed to this environment, null for all environments
+     * @param path only items under this path, null for all items
+     * @param fromDate only items deployed on or after this date, null for no limit
+     * @param toDate only items deployed on or before this date, null for no limit
+     * @return number of entries
+     */
+    int getPublishLogTotal(String site, String environment, String path, ZonedDateTime fromDate,
+                           ZonedDateTime toDate);
+
     /**
      * Get last deployment date time for given site and path
      *
@@ -46,4 +75,20 @@ public interface DeploymentHistoryProvider {
      * @return last deployment date or null if never deployed
      */
     ZonedDateTime getLastDeploymentDate(String site, String path);
+
+    /**
+     * Get last deployment date time for given site and paths
+     *
+     * @param site site id
+     * @param paths paths
+     * @return last deployment date per path, paths never deployed are not included
+     */
+    Map<String, ZonedDateTime> getLastDeploymentDates(String site, List<String> paths);
+
+    /**
+     * Rebuild the index of last deployment dates for given site from the published repository
+     *
+     * @param site site id
+     */
+    void rebuildDeployedItemIndex(String site);
 }
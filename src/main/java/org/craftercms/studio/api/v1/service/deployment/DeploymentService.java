@@ -17,6 +17,7 @@
  ******************************************************************************/
 package org.craftercms.studio.api.v1.service.deployment;
 
+import org.craftercms.studio.api.v1.dal.DeploymentSyncHistory;
 import org.craftercms.studio.api.v1.dal.PublishRequest;
 import org.craftercms.studio.api.v1.exception.CommitNotFoundException;
 import org.craftercms.studio.api.v1.exception.EnvironmentNotFoundException;
@@ -84,6 +85,43 @@ public interface DeploymentService {
      */
     ZonedDateTime getLastDeploymentDate(String site, String path);
 
+    /**
+     * Get last deployment date time for given site and paths
+     *
+     * @param site site id
+     * @param paths paths
+     * @return last deployment date per path, paths never deployed are not included
+     */
+    Map<String, ZonedDateTime> getLastDeploymentDates(String site, List<String> paths);
+
+    /**
+     * Get a page of the publish log (items deployed by every publish) for given site, newest first
+     *
+     * @param site site id
+     * @param environment only items deployed to this environment, null for all environments
+     * @param path only items under this path, null for all items
+     * @param fromDate only items deployed on or after this date, null for no limit
+     * @param toDate only items deployed on or before this date, null for no limit
+     * @param offset index of the first entry
+     * @param limit max number of entries
+     * @return publish log entries
+     */
+    List<DeploymentSyncHistory> getPublishLog(String site, String environment, String path, ZonedDateTime fromDate,
+                                              ZonedDateTime toDate, int offset, int limit);
+
+    /**
+     * Get the number of publish log entries for given site and filters
+     *
+     * @param site site id
+     * @param environment only items deployed to this environment, null for all environments
+     * @param path only items under this path, null for all items
+     * @param fromDate only items deployed on or after this date, null for no limit
+     * @param toDate only items deployed on or before this date, null for no limit
+     * @return number of entries
+     */
+    int getPublishLogTotal(String site, String environment, String path, ZonedDateTime fromDate,
+                           ZonedDateTime toDate);
+
     /**
      * Get publish status for given site
      * @param site site id
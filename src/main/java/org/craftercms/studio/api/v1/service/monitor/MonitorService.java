@@ -24,6 +24,7 @@ import org.craftercms.commons.monitoring.VersionMonitor;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.jar.Manifest;
 
 public interface MonitorService {
@@ -49,4 +50,69 @@ public interface MonitorService {
      * @return Memory status
      */
     List<MemoryMonitor> getMemory();
+
+    /**
+     * Get repository lock statistics (wait and hold times per site and repository)
+     *
+     * @return lock statistics keyed by lock name
+     */
+    Map<String, Map<String, Object>> getRepositoryLockStatistics();
+
+    /**
+     * Get group commit statistics (batch size and write latency histograms)
+     *
+     * @return group commit statistics
+     */
+    Map<String, Object> getGroupCommitStatistics();
+
+    /**
+     * Get repository registry statistics (open sites, hits, opens and closes)
+     *
+     * @return repository registry statistics
+     */
+    Map<String, Object> getRepositoryRegistryStatistics();
+
+    /**
+     * Get repository maintenance statistics (runs, skips, time spent and before/after object counts)
+     *
+     * @return repository maintenance statistics
+     */
+    Map<String, Object> getRepositoryMaintenanceStatistics();
+
+    /**
+     * Get site configuration cache statistics
+     *
+     * @return site configuration cache statistics
+     */
+    Map<String, Object> getSiteConfigCacheStatistics();
+
+    /**
+     * Get permission cache statistics
+     *
+     * @return permission cache statistics
+     */
+    Map<String, Object> getPermissionsCacheStatistics();
+
+    /**
+     * Get dependency resolver statistics
+     *
+     * @return dependency resolver statistics per rule
+     */
+    Map<String, Object> getDependencyResolverStatistics();
+
+    /**
+     * Get the progress of the metadata rebuild and database sync jobs of every site (phase, operations processed out
+     * of the total, current commit, ETA and errors)
+     *
+     * @return job status by site and job
+     */
+    Map<String, Object> getSiteJobStatistics();
+
+    /**
+     * Get publishing worker statistics (sites queued and publishing, turns and the time every site waited for a
+     * worker)
+     *
+     * @return publishing worker statistics
+     */
+    Map<String, Object> getPublishingWorkerStatistics();
 }
@@ -22,6 +22,7 @@ import org.craftercms.studio.api.v1.dal.ItemState;
 import org.craftercms.studio.api.v1.to.ContentItemTO;
 
 import java.util.List;
+import java.util.Map;
 
 public interface ObjectStateService {
 
@@ -31,6 +32,15 @@ public interface ObjectStateService {
 
     void transition(String site, String path, org.craftercms.studio.api.v1.service.objectstate.TransitionEvent event);
 
+    /**
+     * Get the state an item in the given state moves to on an event, without changing anything
+     *
+     * @param currentState current state of the item
+     * @param event event
+     * @return next state, {@link State#NOOP} if the transition is not defined
+     */
+    State getNextState(State currentState, TransitionEvent event);
+
     void insertNewEntry(String site, ContentItemTO item);
 
     void insertNewEntry(String site, String path);
@@ -39,6 +49,15 @@ public interface ObjectStateService {
 
     ItemState getObjectState(String site, String path, boolean insert);
 
+    /**
+     * Get the states of several items with a single query, items without state are left out
+     *
+     * @param site site
+     * @param paths paths of the items
+     * @return states by path, paths are compared ignoring case same as in the database
+     */
+    Map<String, ItemState> getObjectStates(String site, List<String> paths);
+
     void setSystemProcessing(String site, String path, boolean isSystemProcessing);
 
     void setSystemProcessingBulk(String site, List<String> paths, boolean isSystemProcessing);
@@ -64,6 +64,13 @@ public interface SecurityService {
 
     void reloadGlobalConfiguration();
 
+    /**
+     * Get statistics of the permission caches (compiled mappings, user groups and permission decisions)
+     *
+     * @return cache sizes, hits and misses
+     */
+    Map<String, Object> getPermissionsCacheStatistics();
+
     boolean logout();
 
     /**
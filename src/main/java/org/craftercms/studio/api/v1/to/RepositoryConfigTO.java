@@ -17,6 +17,8 @@
  ******************************************************************************/
 package org.craftercms.studio.api.v1.to;
 
+import org.craftercms.studio.api.v1.util.PatternSet;
+
 import java.io.Serializable;
 import java.util.List;
 
@@ -53,6 +55,17 @@ public class RepositoryConfigTO implements Serializable {
     /** previewable mimetypes patterns **/
     private List<String> previewableMimetypesPaterns;
 
+    /** compiled patterns, built on first use and reset when the patterns change **/
+    protected transient volatile PatternSet pagePatternSet = null;
+    protected transient volatile PatternSet componentPatternSet = null;
+    protected transient volatile PatternSet assetPatternSet = null;
+    protected transient volatile PatternSet documentPatternSet = null;
+    protected transient volatile PatternSet renderingTemplatePatternSet = null;
+    protected transient volatile PatternSet scriptsPatternSet = null;
+    protected transient volatile PatternSet levelDescriptorPatternSet = null;
+    protected transient volatile PatternSet displayPatternSet = null;
+    protected transient volatile PatternSet previewableMimetypesPatternSet = null;
+
     /**
      * @return the rootPrefix
      */
@@ -88,6 +101,7 @@ public class RepositoryConfigTO implements Serializable {
      */
     public void setPagePatterns(List<String> pagePatterns) {
         this.pagePatterns = pagePatterns;
+        this.pagePatternSet = null;
     }
 
     /**
@@ -102,6 +116,7 @@ public class RepositoryConfigTO implements Serializable {
      */
     public void setComponentPatterns(List<String> componentPatterns) {
         this.componentPatterns = componentPatterns;
+        this.componentPatternSet = null;
     }
 
     /**
@@ -116,6 +131,7 @@ public class RepositoryConfigTO implements Serializable {
      */
     public void setAssetPatterns(List<String> assetPatterns) {
         this.assetPatterns = assetPatterns;
+        this.assetPatternSet = null;
     }
 
     /**
@@ -144,6 +160,7 @@ public class RepositoryConfigTO implements Serializable {
      */
     public void setDocumentPatterns(List<String> documentPatterns) {
         this.documentPatterns = documentPatterns;
+        this.documentPatternSet = null;
     }
 
     /**
@@ -158,6 +175,7 @@ public class RepositoryConfigTO implements Serializable {
      */
     public void setDisplayPatterns(List<String> displayPatterns) {
         this.displayPatterns = displayPatterns;
+        this.displayPatternSet = null;
     }
 
     /**
@@ -174,6 +192,7 @@ public class RepositoryConfigTO implements Serializable {
 
     public void setPreviewableMimetypesPaterns(List<String> patterns) {
         this.previewableMimetypesPaterns = patterns;
+        this.previewableMimetypesPatternSet = null;
     }
 
     public List<String> getRenderingTemplatePatterns() {
@@ -182,10 +201,14 @@ public class RepositoryConfigTO implements Serializable {
 
     public void setRenderingTemplatePatterns(List<String> paterns) {
         this.renderingTemplatePatterns = paterns;
+        this.renderingTemplatePatternSet = null;
     }
 
     public List<String> getScriptsPatterns() { return scriptsPatterns; }
-    public void setScriptsPatterns(List<String> scriptsPatterns) { this.scriptsPatterns = scriptsPatterns; }
+    public void setScriptsPatterns(List<String> scriptsPatterns) {
+        this.scriptsPatterns = scriptsPatterns;
+        this.scriptsPatternSet = null;
+    }
 
     public List<String> getLevelDescriptorPatterns() {
         return this.levelDescriptorPatterns;
@@ -193,5 +216,87 @@ public class RepositoryConfigTO implements Serializable {
 
     public void setLevelDescriptorPatterns(List<String> patterns) {
         this.levelDescriptorPatterns = patterns;
+        this.levelDescriptorPatternSet = null;
+    }
+
+    public PatternSet getPagePatternSet() {
+        PatternSet patternSet = pagePatternSet;
+        if (patternSet == null) {
+            patternSet = PatternSet.compile(pagePatterns);
+            pagePatternSet = patternSet;
+        }
+        return patternSet;
+    }
+
+    public PatternSet getComponentPatternSet() {
+        PatternSet patternSet = componentPatternSet;
+        if (patternSet == null) {
+            patternSet = PatternSet.compile(componentPatterns);
+            componentPatternSet = patternSet;
+        }
+        return patternSet;
+    }
+
+    public PatternSet getAssetPatternSet() {
+        PatternSet patternSet = assetPatternSet;
+        if (patternSet == null) {
+            patternSet = PatternSet.compile(assetPatterns);
+            assetPatternSet = patternSet;
+        }
+        return patternSet;
+    }
+
+    public PatternSet getDocumentPatternSet() {
+        PatternSet patternSet = documentPatternSet;
+        if (patternSet == null) {
+            patternSet = PatternSet.compile(documentPatterns);
+            documentPatternSet = patternSet;
+        }
+        return patternSet;
+    }
+
+    public PatternSet getRenderingTemplatePatternSet() {
+        PatternSet patternSet = renderingTemplatePatternSet;
+        if (patternSet == null) {
+            patternSet = PatternSet.compile(renderingTemplatePatterns);
+            renderingTemplatePatternSet = patternSet;
+        }
+        return patternSet;
+    }
+
+    public PatternSet getScriptsPatternSet() {
+        PatternSet patternSet = scriptsPatternSet;
+        if (patternSet == null) {
+            patternSet = PatternSet.compile(scriptsPatterns);
+            scriptsPatternSet = patternSet;
+        }
+        return patternSet;
+    }
+
+    public PatternSet getLevelDescriptorPatternSet() {
+        PatternSet patternSet = levelDescriptorPatternSet;
+        if (patternSet == null) {
+            patternSet = PatternSet.compile(levelDescriptorPatterns);
+            levelDescriptorPatternSet = patternSet;
+        }
+        return patternSet;
+    }
+
+    public PatternSet getDisplayPatternSet() {
+        PatternSet patternSet = displayPatternSet;
+        if (patternSet == null) {
+            patternSet = PatternSet.compile(displayPatterns);
+            displayPatternSet = patternSet;
+        }
+        return patternSet;
+    }
+
+    public PatternSet getPreviewableMimetypesPatternSet() {
+        PatternSet patternSet = previewableMimetypesPatternSet;
+        if (patternSet == null) {
+            patternSet = PatternSet.compile(previewableMimetypesPaterns);
+            previewableMimetypesPatternSet = patternSet;
+        }
+        return patternSet;
     }
 }
@@ -0,0 +1,302 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.api.v1.util;
+
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable set of regular expressions, compiled once, that tells if a value fully matches any of them (same as
+ * calling {@link String#matches(String)} for every pattern).
+ *
+ * The patterns used in the site configuration are mostly of a few simple shapes, those are matched with plain string
+ * operations and without allocating:
+ * <ul>
+ *     <li>literals, e.g. {@code application/pdf} without regex characters</li>
+ *     <li>a literal prefix followed by anything, e.g. {@code /site/.*}</li>
+ *     <li>a literal prefix, a run of characters out of a negated class and a literal suffix, e.g.
+ *     {@code /site/website/([^<]+)\.xml}</li>
+ * </ul>
+ * Any other pattern is compiled, and all of them are combined into a single alternation when possible.
+ */
+public final class PatternSet {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatternSet.class);
+
+    private static final String REGEX_META_CHARS = "\\.[]{}()*+?^$|";
+    private static final String CLASS_META_CHARS = "\\[]&-^";
+    private static final String LINE_TERMINATORS = "\n\r\u0085\u2028\u2029";
+    private static final Pattern NOT_COMBINABLE = Pattern.compile("\\\\[1-9]|\\\\k<|\\(\\?<[a-zA-Z]");
+
+    public static final PatternSet EMPTY = new PatternSet(Collections.<String>emptyList());
+
+    private final List<String> patterns;
+    private final Set<String> literals = new HashSet<String>();
+    private final List<String> anyPrefixes = new ArrayList<String>();
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private final List<Pattern> regexes = new ArrayList<Pattern>();
+
+    private PatternSet(Collection<String> patterns) {
+        this.patterns = Collections.unmodifiableList(new ArrayList<String>(patterns));
+
+        List<String> regexPatterns = new ArrayList<String>();
+        for (String pattern : this.patterns) {
+            if (pattern == null || !classify(pattern)) {
+                continue;
+            }
+            try {
+                Pattern.compile(pattern);
+                regexPatterns.add(pattern);
+            } catch (PatternSyntaxException e) {
+                logger.error("Invalid pattern " + pattern + ", it will not match anything", e);
+            }
+        }
+
+        if (regexPatterns.size() > 1 && isCombinable(regexPatterns)) {
+            StringBuilder alternation = new StringBuilder();
+            for (String pattern : regexPatterns) {
+                if (alternation.length() > 0) {
+                    alternation.append('|');
+                }
+                alternation.append("(?:").append(pattern).append(')');
+            }
+            regexes.add(Pattern.compile(alternation.toString()));
+        } else {
+            for (String pattern : regexPatterns) {
+                regexes.add(Pattern.compile(pattern));
+            }
+        }
+    }
+
+    /**
+     * Compile a list of patterns
+     *
+     * @param patterns regular expressions, null is the same as an empty list
+     * @return pattern set
+     */
+    public static PatternSet compile(Collection<String> patterns) {
+        if (patterns == null || patterns.isEmpty()) {
+            return EMPTY;
+        }
+        return new PatternSet(patterns);
+    }
+
+    /**
+     * Tell if a value fully matches any of the patterns
+     *
+     * @param value value to match, null never matches
+     * @return true if any pattern matches
+     */
+    public boolean matches(String value) {
+        if (value == null) {
+            return false;
+        }
+        if (!literals.isEmpty() && literals.contains(value)) {
+            return true;
+        }
+        for (int i = 0; i < anyPrefixes.size(); i++) {
+            String prefix = anyPrefixes.get(i);
+            if (value.startsWith(prefix) && !containsAny(value, prefix.length(), value.length(), LINE_TERMINATORS)) {
+                return true;
+            }
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i).matches(value)) {
+                return true;
+            }
+        }
+        for (int i = 0; i < regexes.size(); i++) {
+            if (regexes.get(i).matcher(value).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the patterns this set was compiled from
+     */
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    /**
+     * Add the pattern to the fast path if it has one of the simple shapes
+     *
+     * @return true if the pattern needs to be compiled
+     */
+    private boolean classify(String pattern) {
+        StringBuilder prefix = new StringBuilder();
+        int i = readLiteral(pattern, 0, prefix);
+        if (i == pattern.length()) {
+            literals.add(prefix.toString());
+            return false;
+        }
+
+        String rest = pattern.substring(i);
+        if (rest.equals(".*") || rest.equals("(.*)")) {
+            anyPrefixes.add(prefix.toString());
+            return false;
+        }
+
+        boolean grouped = rest.startsWith("(");
+        int classStart = grouped ? 1 : 0;
+        if (!rest.startsWith("[^", classStart)) {
+            return true;
+        }
+        StringBuilder excluded = new StringBuilder();
+        int j = readNegatedClass(rest, classStart + 2, excluded);
+        if (j < 0 || excluded.length() == 0 || j >= rest.length() || rest.charAt(j) != '+') {
+            return true;
+        }
+        j++;
+        if (grouped) {
+            if (j >= rest.length() || rest.charAt(j) != ')') {
+                return true;
+            }
+            j++;
+        }
+        StringBuilder suffix = new StringBuilder();
+        if (readLiteral(rest, j, suffix) != rest.length()) {
+            return true;
+        }
+        segments.add(new Segment(prefix.toString(), excluded.toString(), suffix.toString()));
+        return false;
+    }
+
+    /**
+     * Read literal characters, unescaping escaped punctuation
+     *
+     * @return index of the first character that is not part of the literal
+     */
+    private static int readLiteral(String pattern, int from, StringBuilder literal) {
+        int i = from;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < pattern.length() && isEscapedLiteral(pattern.charAt(i + 1))) {
+                    literal.append(pattern.charAt(i + 1));
+                    i += 2;
+                    continue;
+                }
+                return i;
+            }
+            if (REGEX_META_CHARS.indexOf(c) >= 0) {
+                return i;
+            }
+            literal.append(c);
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Read the characters of a negated class without ranges, intersections or predefined classes
+     *
+     * @return index after the closing bracket, -1 if the class is not that simple
+     */
+    private static int readNegatedClass(String pattern, int from, StringBuilder excluded) {
+        int i = from;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == ']') {
+                return i + 1;
+            }
+            if (c == '\\') {
+                if (i + 1 < pattern.length() && isEscapedLiteral(pattern.charAt(i + 1))) {
+                    excluded.append(pattern.charAt(i + 1));
+                    i += 2;
+                    continue;
+                }
+                return -1;
+            }
+            if (CLASS_META_CHARS.indexOf(c) >= 0) {
+                return -1;
+            }
+            excluded.append(c);
+            i++;
+        }
+        return -1;
+    }
+
+    private static boolean isEscapedLiteral(char c) {
+        return !Character.isLetterOrDigit(c) && c < 128;
+    }
+
+    /**
+     * Patterns with back references or named groups can not be put together, their group numbers or names would clash
+     */
+    private static boolean isCombinable(List<String> patterns) {
+        for (String pattern : patterns) {
+            if (NOT_COMBINABLE.matcher(pattern).find()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsAny(String value, int from, int to, String chars) {
+        for (int i = from; i < to; i++) {
+            if (chars.indexOf(value.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return patterns.toString();
+    }
+
+    /**
+     * Literal prefix, one or more characters not in the excluded set, literal suffix
+     */
+    private static final class Segment {
+
+        final String prefix;
+        final String excluded;
+        final String suffix;
+
+        Segment(String prefix, String excluded, String suffix) {
+            this.prefix = prefix;
+            this.excluded = excluded;
+            this.suffix = suffix;
+        }
+
+        boolean matches(String value) {
+            int end = value.length() - suffix.length();
+            return end > prefix.length() && value.startsWith(prefix) && value.endsWith(suffix) &&
+                    !containsAny(value, prefix.length(), end, excluded);
+        }
+    }
+}
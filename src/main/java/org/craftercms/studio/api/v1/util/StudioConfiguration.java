@@ -35,6 +35,33 @@ public interface StudioConfiguration {
     String BOOTSTRAP_REPO = "studio.repo.bootstrapRepo";
     String REPO_REBUILD_METADATA_BATCH_SIZE = "studio.repo.rebuildMetadata.batchSize";
     String REPO_PUBLISHED_COMMIT_MESSAGE = "studio.repo.published.commitMessage";
+    String REPO_PUBLISHED_ENGINE = "studio.repo.published.engine";
+    String REPO_LOCK_FAIR = "studio.repo.lock.fair";
+    String REPO_GROUP_COMMIT_ENABLED = "studio.repo.groupCommit.enabled";
+    String REPO_GROUP_COMMIT_WINDOW_MS = "studio.repo.groupCommit.windowMs";
+    String REPO_GROUP_COMMIT_MAX_BATCH_SIZE = "studio.repo.groupCommit.maxBatchSize";
+    String REPO_GROUP_COMMIT_MAX_BLOB_SIZE = "studio.repo.groupCommit.maxBlobSize";
+    String REPO_OPERATIONS_RENAME_DETECTION_LIMIT = "studio.repo.operations.renameDetectionLimit";
+    String REPO_SYNC_DATABASE_BATCH_ENABLED = "studio.repo.syncDatabase.batch.enabled";
+    String REPO_SYNC_DATABASE_BATCH_SIZE = "studio.repo.syncDatabase.batch.size";
+    String REPO_SYNC_DATABASE_PIPELINE_ENABLED = "studio.repo.syncDatabase.pipeline.enabled";
+    String REPO_SYNC_DATABASE_PIPELINE_THREADS = "studio.repo.syncDatabase.pipeline.threads";
+    String REPO_SYNC_DATABASE_PIPELINE_QUEUE_SIZE = "studio.repo.syncDatabase.pipeline.queueSize";
+    String REPO_REGISTRY_MAX_OPEN_SITES = "studio.repo.registry.maxOpenSites";
+    String REPO_REGISTRY_IDLE_TIMEOUT_MINUTES = "studio.repo.registry.idleTimeoutMinutes";
+    String REPO_REGISTRY_PINNED_SITES = "studio.repo.registry.pinnedSites";
+    String REPO_REGISTRY_WARMUP_ENABLED = "studio.repo.registry.warmup.enabled";
+    String REPO_REGISTRY_WARMUP_MAX_SITES = "studio.repo.registry.warmup.maxSites";
+    String REPO_TREE_SNAPSHOT_MAX_SNAPSHOTS = "studio.repo.treeSnapshot.maxSnapshots";
+    String REPO_VERSION_HISTORY_CACHE_SIZE = "studio.repo.versionHistory.cacheSize";
+    String REPO_VERSION_HISTORY_MAX_ITEMS = "studio.repo.versionHistory.maxItems";
+    String REPO_MAINTENANCE_ENABLED = "studio.repo.maintenance.enabled";
+    String REPO_MAINTENANCE_WINDOW_START_HOUR = "studio.repo.maintenance.window.startHour";
+    String REPO_MAINTENANCE_WINDOW_END_HOUR = "studio.repo.maintenance.window.endHour";
+    String REPO_MAINTENANCE_LOOSE_OBJECTS_THRESHOLD = "studio.repo.maintenance.looseObjectsThreshold";
+    String REPO_MAINTENANCE_PACK_FILES_THRESHOLD = "studio.repo.maintenance.packFilesThreshold";
+    String REPO_MAINTENANCE_MAX_SITES_PER_RUN = "studio.repo.maintenance.maxSitesPerRun";
+    String REPO_MAINTENANCE_PAUSE_MS = "studio.repo.maintenance.pauseBetweenSitesMs";
 
     /** Database */
     String DB_DRIVER = "studio.db.driver";
@@ -61,6 +88,7 @@ public interface StudioConfiguration {
     String DB_DATA_PATH = "studio.db.dataPath";
     String DB_PORT = "studio.db.port";
     String DB_SOCKET = "studio.db.socket";
+    String DB_RECURSIVE_QUERIES_ENABLED = "studio.db.recursiveQueries.enabled";
 
 
     /** Configuration */
@@ -106,6 +134,7 @@ public interface StudioConfiguration {
     /** Dependencies Service */
     String DEPENDENCIES_IGNORE_DEPENDENCIES_RULES = "studio.dependencies.ignoreDependenciesRules";
     String DEPENDENCIES_MANUAL_DEPENDENCY_APPROVING_ENABLED = "studio.dependencies.manualDependencyApproving.enabled";
+    String DEPENDENCIES_GRAPH_ENABLED = "studio.dependencies.graph.enabled";
 
     /** Object State Service */
     String OBJECT_STATE_BULK_OPERATIONS_BATCH_SIZE = "studio.objectState.bulkOperationsBatchSize";
@@ -124,6 +153,8 @@ public interface StudioConfiguration {
     String SECURITY_FORGOT_PASSWORD_TOKEN_TIMEOUT = "studio.security.forgotPassword.token.timeout";
     String SECURITY_RESET_PASSWORD_SERVICE_URL = "studio.security.resetPassword.serviceUrl";
     String SECURITY_GLOBAL_ADMIN_GROUP = "studio.security.global.adminGroup";
+    String SECURITY_PERMISSIONS_DECISION_CACHE_SIZE = "studio.security.permissions.decisionCacheSize";
+    String SECURITY_PERMISSIONS_USER_GROUPS_CACHE_TTL = "studio.security.permissions.userGroupsCacheTtlSeconds";
 
     /** LDAP */
     String SECURITY_LDAP_SERVER_URL = "studio.security.ldap.serverUrl";
@@ -171,6 +202,8 @@ public interface StudioConfiguration {
     /** Jobs */
     String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_PROCESSING_CHUNK_SIZE = "studio.job.deployContentToEnvironment.processingChunkSize";
     String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_MANDATORY_DEPENDENCIES_CHECK_ENABLED = "studio.job.deployContentToEnvironment.mandatoryDependenciesCheckEnabled";
+    String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_WORKERS = "studio.job.deployContentToEnvironment.workers";
+    String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_SITE_WEIGHTS = "studio.job.deployContentToEnvironment.siteWeights";
     String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_DEFAULT = "studio.job.deployContentToEnvironment.status.message.default";
     String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_IDLE = "studio.job.deployContentToEnvironment.status.message.idle";
     String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_BUSY = "studio.job.deployContentToEnvironment.status.message.busy";
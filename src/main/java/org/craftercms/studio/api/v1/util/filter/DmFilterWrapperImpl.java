@@ -20,16 +20,17 @@ package org.craftercms.studio.api.v1.util.filter;
 import org.craftercms.studio.api.v1.service.ServicesManager;
 import org.craftercms.studio.api.v1.service.configuration.ServicesConfig;
 import org.craftercms.studio.api.v1.to.ContentItemTO;
-import org.craftercms.studio.impl.v1.util.ContentUtils;
+import org.craftercms.studio.api.v1.util.PatternSet;
 
 import java.util.Arrays;
-import java.util.List;
 import java.util.Map;
 
 import static org.craftercms.studio.api.v1.constant.StudioConstants.*;
 
 public class DmFilterWrapperImpl implements DmFilterWrapper {
 
+    protected static final PatternSet ALL_PATTERN_SET = PatternSet.compile(Arrays.asList(".*"));
+
     protected Map<String, Filter> _filterMap;
     public Map<String, Filter> getFilterMap() {
         return _filterMap;
@@ -80,23 +81,17 @@ public class DmFilterWrapperImpl implements DmFilterWrapper {
         return filter;
     }
 
-    protected List<String> getFilterPatterns(String site, String filterType) {
-        if (CONTENT_TYPE_COMPONENT.equalsIgnoreCase(filterType)) {
-            List<String> toRet = servicesConfig.getComponentPatterns(site);
-            List<String> levelConfig = servicesConfig.getLevelDescriptorPatterns(site);
-            if(levelConfig!=null)
-            	toRet.addAll(levelConfig);
-            return toRet;
-        } else if (CONTENT_TYPE_ASSET.equalsIgnoreCase(filterType)) {
-            return servicesConfig.getAssetPatterns(site);
+    protected PatternSet getFilterPatternSet(String site, String filterType) {
+        if (CONTENT_TYPE_ASSET.equalsIgnoreCase(filterType)) {
+            return servicesConfig.getAssetPatternSet(site);
         }  else if (CONTENT_TYPE_RENDERING_TEMPLATE.equalsIgnoreCase(filterType)) {
-            return servicesConfig.getRenderingTemplatePatterns(site);
+            return servicesConfig.getRenderingTemplatePatternSet(site);
         } else if (CONTENT_TYPE_DOCUMENT.equalsIgnoreCase(filterType)) {
-            return servicesConfig.getDocumentPatterns(site);
+            return servicesConfig.getDocumentPatternSet(site);
         } else if (CONTENT_TYPE_ALL.equalsIgnoreCase(filterType)) {
-            return Arrays.asList(".*");
+            return ALL_PATTERN_SET;
         } else if (CONTENT_TYPE_PAGE.equalsIgnoreCase(filterType)) {
-            return servicesConfig.getPagePatterns(site);
+            return servicesConfig.getPagePatternSet(site);
         } else {
             return null;
         }
@@ -105,10 +100,14 @@ public class DmFilterWrapperImpl implements DmFilterWrapper {
 	@Override
 	public boolean accept(String site, String relativePath, String filterType) {
 		if (relativePath != null) {
-			List<String> patterns = getFilterPatterns(site, filterType);
-			if (patterns != null) {
-				return ContentUtils.matchesPatterns(relativePath, patterns);
-			}
+            if (CONTENT_TYPE_COMPONENT.equalsIgnoreCase(filterType)) {
+                return servicesConfig.getComponentPatternSet(site).matches(relativePath) ||
+                        servicesConfig.getLevelDescriptorPatternSet(site).matches(relativePath);
+            }
+            PatternSet patterns = getFilterPatternSet(site, filterType);
+            if (patterns != null) {
+                return patterns.matches(relativePath);
+            }
 		}
 		return false;
 	}
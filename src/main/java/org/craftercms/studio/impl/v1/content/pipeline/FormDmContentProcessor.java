@@ -43,7 +43,6 @@ import java.io.InputStream;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
@@ -305,28 +304,24 @@ public class FormDmContentProcessor extends PathMatchProcessor implements DmCont
         if (path.endsWith(servicesConfig.getLevelDescriptorName(site))) {
             return false;
         } else {
-            List<String> pagePatterns = servicesConfig.getPagePatterns(site);
             // cancel if the content is a page
-            if (ContentUtils.matchesPatterns(path, pagePatterns)) {
+            if (servicesConfig.getPagePatternSet(site).matches(path)) {
                 return true;
             }
 
-            List<String> componentPatterns = servicesConfig.getComponentPatterns(site);
-            if (ContentUtils.matchesPatterns(path, componentPatterns)) {
+            if (servicesConfig.getComponentPatternSet(site).matches(path)) {
                 return true;
             }
 
             // Checking for document also
-            List<String> documentPatterns = servicesConfig.getDocumentPatterns(site);
             // cancel if the content is a document
-            if (ContentUtils.matchesPatterns(path, documentPatterns)) {
+            if (servicesConfig.getDocumentPatternSet(site).matches(path)) {
                 return true;
             }
 
             // Checking for display patterns also
-            List<String> displayPatterns = servicesConfig.getDisplayInWidgetPathPatterns(site);
             // cancel if the content is a document
-            if (ContentUtils.matchesPatterns(path, displayPatterns)) {
+            if (servicesConfig.getDisplayInWidgetPathPatternSet(site).matches(path)) {
                 return true;
             }
         }
@@ -334,8 +329,7 @@ public class FormDmContentProcessor extends PathMatchProcessor implements DmCont
     }
 
     protected boolean updateWorkFlow(String site,String path) {
-        List<String> assetPatterns = servicesConfig.getAssetPatterns(site);
-        return  ContentUtils.matchesPatterns(path, assetPatterns);
+        return servicesConfig.getAssetPatternSet(site).matches(path);
     }
 
     @Override
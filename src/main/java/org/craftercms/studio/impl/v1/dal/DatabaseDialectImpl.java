@@ -0,0 +1,120 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.dal;
+
+import org.apache.commons.lang3.StringUtils;
+import org.craftercms.studio.api.v1.dal.DatabaseDialect;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.DB_RECURSIVE_QUERIES_ENABLED;
+
+/**
+ * Detects the features of the database from the metadata of the first connection that asks for them
+ */
+public class DatabaseDialectImpl implements DatabaseDialect {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseDialectImpl.class);
+
+    private static final Pattern VERSION_PATTERN = Pattern.compile("(\\d+)\\.(\\d+)\\.(\\d+)");
+    private static final String MARIADB = "MariaDB";
+    private static final String MYSQL = "MySQL";
+    // MySQL 5.5 compatibility prefix sent by MariaDB 10 servers in the handshake
+    private static final String MARIADB_VERSION_PREFIX = "5.5.5-";
+
+    protected DataSource dataSource;
+    protected StudioConfiguration studioConfiguration;
+
+    private volatile Boolean recursiveQueriesSupported;
+
+    @Override
+    public boolean isRecursiveQueriesEnabled() {
+        if (!Boolean.parseBoolean(studioConfiguration.getProperty(DB_RECURSIVE_QUERIES_ENABLED))) {
+            return false;
+        }
+        if (recursiveQueriesSupported == null) {
+            try (Connection connection = dataSource.getConnection()) {
+                DatabaseMetaData metaData = connection.getMetaData();
+                recursiveQueriesSupported = supportsRecursiveQueries(metaData.getDatabaseProductName(),
+                        metaData.getDatabaseProductVersion());
+                logger.info("Recursive queries " + (recursiveQueriesSupported ? "are" : "are not") +
+                        " supported by " + metaData.getDatabaseProductName() + " " +
+                        metaData.getDatabaseProductVersion());
+            } catch (SQLException e) {
+                logger.error("Error reading database metadata, recursive queries will not be used", e);
+                return false;
+            }
+        }
+        return recursiveQueriesSupported;
+    }
+
+    /**
+     * WITH RECURSIVE is available starting with MariaDB 10.2.2 and MySQL 8.0.1. Other databases are not supported
+     * because the queries use MariaDB/MySQL functions.
+     */
+    public static boolean supportsRecursiveQueries(String productName, String productVersion) {
+        String version = StringUtils.removeStart(StringUtils.defaultString(productVersion), MARIADB_VERSION_PREFIX);
+        Matcher matcher = VERSION_PATTERN.matcher(version);
+        if (!matcher.find()) {
+            return false;
+        }
+        int[] parsed = { Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+                Integer.parseInt(matcher.group(3)) };
+        if (StringUtils.containsIgnoreCase(version, MARIADB) || StringUtils.containsIgnoreCase(productName, MARIADB)) {
+            return compare(parsed, 10, 2, 2) >= 0;
+        } else if (StringUtils.containsIgnoreCase(productName, MYSQL)) {
+            return compare(parsed, 8, 0, 1) >= 0;
+        }
+        return false;
+    }
+
+    private static int compare(int[] version, int major, int minor, int patch) {
+        if (version[0] != major) {
+            return Integer.compare(version[0], major);
+        }
+        if (version[1] != minor) {
+            return Integer.compare(version[1], minor);
+        }
+        return Integer.compare(version[2], patch);
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public StudioConfiguration getStudioConfiguration() {
+        return studioConfiguration;
+    }
+
+    public void setStudioConfiguration(StudioConfiguration studioConfiguration) {
+        this.studioConfiguration = studioConfiguration;
+    }
+}
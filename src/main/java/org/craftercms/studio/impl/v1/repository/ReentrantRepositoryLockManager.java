@@ -0,0 +1,180 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository;
+
+import org.apache.commons.lang3.StringUtils;
+import org.craftercms.studio.api.v1.constant.GitRepositories;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.repository.RepositoryLockManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@link RepositoryLockManager} backed by one {@link ReentrantReadWriteLock} per site and repository type.
+ *
+ * Locks can be fair (threads acquire the lock in arrival order, writers are not starved by a stream of readers) or
+ * non-fair (better throughput). Wait and hold times are recorded for every acquisition.
+ */
+public class ReentrantRepositoryLockManager implements RepositoryLockManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReentrantRepositoryLockManager.class);
+
+    private static final String MODE_READ = "read";
+    private static final String MODE_WRITE = "write";
+
+    protected Map<String, ReentrantReadWriteLock> locks = new ConcurrentHashMap<String, ReentrantReadWriteLock>();
+    protected Map<String, LockStatistics> statistics = new ConcurrentHashMap<String, LockStatistics>();
+
+    protected boolean fair = true;
+
+    @Override
+    public RepositoryLock acquireRead(String site, GitRepositories repoType) {
+        String lockKey = getLockKey(site, repoType);
+        return acquire(lockKey, MODE_READ, getLock(lockKey).readLock());
+    }
+
+    @Override
+    public RepositoryLock acquireWrite(String site, GitRepositories repoType) {
+        String lockKey = getLockKey(site, repoType);
+        return acquire(lockKey, MODE_WRITE, getLock(lockKey).writeLock());
+    }
+
+    @Override
+    public RepositoryLock tryAcquireWrite(String site, GitRepositories repoType) {
+        String lockKey = getLockKey(site, repoType);
+        Lock lock = getLock(lockKey).writeLock();
+        if (lock.tryLock()) {
+            return new TimedRepositoryLock(lock, getStatistics(lockKey, MODE_WRITE), System.nanoTime());
+        }
+        return null;
+    }
+
+    protected RepositoryLock acquire(String lockKey, String mode, Lock lock) {
+        LockStatistics lockStatistics = getStatistics(lockKey, mode);
+        long startTime = System.nanoTime();
+        lock.lock();
+        long acquiredTime = System.nanoTime();
+        lockStatistics.recordWait(acquiredTime - startTime);
+        if (logger.isDebugEnabled()) {
+            logger.debug("[" + Thread.currentThread().getName() + "] Acquired " + mode + " lock " + lockKey +
+                    " after " + TimeUnit.NANOSECONDS.toMillis(acquiredTime - startTime) + " ms");
+        }
+        return new TimedRepositoryLock(lock, lockStatistics, acquiredTime);
+    }
+
+    protected ReentrantReadWriteLock getLock(String lockKey) {
+        return locks.computeIfAbsent(lockKey, k -> new ReentrantReadWriteLock(fair));
+    }
+
+    protected LockStatistics getStatistics(String lockKey, String mode) {
+        return statistics.computeIfAbsent(lockKey + ":" + mode, k -> new LockStatistics());
+    }
+
+    protected String getLockKey(String site, GitRepositories repoType) {
+        return repoType.name() + ":" + StringUtils.defaultString(site);
+    }
+
+    @Override
+    public Map<String, Map<String, Object>> getStatistics() {
+        Map<String, Map<String, Object>> toRet = new TreeMap<String, Map<String, Object>>();
+        for (Map.Entry<String, LockStatistics> entry : statistics.entrySet()) {
+            Map<String, Object> stats = entry.getValue().toMap();
+            String lockKey = entry.getKey().substring(0, entry.getKey().lastIndexOf(':'));
+            ReentrantReadWriteLock lock = locks.get(lockKey);
+            if (lock != null) {
+                stats.put("queueLength", lock.getQueueLength());
+            }
+            toRet.put(entry.getKey(), stats);
+        }
+        return toRet;
+    }
+
+    public boolean isFair() {
+        return fair;
+    }
+
+    public void setFair(boolean fair) {
+        this.fair = fair;
+    }
+
+    protected static class TimedRepositoryLock implements RepositoryLock {
+
+        private final Lock lock;
+        private final LockStatistics lockStatistics;
+        private final long acquiredTime;
+        private boolean released = false;
+
+        TimedRepositoryLock(Lock lock, LockStatistics lockStatistics, long acquiredTime) {
+            this.lock = lock;
+            this.lockStatistics = lockStatistics;
+            this.acquiredTime = acquiredTime;
+        }
+
+        @Override
+        public void release() {
+            if (!released) {
+                released = true;
+                lockStatistics.recordHold(System.nanoTime() - acquiredTime);
+                lock.unlock();
+            }
+        }
+    }
+
+    protected static class LockStatistics {
+
+        private final LongAdder acquisitions = new LongAdder();
+        private final LongAdder totalWaitNanos = new LongAdder();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final LongAdder totalHoldNanos = new LongAdder();
+        private final AtomicLong maxHoldNanos = new AtomicLong();
+
+        void recordWait(long nanos) {
+            acquisitions.increment();
+            totalWaitNanos.add(nanos);
+            maxWaitNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        void recordHold(long nanos) {
+            totalHoldNanos.add(nanos);
+            maxHoldNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        Map<String, Object> toMap() {
+            long count = acquisitions.sum();
+            Map<String, Object> toRet = new HashMap<String, Object>();
+            toRet.put("acquisitions", count);
+            toRet.put("totalWaitMs", TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.sum()));
+            toRet.put("maxWaitMs", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+            toRet.put("avgWaitMs", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.sum() / count));
+            toRet.put("totalHoldMs", TimeUnit.NANOSECONDS.toMillis(totalHoldNanos.sum()));
+            toRet.put("maxHoldMs", TimeUnit.NANOSECONDS.toMillis(maxHoldNanos.get()));
+            toRet.put("avgHoldMs", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalHoldNanos.sum() / count));
+            return toRet;
+        }
+    }
+}
@@ -0,0 +1,460 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.craftercms.studio.api.v1.dal.DeployedItem;
+import org.craftercms.studio.api.v1.dal.DeployedItemMapper;
+import org.craftercms.studio.api.v1.dal.PublishLog;
+import org.craftercms.studio.api.v1.dal.PublishLogMapper;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.to.DeploymentItemTO;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
+import static org.craftercms.studio.impl.v1.repository.git.GitContentRepositoryConstants.IGNORE_FILES;
+
+/**
+ * Index of the deployments of a site, kept in two tables: deployed_item holds the last deployment date of every item
+ * per environment, publish_log holds one entry per deployed item and publish (the deployment history).
+ *
+ * Both are updated by every publish and built from the published repository the first time a site is used without
+ * an index (e.g. after an upgrade): every environment branch is walked once, newest commit first. Every commit adds
+ * its changed paths to the publish log, and the first commit that changes a path is its last deployment. The
+ * deployed_item_index table records, per environment, the commit the index is up to date with, so whether a site is
+ * indexed does not depend on its tables having rows. A rebuild replaces the rows of a site in a single transaction,
+ * so readers keep seeing the previous index until it completes. Callers must hold a lock on the published repository
+ * of the site, the write lock to rebuild or record a deployment.
+ */
+public class DeployedItemIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeployedItemIndex.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    protected final GitContentRepositoryHelper helper;
+    protected final DeployedItemMapper deployedItemMapper;
+    protected final PublishLogMapper publishLogMapper;
+    protected final String sandboxBranch;
+    protected final String inProgressBranchSuffix;
+    protected final PlatformTransactionManager transactionManager;
+
+    protected final Set<String> indexedSites = ConcurrentHashMap.newKeySet();
+    protected final Map<String, Object> siteMonitors = new ConcurrentHashMap<String, Object>();
+
+    public DeployedItemIndex(GitContentRepositoryHelper helper, DeployedItemMapper deployedItemMapper,
+                             PublishLogMapper publishLogMapper, String sandboxBranch, String inProgressBranchSuffix,
+                             PlatformTransactionManager transactionManager) {
+        this.helper = helper;
+        this.deployedItemMapper = deployedItemMapper;
+        this.publishLogMapper = publishLogMapper;
+        this.sandboxBranch = sandboxBranch;
+        this.inProgressBranchSuffix = inProgressBranchSuffix;
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Check if the index of a site is known to exist since startup, sites that are not must be checked with
+     * {@link #ensureIndexed(String, Repository)} under the write lock of the published repository before reading
+     *
+     * @param site site id
+     * @return true if the index of the site does not need to be checked
+     */
+    public boolean isIndexed(String site) {
+        return indexedSites.contains(site);
+    }
+
+    /**
+     * Get the last deployment date of the given paths to any environment
+     *
+     * @param site site id
+     * @param repo published repository of the site
+     * @param gitPaths paths relative to the repository root
+     * @return last deployment date per path, paths never deployed are not included
+     * @throws IOException if the index had to be built and the repository can not be read
+     */
+    public Map<String, ZonedDateTime> getLastDeploymentDates(String site, Repository repo, Collection<String> gitPaths)
+            throws IOException {
+        ensureIndexed(site, repo);
+
+        Map<String, String> pathsByIndexPath = new HashMap<String, String>();
+        for (String gitPath : gitPaths) {
+            pathsByIndexPath.put(FILE_SEPARATOR + gitPath, gitPath);
+        }
+
+        Map<String, ZonedDateTime> toRet = new HashMap<String, ZonedDateTime>();
+        List<String> indexPaths = new ArrayList<String>(pathsByIndexPath.keySet());
+        for (int start = 0; start < indexPaths.size(); start += BATCH_SIZE) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("site", site);
+            params.put("paths", indexPaths.subList(start, Math.min(start + BATCH_SIZE, indexPaths.size())));
+            for (DeployedItem deployedItem : deployedItemMapper.getLastDeployedItems(params)) {
+                String gitPath = pathsByIndexPath.get(deployedItem.getPath());
+                if (gitPath != null) {
+                    toRet.put(gitPath, deployedItem.getLastDeployedDate());
+                }
+            }
+        }
+        return toRet;
+    }
+
+    /**
+     * Get a page of the publish log, newest first
+     *
+     * @param site site id
+     * @param repo published repository of the site
+     * @param environment only entries of this environment, null for all
+     * @param path only entries under this path, null for all
+     * @param fromDate only entries published on or after this date, null for no limit
+     * @param toDate only entries published on or before this date, null for no limit
+     * @param offset index of the first entry
+     * @param limit max number of entries
+     * @return publish log entries
+     * @throws IOException if the index had to be built and the repository can not be read
+     */
+    public List<PublishLog> getPublishLog(String site, Repository repo, String environment, String path,
+                                          ZonedDateTime fromDate, ZonedDateTime toDate, int offset, int limit)
+            throws IOException {
+        ensureIndexed(site, repo);
+        Map<String, Object> params = createPublishLogParams(site, environment, path, fromDate, toDate);
+        params.put("offset", offset);
+        params.put("limit", limit);
+        return publishLogMapper.getPublishLog(params);
+    }
+
+    /**
+     * Get the number of publish log entries matching the filters
+     *
+     * @see #getPublishLog(String, Repository, String, String, ZonedDateTime, ZonedDateTime, int, int)
+     */
+    public int getPublishLogTotal(String site, Repository repo, String environment, String path,
+                                  ZonedDateTime fromDate, ZonedDateTime toDate) throws IOException {
+        ensureIndexed(site, repo);
+        return publishLogMapper.getPublishLogTotal(createPublishLogParams(site, environment, path, fromDate, toDate));
+    }
+
+    protected Map<String, Object> createPublishLogParams(String site, String environment, String path,
+                                                         ZonedDateTime fromDate, ZonedDateTime toDate) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("site", site);
+        params.put("environment", StringUtils.isEmpty(environment) ? null : environment);
+        params.put("path", StringUtils.isEmpty(path) ? null : FILE_SEPARATOR + helper.getGitPath(path));
+        params.put("fromDate", fromDate);
+        params.put("toDate", toDate);
+        return params;
+    }
+
+    /**
+     * Record a deployment that has just been committed to an environment branch
+     *
+     * @param site site id
+     * @param repo published repository of the site
+     * @param environment environment (branch) the items were deployed to
+     * @param username name of the user that published the items
+     * @param deploymentItems deployed items
+     * @throws IOException if the repository can not be read
+     */
+    public void recordDeployment(String site, Repository repo, String environment, String username,
+                                 List<DeploymentItemTO> deploymentItems) throws IOException {
+        Ref ref = repo.exactRef(Constants.R_HEADS + environment);
+        if (ref == null) {
+            return;
+        }
+        if (ensureIndexed(site, repo)) {
+            // The index was just built from the repository, it already includes this deployment
+            return;
+        }
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("site", site);
+        params.put("environment", environment);
+        if (deployedItemMapper.getIndexedCommitId(params) == null) {
+            // First deployment to the environment, everything in the branch was deployed
+            indexEnvironment(site, repo, environment, ref.getObjectId());
+            return;
+        }
+
+        try (RevWalk revWalk = new RevWalk(repo)) {
+            RevCommit commit = revWalk.parseCommit(ref.getObjectId());
+            ZonedDateTime deployedDate = Instant.ofEpochSecond(commit.getCommitTime()).atZone(ZoneOffset.UTC);
+            Set<String> gitPaths = new LinkedHashSet<String>();
+            List<PublishLog> logBatch = new ArrayList<PublishLog>();
+            for (DeploymentItemTO deploymentItem : deploymentItems) {
+                String gitPath = helper.getGitPath(deploymentItem.getPath());
+                gitPaths.add(gitPath);
+                if (deploymentItem.isMove() && StringUtils.isNotEmpty(deploymentItem.getOldPath())) {
+                    gitPaths.add(helper.getGitPath(deploymentItem.getOldPath()));
+                }
+                if (!isIgnored(gitPath)) {
+                    logBatch.add(createPublishLog(site, environment, gitPath, deployedDate, commit.getName(),
+                            deploymentItem.getPackageId(), username));
+                    if (logBatch.size() >= BATCH_SIZE) {
+                        flushPublishLog(logBatch);
+                    }
+                }
+            }
+            flushPublishLog(logBatch);
+
+            List<DeployedItem> batch = new ArrayList<DeployedItem>();
+            for (String gitPath : gitPaths) {
+                if (!isIgnored(gitPath)) {
+                    batch.add(createDeployedItem(site, environment, gitPath, deployedDate, commit.getName()));
+                    if (batch.size() >= BATCH_SIZE) {
+                        flush(batch);
+                    }
+                }
+            }
+            flush(batch);
+            setIndexedCommitId(site, environment, commit);
+        }
+    }
+
+    /**
+     * Build the index of a site if it has not been checked since startup and was never built
+     *
+     * @param site site id
+     * @param repo published repository of the site
+     * @return true if the index was built
+     * @throws IOException if the repository can not be read
+     */
+    public boolean ensureIndexed(String site, Repository repo) throws IOException {
+        if (indexedSites.contains(site)) {
+            return false;
+        }
+        synchronized (getSiteMonitor(site)) {
+            if (indexedSites.contains(site)) {
+                return false;
+            }
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("site", site);
+            boolean rebuilt = false;
+            if (deployedItemMapper.countIndexedEnvironments(params) == 0) {
+                rebuild(site, repo);
+                rebuilt = true;
+            }
+            indexedSites.add(site);
+            return rebuilt;
+        }
+    }
+
+    /**
+     * Rebuild the index of a site from its published repository
+     *
+     * @param site site id
+     * @param repo published repository of the site
+     * @throws IOException if the repository can not be read
+     */
+    public void rebuild(String site, Repository repo) throws IOException {
+        synchronized (getSiteMonitor(site)) {
+            long startTime = System.currentTimeMillis();
+            DefaultTransactionDefinition defaultTransactionDefinition = new DefaultTransactionDefinition();
+            defaultTransactionDefinition.setName("rebuildDeployedItemIndex");
+            TransactionStatus txStatus = transactionManager.getTransaction(defaultTransactionDefinition);
+            try {
+                deleteIndex(site);
+                for (Ref ref : repo.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+                    String branch = Repository.shortenRefName(ref.getName());
+                    if (!branch.equals(sandboxBranch) && !branch.endsWith(inProgressBranchSuffix)) {
+                        indexEnvironment(site, repo, branch, ref.getObjectId());
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                transactionManager.rollback(txStatus);
+                throw e;
+            }
+            transactionManager.commit(txStatus);
+            indexedSites.add(site);
+            logger.info("Rebuilt deployed item index for site " + site + " in " +
+                    (System.currentTimeMillis() - startTime) + " ms");
+        }
+    }
+
+    protected Object getSiteMonitor(String site) {
+        return siteMonitors.computeIfAbsent(site, k -> new Object());
+    }
+
+    protected void deleteIndex(String site) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("site", site);
+        deployedItemMapper.deleteDeployedItems(params);
+        publishLogMapper.deletePublishLog(params);
+        deployedItemMapper.deleteIndexedCommitIds(params);
+    }
+
+    protected void indexEnvironment(String site, Repository repo, String environment, ObjectId head)
+            throws IOException {
+        Set<String> seen = new HashSet<String>();
+        List<DeployedItem> batch = new ArrayList<DeployedItem>();
+        List<PublishLog> logBatch = new ArrayList<PublishLog>();
+
+        try (ObjectReader reader = repo.newObjectReader(); RevWalk revWalk = new RevWalk(reader)) {
+            revWalk.setRetainBody(false);
+            revWalk.markStart(revWalk.parseCommit(head));
+            RevCommit commit;
+            while ((commit = revWalk.next()) != null) {
+                ZonedDateTime deployedDate = Instant.ofEpochSecond(commit.getCommitTime()).atZone(ZoneOffset.UTC);
+                String username = null;
+                try (TreeWalk treeWalk = new TreeWalk(reader)) {
+                    if (commit.getParentCount() > 0) {
+                        RevCommit parent = commit.getParent(0);
+                        revWalk.parseHeaders(parent);
+                        treeWalk.addTree(parent.getTree());
+                    } else {
+                        treeWalk.addTree(new EmptyTreeIterator());
+                    }
+                    treeWalk.addTree(commit.getTree());
+                    treeWalk.setRecursive(true);
+                    treeWalk.setFilter(TreeFilter.ANY_DIFF);
+                    while (treeWalk.next()) {
+                        String gitPath = treeWalk.getPathString();
+                        if (isIgnored(gitPath)) {
+                            continue;
+                        }
+                        if (seen.add(gitPath)) {
+                            batch.add(createDeployedItem(site, environment, gitPath, deployedDate, commit.getName()));
+                            if (batch.size() >= BATCH_SIZE) {
+                                flush(batch);
+                            }
+                        }
+                        // Like the git based history, the initial commit of the site is not part of the publish log
+                        if (commit.getParentCount() > 0) {
+                            if (username == null) {
+                                // Bodies are not retained by the walk, parse the author from the raw commit
+                                username = RevCommit.parse(reader.open(commit, Constants.OBJ_COMMIT).getCachedBytes())
+                                        .getAuthorIdent().getName();
+                            }
+                            logBatch.add(createPublishLog(site, environment, gitPath, deployedDate,
+                                    commit.getName(), null, username));
+                            if (logBatch.size() >= BATCH_SIZE) {
+                                flushPublishLog(logBatch);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        flush(batch);
+        flushPublishLog(logBatch);
+        setIndexedCommitId(site, environment, head);
+    }
+
+    protected void setIndexedCommitId(String site, String environment, ObjectId commitId) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("site", site);
+        params.put("environment", environment);
+        params.put("commitId", commitId.getName());
+        deployedItemMapper.setIndexedCommitId(params);
+    }
+
+    protected boolean isIgnored(String gitPath) {
+        return ArrayUtils.contains(IGNORE_FILES, gitPath.substring(gitPath.lastIndexOf('/') + 1));
+    }
+
+    protected DeployedItem createDeployedItem(String site, String environment, String gitPath,
+                                              ZonedDateTime deployedDate, String commitId) {
+        DeployedItem deployedItem = new DeployedItem();
+        deployedItem.setSite(site);
+        deployedItem.setEnvironment(environment);
+        deployedItem.setPath(FILE_SEPARATOR + gitPath);
+        deployedItem.setLastDeployedDate(deployedDate);
+        deployedItem.setCommitId(commitId);
+        return deployedItem;
+    }
+
+    protected PublishLog createPublishLog(String site, String environment, String gitPath,
+                                          ZonedDateTime publishedDate, String commitId, String packageId,
+                                          String username) {
+        PublishLog publishLog = new PublishLog();
+        publishLog.setSite(site);
+        publishLog.setEnvironment(environment);
+        publishLog.setPath(FILE_SEPARATOR + gitPath);
+        publishLog.setPublishedDate(publishedDate);
+        publishLog.setCommitId(commitId);
+        publishLog.setPackageId(packageId);
+        publishLog.setUsername(username);
+        return publishLog;
+    }
+
+    protected void flushPublishLog(List<PublishLog> batch) {
+        if (!batch.isEmpty()) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("entries", batch);
+            publishLogMapper.insertPublishLogEntries(params);
+            batch.clear();
+        }
+    }
+
+    protected void flush(List<DeployedItem> batch) {
+        if (!batch.isEmpty()) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("deployedItems", batch);
+            deployedItemMapper.upsertDeployedItems(params);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Forget the index and publish log of a site, they are built again on next use
+     *
+     * @param site site id
+     */
+    public void invalidate(String site) {
+        synchronized (getSiteMonitor(site)) {
+            indexedSites.remove(site);
+            DefaultTransactionDefinition defaultTransactionDefinition = new DefaultTransactionDefinition();
+            defaultTransactionDefinition.setName("invalidateDeployedItemIndex");
+            TransactionStatus txStatus = transactionManager.getTransaction(defaultTransactionDefinition);
+            try {
+                deleteIndex(site);
+            } catch (RuntimeException e) {
+                transactionManager.rollback(txStatus);
+                throw e;
+            }
+            transactionManager.commit(txStatus);
+        }
+    }
+}
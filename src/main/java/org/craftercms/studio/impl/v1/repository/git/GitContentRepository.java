@@ -18,10 +18,14 @@
 
 package org.craftercms.studio.impl.v1.repository.git;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
@@ -29,18 +33,22 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
@@ -52,8 +60,8 @@ import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.collections4.iterators.ReverseListIterator;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.craftercms.commons.crypto.CryptoException;
@@ -62,9 +70,12 @@ import org.craftercms.commons.crypto.impl.PbkAesTextEncryptor;
 import org.craftercms.commons.monitoring.VersionMonitor;
 import org.craftercms.studio.api.v1.constant.GitRepositories;
 import org.craftercms.studio.api.v1.constant.RepoOperation;
+import org.craftercms.studio.api.v1.dal.DeployedItemMapper;
 import org.craftercms.studio.api.v1.dal.DeploymentSyncHistory;
 import org.craftercms.studio.api.v1.dal.GitLog;
 import org.craftercms.studio.api.v1.dal.GitLogMapper;
+import org.craftercms.studio.api.v1.dal.PublishLog;
+import org.craftercms.studio.api.v1.dal.PublishLogMapper;
 import org.craftercms.studio.api.v1.dal.RemoteRepository;
 import org.craftercms.studio.api.v1.dal.RemoteRepositoryMapper;
 import org.craftercms.studio.api.v1.exception.ContentNotFoundException;
@@ -78,6 +89,9 @@ import org.craftercms.studio.api.v1.exception.repository.RemoteRepositoryNotFoun
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
 import org.craftercms.studio.api.v1.repository.ContentRepository;
+import org.craftercms.studio.api.v1.repository.RepoOperationIterator;
+import org.craftercms.studio.api.v1.repository.RepositoryLockManager;
+import org.craftercms.studio.api.v1.repository.RepositoryLockManager.RepositoryLock;
 import org.craftercms.studio.api.v1.repository.RepositoryItem;
 import org.craftercms.studio.api.v1.service.deployment.DeploymentException;
 import org.craftercms.studio.api.v1.service.deployment.DeploymentHistoryProvider;
@@ -88,6 +102,7 @@ import org.craftercms.studio.api.v1.to.RepoOperationTO;
 import org.craftercms.studio.api.v1.to.VersionTO;
 import org.craftercms.studio.api.v1.util.StudioConfiguration;
 import org.craftercms.studio.api.v1.util.filter.DmFilterWrapper;
+import org.craftercms.studio.impl.v1.repository.git.RepositoryRegistry.RepositoryLease;
 import org.eclipse.jgit.api.CheckoutCommand;
 import org.eclipse.jgit.api.CreateBranchCommand;
 import org.eclipse.jgit.api.Git;
@@ -105,10 +120,10 @@ import org.eclipse.jgit.api.errors.InvalidRemoteException;
 import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.api.errors.RefNotFoundException;
 import org.eclipse.jgit.api.errors.TransportException;
-import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.internal.storage.file.LockFile;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.ObjectReader;
@@ -120,8 +135,6 @@ import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.jgit.revwalk.filter.AndRevFilter;
-import org.eclipse.jgit.revwalk.filter.CommitTimeRevFilter;
 import org.eclipse.jgit.transport.JschConfigSessionFactory;
 import org.eclipse.jgit.transport.OpenSshConfig;
 import org.eclipse.jgit.transport.PushResult;
@@ -138,7 +151,9 @@ import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.PathFilter;
 import org.eclipse.jgit.util.FS;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.context.ServletContextAware;
 
 import static org.craftercms.studio.api.v1.constant.GitRepositories.PUBLISHED;
@@ -148,8 +163,18 @@ import static org.craftercms.studio.api.v1.constant.StudioConstants.BOOTSTRAP_RE
 import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.BLUE_PRINTS_PATH;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.BOOTSTRAP_REPO;
-import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_PUBLISHED_COMMIT_MESSAGE;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_GROUP_COMMIT_ENABLED;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_GROUP_COMMIT_MAX_BATCH_SIZE;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_GROUP_COMMIT_MAX_BLOB_SIZE;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_GROUP_COMMIT_WINDOW_MS;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_MAINTENANCE_LOOSE_OBJECTS_THRESHOLD;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_MAINTENANCE_PACK_FILES_THRESHOLD;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_OPERATIONS_RENAME_DETECTION_LIMIT;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_PUBLISHED_ENGINE;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_REGISTRY_WARMUP_ENABLED;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_REGISTRY_WARMUP_MAX_SITES;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_SANDBOX_BRANCH;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_VERSION_HISTORY_CACHE_SIZE;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.SECURITY_CIPHER_KEY;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.SECURITY_CIPHER_SALT;
 import static org.craftercms.studio.impl.v1.repository.git.GitContentRepositoryConstants.BLUEPRINTS_UPDATED_COMMIT;
@@ -164,13 +189,37 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     private static final Logger logger = LoggerFactory.getLogger(GitContentRepository.class);
     private GitContentRepositoryHelper helper = null;
     private TextEncryptor encryptor;
+    private GroupCommitWriter groupCommitWriter = null;
+    private VersionHistoryLoader versionHistoryLoader = null;
+    private DeployedItemIndex deployedItemIndex = null;
+    private GitRepositoryMaintenance repositoryMaintenance = null;
 
     private static final String IN_PROGRESS_BRANCH_NAME_SUFIX = "_in_progress";
+    private static final int DEPLOYMENT_HISTORY_MIN_PAGE_SIZE = 100;
+    private static final String PUBLISH_ENGINE_INDEX = "index";
+
+    private static final RepoOperationIterator EMPTY_OPERATIONS = new RepoOperationIterator() {
+        @Override
+        public void close() { }
+
+        @Override
+        public boolean hasNext() {
+            return false;
+        }
+
+        @Override
+        public RepoOperationTO next() {
+            throw new NoSuchElementException();
+        }
+    };
     private static final String STUDIO_MANIFEST_LOCATION = "/META-INF/MANIFEST.MF";
 
     ServletContext ctx;
     SecurityProvider securityProvider;
     StudioConfiguration studioConfiguration;
+    RepositoryLockManager repositoryLockManager;
+    TaskExecutor taskExecutor;
+    PlatformTransactionManager transactionManager;
 
     @Autowired
     GitLogMapper gitLogMapper;
@@ -178,31 +227,48 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     @Autowired
     RemoteRepositoryMapper remoteRepositoryMapper;
 
+    @Autowired
+    DeployedItemMapper deployedItemMapper;
+
+    @Autowired
+    PublishLogMapper publishLogMapper;
+
     @Override
     public boolean contentExists(String site, String path) {
         boolean toReturn = false;
-        Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
-                GitRepositories.SANDBOX);
 
         try {
-            RevTree tree = helper.getTreeForLastCommit(repo);
-            try (TreeWalk tw = TreeWalk.forPath(repo, helper.getGitPath(path), tree)) {
-                // Check if the array of items is not null, and since we have an absolute path to the item,
-                // pick the first item in the list
-                if (tw != null && tw.getObjectId(0) != null) {
-                    toReturn = true;
-                    tw.close();
-                } else if (tw == null) {
-                    String gitPath = helper.getGitPath(path);
-                    if (StringUtils.isEmpty(gitPath) || gitPath.equals(".")) {
-                        toReturn = true;
+            TreeSnapshot snapshot = helper.getTreeSnapshotForLastCommit(site, StringUtils.isEmpty(site) ?
+                    GitRepositories.GLOBAL : GitRepositories.SANDBOX);
+            if (snapshot != null) {
+                toReturn = snapshot.getEntry(helper.getGitPath(path)) != null;
+            }
+        } catch (IOException e) {
+            logger.error("Failed to create RevTree for site: " + site + " path: " + path, e);
+        }
+
+        return toReturn;
+    }
+
+    @Override
+    public Set<String> getExistingContent(String site, Collection<String> paths) {
+        Set<String> toReturn = new HashSet<String>();
+        if (CollectionUtils.isEmpty(paths)) {
+            return toReturn;
+        }
+
+        try {
+            TreeSnapshot snapshot = helper.getTreeSnapshotForLastCommit(site, StringUtils.isEmpty(site) ?
+                    GitRepositories.GLOBAL : GitRepositories.SANDBOX);
+            if (snapshot != null) {
+                for (String path : paths) {
+                    if (snapshot.getEntry(helper.getGitPath(path)) != null) {
+                        toReturn.add(path);
                     }
                 }
-            } catch (IOException e) {
-                logger.info("Content not found for site: " + site + " path: " + path, e);
             }
         } catch (IOException e) {
-            logger.error("Failed to create RevTree for site: " + site + " path: " + path, e);
+            logger.error("Failed to create RevTree for site: " + site + " paths: " + paths, e);
         }
 
         return toReturn;
@@ -211,25 +277,30 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     @Override
     public InputStream getContent(String site, String path) throws ContentNotFoundException {
         InputStream toReturn = null;
-        Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories
+        RepositoryLease lease = helper.acquireRepository(site, StringUtils.isEmpty(site) ? GitRepositories
                 .GLOBAL : GitRepositories.SANDBOX);
+        if (lease == null) {
+            return null;
+        }
 
         try {
-            RevTree tree = helper.getTreeForLastCommit(repo);
-            try (TreeWalk tw = TreeWalk.forPath(repo, helper.getGitPath(path), tree)) {
-                // Check if the array of items is not null, and since we have an absolute path to the item,
-                // pick the first item in the list
-                if (tw != null && tw.getObjectId(0) != null) {
-                    ObjectId id = tw.getObjectId(0);
-                    ObjectLoader objectLoader = repo.open(id);
+            TreeSnapshot.Entry entry = getTreeSnapshotEntry(site, path);
+            if (entry != null) {
+                ObjectLoader objectLoader = lease.getRepository().open(entry.getObjectId());
+                if (objectLoader.isLarge()) {
+                    // Streamed from the object store, keep the repository open until the caller closes the stream
+                    toReturn = lease.closeWith(objectLoader.openStream());
+                    lease = null;
+                } else {
                     toReturn = objectLoader.openStream();
-                    tw.close();
                 }
-            } catch (IOException e) {
-                logger.error("Error while getting content for file at site: " + site + " path: " + path, e);
             }
         } catch (IOException e) {
-            logger.error("Failed to create RevTree for site: " + site + " path: " + path, e);
+            logger.error("Error while getting content for file at site: " + site + " path: " + path, e);
+        } finally {
+            if (lease != null) {
+                lease.close();
+            }
         }
 
         return toReturn;
@@ -237,16 +308,11 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
 
     @Override
     public long getContentSize(final String site, final String path) {
-        Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
-            GitRepositories.SANDBOX);
-        try {
-            RevTree tree = helper.getTreeForLastCommit(repo);
-            try (TreeWalk tw = TreeWalk.forPath(repo, helper.getGitPath(path), tree)) {
-                if (tw != null && tw.getObjectId(0) != null) {
-                    ObjectId id = tw.getObjectId(0);
-                    ObjectLoader objectLoader = repo.open(id);
-                    return objectLoader.getSize();
-                }
+        try (RepositoryLease lease = helper.acquireRepository(site, StringUtils.isEmpty(site) ?
+                GitRepositories.GLOBAL : GitRepositories.SANDBOX)) {
+            TreeSnapshot.Entry entry = getTreeSnapshotEntry(site, path);
+            if (entry != null && lease != null) {
+                return entry.getSize(lease.getRepository());
             }
         } catch (IOException e) {
             logger.error("Error while getting content for file at site: " + site + " path: " + path, e);
@@ -254,12 +320,57 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         return -1L;
     }
 
+    @Override
+    public String getContentObjectId(String site, String path) {
+        try {
+            TreeSnapshot.Entry entry = getTreeSnapshotEntry(site, path);
+            if (entry != null) {
+                return entry.getObjectId().getName();
+            }
+        } catch (IOException e) {
+            logger.error("Error while getting object id for file at site: " + site + " path: " + path, e);
+        }
+        return null;
+    }
+
+    /**
+     * Find the entry for a path in the last commit of the sandbox (or global) repository. The root of the
+     * repository is not considered an entry, same as {@link TreeWalk#forPath}.
+     */
+    private TreeSnapshot.Entry getTreeSnapshotEntry(String site, String path) throws IOException {
+        String gitPath = helper.getGitPath(path);
+        if (StringUtils.isEmpty(gitPath) || gitPath.equals(".")) {
+            return null;
+        }
+        TreeSnapshot snapshot = helper.getTreeSnapshotForLastCommit(site, StringUtils.isEmpty(site) ?
+                GitRepositories.GLOBAL : GitRepositories.SANDBOX);
+        return snapshot == null ? null : snapshot.getEntry(gitPath);
+    }
+
     @Override
     public String writeContent(String site, String path, InputStream content) {
         // Write content to git and commit it
         String commitId = null;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        if (groupCommitWriter != null && StringUtils.isNotEmpty(site)) {
+            // Small files go through the group commit writer, anything bigger than the limit is streamed as usual
+            long maxBlobSize = Long.parseLong(studioConfiguration.getProperty(REPO_GROUP_COMMIT_MAX_BLOB_SIZE));
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                IOUtils.copyLarge(content, out, 0, maxBlobSize + 1);
+                byte[] buffered = out.toByteArray();
+                if (buffered.length <= maxBlobSize) {
+                    return groupCommitWriter.write(site, path, buffered, helper.getCurrentUserIdent());
+                }
+                content = new SequenceInputStream(new ByteArrayInputStream(buffered), content);
+            } catch (IOException e) {
+                logger.error("Failed to read content site: " + site + " path: " + path, e);
+                return null;
+            }
+        }
+
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site,
+                StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
             Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
                     GitRepositories.SANDBOX);
 
@@ -283,7 +394,8 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         String commitId = null;
         boolean result;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site,
+                StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
             Path emptyFilePath = Paths.get(path, name, EMPTY_FILE);
             Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
                     GitRepositories.SANDBOX);
@@ -335,7 +447,8 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public String deleteContent(String site, String path, String approver) {
         String commitId = null;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site,
+                StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
             Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
                     GitRepositories.SANDBOX);
 
@@ -396,7 +509,8 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public Map<String, String> moveContent(String site, String fromPath, String toPath, String newName) {
         Map<String, String> toRet = new TreeMap<String, String>();
         String commitId;
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site,
+                StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
             Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
                     GitRepositories.SANDBOX);
 
@@ -479,7 +593,8 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public String copyContent(String site, String fromPath, String toPath) {
         String commitId = null;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site,
+                StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
             Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
                     GitRepositories.SANDBOX);
 
@@ -520,83 +635,40 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public RepositoryItem[] getContentChildren(String site, String path) {
         // TODO: SJ: Rethink this API call for 3.1+
         final List<RepositoryItem> retItems = new ArrayList<RepositoryItem>();
-        Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories
-                .GLOBAL : GitRepositories.SANDBOX);
-
-        try {
-            RevTree tree = helper.getTreeForLastCommit(repo);
-            try (TreeWalk tw = TreeWalk.forPath(repo, helper.getGitPath(path), tree)) {
 
-                if (tw != null) {
-                    // Loop for all children and gather path of item excluding the item, file/folder name, and
-                    // whether or not it's a folder
-                    ObjectLoader loader = repo.open(tw.getObjectId(0));
-                    if (loader.getType() == Constants.OBJ_TREE) {
-                        int depth = tw.getDepth();
-                        tw.enterSubtree();
-                        while (tw.next()) {
-                            if (tw.getDepth() == depth + 1) {
-
-                                RepositoryItem item = new RepositoryItem();
-                                item.name = tw.getNameString();
-
-                                String visitFolderPath = FILE_SEPARATOR + tw.getPathString();
-                                loader = repo.open(tw.getObjectId(0));
-                                item.isFolder = loader.getType() == Constants.OBJ_TREE;
-                                int lastIdx = visitFolderPath.lastIndexOf(FILE_SEPARATOR + item.name);
-                                if (lastIdx > 0) {
-                                    item.path = visitFolderPath.substring(0, lastIdx);
-                                }
-
-                                if (!ArrayUtils.contains(IGNORE_FILES, item.name)) {
-                                    retItems.add(item);
-                                }
-                            }
+        try (RepositoryLease lease = helper.acquireRepository(site, StringUtils.isEmpty(site) ? GitRepositories
+                .GLOBAL : GitRepositories.SANDBOX)) {
+            TreeSnapshot snapshot = helper.getTreeSnapshotForLastCommit(site, StringUtils.isEmpty(site) ?
+                    GitRepositories.GLOBAL : GitRepositories.SANDBOX);
+            String gitPath = helper.getGitPath(path);
+            boolean isRoot = StringUtils.isEmpty(gitPath) || gitPath.equals(".");
+            TreeSnapshot.Entry entry = (snapshot == null) ? null : snapshot.getEntry(gitPath);
+
+            if (entry != null && entry.isFolder() && lease != null) {
+                // Parse only the tree object of the folder, the snapshot already resolved it, and take the type of
+                // every child from its file mode instead of opening each child object
+                String parentPath = isRoot ? StringUtils.EMPTY : FILE_SEPARATOR + gitPath;
+                try (ObjectReader reader = lease.getRepository().newObjectReader()) {
+                    CanonicalTreeParser treeParser = new CanonicalTreeParser();
+                    treeParser.reset(reader, entry.getObjectId());
+                    while (!treeParser.eof()) {
+                        RepositoryItem item = new RepositoryItem();
+                        item.name = treeParser.getEntryPathString();
+                        item.isFolder = FileMode.TREE.equals(treeParser.getEntryRawMode());
+                        item.path = parentPath;
+
+                        if (!ArrayUtils.contains(IGNORE_FILES, item.name)) {
+                            retItems.add(item);
                         }
-                        tw.close();
-                    } else {
-                        logger.debug("Object is not tree for site: " + site + " path: " + path +
-                                " - it does not have children");
-                    }
-                } else {
-                    String gitPath = helper.getGitPath(path);
-                    if (StringUtils.isEmpty(gitPath) || gitPath.equals(".")) {
-                        try (TreeWalk treeWalk = new TreeWalk(repo)) {
-                            treeWalk.addTree(tree);
-
-                            while (treeWalk.next()) {
-
-                                ObjectLoader loader = repo.open(treeWalk.getObjectId(0));
-
-                                RepositoryItem item = new RepositoryItem();
-                                item.name = treeWalk.getNameString();
-
-                                String visitFolderPath = FILE_SEPARATOR + treeWalk.getPathString();
-                                loader = repo.open(treeWalk.getObjectId(0));
-                                item.isFolder = loader.getType() == Constants.OBJ_TREE;
-                                int lastIdx = visitFolderPath.lastIndexOf(FILE_SEPARATOR + item.name);
-                                if (lastIdx > 0) {
-                                    item.path = visitFolderPath.substring(0, lastIdx);
-                                } else {
-                                    item.path = StringUtils.EMPTY;
-                                }
-
-                                if (!ArrayUtils.contains(IGNORE_FILES, item.name)) {
-                                    retItems.add(item);
-                                }
-                            }
-
-                        } catch (IOException e) {
-                            logger.error("Error while getting children for site: " + site + " path: " + path, e);
-                        }
-
+                        treeParser.next();
                     }
                 }
-            } catch (IOException e) {
-                logger.error("Error while getting children for site: " + site + " path: " + path, e);
+            } else if (entry != null) {
+                logger.debug("Object is not tree for site: " + site + " path: " + path +
+                        " - it does not have children");
             }
         } catch (IOException e) {
-            logger.error("Failed to create RevTree for site: " + site + " path: " + path, e);
+            logger.error("Error while getting children for site: " + site + " path: " + path, e);
         }
 
         RepositoryItem[] items = new RepositoryItem[retItems.size()];
@@ -606,40 +678,45 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
 
     @Override
     public VersionTO[] getContentVersionHistory(String site, String path) {
-        List<VersionTO> versionHistory = new ArrayList<VersionTO>();
+        VersionTO[] toRet = getContentVersionHistory(site, Collections.singletonList(path), 0).get(path);
+        return toRet == null ? new VersionTO[0] : toRet;
+    }
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
-            Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
-                    GitRepositories.SANDBOX);
+    @Override
+    public Map<String, VersionTO[]> getContentVersionHistory(String site, List<String> paths, int maxVersions) {
+        Map<String, VersionTO[]> toRet = new LinkedHashMap<String, VersionTO[]>();
+        GitRepositories repoType = StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX;
+
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireRead(site, repoType)) {
+            Repository repo = helper.getRepository(site, repoType);
 
             try {
                 ObjectId head = repo.resolve(Constants.HEAD);
-                String gitPath = helper.getGitPath(path);
-                try (Git git = new Git(repo)) {
-                    Iterable<RevCommit> commits = git.log().add(head).addPath(gitPath).call();
-                    Iterator<RevCommit> iterator = commits.iterator();
-                    while (iterator.hasNext()) {
-                        RevCommit revCommit = iterator.next();
-                        VersionTO versionTO = new VersionTO();
-                        versionTO.setVersionNumber(revCommit.getName());
-                        versionTO.setLastModifier(revCommit.getAuthorIdent().getName());
-                        versionTO.setLastModifiedDate(
-                                Instant.ofEpochSecond(revCommit.getCommitTime()).atZone(ZoneOffset.UTC));
-                        versionTO.setComment(revCommit.getFullMessage());
-                        versionHistory.add(versionTO);
-                    }
-
-                    git.close();
-                } catch (IOException e) {
-                    logger.error("error while getting history for content item " + path);
+                Map<String, String> gitPaths = new LinkedHashMap<String, String>();
+                for (String path : paths) {
+                    gitPaths.put(path, helper.getGitPath(path));
                 }
-            } catch (IOException | GitAPIException e) {
-                logger.error("Failed to create Git repo for site: " + site + " path: " + path, e);
+                Map<String, VersionTO[]> histories = Collections.emptyMap();
+                if (head != null && !gitPaths.isEmpty()) {
+                    histories = versionHistoryLoader.getVersionHistory(repo, repoType.name() + ":" + site, head,
+                            new LinkedHashSet<String>(gitPaths.values()), maxVersions);
+                }
+                for (Map.Entry<String, String> entry : gitPaths.entrySet()) {
+                    VersionTO[] versions = histories.get(entry.getValue());
+                    toRet.put(entry.getKey(), versions == null ? new VersionTO[0] : versions);
+                }
+            } catch (IOException e) {
+                logger.error("error while getting history for content items in site " + site + " paths " + paths,
+                        e);
             }
         }
 
-        VersionTO[] toRet = new VersionTO[versionHistory.size()];
-        return versionHistory.toArray(toRet);
+        return toRet;
+    }
+
+    @Override
+    public Map<String, Object> getVersionHistoryCacheStatistics() {
+        return versionHistoryLoader.getStatistics();
     }
 
     @Override
@@ -654,7 +731,8 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         // TODO: SJ: Redesign/refactor the whole approach in 3.1+
         String toReturn = StringUtils.EMPTY;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : PUBLISHED)) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site,
+                StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : PUBLISHED)) {
             if (majorVersion) {
                 Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
                         GitRepositories.PUBLISHED);
@@ -708,16 +786,26 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public InputStream getContentVersion(String site, String path, String version) throws ContentNotFoundException {
         InputStream toReturn = null;
 
-        Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories
+        RepositoryLease lease = helper.acquireRepository(site, StringUtils.isEmpty(site) ? GitRepositories
                 .GLOBAL : SANDBOX);
+        if (lease == null) {
+            return null;
+        }
 
         try {
+            Repository repo = lease.getRepository();
             RevTree tree = helper.getTreeForCommit(repo, version);
             try (TreeWalk tw = TreeWalk.forPath(repo, helper.getGitPath(path), tree)) {
                 if (tw != null) {
                     ObjectId id = tw.getObjectId(0);
                     ObjectLoader objectLoader = repo.open(id);
-                    toReturn = objectLoader.openStream();
+                    if (objectLoader.isLarge()) {
+                        // Streamed from the object store, keep the repository open until the caller closes the stream
+                        toReturn = lease.closeWith(objectLoader.openStream());
+                        lease = null;
+                    } else {
+                        toReturn = objectLoader.openStream();
+                    }
                     tw.close();
                 }
             } catch (IOException e) {
@@ -727,6 +815,10 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         } catch (IOException e) {
             logger.error("Failed to create RevTree for site: " + site + " path: " + path + " version: " +
                     version, e);
+        } finally {
+            if (lease != null) {
+                lease.close();
+            }
         }
 
         return toReturn;
@@ -734,10 +826,10 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
 
     @Override
     public void lockItem(String site, String path) {
-        Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
-                SANDBOX);
-
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site,
+                StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+            Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
+                    SANDBOX);
             try (TreeWalk tw = new TreeWalk(repo)) {
                 RevTree tree = helper.getTreeForLastCommit(repo);
                 tw.addTree(tree); // tree ‘0’
@@ -764,9 +856,8 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
 
     @Override
     public void lockItemForPublishing(String site, String path) {
-        Repository repo = helper.getRepository(site, PUBLISHED);
-
-        synchronized (repo) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site, PUBLISHED)) {
+            Repository repo = helper.getRepository(site, PUBLISHED);
             try (TreeWalk tw = new TreeWalk(repo)) {
                 RevTree tree = helper.getTreeForLastCommit(repo);
                 tw.addTree(tree); // tree ‘0’
@@ -793,10 +884,10 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
 
     @Override
     public void unLockItem(String site, String path) {
-        Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
-                SANDBOX);
-
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site,
+                StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+            Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
+                    SANDBOX);
             try (TreeWalk tw = new TreeWalk(repo)) {
                 RevTree tree = helper.getTreeForLastCommit(repo);
                 tw.addTree(tree); // tree ‘0’
@@ -823,9 +914,8 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
 
     @Override
     public void unLockItemForPublishing(String site, String path) {
-        Repository repo = helper.getRepository(site, PUBLISHED);
-
-        synchronized (repo) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site, PUBLISHED)) {
+            Repository repo = helper.getRepository(site, PUBLISHED);
             try (TreeWalk tw = new TreeWalk(repo)) {
                 RevTree tree = helper.getTreeForLastCommit(repo);
                 tw.addTree(tree); // tree ‘0’
@@ -855,7 +945,7 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
      */
     public void bootstrap() throws Exception {
         // Initialize the helper
-        helper = new GitContentRepositoryHelper(studioConfiguration, securityProvider);
+        helper = new GitContentRepositoryHelper(studioConfiguration, securityProvider, repositoryLockManager);
 
         encryptor = new PbkAesTextEncryptor(studioConfiguration.getProperty(SECURITY_CIPHER_KEY),
                 studioConfiguration.getProperty(SECURITY_CIPHER_SALT));
@@ -974,6 +1064,53 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         if (!helper.buildGlobalRepo()) {
             logger.error("Failed to create global repository!");
         }
+
+        deployedItemIndex = new DeployedItemIndex(helper, deployedItemMapper, publishLogMapper,
+                studioConfiguration.getProperty(REPO_SANDBOX_BRANCH), IN_PROGRESS_BRANCH_NAME_SUFIX,
+                transactionManager);
+
+        repositoryMaintenance = new GitRepositoryMaintenance(helper, repositoryLockManager,
+                Long.parseLong(studioConfiguration.getProperty(REPO_MAINTENANCE_LOOSE_OBJECTS_THRESHOLD)),
+                Long.parseLong(studioConfiguration.getProperty(REPO_MAINTENANCE_PACK_FILES_THRESHOLD)));
+
+        versionHistoryLoader = new VersionHistoryLoader(
+                Integer.parseInt(studioConfiguration.getProperty(REPO_VERSION_HISTORY_CACHE_SIZE)));
+        helper.addRepositoryCloseListener(site -> versionHistoryLoader.invalidate(SANDBOX.name() + ":" + site));
+
+        if (Boolean.parseBoolean(studioConfiguration.getProperty(REPO_REGISTRY_WARMUP_ENABLED))) {
+            final int warmupMaxSites = Integer.parseInt(
+                    studioConfiguration.getProperty(REPO_REGISTRY_WARMUP_MAX_SITES));
+            taskExecutor.execute(() -> helper.warmupRepositories(warmupMaxSites));
+        }
+
+        if (Boolean.parseBoolean(studioConfiguration.getProperty(REPO_GROUP_COMMIT_ENABLED))) {
+            groupCommitWriter = new GroupCommitWriter(helper, repositoryLockManager,
+                    Long.parseLong(studioConfiguration.getProperty(REPO_GROUP_COMMIT_WINDOW_MS)),
+                    Integer.parseInt(studioConfiguration.getProperty(REPO_GROUP_COMMIT_MAX_BATCH_SIZE)));
+        }
+    }
+
+    @Override
+    public Map<String, Object> getRepositoryRegistryStatistics() {
+        return helper.getRepositoryRegistryStatistics();
+    }
+
+    @Override
+    public boolean runRepositoryMaintenance(String site, boolean force) {
+        return repositoryMaintenance.maintain(site, force);
+    }
+
+    @Override
+    public Map<String, Object> getRepositoryMaintenanceStatistics() {
+        return repositoryMaintenance.getStatistics();
+    }
+
+    @Override
+    public Map<String, Object> getGroupCommitStatistics() {
+        if (groupCommitWriter == null) {
+            return new HashMap<String, Object>();
+        }
+        return groupCommitWriter.getStatistics();
     }
 
     @Override
@@ -1005,25 +1142,26 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public boolean deleteSite(String site) {
         boolean toReturn;
 
-        Repository repository = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
-                SANDBOX);
-        if (repository != null) {
-            synchronized (repository) {
-                Repository publishedRepository = helper.getRepository(site, GitRepositories.PUBLISHED);
-                synchronized (publishedRepository) {
-                    toReturn = helper.deleteSiteGitRepo(site);
+        try (RepositoryLock sandboxLock = repositoryLockManager.acquireWrite(site,
+                StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX);
+             RepositoryLock publishedLock = repositoryLockManager.acquireWrite(site, PUBLISHED)) {
+            Repository repository = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
+                    SANDBOX);
+            if (repository != null) {
+                toReturn = helper.deleteSiteGitRepo(site);
+                deployedItemIndex.invalidate(site);
+                repositoryMaintenance.remove(site);
+            } else {
+                Path sitePath = Paths.get(studioConfiguration.getProperty(StudioConfiguration.REPO_BASE_PATH),
+                        studioConfiguration.getProperty(StudioConfiguration.SITES_REPOS_PATH), site);
+                try {
+                    FileUtils.deleteDirectory(sitePath.toFile());
+                    toReturn = true;
+                } catch (IOException e) {
+                    logger.error("Error while deleting site " + site, e);
+                    toReturn = false;
                 }
             }
-        } else {
-            Path sitePath = Paths.get(studioConfiguration.getProperty(StudioConfiguration.REPO_BASE_PATH),
-                    studioConfiguration.getProperty(StudioConfiguration.SITES_REPOS_PATH), site);
-            try {
-                FileUtils.deleteDirectory(sitePath.toFile());
-                toReturn = true;
-            } catch (IOException e) {
-                logger.error("Error while deleting site " + site, e);
-                toReturn = false;
-            }
         }
 
         return toReturn;
@@ -1032,10 +1170,10 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     @Override
     public void initialPublish(String site, String environment, String author, String comment)
             throws DeploymentException {
-        Repository repo = helper.getRepository(site, GitRepositories.PUBLISHED);
         String commitId = StringUtils.EMPTY;
         String path = StringUtils.EMPTY;
-        synchronized (repo) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site, PUBLISHED)) {
+            Repository repo = helper.getRepository(site, GitRepositories.PUBLISHED);
             try (Git git = new Git(repo)) {
 
                 // fetch "origin/master"
@@ -1080,6 +1218,8 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
                         "_published_on_" + publishDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HHmmssSSSX"));
                 git.tag().setTagger(authorIdent).setName(tagName).setMessage(comment).call();
                 git.close();
+
+                recordDeployment(site, repo, environment, author, Collections.emptyList());
             } catch (Exception e) {
                 logger.error("Error when publishing site " + site + " to environment " + environment, e);
                 throw new DeploymentException("Error when publishing site " + site + " to environment " +
@@ -1092,10 +1232,24 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     @Override
     public void publish(String site, List<DeploymentItemTO> deploymentItems, String environment, String author,
                         String comment) throws DeploymentException {
-        Repository repo = helper.getRepository(site, GitRepositories.PUBLISHED);
         String commitId = StringUtils.EMPTY;
         String path = StringUtils.EMPTY;
-        synchronized (repo) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site, PUBLISHED)) {
+            Repository repo = helper.getRepository(site, GitRepositories.PUBLISHED);
+            if (StringUtils.equalsIgnoreCase(PUBLISH_ENGINE_INDEX,
+                    studioConfiguration.getProperty(REPO_PUBLISHED_ENGINE))) {
+                IndexOnlyPublisher publisher = new IndexOnlyPublisher(helper, studioConfiguration);
+                try {
+                    publisher.publish(site, repo, deploymentItems, environment, author, comment);
+                } catch (Exception e) {
+                    logger.error("Error when publishing site " + site + " to environment " + environment, e);
+                    throw new DeploymentException("Error when publishing site " + site + " to environment " +
+                            environment + " [commit ID = " + publisher.getCommitId() + "]");
+                }
+                recordDeployment(site, repo, environment, author, deploymentItems);
+                return;
+            }
+
             try (Git git = new Git(repo)) {
 
                 String inProgressBranchName = environment + IN_PROGRESS_BRANCH_NAME_SUFIX;
@@ -1219,7 +1373,7 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
                     logger.debug("Checkout deployed files completed.");
 
                     // commit all deployed files
-                    String commitMessage = studioConfiguration.getProperty(REPO_PUBLISHED_COMMIT_MESSAGE);
+                    String commitMessage;
 
                     logger.debug("Get Author Ident started.");
                     PersonIdent authorIdent = helper.getAuthorIdent(author);
@@ -1229,34 +1383,15 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
                     git.add().addFilepattern(GIT_COMMIT_ALL_ITEMS).call();
                     logger.debug("Git add all published items completed.");
 
-                    commitMessage = commitMessage.replace("{username}", author);
-                    commitMessage =
-                            commitMessage.replace("{datetime}",
-                                    ZonedDateTime.now(ZoneOffset.UTC).format(
-                                            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HHmmssSSSX")));
-                    commitMessage = commitMessage.replace("{source}", "UI");
-                    commitMessage = commitMessage.replace("{message}", comment);
-                    StringBuilder sb = new StringBuilder();
-                    for (String c : deployedCommits) {
-                        sb.append(c).append(" ");
-                    }
-                    StringBuilder sbPackage = new StringBuilder();
-                    for (String p : deployedPackages) {
-                        sbPackage.append(p).append(" ");
-                    }
-                    commitMessage = commitMessage.replace("{commit_id}", sb.toString().trim());
-                    commitMessage = commitMessage.replace("{package_id}", sbPackage.toString().trim());
+                    commitMessage = helper.buildPublishCommitMessage(author, comment, deployedCommits,
+                            deployedPackages);
                     logger.debug("Git commit all published items started.");
                     RevCommit revCommit = git.commit().setMessage(commitMessage).setAuthor(authorIdent).call();
                     logger.debug("Git commit all published items completed.");
                     int commitTime = revCommit.getCommitTime();
 
                     // tag
-                    ZonedDateTime tagDate2 = Instant.ofEpochSecond(commitTime).atZone(ZoneOffset.UTC);
-                    ZonedDateTime publishDate = ZonedDateTime.now(ZoneOffset.UTC);
-                    String tagName2 = tagDate2.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HHmmssSSSX")) +
-                            "_published_on_" + publishDate.format(
-                                    DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HHmmssSSSX"));
+                    String tagName2 = helper.buildPublishTagName(commitTime);
                     logger.debug("Get Author Ident started.");
                     PersonIdent authorIdent2 = helper.getAuthorIdent(author);
                     logger.debug("Get Author Ident completed.");
@@ -1288,10 +1423,29 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
                 throw new DeploymentException("Error when publishing site " + site + " to environment " +
                         environment + " [commit ID = " + commitId + "]");
             }
+            recordDeployment(site, repo, environment, author, deploymentItems);
         }
 
     }
 
+    private void recordDeployment(String site, Repository repo, String environment, String author,
+                                  List<DeploymentItemTO> deploymentItems) {
+        try {
+            // Same name the git based history reported (the publish commit author)
+            String username = helper.getAuthorIdent(author).getName();
+            deployedItemIndex.recordDeployment(site, repo, environment, username, deploymentItems);
+        } catch (Exception e) {
+            // The publish itself succeeded, drop the index of the site so it is rebuilt from the repository
+            logger.error("Error updating deployed item index for site " + site + " environment " + environment +
+                    ", the index will be rebuilt", e);
+            try {
+                deployedItemIndex.invalidate(site);
+            } catch (Exception e1) {
+                logger.error("Error invalidating deployed item index for site " + site, e1);
+            }
+        }
+    }
+
     private void cleanUpMoveFolders(Git git, String path) throws GitAPIException {
         Path parentToDelete = Paths.get(path).getParent();
         deleteParentFolder(git, parentToDelete);
@@ -1306,110 +1460,47 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public List<RepoOperationTO> getOperations(String site, String commitIdFrom, String commitIdTo) {
         List<RepoOperationTO> operations = new ArrayList<>();
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (RepoOperationIterator iterator = getOperationsIterator(site, commitIdFrom, commitIdTo)) {
+            while (iterator.hasNext()) {
+                operations.add(iterator.next());
+            }
+        } catch (UncheckedIOException e) {
+            logger.error("Error getting operations for site " + site + " from commit ID: " + commitIdFrom +
+                    " to commit ID: " + commitIdTo, e);
+        }
+
+        return operations;
+    }
+
+    @Override
+    public RepoOperationIterator getOperationsIterator(String site, String commitIdFrom, String commitIdTo) {
+        // Commits are immutable, the lock is only needed while resolving the range
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireRead(site, SANDBOX)) {
             try {
                 // Get the sandbox repo, and then get a reference to the commitId we received and another for head
                 boolean fromEmptyRepo = StringUtils.isEmpty(commitIdFrom);
-                String firstCommitId = getRepoFirstCommitId(site);
                 if (fromEmptyRepo) {
-                    commitIdFrom = firstCommitId;
+                    commitIdFrom = getRepoFirstCommitId(site);
                 }
-                Repository repo = helper.getRepository(site, SANDBOX);
-                ObjectId objCommitIdFrom = repo.resolve(commitIdFrom);
-                ObjectId objCommitIdTo = repo.resolve(commitIdTo);
-
-                ObjectId objFirstCommitId = repo.resolve(firstCommitId);
-                boolean initialEqToCommit = StringUtils.equals(firstCommitId, commitIdTo);
-                boolean initialEqFromCommit = StringUtils.equals(firstCommitId, commitIdFrom);
-
-                try (Git git = new Git(repo)) {
-
-                    if (fromEmptyRepo) {
-                        try (RevWalk walk = new RevWalk(repo)) {
-                            RevCommit firstCommit = walk.parseCommit(objFirstCommitId);
-                            RevTree firstCommitTree = helper.getTreeForCommit(repo, firstCommit.getName());
-                            try (ObjectReader reader = repo.newObjectReader()) {
-                                CanonicalTreeParser firstCommitTreeParser = new CanonicalTreeParser();
-                                firstCommitTreeParser.reset();//reset(reader, firstCommitTree.getId());
-                                // Diff the two commit Ids
-                                List<DiffEntry> diffEntries = git.diff()
-                                        .setOldTree(firstCommitTreeParser)
-                                        .setNewTree(null)
-                                        .call();
-
-
-                                // Now that we have a diff, let's itemize the file changes, pack them into a TO
-                                // and add them to the list of RepoOperations to return to the caller
-                                // also include date/time of commit by taking number of seconds and multiply by 1000 and
-                                // convert to java date before sending over
-                                operations.addAll(processDiffEntry(diffEntries, firstCommit.getId(),
-                                        firstCommit.getCommitterIdent().getName(),
-                                        Instant.ofEpochSecond(firstCommit.getCommitTime()).atZone(ZoneOffset.UTC)));
-                            }
-                        }
-                    }
-
-                    // If the commitIdFrom is the same as commitIdTo, there is nothing to calculate, otherwise,
-                    // let's do it
-                    if (!objCommitIdFrom.equals(objCommitIdTo)) {
-                        // Compare HEAD with commitId we're given
-                        // Get list of commits between commitId and HEAD in chronological order
-
-                        // Get the log of all the commits between commitId and head
-                        Iterable<RevCommit> commits = git.log().addRange(objCommitIdFrom, objCommitIdTo).call();
-
-                        // Loop through through the commits and diff one from the next util head
-                        ObjectId prevCommitId = objCommitIdFrom;
-                        ObjectId nextCommitId = objCommitIdFrom;
-                        String author = StringUtils.EMPTY;
-
-                        // Reverse orders of commits
-                        // TODO: DB: try to find better algorithm
-                        Iterator<RevCommit> iterator = commits.iterator();
-                        List<RevCommit> revCommits = new ArrayList<RevCommit>();
-                        while (iterator.hasNext()) {
-
-                            RevCommit commit = iterator.next();
-                            revCommits.add(commit);
-                        }
-
-                        ReverseListIterator<RevCommit> reverseIterator = new ReverseListIterator<RevCommit>(revCommits);
-                        while (reverseIterator.hasNext()) {
-
-                            RevCommit commit = reverseIterator.next();
-                            nextCommitId = commit.getId();
-                            author = commit.getCommitterIdent().getName();
-
-                            RevTree prevTree = helper.getTreeForCommit(repo, prevCommitId.getName());
-                            RevTree nextTree = helper.getTreeForCommit(repo, nextCommitId.getName());
-
-                            try (ObjectReader reader = repo.newObjectReader()) {
-                                CanonicalTreeParser prevCommitTreeParser = new CanonicalTreeParser();
-                                CanonicalTreeParser nextCommitTreeParser = new CanonicalTreeParser();
-                                prevCommitTreeParser.reset(reader, prevTree.getId());
-                                nextCommitTreeParser.reset(reader, nextTree.getId());
-
-                                // Diff the two commit Ids
-                                List<DiffEntry> diffEntries = git.diff()
-                                        .setOldTree(prevCommitTreeParser)
-                                        .setNewTree(nextCommitTreeParser)
-                                        .call();
-
-
-                                // Now that we have a diff, let's itemize the file changes, pack them into a TO
-                                // and add them to the list of RepoOperations to return to the caller
-                                // also include date/time of commit by taking number of seconds and multiply by 1000 and
-                                // convert to java date before sending over
-                                operations.addAll(processDiffEntry(diffEntries, nextCommitId, author,
-                                        Instant.ofEpochSecond(commit.getCommitTime()).atZone(ZoneOffset.UTC)));
-                                prevCommitId = nextCommitId;
-                            }
-                        }
-
+                // The iterator is read after the lock is released, it keeps the repository open until it is closed
+                RepositoryLease lease = helper.acquireRepository(site, SANDBOX);
+                if (lease == null) {
+                    return EMPTY_OPERATIONS;
+                }
+                try {
+                    Repository repo = lease.getRepository();
+                    ObjectId objCommitIdFrom = repo.resolve(commitIdFrom);
+                    ObjectId objCommitIdTo = repo.resolve(commitIdTo);
+
+                    GitRepoOperationIterator operations = new GitRepoOperationIterator(lease, objCommitIdFrom,
+                            objCommitIdTo, fromEmptyRepo, Integer.parseInt(
+                                    studioConfiguration.getProperty(REPO_OPERATIONS_RENAME_DETECTION_LIMIT)));
+                    lease = null;
+                    return operations;
+                } finally {
+                    if (lease != null) {
+                        lease.close();
                     }
-                } catch (GitAPIException e) {
-                    logger.error("Error getting operations for site " + site + " from commit ID: " + commitIdFrom
-                            + " to commit ID: " + commitIdTo, e);
                 }
             } catch (IOException e) {
                 logger.error("Error getting operations for site " + site + " from commit ID: " + commitIdFrom +
@@ -1417,14 +1508,14 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
             }
         }
 
-        return operations;
+        return EMPTY_OPERATIONS;
     }
 
     @Override
     public String getRepoLastCommitId(final String site) {
         String toReturn = StringUtils.EMPTY;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireRead(site, SANDBOX)) {
             Repository repo = helper.getRepository(site, SANDBOX);
             try {
                 ObjectId commitId = repo.resolve(Constants.HEAD);
@@ -1441,7 +1532,7 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public String getRepoFirstCommitId(final String site) {
         String toReturn = StringUtils.EMPTY;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireRead(site, SANDBOX)) {
             Repository repo = helper.getRepository(site, SANDBOX);
             try (RevWalk rw = new RevWalk(repo)) {
                 ObjectId head = repo.resolve(Constants.HEAD);
@@ -1459,131 +1550,142 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         return toReturn;
     }
 
-    private List<RepoOperationTO> processDiffEntry(List<DiffEntry> diffEntries, ObjectId commitId, String author,
-                                                   ZonedDateTime commitTime) {
-        List<RepoOperationTO> toReturn = new ArrayList<RepoOperationTO>();
-
-        for (DiffEntry diffEntry : diffEntries) {
-
-            // Update the paths to have a preceding separator
-            String pathNew = FILE_SEPARATOR + diffEntry.getNewPath();
-            String pathOld = FILE_SEPARATOR + diffEntry.getOldPath();
-
-            RepoOperationTO repoOperation = null;
-            switch (diffEntry.getChangeType()) {
-                case ADD:
-                    repoOperation = new RepoOperationTO(RepoOperation.CREATE, pathNew,
-                            commitTime, null, commitId.getName());
-                    break;
-                case MODIFY:
-                    repoOperation = new RepoOperationTO(RepoOperation.UPDATE, pathNew,
-                            commitTime, null, commitId.getName());
-                    break;
-                case DELETE:
-                    repoOperation = new RepoOperationTO(RepoOperation.DELETE, pathOld,
-                            commitTime, null, commitId.getName());
-                    break;
-                case RENAME:
-                    repoOperation = new RepoOperationTO(RepoOperation.MOVE, pathOld,
-                            commitTime, pathNew, commitId.getName());
-                    break;
-                case COPY:
-                    repoOperation = new RepoOperationTO(RepoOperation.COPY, pathNew,
-                            commitTime, null, commitId.getName());
-                    break;
-                default:
-                    logger.error("Error: Unknown git operation " + diffEntry.getChangeType());
-                    break;
+    @Override
+    public List<DeploymentSyncHistory> getDeploymentHistory(String site, ZonedDateTime fromDate, ZonedDateTime toDate,
+                                                            DmFilterWrapper dmFilterWrapper, String filterType,
+                                                            int numberOfItems) {
+        List<DeploymentSyncHistory> toRet = new ArrayList<DeploymentSyncHistory>();
+        // Read the publish log a page at a time until enough entries pass the filter
+        int pageSize = Math.max(numberOfItems, DEPLOYMENT_HISTORY_MIN_PAGE_SIZE);
+        int offset = 0;
+        while (toRet.size() < numberOfItems) {
+            List<DeploymentSyncHistory> page = getPublishLog(site, null, null, fromDate, toDate, offset, pageSize);
+            for (int i = 0; i < page.size() && toRet.size() < numberOfItems; i++) {
+                DeploymentSyncHistory dsh = page.get(i);
+                if (dmFilterWrapper.accept(site, dsh.getPath(), filterType)) {
+                    toRet.add(dsh);
+                }
             }
-            if ((repoOperation != null) && (!repoOperation.getPath().endsWith(".keep"))) {
-                repoOperation.setAuthor(StringUtils.isEmpty(author) ? "N/A" : author);
-                toReturn.add(repoOperation);
+            if (page.size() < pageSize) {
+                break;
             }
+            offset += pageSize;
         }
-        return toReturn;
+        return toRet;
     }
 
     @Override
-    public List<DeploymentSyncHistory> getDeploymentHistory(String site, ZonedDateTime fromDate, ZonedDateTime toDate,
-                                                            DmFilterWrapper dmFilterWrapper, String filterType,
-                                                            int numberOfItems) {
+    public List<DeploymentSyncHistory> getPublishLog(String site, String environment, String path,
+                                                     ZonedDateTime fromDate, ZonedDateTime toDate, int offset,
+                                                     int limit) {
         List<DeploymentSyncHistory> toRet = new ArrayList<DeploymentSyncHistory>();
-        Repository publishedRepo = helper.getRepository(site, PUBLISHED);
-        int counter = 0;
-        try (Git git = new Git(publishedRepo)) {
-            // List all environments
-            List<Ref> environments = git.branchList().call();
-            for (int i = 0; i < environments.size() && counter < numberOfItems; i++) {
-                Ref env = environments.get(i);
-                String environment = env.getName();
-                if (!environment.equals(studioConfiguration.getProperty(REPO_SANDBOX_BRANCH)) &&
-                        !environment.equals(Constants.R_HEADS + studioConfiguration.getProperty(REPO_SANDBOX_BRANCH))) {
-                    Iterable<RevCommit> branchLog = git.log()
-                            .add(env.getObjectId())
-                            .setRevFilter(AndRevFilter.create(
-                                    CommitTimeRevFilter.after(fromDate.toInstant().toEpochMilli()),
-                                    CommitTimeRevFilter.before(toDate.toInstant().toEpochMilli())))
-                            .call();
-
-                    Iterator<RevCommit> iterator = branchLog.iterator();
-                    while (iterator.hasNext() && counter < numberOfItems) {
-                        RevCommit revCommit = iterator.next();
-                        List<String> files = helper.getFilesInCommit(publishedRepo, revCommit);
-                        for (int j = 0; j < files.size() && counter < numberOfItems; j++) {
-                            String file = files.get(j);
-                            Path path = Paths.get(file);
-                            String fileName = path.getFileName().toString();
-                            if (!ArrayUtils.contains(IGNORE_FILES, fileName)) {
-                                if (dmFilterWrapper.accept(site, file, filterType)) {
-                                    DeploymentSyncHistory dsh = new DeploymentSyncHistory();
-                                    dsh.setSite(site);
-                                    dsh.setPath(file);
-                                    dsh.setSyncDate(
-                                            Instant.ofEpochSecond(revCommit.getCommitTime()).atZone(ZoneOffset.UTC));
-                                    dsh.setUser(revCommit.getAuthorIdent().getName());
-                                    dsh.setEnvironment(environment.replace(Constants.R_HEADS, ""));
-                                    toRet.add(dsh);
-                                    counter++;
-                                }
-                            }
-                        }
-                    }
-                }
+        ensureDeployedItemIndex(site);
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireRead(site, PUBLISHED)) {
+            Repository publishedRepo = helper.getRepository(site, PUBLISHED);
+            if (publishedRepo == null) {
+                return toRet;
             }
-            git.close();
-        } catch (IOException | GitAPIException e1) {
-            logger.error("Error while getting deployment history for site " + site, e1);
+            List<PublishLog> entries = deployedItemIndex.getPublishLog(site, publishedRepo, environment, path,
+                    fromDate, toDate, offset, limit);
+            for (PublishLog entry : entries) {
+                DeploymentSyncHistory dsh = new DeploymentSyncHistory();
+                dsh.setId(Long.toString(entry.getId()));
+                dsh.setSite(entry.getSite());
+                dsh.setPath(entry.getPath());
+                dsh.setSyncDate(entry.getPublishedDate());
+                dsh.setUser(entry.getUsername());
+                dsh.setEnvironment(entry.getEnvironment());
+                toRet.add(dsh);
+            }
+        } catch (IOException e) {
+            logger.error("Error while getting deployment history for site " + site, e);
         }
         return toRet;
     }
 
+    @Override
+    public int getPublishLogTotal(String site, String environment, String path, ZonedDateTime fromDate,
+                                  ZonedDateTime toDate) {
+        ensureDeployedItemIndex(site);
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireRead(site, PUBLISHED)) {
+            Repository publishedRepo = helper.getRepository(site, PUBLISHED);
+            if (publishedRepo == null) {
+                return 0;
+            }
+            return deployedItemIndex.getPublishLogTotal(site, publishedRepo, environment, path, fromDate, toDate);
+        } catch (IOException e) {
+            logger.error("Error while counting deployment history for site " + site, e);
+            return 0;
+        }
+    }
+
     @Override
     public ZonedDateTime getLastDeploymentDate(String site, String path) {
-        ZonedDateTime toRet = null;
-        Repository publishedRepo = helper.getRepository(site, PUBLISHED);
-        try (Git git = new Git(publishedRepo)) {
-            Iterable<RevCommit> log = git.log()
-                    .all()
-                    .addPath(helper.getGitPath(path))
-                    .setMaxCount(1)
-                    .call();
-            Iterator<RevCommit> iter = log.iterator();
-            if (iter.hasNext()) {
-                RevCommit commit = iter.next();
-                toRet = Instant.ofEpochMilli(1000l * commit.getCommitTime()).atZone(ZoneOffset.UTC);
+        return getLastDeploymentDates(site, Collections.singletonList(path)).get(path);
+    }
+
+    @Override
+    public Map<String, ZonedDateTime> getLastDeploymentDates(String site, List<String> paths) {
+        Map<String, ZonedDateTime> toRet = new HashMap<String, ZonedDateTime>();
+        ensureDeployedItemIndex(site);
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireRead(site, PUBLISHED)) {
+            Repository publishedRepo = helper.getRepository(site, PUBLISHED);
+            if (publishedRepo == null) {
+                return toRet;
             }
-            git.close();
-        } catch (IOException | GitAPIException e) {
-            logger.error("Error while getting last deployment date for site " + site + ", path " + path, e);
+            Map<String, String> gitPaths = new HashMap<String, String>();
+            for (String path : paths) {
+                gitPaths.put(path, helper.getGitPath(path));
+            }
+            Map<String, ZonedDateTime> dates =
+                    deployedItemIndex.getLastDeploymentDates(site, publishedRepo, gitPaths.values());
+            for (Map.Entry<String, String> entry : gitPaths.entrySet()) {
+                ZonedDateTime date = dates.get(entry.getValue());
+                if (date != null) {
+                    toRet.put(entry.getKey(), date);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error while getting last deployment dates for site " + site + ", paths " + paths, e);
         }
         return toRet;
     }
 
+    @Override
+    public void rebuildDeployedItemIndex(String site) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site, PUBLISHED)) {
+            Repository publishedRepo = helper.getRepository(site, PUBLISHED);
+            if (publishedRepo != null) {
+                deployedItemIndex.rebuild(site, publishedRepo);
+            }
+        } catch (IOException e) {
+            logger.error("Error while rebuilding deployed item index for site " + site, e);
+        }
+    }
+
+    /**
+     * Build the deployed item index of a site under the write lock if it has not been checked since startup, so it is
+     * never built while holding only the read lock
+     */
+    protected void ensureDeployedItemIndex(String site) {
+        if (deployedItemIndex.isIndexed(site)) {
+            return;
+        }
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site, PUBLISHED)) {
+            Repository publishedRepo = helper.getRepository(site, PUBLISHED);
+            if (publishedRepo != null) {
+                deployedItemIndex.ensureIndexed(site, publishedRepo);
+            }
+        } catch (IOException e) {
+            logger.error("Error while building deployed item index for site " + site, e);
+        }
+    }
+
     @Override
     public List<String> getEditCommitIds(String site, String path, String commitIdFrom, String commitIdTo) {
         List<String> commitIds = new ArrayList<String>();
 
-        synchronized (helper.getRepository(site, SANDBOX)) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireRead(site, SANDBOX)) {
             try {
                 // Get the sandbox repo, and then get a reference to the commitId we received and another for head
                 Repository repo = helper.getRepository(site, SANDBOX);
@@ -1656,6 +1758,21 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         return gitLogMapper.getGitLog(params);
     }
 
+    @Override
+    public Map<String, GitLog> getGitLogs(String siteId, List<String> commitIds) {
+        Map<String, GitLog> toRet = new HashMap<String, GitLog>();
+        if (commitIds == null || commitIds.isEmpty()) {
+            return toRet;
+        }
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("siteId", siteId);
+        params.put("commitIds", commitIds);
+        for (GitLog gitLog : gitLogMapper.getGitLogs(params)) {
+            toRet.put(gitLog.getCommitId(), gitLog);
+        }
+        return toRet;
+    }
+
     @Override
     public void insertGitLog(String siteId, String commitId, int processed) {
         Map<String, Object> params = new HashMap<String, Object>();
@@ -1680,7 +1797,7 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public void insertFullGitLog(String siteId, int processed) {
         List<GitLog> gitLogs = new ArrayList<>();
 
-        synchronized (helper.getRepository(siteId, SANDBOX)) {
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireRead(siteId, SANDBOX)) {
             Repository repo = helper.getRepository(siteId, SANDBOX);
             try (Git git = new Git(repo)) {
                 Iterable<RevCommit> logs = git.log().call();
@@ -1761,8 +1878,8 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
             InvalidRemoteRepositoryCredentialsException, RemoteRepositoryNotFoundException,
             RemoteRepositoryNotBareException, ServiceException {
         boolean toRet = true;
-        try (Repository repo = helper.getRepository(siteId, SANDBOX)) {
-            try (Git git = new Git(repo)) {
+        try (RepositoryLease lease = leaseSandboxRepository(siteId)) {
+            try (Git git = new Git(lease.getRepository())) {
                 PushCommand pushCommand = git.push();
                 switch (authenticationType) {
                     case RemoteRepository.AuthenticationType.NONE:
@@ -1852,9 +1969,8 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
             throws InvalidRemoteUrlException, ServiceException {
         try {
             logger.debug("Add remote " + remoteName + " to the sandbox repo for the site " + siteId);
-            Repository repo = helper.getRepository(siteId, SANDBOX);
-            try (Git git = new Git(repo)) {
-
+            try (RepositoryLease lease = leaseSandboxRepository(siteId); Git git = new Git(lease.getRepository())) {
+                Repository repo = lease.getRepository();
                 Config storedConfig = repo.getConfig();
                 Set<String> remotes = storedConfig.getSubsections("remote");
 
@@ -1917,8 +2033,13 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     @Override
     public boolean removeRemote(String siteId, String remoteName) {
         logger.debug("Remove remote " + remoteName + " from the sandbox repo for the site " + siteId);
-        Repository repo = helper.getRepository(siteId, SANDBOX);
-        try (Git git = new Git(repo)) {
+        try (RepositoryLease lease = helper.acquireRepository(siteId, SANDBOX)) {
+            if (lease == null) {
+                logger.error("Failed to remove remote " + remoteName + ", sandbox repository not found for site " +
+                        siteId);
+                return false;
+            }
+            Git git = new Git(lease.getRepository());
             RemoteRemoveCommand remoteRemoveCommand = git.remoteRemove();
             remoteRemoveCommand.setName(remoteName);
             remoteRemoveCommand.call();
@@ -1940,9 +2061,9 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     @Override
     public List<RemoteRepositoryInfoTO> listRemote(String siteId) throws ServiceException {
         List<RemoteRepositoryInfoTO> res = new ArrayList<RemoteRepositoryInfoTO>();
-        try (Repository repo = helper.getRepository(siteId, SANDBOX)) {
+        try (RepositoryLease lease = leaseSandboxRepository(siteId)) {
 
-            try (Git git = new Git(repo)) {
+            try (Git git = new Git(lease.getRepository())) {
                 List<RemoteConfig> resultRemotes = git.remoteList().call();
                 if (CollectionUtils.isNotEmpty(resultRemotes)) {
                     for (RemoteConfig conf : resultRemotes) {
@@ -2064,8 +2185,7 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         RemoteRepository remoteRepository = remoteRepositoryMapper.getRemoteRepository(params);
 
         logger.debug("Prepare push command.");
-        Repository repo = helper.getRepository(siteId, SANDBOX);
-        try (Git git = new Git(repo)) {
+        try (RepositoryLease lease = leaseSandboxRepository(siteId); Git git = new Git(lease.getRepository())) {
             PushCommand pushCommand = git.push();
             logger.debug("Set remote " + remoteName);
             pushCommand.setRemote(remoteRepository.getRemoteName());
@@ -2135,8 +2255,9 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         RemoteRepository remoteRepository = remoteRepositoryMapper.getRemoteRepository(params);
 
         logger.debug("Prepare pull command");
-        Repository repo = helper.getRepository(siteId, SANDBOX);
-        try (Git git = new Git(repo)) {
+        // The pull moves HEAD and updates the working tree, it is a sandbox write like any other
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(siteId, SANDBOX);
+             Git git = new Git(helper.getRepository(siteId, SANDBOX))) {
             PullCommand pullCommand = git.pull();
             logger.debug("Set remote " + remoteName);
             pullCommand.setRemote(remoteRepository.getRemoteName());
@@ -2198,6 +2319,17 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         }
     }
 
+    /**
+     * Lease the sandbox repository of a site, it is not closed by the repository registry until the lease is closed
+     */
+    private RepositoryLease leaseSandboxRepository(String siteId) throws ServiceException {
+        RepositoryLease lease = helper.acquireRepository(siteId, SANDBOX);
+        if (lease == null) {
+            throw new ServiceException("Sandbox repository not found for site " + siteId);
+        }
+        return lease;
+    }
+
     private SshSessionFactory getSshSessionFactory(String privateKey, final Path tempKey)  {
         try {
             Files.write(tempKey, privateKey.getBytes());
@@ -2245,4 +2377,28 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public void setStudioConfiguration(final StudioConfiguration studioConfiguration) {
         this.studioConfiguration = studioConfiguration;
     }
+
+    public RepositoryLockManager getRepositoryLockManager() {
+        return repositoryLockManager;
+    }
+
+    public void setRepositoryLockManager(final RepositoryLockManager repositoryLockManager) {
+        this.repositoryLockManager = repositoryLockManager;
+    }
+
+    public TaskExecutor getTaskExecutor() {
+        return taskExecutor;
+    }
+
+    public void setTaskExecutor(final TaskExecutor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
+    public PlatformTransactionManager getTransactionManager() {
+        return transactionManager;
+    }
+
+    public void setTransactionManager(final PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
 }
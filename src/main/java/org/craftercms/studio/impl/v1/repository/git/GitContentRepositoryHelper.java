@@ -35,8 +35,10 @@ import org.craftercms.studio.api.v1.exception.repository.InvalidRemoteRepository
 import org.craftercms.studio.api.v1.exception.repository.RemoteRepositoryNotFoundException;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.repository.RepositoryLockManager;
 import org.craftercms.studio.api.v1.service.security.SecurityProvider;
 import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.craftercms.studio.impl.v1.repository.git.RepositoryRegistry.RepositoryLease;
 import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.Status;
@@ -55,7 +57,6 @@ import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.lib.RepositoryCache;
 import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
@@ -83,13 +84,21 @@ import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static org.craftercms.studio.api.v1.constant.GitRepositories.SANDBOX;
 import static org.craftercms.studio.api.v1.constant.SecurityConstants.KEY_EMAIL;
@@ -100,6 +109,11 @@ import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATIO
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATION_SITE_GENERAL_CONFIG_FILE_NAME;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATION_SITE_PERMISSION_MAPPINGS_FILE_NAME;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATION_SITE_ROLE_MAPPINGS_FILE_NAME;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_PUBLISHED_COMMIT_MESSAGE;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_REGISTRY_IDLE_TIMEOUT_MINUTES;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_REGISTRY_MAX_OPEN_SITES;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_REGISTRY_PINNED_SITES;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_TREE_SNAPSHOT_MAX_SNAPSHOTS;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_SANDBOX_BRANCH;
 import static org.craftercms.studio.impl.v1.repository.git.GitContentRepositoryConstants.CONFIG_PARAMETER_BIG_FILE_THRESHOLD;
 import static org.craftercms.studio.impl.v1.repository.git.GitContentRepositoryConstants.CONFIG_PARAMETER_BIG_FILE_THRESHOLD_DEFAULT;
@@ -117,17 +131,39 @@ import static org.craftercms.studio.impl.v1.repository.git.GitContentRepositoryC
 public class GitContentRepositoryHelper {
     private static final Logger logger = LoggerFactory.getLogger(GitContentRepositoryHelper.class);
 
-    Map<String, Repository> sandboxes = new HashMap<>();
-    Map<String, Repository> published = new HashMap<>();
+    RepositoryRegistry repositoryRegistry;
 
     Repository globalRepo = null;
 
+    TreeSnapshotCache treeSnapshotCache = new TreeSnapshotCache();
+
     StudioConfiguration studioConfiguration;
     SecurityProvider securityProvider;
 
-    GitContentRepositoryHelper(StudioConfiguration studioConfiguration, SecurityProvider securityProvider) {
+    GitContentRepositoryHelper(StudioConfiguration studioConfiguration, SecurityProvider securityProvider,
+                               RepositoryLockManager repositoryLockManager) {
         this.studioConfiguration = studioConfiguration;
         this.securityProvider = securityProvider;
+
+        repositoryRegistry = new RepositoryRegistry(repositoryLockManager);
+        repositoryRegistry.setMaxOpenSites(
+                Integer.parseInt(studioConfiguration.getProperty(REPO_REGISTRY_MAX_OPEN_SITES)));
+        repositoryRegistry.setIdleTimeoutMillis(TimeUnit.MINUTES.toMillis(
+                Long.parseLong(studioConfiguration.getProperty(REPO_REGISTRY_IDLE_TIMEOUT_MINUTES))));
+        Set<String> pinnedSites = new HashSet<String>();
+        for (String pinnedSite : StringUtils.split(
+                StringUtils.defaultString(studioConfiguration.getProperty(REPO_REGISTRY_PINNED_SITES)), ',')) {
+            if (StringUtils.isNotBlank(pinnedSite)) {
+                pinnedSites.add(pinnedSite.trim());
+            }
+        }
+        repositoryRegistry.setPinnedSites(pinnedSites);
+        treeSnapshotCache.setMaxSnapshots(
+                Integer.parseInt(studioConfiguration.getProperty(REPO_TREE_SNAPSHOT_MAX_SNAPSHOTS)));
+        repositoryRegistry.addCloseListener(site -> {
+            treeSnapshotCache.invalidate(getTreeSnapshotKey(site, GitRepositories.SANDBOX));
+            treeSnapshotCache.invalidate(getTreeSnapshotKey(site, GitRepositories.PUBLISHED));
+        });
     }
 
     /**
@@ -154,39 +190,94 @@ public class GitContentRepositoryHelper {
      * @return true if successful, false otherwise
      */
     public boolean buildSiteRepo(String site) {
-        boolean toReturn = false;
-        Repository sandboxRepo;
-        Repository publishedRepo;
+        boolean toReturn = getRepository(site, GitRepositories.SANDBOX) != null;
+        if (toReturn) {
+            getRepository(site, GitRepositories.PUBLISHED);
+        }
+        return toReturn;
+    }
 
-        Path siteSandboxRepoPath = buildRepoPath(GitRepositories.SANDBOX, site).resolve(GIT_ROOT);
-        Path sitePublishedRepoPath = buildRepoPath(GitRepositories.PUBLISHED, site).resolve(GIT_ROOT);
+    /**
+     * Open a site repository if it exists on disk, used by the repository registry on a miss
+     *
+     * @param site site id
+     * @param repoType repository type (sandbox or published)
+     * @return repository, null if it does not exist
+     * @throws IOException if the repository can not be opened
+     */
+    protected Repository openSiteRepository(String site, GitRepositories repoType) throws IOException {
+        Path repoPath = buildRepoPath(repoType, site).resolve(GIT_ROOT);
+        if (!Files.exists(repoPath)) {
+            return null;
+        }
+        Repository repo = openRepository(repoPath);
+        if (repoType == GitRepositories.SANDBOX) {
+            checkoutSandboxBranch(site, repo);
+        }
+        return repo;
+    }
 
-        try {
-            if (Files.exists(siteSandboxRepoPath)) {
-                // Build and put in cache
-                sandboxRepo = openRepository(siteSandboxRepoPath);
-                sandboxes.put(site, sandboxRepo);
-                toReturn = true;
-            }
-        } catch (IOException e) {
-            logger.error("Failed to create sandbox repo for site: " + site + " using path " + siteSandboxRepoPath
-                .toString(), e);
+    /**
+     * Pre-open the repositories of the most recently active sites and load their pack indexes, so the first
+     * requests after startup do not pay for it
+     *
+     * @param maxSites max number of sites to warm up
+     */
+    public void warmupRepositories(int maxSites) {
+        Path sitesPath = Paths.get(studioConfiguration.getProperty(StudioConfiguration.REPO_BASE_PATH),
+                studioConfiguration.getProperty(StudioConfiguration.SITES_REPOS_PATH));
+        File[] siteFolders = sitesPath.toFile().listFiles(File::isDirectory);
+        if (siteFolders == null) {
+            return;
         }
 
-        try {
-            if (toReturn && Files.exists(sitePublishedRepoPath)) {
-                // Build and put in cache
-                publishedRepo = openRepository(sitePublishedRepoPath);
-                published.put(site, publishedRepo);
+        // Most recently active first, based on the last update of the sandbox HEAD reflog (or the index)
+        Map<String, Long> lastActivity = new HashMap<String, Long>();
+        for (File siteFolder : siteFolders) {
+            Path gitDir = buildRepoPath(GitRepositories.SANDBOX, siteFolder.getName()).resolve(GIT_ROOT);
+            long lastModified = Math.max(gitDir.resolve("logs").resolve(Constants.HEAD).toFile().lastModified(),
+                    gitDir.resolve("index").toFile().lastModified());
+            if (lastModified > 0) {
+                lastActivity.put(siteFolder.getName(), lastModified);
+            }
+        }
+        List<String> sites = new ArrayList<String>(lastActivity.keySet());
+        sites.sort((a, b) -> Long.compare(lastActivity.get(b), lastActivity.get(a)));
+        if (maxSites > 0 && sites.size() > maxSites) {
+            sites = sites.subList(0, maxSites);
+        }
 
-                toReturn = true;
+        long startTime = System.currentTimeMillis();
+        for (String site : sites) {
+            for (GitRepositories repoType : new GitRepositories[] { GitRepositories.SANDBOX,
+                    GitRepositories.PUBLISHED }) {
+                try (RepositoryLease lease = acquireRepository(site, repoType)) {
+                    if (lease == null) {
+                        continue;
+                    }
+                    Repository repo = lease.getRepository();
+                    try (ObjectReader reader = repo.newObjectReader()) {
+                        // Resolving HEAD and reading its commit loads the pack indexes
+                        ObjectId head = repo.resolve(Constants.HEAD);
+                        if (head != null) {
+                            reader.open(head).getSize();
+                        }
+                    }
+                } catch (IOException e) {
+                    logger.warn("Failed to warm up " + repoType + " repository for site " + site, e);
+                }
             }
-        } catch (IOException e) {
-            logger.error("Failed to create published repo for site: " + site + " using path " +
-                    sitePublishedRepoPath.toString(), e);
         }
+        logger.info("Warmed up repositories for " + sites.size() + " sites in " +
+                (System.currentTimeMillis() - startTime) + " ms");
+    }
 
-        return toReturn;
+    /**
+     * Get repository registry statistics
+     * @return statistics
+     */
+    public Map<String, Object> getRepositoryRegistryStatistics() {
+        return repositoryRegistry.getStatistics();
     }
 
     /**
@@ -302,7 +393,7 @@ public class GitContentRepositoryHelper {
 
         if (toReturn) {
             checkoutSandboxBranch(site, sandboxRepo);
-            sandboxes.put(site, sandboxRepo);
+            repositoryRegistry.put(site, GitRepositories.SANDBOX, sandboxRepo);
         }
 
         return toReturn;
@@ -403,16 +494,9 @@ public class GitContentRepositoryHelper {
         File siteFolder = sitePath.toFile();
 
         try {
-            Repository sboxRepo = sandboxes.get(site);
-            sboxRepo.close();
-            sandboxes.remove(site);
-            RepositoryCache.close(sboxRepo);
-            sboxRepo = null;
-            Repository pubRepo = published.get(site);
-            pubRepo.close();
-            published.remove(site);
-            RepositoryCache.close(pubRepo);
-            pubRepo = null;
+            treeSnapshotCache.invalidate(getTreeSnapshotKey(site, GitRepositories.SANDBOX));
+            treeSnapshotCache.invalidate(getTreeSnapshotKey(site, GitRepositories.PUBLISHED));
+            repositoryRegistry.remove(site);
             FileUtils.deleteDirectory(siteFolder);
 
             toReturn = true;
@@ -540,24 +624,15 @@ public class GitContentRepositoryHelper {
 
         switch (gitRepository) {
             case SANDBOX:
-                repo = sandboxes.get(site);
+                repo = repositoryRegistry.get(site, gitRepository, this::openSiteRepository);
                 if (repo == null) {
-                    if (buildSiteRepo(site)) {
-                        repo = sandboxes.get(site);
-                        checkoutSandboxBranch(site, repo);
-                    } else {
-                        logger.error("error getting the sandbox repository for site: " + site);
-                    }
+                    logger.error("error getting the sandbox repository for site: " + site);
                 }
                 break;
             case PUBLISHED:
-                repo = published.get(site);
+                repo = repositoryRegistry.get(site, gitRepository, this::openSiteRepository);
                 if (repo == null) {
-                    if (buildSiteRepo(site)) {
-                        repo = published.get(site);
-                    } else {
-                        logger.error("error getting the published repository for site: " + site);
-                    }
+                    logger.error("error getting the published repository for site: " + site);
                 }
                 break;
             case GLOBAL:
@@ -584,6 +659,34 @@ public class GitContentRepositoryHelper {
         return repo;
     }
 
+    /**
+     * Get a repository and keep it open until the lease is closed, for uses that outlive the repository lock or do
+     * not take it at all (streams, iterators, reads of the tree snapshot)
+     *
+     * @param site site id, empty for global repository
+     * @param gitRepository repository type
+     * @return lease on the repository, null if it does not exist
+     */
+    public RepositoryLease acquireRepository(String site, GitRepositories gitRepository) {
+        if (gitRepository == GitRepositories.GLOBAL) {
+            Repository repo = getRepository(site, gitRepository);
+            return repo == null ? null : RepositoryLease.untracked(repo);
+        }
+        RepositoryLease lease = repositoryRegistry.acquire(site, gitRepository, this::openSiteRepository);
+        if (lease == null) {
+            logger.error("error getting the " + gitRepository + " repository for site: " + site);
+        }
+        return lease;
+    }
+
+    /**
+     * Add a listener called with the site id when the repositories of a site are closed, to drop anything cached
+     * for them
+     */
+    public void addRepositoryCloseListener(Consumer<String> listener) {
+        repositoryRegistry.addCloseListener(listener);
+    }
+
     // TODO: SJ: Fix the exception handling in this method
     public RevTree getTreeForLastCommit(Repository repository) throws AmbiguousObjectException,
         IncorrectObjectTypeException,
@@ -600,6 +703,27 @@ public class GitContentRepositoryHelper {
         }
     }
 
+    /**
+     * Get the snapshot of the tree for the last commit of a repository. Snapshot is cached until HEAD moves.
+     *
+     * @param site site id, empty for global repository
+     * @param repoType repository type
+     * @return snapshot of the last commit, or null if the repository does not exist or has no commits
+     * @throws IOException
+     */
+    public TreeSnapshot getTreeSnapshotForLastCommit(String site, GitRepositories repoType) throws IOException {
+        try (RepositoryLease lease = acquireRepository(site, repoType)) {
+            if (lease == null) {
+                return null;
+            }
+            return treeSnapshotCache.getSnapshot(getTreeSnapshotKey(site, repoType), lease.getRepository());
+        }
+    }
+
+    private String getTreeSnapshotKey(String site, GitRepositories repoType) {
+        return repoType.name() + ":" + StringUtils.defaultString(site);
+    }
+
     // TODO: SJ: Fix the exception handling in this method
     public RevTree getTreeForCommit(Repository repository, String commitId) throws IOException {
         ObjectId commitObjectId = repository.resolve(commitId);
@@ -698,6 +822,51 @@ public class GitContentRepositoryHelper {
         return commitId;
     }
 
+    /**
+     * Build the commit message for a publish commit from the configured template
+     *
+     * @param author user that triggered the publish
+     * @param comment publish note from the user
+     * @param deployedCommits sandbox commit ids being published
+     * @param deployedPackages package ids being published
+     * @return commit message
+     */
+    public String buildPublishCommitMessage(String author, String comment, Set<String> deployedCommits,
+                                            Set<String> deployedPackages) {
+        String commitMessage = studioConfiguration.getProperty(REPO_PUBLISHED_COMMIT_MESSAGE);
+        commitMessage = commitMessage.replace("{username}", author);
+        commitMessage =
+                commitMessage.replace("{datetime}",
+                        ZonedDateTime.now(ZoneOffset.UTC).format(
+                                DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HHmmssSSSX")));
+        commitMessage = commitMessage.replace("{source}", "UI");
+        commitMessage = commitMessage.replace("{message}", comment);
+        StringBuilder sb = new StringBuilder();
+        for (String c : deployedCommits) {
+            sb.append(c).append(" ");
+        }
+        StringBuilder sbPackage = new StringBuilder();
+        for (String p : deployedPackages) {
+            sbPackage.append(p).append(" ");
+        }
+        commitMessage = commitMessage.replace("{commit_id}", sb.toString().trim());
+        commitMessage = commitMessage.replace("{package_id}", sbPackage.toString().trim());
+        return commitMessage;
+    }
+
+    /**
+     * Build the name of the tag created for a publish commit
+     *
+     * @param commitTime commit time of the publish commit (seconds since epoch)
+     * @return tag name
+     */
+    public String buildPublishTagName(int commitTime) {
+        ZonedDateTime tagDate = Instant.ofEpochSecond(commitTime).atZone(ZoneOffset.UTC);
+        ZonedDateTime publishDate = ZonedDateTime.now(ZoneOffset.UTC);
+        return tagDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HHmmssSSSX")) +
+                "_published_on_" + publishDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HHmmssSSSX"));
+    }
+
     /**
      * Return the current user identity as a jgit PersonIdent
      *
@@ -831,7 +1000,7 @@ public class GitContentRepositoryHelper {
 
             sandboxRepo = optimizeRepository(sandboxRepo);
 
-            sandboxes.put(siteId, sandboxRepo);
+            repositoryRegistry.put(siteId, GitRepositories.SANDBOX, sandboxRepo);
         } catch (InvalidRemoteException e) {
             logger.error("Invalid remote repository: " + remoteName + " (" + remoteUrl + ")", e);
             throw new InvalidRemoteRepositoryException("Invalid remote repository: " + remoteName + " (" +
@@ -0,0 +1,283 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import org.apache.commons.lang3.StringUtils;
+import org.craftercms.studio.api.v1.constant.RepoOperation;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.repository.RepoOperationIterator;
+import org.craftercms.studio.api.v1.to.RepoOperationTO;
+import org.craftercms.studio.impl.v1.repository.git.RepositoryRegistry.RepositoryLease;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
+
+/**
+ * Streams the operations between two commits.
+ *
+ * The range is walked once in topological order (oldest first) with a single {@link ObjectReader} and
+ * {@link RevWalk}, and every commit is diffed against the previous one. Commit bodies are not retained by the walk,
+ * and operations are produced one commit pair at a time, so memory does not grow with the length of the range.
+ *
+ * Additions and deletions of a commit pair are run through rename detection to report moves. Rename detection needs
+ * all candidates of the pair in memory: when a pair has more than {@code renameDetectionLimit} added or deleted files
+ * (e.g. a bulk import) rename detection is skipped for that pair and its operations are streamed straight from the
+ * tree walk.
+ */
+public class GitRepoOperationIterator implements RepoOperationIterator {
+
+    private static final Logger logger = LoggerFactory.getLogger(GitRepoOperationIterator.class);
+
+    protected final RepositoryLease lease;
+    protected final Repository repository;
+    protected final ObjectReader reader;
+    protected final RevWalk revWalk;
+    protected final int renameDetectionLimit;
+
+    protected RevCommit firstCommit;
+    protected RevTree previousTree;
+
+    protected TreeWalk treeWalk;
+    protected ObjectId currentCommitId;
+    protected String currentAuthor;
+    protected ZonedDateTime currentCommitTime;
+    protected boolean detectRenames;
+    protected List<DiffEntry> renameCandidates = new ArrayList<DiffEntry>();
+
+    protected Deque<RepoOperationTO> pending = new ArrayDeque<RepoOperationTO>();
+    protected boolean done = false;
+
+    /**
+     * @param lease lease on the repository, closed with the iterator
+     * @param from first commit of the range (exclusive)
+     * @param to last commit of the range (inclusive)
+     * @param includeFrom also report the content of {@code from} itself (diffed against an empty tree), used when
+     *                    starting from the first commit of the repository
+     * @param renameDetectionLimit max number of added and deleted files of a commit pair to run rename detection on,
+     *                             0 disables rename detection
+     * @throws IOException if the commits can not be read
+     */
+    public GitRepoOperationIterator(RepositoryLease lease, ObjectId from, ObjectId to, boolean includeFrom,
+                                    int renameDetectionLimit) throws IOException {
+        this.lease = lease;
+        this.repository = lease.getRepository();
+        this.reader = repository.newObjectReader();
+        this.revWalk = new RevWalk(reader);
+        this.renameDetectionLimit = renameDetectionLimit;
+
+        try {
+            revWalk.setRetainBody(false);
+            RevCommit fromCommit = revWalk.parseCommit(from);
+            if (includeFrom) {
+                firstCommit = fromCommit;
+            } else {
+                previousTree = fromCommit.getTree();
+            }
+            if (!from.equals(to)) {
+                revWalk.sort(RevSort.TOPO);
+                revWalk.sort(RevSort.REVERSE, true);
+                revWalk.markStart(revWalk.parseCommit(to));
+                revWalk.markUninteresting(fromCommit);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            fill();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error computing repository operations", e);
+        }
+        return !pending.isEmpty();
+    }
+
+    @Override
+    public RepoOperationTO next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return pending.poll();
+    }
+
+    protected void fill() throws IOException {
+        while (pending.isEmpty() && !done) {
+            if (treeWalk != null) {
+                if (treeWalk.next()) {
+                    processTreeWalkEntry();
+                } else {
+                    finishPair();
+                }
+            } else if (!startNextPair()) {
+                done = true;
+                close();
+            }
+        }
+    }
+
+    protected boolean startNextPair() throws IOException {
+        RevCommit commit;
+        if (firstCommit != null) {
+            commit = firstCommit;
+            firstCommit = null;
+        } else {
+            commit = revWalk.next();
+        }
+        if (commit == null) {
+            return false;
+        }
+
+        // Bodies are not retained by the walk, parse the committer from the raw commit
+        PersonIdent committer =
+                RevCommit.parse(reader.open(commit, Constants.OBJ_COMMIT).getCachedBytes()).getCommitterIdent();
+        currentCommitId = commit.copy();
+        currentAuthor = (committer == null) ? StringUtils.EMPTY : committer.getName();
+        currentCommitTime = Instant.ofEpochSecond(commit.getCommitTime()).atZone(ZoneOffset.UTC);
+        detectRenames = renameDetectionLimit > 0;
+        renameCandidates.clear();
+
+        treeWalk = new TreeWalk(reader);
+        if (previousTree == null) {
+            treeWalk.addTree(new EmptyTreeIterator());
+        } else {
+            treeWalk.addTree(previousTree);
+        }
+        treeWalk.addTree(commit.getTree());
+        treeWalk.setRecursive(true);
+        treeWalk.setFilter(TreeFilter.ANY_DIFF);
+        previousTree = commit.getTree();
+        return true;
+    }
+
+    protected void processTreeWalkEntry() {
+        String path = treeWalk.getPathString();
+        boolean missingOld = treeWalk.getRawMode(0) == FileMode.MISSING.getBits();
+        boolean missingNew = treeWalk.getRawMode(1) == FileMode.MISSING.getBits();
+
+        if (!missingOld && !missingNew) {
+            addOperation(RepoOperation.UPDATE, path, null);
+        } else if (detectRenames) {
+            if (missingOld) {
+                renameCandidates.add(DiffEntry.add(path, treeWalk.getObjectId(1)));
+            } else {
+                renameCandidates.add(DiffEntry.delete(path, treeWalk.getObjectId(0)));
+            }
+            if (renameCandidates.size() > renameDetectionLimit) {
+                logger.debug("More than " + renameDetectionLimit + " added or deleted files in commit " +
+                        currentCommitId.getName() + ", skipping rename detection");
+                detectRenames = false;
+                for (DiffEntry diffEntry : renameCandidates) {
+                    addOperation(diffEntry);
+                }
+                renameCandidates.clear();
+            }
+        } else {
+            addOperation(missingOld ? RepoOperation.CREATE : RepoOperation.DELETE, path, null);
+        }
+    }
+
+    protected void finishPair() throws IOException {
+        treeWalk.close();
+        treeWalk = null;
+        if (!renameCandidates.isEmpty()) {
+            RenameDetector renameDetector = new RenameDetector(repository);
+            renameDetector.addAll(renameCandidates);
+            for (DiffEntry diffEntry : renameDetector.compute(reader, NullProgressMonitor.INSTANCE)) {
+                addOperation(diffEntry);
+            }
+            renameCandidates.clear();
+        }
+    }
+
+    protected void addOperation(DiffEntry diffEntry) {
+        switch (diffEntry.getChangeType()) {
+            case ADD:
+                addOperation(RepoOperation.CREATE, diffEntry.getNewPath(), null);
+                break;
+            case MODIFY:
+                addOperation(RepoOperation.UPDATE, diffEntry.getNewPath(), null);
+                break;
+            case DELETE:
+                addOperation(RepoOperation.DELETE, diffEntry.getOldPath(), null);
+                break;
+            case RENAME:
+                addOperation(RepoOperation.MOVE, diffEntry.getOldPath(), diffEntry.getNewPath());
+                break;
+            case COPY:
+                addOperation(RepoOperation.COPY, diffEntry.getNewPath(), null);
+                break;
+            default:
+                logger.error("Error: Unknown git operation " + diffEntry.getChangeType());
+                break;
+        }
+    }
+
+    protected void addOperation(RepoOperation operation, String gitPath, String moveToGitPath) {
+        // Update the paths to have a preceding separator
+        String path = FILE_SEPARATOR + gitPath;
+        if (path.endsWith(".keep")) {
+            return;
+        }
+        RepoOperationTO repoOperation = new RepoOperationTO(operation, path, currentCommitTime,
+                moveToGitPath == null ? null : FILE_SEPARATOR + moveToGitPath, currentCommitId.getName());
+        repoOperation.setAuthor(StringUtils.isEmpty(currentAuthor) ? "N/A" : currentAuthor);
+        pending.add(repoOperation);
+    }
+
+    @Override
+    public void close() {
+        if (treeWalk != null) {
+            treeWalk.close();
+            treeWalk = null;
+        }
+        revWalk.close();
+        reader.close();
+        lease.close();
+    }
+}
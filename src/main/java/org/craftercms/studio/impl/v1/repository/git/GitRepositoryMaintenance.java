@@ -0,0 +1,194 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import org.craftercms.studio.api.v1.constant.GitRepositories;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.repository.RepositoryLockManager;
+import org.craftercms.studio.api.v1.repository.RepositoryLockManager.RepositoryLock;
+import org.craftercms.studio.impl.v1.repository.git.RepositoryRegistry.RepositoryLease;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.pack.PackConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.craftercms.studio.api.v1.constant.GitRepositories.PUBLISHED;
+import static org.craftercms.studio.api.v1.constant.GitRepositories.SANDBOX;
+
+/**
+ * Packs and prunes the sandbox and published repositories of a site.
+ *
+ * Every save adds loose objects and every publish adds a commit, a tag and a merge, and reads slow down as loose
+ * objects and small packs pile up. Maintenance runs JGit's GC (pack refs, repack everything into a single pack with
+ * a pack bitmap, prune unreachable loose objects older than gc.pruneExpire) on repositories over the loose object or
+ * pack file thresholds.
+ *
+ * Both repository write locks of the site are taken without waiting, so maintenance is skipped for a site that is
+ * being written or published and no write or publish can start while it runs.
+ */
+public class GitRepositoryMaintenance {
+
+    private static final Logger logger = LoggerFactory.getLogger(GitRepositoryMaintenance.class);
+
+    protected final GitContentRepositoryHelper helper;
+    protected final RepositoryLockManager repositoryLockManager;
+    protected final long looseObjectsThreshold;
+    protected final long packFilesThreshold;
+
+    protected final Map<String, Map<String, Object>> lastRuns = new ConcurrentHashMap<String, Map<String, Object>>();
+    protected final LongAdder runs = new LongAdder();
+    protected final LongAdder failures = new LongAdder();
+    protected final LongAdder skippedBusy = new LongAdder();
+    protected final LongAdder skippedBelowThreshold = new LongAdder();
+    protected final LongAdder totalTimeMillis = new LongAdder();
+
+    public GitRepositoryMaintenance(GitContentRepositoryHelper helper, RepositoryLockManager repositoryLockManager,
+                                    long looseObjectsThreshold, long packFilesThreshold) {
+        this.helper = helper;
+        this.repositoryLockManager = repositoryLockManager;
+        this.looseObjectsThreshold = looseObjectsThreshold;
+        this.packFilesThreshold = packFilesThreshold;
+    }
+
+    /**
+     * Run maintenance on the repositories of a site that need it
+     *
+     * @param site site id
+     * @param force run even if the repositories are under the thresholds
+     * @return true if maintenance ran on at least one repository
+     */
+    public boolean maintain(String site, boolean force) {
+        RepositoryLock sandboxLock = repositoryLockManager.tryAcquireWrite(site, SANDBOX);
+        if (sandboxLock == null) {
+            logger.debug("Skipping repository maintenance for site " + site + ", sandbox repository is in use");
+            skippedBusy.increment();
+            return false;
+        }
+        try (RepositoryLock sandbox = sandboxLock) {
+            RepositoryLock publishedLock = repositoryLockManager.tryAcquireWrite(site, PUBLISHED);
+            if (publishedLock == null) {
+                logger.debug("Skipping repository maintenance for site " + site + ", published repository is in use");
+                skippedBusy.increment();
+                return false;
+            }
+            try (RepositoryLock published = publishedLock) {
+                boolean sandboxMaintained = maintain(site, SANDBOX, force);
+                boolean publishedMaintained = maintain(site, PUBLISHED, force);
+                return sandboxMaintained || publishedMaintained;
+            }
+        }
+    }
+
+    protected boolean maintain(String site, GitRepositories repoType, boolean force) {
+        try (RepositoryLease lease = helper.acquireRepository(site, repoType)) {
+            Repository repository = lease == null ? null : lease.getRepository();
+            if (!(repository instanceof FileRepository)) {
+                return false;
+            }
+            GC gc = new GC((FileRepository) repository);
+            GC.RepoStatistics before = gc.getStatistics();
+            if (!force && before.numberOfLooseObjects < looseObjectsThreshold &&
+                    before.numberOfPackFiles < packFilesThreshold) {
+                skippedBelowThreshold.increment();
+                return false;
+            }
+            int bitmapsBefore = countBitmaps(repository);
+
+            logger.info("Starting repository maintenance for " + repoType + " repository of site " + site + " (" +
+                    before.numberOfLooseObjects + " loose objects, " + before.numberOfPackFiles + " pack files)");
+            long startTime = System.currentTimeMillis();
+            PackConfig packConfig = new PackConfig(repository);
+            packConfig.setBuildBitmaps(true);
+            gc.setPackConfig(packConfig);
+            gc.setProgressMonitor(NullProgressMonitor.INSTANCE);
+            gc.gc();
+            long duration = System.currentTimeMillis() - startTime;
+
+            GC.RepoStatistics after = gc.getStatistics();
+            Map<String, Object> lastRun = new LinkedHashMap<String, Object>();
+            lastRun.put("date", Instant.ofEpochMilli(startTime).toString());
+            lastRun.put("durationMs", duration);
+            lastRun.put("looseObjectsBefore", before.numberOfLooseObjects);
+            lastRun.put("looseObjectsAfter", after.numberOfLooseObjects);
+            lastRun.put("packFilesBefore", before.numberOfPackFiles);
+            lastRun.put("packFilesAfter", after.numberOfPackFiles);
+            lastRun.put("packedObjectsBefore", before.numberOfPackedObjects);
+            lastRun.put("packedObjectsAfter", after.numberOfPackedObjects);
+            lastRun.put("bitmapsBefore", bitmapsBefore);
+            lastRun.put("bitmapsAfter", countBitmaps(repository));
+            lastRuns.put(site + ":" + repoType, lastRun);
+            runs.increment();
+            totalTimeMillis.add(duration);
+
+            logger.info("Finished repository maintenance for " + repoType + " repository of site " + site + " in " +
+                    duration + " ms (" + after.numberOfLooseObjects + " loose objects, " + after.numberOfPackFiles +
+                    " pack files)");
+            return true;
+        } catch (IOException | ParseException e) {
+            failures.increment();
+            logger.error("Error running repository maintenance for " + repoType + " repository of site " + site, e);
+            return false;
+        }
+    }
+
+    protected int countBitmaps(Repository repository) {
+        File[] bitmaps = new File(((FileRepository) repository).getObjectDatabase().getDirectory(), "pack")
+                .listFiles((dir, name) -> name.endsWith(".bitmap"));
+        return bitmaps == null ? 0 : bitmaps.length;
+    }
+
+    /**
+     * Forget the statistics of a site (e.g. when the site is deleted)
+     *
+     * @param site site id
+     */
+    public void remove(String site) {
+        for (GitRepositories repoType : new GitRepositories[] { SANDBOX, PUBLISHED }) {
+            lastRuns.remove(site + ":" + repoType);
+        }
+    }
+
+    /**
+     * Get maintenance statistics: runs, skips, failures, time spent and the last run of every repository
+     * @return statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> toRet = new LinkedHashMap<String, Object>();
+        toRet.put("looseObjectsThreshold", looseObjectsThreshold);
+        toRet.put("packFilesThreshold", packFilesThreshold);
+        toRet.put("runs", runs.sum());
+        toRet.put("failures", failures.sum());
+        toRet.put("skippedBusy", skippedBusy.sum());
+        toRet.put("skippedBelowThreshold", skippedBelowThreshold.sum());
+        toRet.put("totalTimeMs", totalTimeMillis.sum());
+        toRet.put("lastRuns", new LinkedHashMap<String, Map<String, Object>>(lastRuns));
+        return toRet;
+    }
+}
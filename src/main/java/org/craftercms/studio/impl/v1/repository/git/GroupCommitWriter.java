@@ -0,0 +1,444 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import org.apache.commons.io.FileUtils;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.repository.RepositoryLockManager;
+import org.craftercms.studio.api.v1.repository.RepositoryLockManager.RepositoryLock;
+import org.craftercms.studio.impl.v1.repository.git.RepositoryRegistry.RepositoryLease;
+import org.craftercms.studio.impl.v1.util.Histogram;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.craftercms.studio.api.v1.constant.GitRepositories.SANDBOX;
+import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
+
+/**
+ * Group commit write path for the sandbox repository.
+ *
+ * Blobs are inserted into the object database by the calling thread. The first writer for a site opens a batch and
+ * becomes its leader. The batch is closed as soon as no other writer for the site is still inserting its blob (right
+ * away for a lone writer), when it is full, or when the configured window runs out, whichever comes first. The leader
+ * then writes all queued files as a single commit built in memory from HEAD with a {@link DirCache}, moves the
+ * branch, and finally brings the index and working tree in line with the new commit. Writers that show up while a
+ * batch is being committed queue up in the next one. Every caller blocks until its batch is committed and gets back
+ * the commit id containing its file.
+ *
+ * Files keep the mode they have in HEAD (e.g. executable), new files are regular files.
+ *
+ * Writes from different authors are never mixed in one commit, a batch is split in one commit per author (in arrival
+ * order) so the history of every file keeps the right author.
+ */
+public class GroupCommitWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitWriter.class);
+
+    protected GitContentRepositoryHelper helper;
+    protected RepositoryLockManager repositoryLockManager;
+    protected long windowMillis;
+    protected int maxBatchSize;
+
+    protected final Map<String, Batch> openBatches = new HashMap<String, Batch>();
+    /** Writers per site still inserting their blob, guarded by {@link #openBatches} */
+    protected final Map<String, Integer> insertingWriters = new HashMap<String, Integer>();
+
+    protected final Histogram batchSizeHistogram = new Histogram(1, 2, 5, 10, 20, 50, 100, 200, 500);
+    protected final Histogram latencyHistogram = new Histogram(5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000);
+
+    public GroupCommitWriter(GitContentRepositoryHelper helper, RepositoryLockManager repositoryLockManager,
+                             long windowMillis, int maxBatchSize) {
+        this.helper = helper;
+        this.repositoryLockManager = repositoryLockManager;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Write content to the sandbox repository of a site as part of a group commit
+     *
+     * @param site site id
+     * @param path path of the content
+     * @param content content bytes
+     * @param author author of the change
+     * @return commit id that contains the change, null if the content did not change or the write failed
+     */
+    public String write(String site, String path, byte[] content, PersonIdent author) {
+        long startTime = System.nanoTime();
+        // The blob is inserted before the repository lock is taken, keep the repository open until the write is done
+        try (RepositoryLease lease = helper.acquireRepository(site, SANDBOX)) {
+            if (lease == null) {
+                logger.error("Missing repository during write for site: " + site + " path: " + path);
+                return null;
+            }
+            return write(site, lease.getRepository(), path, content, author, startTime);
+        }
+    }
+
+    protected String write(String site, Repository repo, String path, byte[] content, PersonIdent author,
+                           long startTime) {
+        synchronized (openBatches) {
+            insertingWriters.merge(site, 1, Integer::sum);
+        }
+
+        WriteRequest request = null;
+        try (ObjectInserter inserter = repo.newObjectInserter()) {
+            ObjectId blobId = inserter.insert(Constants.OBJ_BLOB, content);
+            inserter.flush();
+            request = new WriteRequest(helper.getGitPath(path), path, content, blobId, author);
+        } catch (IOException e) {
+            logger.error("Failed to write content site: " + site + " path: " + path, e);
+        }
+
+        Batch batch;
+        boolean leader = false;
+        synchronized (openBatches) {
+            boolean othersInserting = insertingWriters.merge(site, -1, Integer::sum) > 0;
+            if (!othersInserting) {
+                insertingWriters.remove(site);
+            }
+            batch = openBatches.get(site);
+            if (request != null && batch == null) {
+                batch = new Batch();
+                openBatches.put(site, batch);
+                leader = true;
+            }
+            if (request != null) {
+                batch.requests.add(request);
+            }
+            // Nobody else is about to join, do not keep the leader waiting for the rest of the window
+            if (batch != null && (!othersInserting || batch.requests.size() >= maxBatchSize)) {
+                openBatches.remove(site);
+                batch.close();
+            }
+        }
+        if (request == null) {
+            return null;
+        }
+
+        if (leader) {
+            batch.awaitClose(windowMillis);
+            synchronized (openBatches) {
+                if (openBatches.get(site) == batch) {
+                    openBatches.remove(site);
+                }
+            }
+            commitBatch(site, repo, batch.requests);
+        }
+
+        String commitId = request.awaitResult();
+        latencyHistogram.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        return commitId;
+    }
+
+    protected void commitBatch(String site, Repository repo, List<WriteRequest> requests) {
+        batchSizeHistogram.record(requests.size());
+
+        // Keep arrival order, one commit per author
+        Map<String, List<WriteRequest>> byAuthor = new LinkedHashMap<String, List<WriteRequest>>();
+        for (WriteRequest request : requests) {
+            String authorKey = request.author.getName() + " <" + request.author.getEmailAddress() + ">";
+            byAuthor.computeIfAbsent(authorKey, k -> new ArrayList<WriteRequest>()).add(request);
+        }
+
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site, SANDBOX)) {
+            for (List<WriteRequest> authorRequests : byAuthor.values()) {
+                String commitId = null;
+                try {
+                    commitId = commit(repo, authorRequests);
+                } catch (IOException e) {
+                    logger.error("Error committing batch of " + authorRequests.size() + " files for site " + site,
+                            e);
+                }
+                for (WriteRequest request : authorRequests) {
+                    request.complete(request.changed ? commitId : null);
+                }
+            }
+        } finally {
+            // Never leave a caller waiting
+            for (WriteRequest request : requests) {
+                request.complete(null);
+            }
+        }
+    }
+
+    protected String commit(Repository repo, List<WriteRequest> requests) throws IOException {
+        // Last write wins when the same path is written more than once in the batch
+        Map<String, WriteRequest> lastWrites = new LinkedHashMap<String, WriteRequest>();
+        for (WriteRequest request : requests) {
+            lastWrites.remove(request.gitPath);
+            lastWrites.put(request.gitPath, request);
+        }
+
+        ObjectId headId = repo.resolve(Constants.HEAD);
+        try (ObjectInserter inserter = repo.newObjectInserter();
+             ObjectReader reader = inserter.newReader();
+             RevWalk revWalk = new RevWalk(reader)) {
+            RevCommit head = (headId == null) ? null : revWalk.parseCommit(headId);
+
+            // Build the new tree in memory from HEAD, leaving whatever else is staged in the index alone
+            DirCache tree = DirCache.newInCore();
+            DirCacheBuilder builder = tree.builder();
+            if (head != null) {
+                builder.addTree(new byte[0], DirCacheEntry.STAGE_0, reader, head.getTree());
+            }
+            builder.finish();
+
+            DirCacheEditor editor = tree.editor();
+            List<WriteRequest> changed = new ArrayList<WriteRequest>();
+            for (WriteRequest request : lastWrites.values()) {
+                DirCacheEntry existing = tree.getEntry(request.gitPath);
+                if (existing == null || !existing.getObjectId().equals(request.blobId)) {
+                    // Existing entries keep their mode
+                    editor.add(new BlobPathEdit(request.gitPath, request.blobId));
+                    changed.add(request);
+                }
+            }
+
+            if (!changed.isEmpty()) {
+                editor.finish();
+                ObjectId treeId = tree.writeTree(inserter);
+
+                PersonIdent author = changed.get(0).author;
+                CommitBuilder commitBuilder = new CommitBuilder();
+                commitBuilder.setTreeId(treeId);
+                if (head != null) {
+                    commitBuilder.setParentId(head);
+                }
+                commitBuilder.setAuthor(author);
+                commitBuilder.setCommitter(author);
+                commitBuilder.setMessage(buildCommitMessage(changed));
+                ObjectId commitId = inserter.insert(commitBuilder);
+                inserter.flush();
+
+                RefUpdate refUpdate = repo.updateRef(Constants.HEAD);
+                refUpdate.setNewObjectId(commitId);
+                refUpdate.setExpectedOldObjectId(headId == null ? ObjectId.zeroId() : headId);
+                refUpdate.setRefLogIdent(author);
+                refUpdate.setRefLogMessage("commit: group commit of " + changed.size() + " files", false);
+                RefUpdate.Result result = refUpdate.update(revWalk);
+                if (result != RefUpdate.Result.NEW && result != RefUpdate.Result.FAST_FORWARD) {
+                    throw new IOException("Failed to update HEAD to group commit " + commitId.getName() +
+                            ", result " + result);
+                }
+
+                for (WriteRequest request : changed) {
+                    request.changed = true;
+                }
+                // Requests for the same path that lost to a later write still made it into this commit
+                for (WriteRequest request : requests) {
+                    WriteRequest winner = lastWrites.get(request.gitPath);
+                    if (winner.changed) {
+                        request.changed = true;
+                    }
+                }
+
+                // HEAD has moved, the commit is in no matter what happens to the working tree
+                refreshWorkTree(repo, lastWrites.values());
+                return commitId.getName();
+            } else {
+                refreshWorkTree(repo, lastWrites.values());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Update the working tree and the index, retrying once. A failure is logged and not thrown, the working tree
+     * only lags behind HEAD and the next write of the same files, or a reset, brings it back in line.
+     */
+    protected void refreshWorkTree(Repository repo, Collection<WriteRequest> requests) {
+        try {
+            updateWorkTree(repo, requests);
+        } catch (IOException e) {
+            logger.warn("Error updating working tree after group commit, retrying: " + e.getMessage());
+            try {
+                updateWorkTree(repo, requests);
+            } catch (IOException e2) {
+                logger.error("Error updating working tree after group commit of " + requests.size() + " files",
+                        e2);
+            }
+        }
+    }
+
+    /**
+     * Write files to the working tree and record them in the index with their stat data, so the working tree, the
+     * index and HEAD agree and a later git status does not report the files as modified.
+     */
+    protected void updateWorkTree(Repository repo, Iterable<WriteRequest> requests) throws IOException {
+        DirCache index = repo.lockDirCache();
+        try {
+            DirCacheEditor editor = index.editor();
+            for (WriteRequest request : requests) {
+                File file = new File(repo.getWorkTree(), request.gitPath);
+                FileUtils.writeByteArrayToFile(file, request.content);
+                final long length = file.length();
+                final long lastModified = file.lastModified();
+                editor.add(new BlobPathEdit(request.gitPath, request.blobId) {
+                    @Override
+                    public void apply(DirCacheEntry ent) {
+                        super.apply(ent);
+                        ent.setLength(length);
+                        ent.setLastModified(lastModified);
+                    }
+                });
+            }
+            editor.commit();
+        } finally {
+            index.unlock();
+        }
+    }
+
+    protected String buildCommitMessage(List<WriteRequest> changed) {
+        if (changed.size() == 1) {
+            return "Wrote content " + changed.get(0).path;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("Wrote content (").append(changed.size()).append(" files)\n");
+        for (WriteRequest request : changed) {
+            sb.append("\nWrote content ").append(request.path);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get batch size and latency (milliseconds from the call until the caller gets its commit id) histograms
+     * @return statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> toRet = new LinkedHashMap<String, Object>();
+        toRet.put("windowMs", windowMillis);
+        toRet.put("maxBatchSize", maxBatchSize);
+        toRet.put("batchSize", batchSizeHistogram.toMap());
+        toRet.put("latencyMs", latencyHistogram.toMap());
+        return toRet;
+    }
+
+    protected static class BlobPathEdit extends DirCacheEditor.PathEdit {
+
+        private final ObjectId blobId;
+
+        BlobPathEdit(String path, ObjectId blobId) {
+            super(path);
+            this.blobId = blobId;
+        }
+
+        @Override
+        public void apply(DirCacheEntry ent) {
+            // The editor hands over the existing entry for a path already in the tree, and a blank one otherwise
+            if (ent.getRawMode() == FileMode.MISSING.getBits()) {
+                ent.setFileMode(FileMode.REGULAR_FILE);
+            }
+            ent.setObjectId(blobId);
+        }
+    }
+
+    protected static class Batch {
+
+        final List<WriteRequest> requests = new ArrayList<WriteRequest>();
+        private boolean closed = false;
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        synchronized void awaitClose(long windowMillis) {
+            long deadline = System.currentTimeMillis() + windowMillis;
+            long remaining = windowMillis;
+            while (!closed && remaining > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+    }
+
+    protected static class WriteRequest {
+
+        final String gitPath;
+        final String path;
+        final byte[] content;
+        final ObjectId blobId;
+        final PersonIdent author;
+        volatile boolean changed = false;
+
+        private boolean done = false;
+        private String result;
+
+        WriteRequest(String gitPath, String path, byte[] content, ObjectId blobId, PersonIdent author) {
+            this.gitPath = gitPath;
+            this.path = path.startsWith(FILE_SEPARATOR) ? path : FILE_SEPARATOR + path;
+            this.content = content;
+            this.blobId = blobId;
+            this.author = author;
+        }
+
+        synchronized void complete(String commitId) {
+            if (!done) {
+                done = true;
+                result = commitId;
+                notifyAll();
+            }
+        }
+
+        synchronized String awaitResult() {
+            boolean interrupted = false;
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return result;
+        }
+    }
+}
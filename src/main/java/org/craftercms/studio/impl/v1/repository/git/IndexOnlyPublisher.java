@@ -0,0 +1,377 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import org.apache.commons.lang3.StringUtils;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.service.deployment.DeploymentException;
+import org.craftercms.studio.api.v1.to.DeploymentItemTO;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.lib.TagBuilder;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_SANDBOX_BRANCH;
+
+/**
+ * Publishing engine that never touches the working directory of the published repository.
+ *
+ * The tree of the environment branch is loaded in memory, the deployment items are applied to it straight from the
+ * sandbox commits (fetched into the published repository), and the result is written as a single commit with an
+ * {@link ObjectInserter}. The environment branch and the publish tag are then moved with ref updates. Commit message,
+ * tag name and the handling of moves and deletes (including clean up of folders left with only a .keep file) are the
+ * same as in the working tree engine.
+ */
+public class IndexOnlyPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexOnlyPublisher.class);
+
+    private static final String KEEP_FILE = ".keep";
+
+    protected GitContentRepositoryHelper helper;
+    protected StudioConfiguration studioConfiguration;
+    protected String commitId = StringUtils.EMPTY;
+
+    public IndexOnlyPublisher(GitContentRepositoryHelper helper, StudioConfiguration studioConfiguration) {
+        this.helper = helper;
+        this.studioConfiguration = studioConfiguration;
+    }
+
+    /**
+     * Publish items to an environment branch of the published repository. Caller must hold the write lock of the
+     * published repository.
+     *
+     * @param site site id
+     * @param repo published repository
+     * @param deploymentItems items to publish
+     * @param environment environment (branch name)
+     * @param author user that triggered the publish
+     * @param comment publish note
+     * @throws DeploymentException if publishing fails
+     * @throws IOException if the repository can not be read or written
+     * @throws GitAPIException if fetching from sandbox fails
+     */
+    public void publish(String site, Repository repo, List<DeploymentItemTO> deploymentItems, String environment,
+                        String author, String comment) throws DeploymentException, IOException, GitAPIException {
+        String sandboxBranch = studioConfiguration.getProperty(REPO_SANDBOX_BRANCH);
+
+        // fetch "origin/master", this brings in all the objects of the commits being published
+        logger.debug("Fetch from sandbox for site " + site);
+        try (Git git = new Git(repo)) {
+            git.fetch().call();
+        }
+
+        Ref remoteRef = repo.exactRef(Constants.R_REMOTES + Constants.DEFAULT_REMOTE_NAME + "/" + sandboxBranch);
+        if (remoteRef == null) {
+            throw new DeploymentException("Failed to find sandbox branch " + sandboxBranch + " in published " +
+                    "repository for site " + site);
+        }
+
+        try (ObjectInserter inserter = repo.newObjectInserter();
+             ObjectReader reader = inserter.newReader();
+             RevWalk revWalk = new RevWalk(reader)) {
+
+            // The branches below are moved without touching index and working tree, make sure HEAD does not point to
+            // any of them so the working directory keeps matching HEAD
+            detachHead(repo, sandboxBranch, environment);
+
+            updateSandboxBranch(repo, revWalk, sandboxBranch, remoteRef.getObjectId());
+
+            Ref environmentRef = repo.exactRef(Constants.R_HEADS + environment);
+            if (environmentRef == null) {
+                // New environment, same as the working tree engine: branch from master and nothing else to do
+                logger.info("Not able to find branch " + environment + " for site " + site +
+                        ". Creating new branch");
+                createEnvironmentBranch(repo, revWalk, sandboxBranch, environment);
+                return;
+            }
+
+            RevCommit environmentHead = revWalk.parseCommit(environmentRef.getObjectId());
+            TreeMap<String, TreeEntry> tree = readTree(reader, environmentHead.getTree());
+
+            Set<String> deployedCommits = new HashSet<String>();
+            Set<String> deployedPackages = new HashSet<String>();
+            logger.debug("Apply deployed files started.");
+            for (DeploymentItemTO deploymentItem : deploymentItems) {
+                commitId = deploymentItem.getCommitId();
+                String path = helper.getGitPath(deploymentItem.getPath());
+                logger.debug("Applying file " + path + " from commit id " + commitId + " for site " + site);
+
+                ObjectId objCommitId = repo.resolve(commitId);
+                if (objCommitId == null) {
+                    throw new DeploymentException("Unable to resolve commit " + commitId + " for site " + site +
+                            " to environment " + environment);
+                }
+                RevCommit itemCommit = revWalk.parseCommit(objCommitId);
+                checkoutPath(reader, itemCommit.getTree(), path, tree);
+
+                if (deploymentItem.isMove()) {
+                    String oldPath = helper.getGitPath(deploymentItem.getOldPath());
+                    removePath(tree, oldPath);
+                    cleanUpMoveFolders(tree, oldPath);
+                }
+
+                if (deploymentItem.isDelete()) {
+                    removePath(tree, path);
+                    deleteParentFolder(tree, getParent(path));
+                }
+                deployedCommits.add(commitId);
+                String packageId = deploymentItem.getPackageId();
+                if (StringUtils.isNotEmpty(packageId)) {
+                    deployedPackages.add(packageId);
+                }
+            }
+            logger.debug("Apply deployed files completed.");
+
+            ObjectId treeId = writeTree(tree, inserter);
+
+            PersonIdent authorIdent = helper.getAuthorIdent(author);
+            String commitMessage = helper.buildPublishCommitMessage(author, comment, deployedCommits,
+                    deployedPackages);
+            CommitBuilder commitBuilder = new CommitBuilder();
+            commitBuilder.setTreeId(treeId);
+            commitBuilder.setParentId(environmentHead);
+            commitBuilder.setAuthor(authorIdent);
+            commitBuilder.setCommitter(new PersonIdent(repo));
+            commitBuilder.setMessage(commitMessage);
+            ObjectId publishCommitId = inserter.insert(commitBuilder);
+            inserter.flush();
+
+            // tag
+            RevCommit publishCommit = revWalk.parseCommit(publishCommitId);
+            String tagName = helper.buildPublishTagName(publishCommit.getCommitTime());
+            TagBuilder tagBuilder = new TagBuilder();
+            tagBuilder.setTag(tagName);
+            tagBuilder.setObjectId(publishCommit);
+            tagBuilder.setTagger(helper.getAuthorIdent(author));
+            tagBuilder.setMessage(commitMessage);
+            ObjectId tagId = inserter.insert(tagBuilder);
+            inserter.flush();
+
+            // move environment branch, equivalent of merging the in-progress branch (always a fast forward)
+            RefUpdate branchUpdate = repo.updateRef(Constants.R_HEADS + environment);
+            branchUpdate.setNewObjectId(publishCommitId);
+            branchUpdate.setExpectedOldObjectId(environmentHead);
+            branchUpdate.setRefLogMessage("publish: " + deploymentItems.size() + " items", false);
+            checkResult(branchUpdate.update(revWalk), "update branch " + environment, site, environment);
+
+            RefUpdate tagUpdate = repo.updateRef(Constants.R_TAGS + tagName);
+            tagUpdate.setNewObjectId(tagId);
+            tagUpdate.setExpectedOldObjectId(ObjectId.zeroId());
+            checkResult(tagUpdate.update(revWalk), "create tag " + tagName, site, environment);
+
+            logger.debug("Published " + deploymentItems.size() + " items to " + environment + " for site " + site +
+                    " in commit " + publishCommitId.getName());
+        }
+    }
+
+    protected void detachHead(Repository repo, String sandboxBranch, String environment) throws IOException {
+        String fullBranch = repo.getFullBranch();
+        if (StringUtils.equals(fullBranch, Constants.R_HEADS + sandboxBranch) ||
+                StringUtils.startsWith(fullBranch, Constants.R_HEADS + environment)) {
+            ObjectId head = repo.resolve(Constants.HEAD);
+            if (head != null) {
+                RefUpdate headUpdate = repo.updateRef(Constants.HEAD, true);
+                headUpdate.setNewObjectId(head);
+                headUpdate.forceUpdate();
+            }
+        }
+    }
+
+    protected void updateSandboxBranch(Repository repo, RevWalk revWalk, String sandboxBranch, ObjectId remoteId)
+            throws IOException {
+        // Equivalent of pulling from sandbox with "theirs" strategy: published master follows the sandbox branch
+        RefUpdate update = repo.updateRef(Constants.R_HEADS + sandboxBranch);
+        update.setNewObjectId(remoteId);
+        update.setRefLogMessage("publish: sync with " + Constants.DEFAULT_REMOTE_NAME + "/" + sandboxBranch, false);
+        RefUpdate.Result result = update.update(revWalk);
+        if (result == RefUpdate.Result.REJECTED) {
+            update.forceUpdate();
+        }
+    }
+
+    protected void createEnvironmentBranch(Repository repo, RevWalk revWalk, String sandboxBranch,
+                                           String environment) throws IOException {
+        RefUpdate update = repo.updateRef(Constants.R_HEADS + environment);
+        update.setNewObjectId(repo.resolve(Constants.R_HEADS + sandboxBranch));
+        update.setExpectedOldObjectId(ObjectId.zeroId());
+        update.setRefLogMessage("branch: Created from " + sandboxBranch, false);
+        update.update(revWalk);
+
+        // Track master like the branch created by the working tree engine
+        StoredConfig config = repo.getConfig();
+        config.setString(ConfigConstants.CONFIG_BRANCH_SECTION, environment, ConfigConstants.CONFIG_KEY_REMOTE, ".");
+        config.setString(ConfigConstants.CONFIG_BRANCH_SECTION, environment, ConfigConstants.CONFIG_KEY_MERGE,
+                Constants.R_HEADS + sandboxBranch);
+        config.save();
+    }
+
+    protected TreeMap<String, TreeEntry> readTree(ObjectReader reader, RevTree revTree) throws IOException {
+        TreeMap<String, TreeEntry> tree = new TreeMap<String, TreeEntry>();
+        try (TreeWalk tw = new TreeWalk(reader)) {
+            tw.addTree(revTree);
+            tw.setRecursive(true);
+            while (tw.next()) {
+                tree.put(tw.getPathString(), new TreeEntry(tw.getObjectId(0), tw.getRawMode(0)));
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Equivalent of "git checkout commit -- path": copies the file, or every file under the folder, from the commit
+     * tree. Files that do not exist in the commit are left alone.
+     */
+    protected void checkoutPath(ObjectReader reader, RevTree commitTree, String path,
+                                TreeMap<String, TreeEntry> tree) throws IOException {
+        try (TreeWalk tw = new TreeWalk(reader)) {
+            tw.addTree(commitTree);
+            tw.setRecursive(true);
+            tw.setFilter(PathFilter.create(path));
+            while (tw.next()) {
+                tree.put(tw.getPathString(), new TreeEntry(tw.getObjectId(0), tw.getRawMode(0)));
+            }
+        }
+    }
+
+    /**
+     * Equivalent of "git rm path": removes the file or every file under the folder
+     */
+    protected void removePath(TreeMap<String, TreeEntry> tree, String path) {
+        tree.remove(path);
+        getFolderEntries(tree, path).clear();
+    }
+
+    /**
+     * Remove the .keep file of a folder when it is the only thing left in it
+     */
+    protected void deleteParentFolder(TreeMap<String, TreeEntry> tree, String folder) {
+        if (StringUtils.isEmpty(folder)) {
+            return;
+        }
+        Set<String> children = new HashSet<String>();
+        int prefixLength = folder.length() + 1;
+        for (String childPath : getFolderEntries(tree, folder).keySet()) {
+            int end = childPath.indexOf('/', prefixLength);
+            children.add(end < 0 ? childPath.substring(prefixLength) : childPath.substring(prefixLength, end));
+            if (children.size() > 1) {
+                return;
+            }
+        }
+        if (children.size() == 1) {
+            tree.remove(folder + "/" + KEEP_FILE);
+        }
+    }
+
+    protected void cleanUpMoveFolders(TreeMap<String, TreeEntry> tree, String path) {
+        String parent = getParent(path);
+        while (StringUtils.isNotEmpty(parent)) {
+            deleteParentFolder(tree, parent);
+            if (!getFolderEntries(tree, parent).isEmpty()) {
+                break;
+            }
+            parent = getParent(parent);
+        }
+    }
+
+    protected SortedMap<String, TreeEntry> getFolderEntries(TreeMap<String, TreeEntry> tree, String folder) {
+        // '0' is the character right after '/', so the range covers exactly the paths under the folder
+        return tree.subMap(folder + "/", folder + "0");
+    }
+
+    protected String getParent(String path) {
+        int idx = path.lastIndexOf('/');
+        return idx < 0 ? StringUtils.EMPTY : path.substring(0, idx);
+    }
+
+    protected ObjectId writeTree(TreeMap<String, TreeEntry> tree, ObjectInserter inserter) throws IOException {
+        DirCache dirCache = DirCache.newInCore();
+        DirCacheBuilder builder = dirCache.builder();
+        for (Map.Entry<String, TreeEntry> entry : tree.entrySet()) {
+            DirCacheEntry dirCacheEntry = new DirCacheEntry(entry.getKey());
+            dirCacheEntry.setFileMode(FileMode.fromBits(entry.getValue().rawMode));
+            dirCacheEntry.setObjectId(entry.getValue().objectId);
+            builder.add(dirCacheEntry);
+        }
+        builder.finish();
+        return dirCache.writeTree(inserter);
+    }
+
+    /**
+     * @return commit of the item being published, or of the last item published, to tell which one failed
+     */
+    public String getCommitId() {
+        return commitId;
+    }
+
+    protected void checkResult(RefUpdate.Result result, String operation, String site, String environment)
+            throws DeploymentException {
+        switch (result) {
+            case NEW:
+            case FAST_FORWARD:
+            case FORCED:
+            case NO_CHANGE:
+                break;
+            default:
+                throw new DeploymentException("Failed to " + operation + " in published repository for site " +
+                        site + " to environment " + environment + ", result " + result + " [commit ID = " +
+                        commitId + "]");
+        }
+    }
+
+    protected static class TreeEntry {
+
+        final ObjectId objectId;
+        final int rawMode;
+
+        TreeEntry(ObjectId objectId, int rawMode) {
+            this.objectId = objectId.copy();
+            this.rawMode = rawMode;
+        }
+    }
+}
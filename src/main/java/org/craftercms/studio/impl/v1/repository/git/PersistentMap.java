@@ -0,0 +1,289 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Immutable map from string keys to values. Changes are made through an {@link Editor} and produce a new map that
+ * shares every untouched part with the original, so changing a few keys of a large map only copies the handful of
+ * nodes on the way to those keys instead of the whole map.
+ *
+ * It is a hash array mapped trie: each node has 32 slots indexed by 5 bits of the key hash, and keys with the same
+ * hash are kept together in a collision slot.
+ *
+ * @param <V> value type
+ */
+final class PersistentMap<V> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final PersistentMap<Object> EMPTY = new PersistentMap<Object>(null, 0);
+
+    private final Object[] root;
+    private final int size;
+
+    private PersistentMap(Object[] root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentMap<V> empty() {
+        return (PersistentMap<V>) EMPTY;
+    }
+
+    V get(String key) {
+        return find(root, key);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Start a set of changes on top of this map, the map itself is never modified
+     * @return editor
+     */
+    Editor<V> edit() {
+        return new Editor<V>(root, size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V find(Object[] node, String key) {
+        int hash = key.hashCode();
+        int shift = 0;
+        while (node != null) {
+            Object slot = node[index(hash, shift)];
+            if (slot instanceof Object[]) {
+                node = (Object[]) slot;
+                shift += BITS;
+            } else if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.key.equals(key) ? (V) leaf.value : null;
+            } else if (slot instanceof Collision) {
+                Collision collision = (Collision) slot;
+                int i = collision.indexOf(key);
+                return i < 0 ? null : (V) collision.leaves[i].value;
+            } else {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static int index(int hash, int shift) {
+        return (hash >>> shift) & MASK;
+    }
+
+    /**
+     * Collects changes to a map. Each node is copied the first time the editor changes it and the copy is then
+     * changed in place, so a batch of changes under the same folder copies the shared nodes only once. The editor
+     * is meant to be used by a single thread.
+     *
+     * @param <V> value type
+     */
+    static final class Editor<V> {
+
+        private final Set<Object[]> owned = Collections.newSetFromMap(new IdentityHashMap<Object[], Boolean>());
+        private Object[] root;
+        private int size;
+
+        private Editor(Object[] root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        V get(String key) {
+            return find(root, key);
+        }
+
+        void put(String key, V value) {
+            root = root == null ? newNode() : own(root);
+            put(root, 0, key.hashCode(), key, value);
+        }
+
+        void remove(String key) {
+            if (find(root, key) == null) {
+                return;
+            }
+            root = own(root);
+            remove(root, 0, key.hashCode(), key);
+        }
+
+        /**
+         * Get the map with all the changes made so far. Later changes through this editor do not affect it.
+         * @return map
+         */
+        PersistentMap<V> toMap() {
+            owned.clear();
+            return new PersistentMap<V>(root, size);
+        }
+
+        private void put(Object[] node, int shift, int hash, String key, V value) {
+            int i = index(hash, shift);
+            Object slot = node[i];
+            if (slot == null) {
+                node[i] = new Leaf(hash, key, value);
+                size++;
+            } else if (slot instanceof Object[]) {
+                Object[] child = own((Object[]) slot);
+                node[i] = child;
+                put(child, shift + BITS, hash, key, value);
+            } else if (slot instanceof Leaf && ((Leaf) slot).key.equals(key)) {
+                node[i] = new Leaf(hash, key, value);
+            } else if (slot instanceof Collision && ((Collision) slot).hash == hash) {
+                Collision collision = (Collision) slot;
+                int j = collision.indexOf(key);
+                if (j < 0) {
+                    size++;
+                }
+                node[i] = collision.with(j, new Leaf(hash, key, value));
+            } else {
+                node[i] = merge(slot, new Leaf(hash, key, value), shift + BITS);
+                size++;
+            }
+        }
+
+        /**
+         * Build the subtree holding an existing slot and a new leaf with a different key. Hashes that differ always
+         * end up in different slots by the last level, since the last level uses the two highest bits.
+         */
+        private Object merge(Object existing, Leaf leaf, int shift) {
+            int existingHash = existing instanceof Leaf ? ((Leaf) existing).hash : ((Collision) existing).hash;
+            if (existingHash == leaf.hash) {
+                return new Collision(leaf.hash, new Leaf[] { (Leaf) existing, leaf });
+            }
+            Object[] node = newNode();
+            int existingIndex = index(existingHash, shift);
+            int leafIndex = index(leaf.hash, shift);
+            if (existingIndex == leafIndex) {
+                node[leafIndex] = merge(existing, leaf, shift + BITS);
+            } else {
+                node[existingIndex] = existing;
+                node[leafIndex] = leaf;
+            }
+            return node;
+        }
+
+        private void remove(Object[] node, int shift, int hash, String key) {
+            int i = index(hash, shift);
+            Object slot = node[i];
+            if (slot instanceof Object[]) {
+                Object[] child = own((Object[]) slot);
+                remove(child, shift + BITS, hash, key);
+                node[i] = isEmpty(child) ? null : child;
+            } else if (slot instanceof Leaf) {
+                node[i] = null;
+                size--;
+            } else if (slot instanceof Collision) {
+                Collision collision = (Collision) slot;
+                node[i] = collision.without(collision.indexOf(key));
+                size--;
+            }
+        }
+
+        private Object[] newNode() {
+            Object[] node = new Object[WIDTH];
+            owned.add(node);
+            return node;
+        }
+
+        private Object[] own(Object[] node) {
+            if (owned.contains(node)) {
+                return node;
+            }
+            Object[] copy = node.clone();
+            owned.add(copy);
+            return copy;
+        }
+
+        private static boolean isEmpty(Object[] node) {
+            for (Object slot : node) {
+                if (slot != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Leaf {
+
+        final int hash;
+        final String key;
+        final Object value;
+
+        Leaf(int hash, String key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Keys with the same hash, never fewer than two
+     */
+    private static final class Collision {
+
+        final int hash;
+        final Leaf[] leaves;
+
+        Collision(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        int indexOf(String key) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        Collision with(int i, Leaf leaf) {
+            Leaf[] copy;
+            if (i < 0) {
+                copy = new Leaf[leaves.length + 1];
+                System.arraycopy(leaves, 0, copy, 0, leaves.length);
+                copy[leaves.length] = leaf;
+            } else {
+                copy = leaves.clone();
+                copy[i] = leaf;
+            }
+            return new Collision(hash, copy);
+        }
+
+        Object without(int i) {
+            if (leaves.length == 2) {
+                return leaves[1 - i];
+            }
+            Leaf[] copy = new Leaf[leaves.length - 1];
+            System.arraycopy(leaves, 0, copy, 0, i);
+            System.arraycopy(leaves, i + 1, copy, i, copy.length - i);
+            return new Collision(hash, copy);
+        }
+    }
+}
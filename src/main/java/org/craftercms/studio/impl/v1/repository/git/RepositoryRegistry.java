@@ -0,0 +1,457 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import org.craftercms.studio.api.v1.constant.GitRepositories;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.repository.RepositoryLockManager;
+import org.craftercms.studio.api.v1.repository.RepositoryLockManager.RepositoryLock;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static org.craftercms.studio.api.v1.constant.GitRepositories.PUBLISHED;
+import static org.craftercms.studio.api.v1.constant.GitRepositories.SANDBOX;
+
+/**
+ * Registry of open site repositories (sandbox and published).
+ *
+ * Repositories are opened lazily on first access, concurrent requests for a repository that is not open yet wait for
+ * a single open. Sites that have not been used for longer than the idle timeout, or the least recently used sites when
+ * more than the max number of sites are open, are closed to release pack file handles and caches. Pinned sites are
+ * never closed.
+ *
+ * A site is only closed if both its repository write locks can be taken without waiting and no lease on its
+ * repositories is held, so a site is never closed under an operation that holds its repository lock, nor under a
+ * stream, iterator or read that keeps using a repository without holding the lock.
+ */
+public class RepositoryRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(RepositoryRegistry.class);
+
+    private static final long SWEEP_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Opens a repository on a miss
+     */
+    public interface RepositoryOpener {
+
+        /**
+         * @param site site id
+         * @param repoType repository type
+         * @return opened repository, null if it does not exist
+         * @throws IOException if the repository exists but can not be opened
+         */
+        Repository open(String site, GitRepositories repoType) throws IOException;
+    }
+
+    protected final Map<String, SiteRepositories> sites = new ConcurrentHashMap<String, SiteRepositories>();
+
+    protected RepositoryLockManager repositoryLockManager;
+    protected int maxOpenSites = 0;
+    protected long idleTimeoutMillis = 0;
+    protected Set<String> pinnedSites = Collections.emptySet();
+    protected final List<Consumer<String>> closeListeners = new CopyOnWriteArrayList<Consumer<String>>();
+
+    protected final AtomicLong lastSweep = new AtomicLong(System.currentTimeMillis());
+    protected final LongAdder hits = new LongAdder();
+    protected final LongAdder opens = new LongAdder();
+    protected final LongAdder closes = new LongAdder();
+    protected final LongAdder evictionsSkipped = new LongAdder();
+
+    public RepositoryRegistry(RepositoryLockManager repositoryLockManager) {
+        this.repositoryLockManager = repositoryLockManager;
+    }
+
+    /**
+     * Get a repository, opening it if needed
+     *
+     * @param site site id
+     * @param repoType repository type (sandbox or published)
+     * @param opener used to open the repository if it is not open yet
+     * @return repository, null if it does not exist or can not be opened
+     */
+    public Repository get(String site, GitRepositories repoType, RepositoryOpener opener) {
+        RepositoryLease lease = lookup(site, repoType, opener, false);
+        return lease == null ? null : lease.getRepository();
+    }
+
+    /**
+     * Get a repository, opening it if needed, and keep the site open until the lease is closed. Use it when the
+     * repository is used without holding its repository lock, or after the lock is released.
+     *
+     * @param site site id
+     * @param repoType repository type (sandbox or published)
+     * @param opener used to open the repository if it is not open yet
+     * @return lease on the repository, null if it does not exist or can not be opened
+     */
+    public RepositoryLease acquire(String site, GitRepositories repoType, RepositoryOpener opener) {
+        return lookup(site, repoType, opener, true);
+    }
+
+    protected RepositoryLease lookup(String site, GitRepositories repoType, RepositoryOpener opener,
+                                     boolean retain) {
+        SiteRepositories siteRepositories;
+        Repository repository = null;
+        boolean opened = false;
+        while (true) {
+            siteRepositories = sites.computeIfAbsent(site, k -> new SiteRepositories());
+            synchronized (siteRepositories) {
+                if (siteRepositories.closed) {
+                    // Evicted between the lookup and the lock, try again with a fresh entry
+                    continue;
+                }
+                repository = siteRepositories.get(repoType);
+                if (repository != null) {
+                    hits.increment();
+                } else {
+                    try {
+                        repository = opener.open(site, repoType);
+                    } catch (IOException e) {
+                        logger.error("Failed to open " + repoType + " repository for site " + site, e);
+                    }
+                    if (repository != null) {
+                        siteRepositories.set(repoType, repository);
+                        opens.increment();
+                        opened = true;
+                        logger.debug("Opened " + repoType + " repository for site " + site);
+                    } else if (siteRepositories.sandbox == null && siteRepositories.published == null) {
+                        // Do not keep entries for sites that do not exist
+                        siteRepositories.closed = true;
+                        sites.remove(site, siteRepositories);
+                    }
+                }
+                if (repository != null && retain) {
+                    siteRepositories.users++;
+                }
+                siteRepositories.lastAccess = System.currentTimeMillis();
+            }
+            break;
+        }
+
+        if (opened || shouldSweep()) {
+            evict(site);
+        }
+        if (repository == null) {
+            return null;
+        }
+        return new RepositoryLease(repository, retain ? siteRepositories : null);
+    }
+
+    /**
+     * Register a repository that was just created, replacing (and closing) any open instance
+     *
+     * @param site site id
+     * @param repoType repository type
+     * @param repository repository
+     */
+    public void put(String site, GitRepositories repoType, Repository repository) {
+        while (true) {
+            SiteRepositories siteRepositories = sites.computeIfAbsent(site, k -> new SiteRepositories());
+            synchronized (siteRepositories) {
+                if (siteRepositories.closed) {
+                    continue;
+                }
+                Repository previous = siteRepositories.get(repoType);
+                if (previous != null && previous != repository) {
+                    previous.close();
+                    closes.increment();
+                }
+                siteRepositories.set(repoType, repository);
+                siteRepositories.lastAccess = System.currentTimeMillis();
+                opens.increment();
+            }
+            break;
+        }
+        evict(site);
+    }
+
+    /**
+     * Close and forget the repositories of a site (e.g. when the site is deleted)
+     *
+     * @param site site id
+     */
+    public void remove(String site) {
+        SiteRepositories siteRepositories = sites.remove(site);
+        if (siteRepositories != null) {
+            synchronized (siteRepositories) {
+                close(site, siteRepositories);
+            }
+        }
+        notifyClosed(site);
+    }
+
+    /**
+     * Add a listener called with the site id when the repositories of a site are closed (evicted or removed), to
+     * drop anything cached for them. Listeners of an evicted site are called while both its repository write locks
+     * are held.
+     *
+     * @param listener listener
+     */
+    public void addCloseListener(Consumer<String> listener) {
+        closeListeners.add(listener);
+    }
+
+    /**
+     * Close every open repository
+     */
+    public void closeAll() {
+        for (String site : new ArrayList<String>(sites.keySet())) {
+            remove(site);
+        }
+    }
+
+    /**
+     * @return true if the repositories of the site are open
+     */
+    public boolean isOpen(String site) {
+        return sites.containsKey(site);
+    }
+
+    protected boolean shouldSweep() {
+        long now = System.currentTimeMillis();
+        long last = lastSweep.get();
+        return idleTimeoutMillis > 0 && now - last > SWEEP_INTERVAL_MILLIS && lastSweep.compareAndSet(last, now);
+    }
+
+    /**
+     * Close idle sites and, if there are still more open sites than allowed, the least recently used ones
+     *
+     * @param currentSite site being used by the caller, never evicted (the caller may hold its locks)
+     */
+    protected void evict(String currentSite) {
+        if (maxOpenSites <= 0 && idleTimeoutMillis <= 0) {
+            return;
+        }
+
+        List<Map.Entry<String, SiteRepositories>> candidates = new ArrayList<Map.Entry<String, SiteRepositories>>();
+        for (Map.Entry<String, SiteRepositories> entry : sites.entrySet()) {
+            if (!pinnedSites.contains(entry.getKey()) && !entry.getKey().equals(currentSite)) {
+                candidates.add(entry);
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+
+        long now = System.currentTimeMillis();
+        int openSites = sites.size();
+        for (Map.Entry<String, SiteRepositories> candidate : candidates) {
+            boolean idle = idleTimeoutMillis > 0 && now - candidate.getValue().lastAccess > idleTimeoutMillis;
+            boolean overLimit = maxOpenSites > 0 && openSites > maxOpenSites;
+            if (!idle && !overLimit) {
+                // Candidates are sorted by last access, none of the remaining ones can be idle
+                break;
+            }
+            if (tryEvict(candidate.getKey(), candidate.getValue())) {
+                openSites--;
+            }
+        }
+    }
+
+    protected boolean tryEvict(String site, SiteRepositories siteRepositories) {
+        RepositoryLock sandboxLock = repositoryLockManager.tryAcquireWrite(site, SANDBOX);
+        if (sandboxLock == null) {
+            evictionsSkipped.increment();
+            return false;
+        }
+        try {
+            RepositoryLock publishedLock = repositoryLockManager.tryAcquireWrite(site, PUBLISHED);
+            if (publishedLock == null) {
+                evictionsSkipped.increment();
+                return false;
+            }
+            try {
+                synchronized (siteRepositories) {
+                    if (siteRepositories.users > 0) {
+                        evictionsSkipped.increment();
+                        return false;
+                    }
+                    if (siteRepositories.closed || !sites.remove(site, siteRepositories)) {
+                        return false;
+                    }
+                    close(site, siteRepositories);
+                    logger.debug("Closed repositories for site " + site + " (last access " +
+                            (System.currentTimeMillis() - siteRepositories.lastAccess) + " ms ago)");
+                }
+                notifyClosed(site);
+                return true;
+            } finally {
+                publishedLock.release();
+            }
+        } finally {
+            sandboxLock.release();
+        }
+    }
+
+    protected void close(String site, SiteRepositories siteRepositories) {
+        siteRepositories.closed = true;
+        if (siteRepositories.sandbox != null) {
+            siteRepositories.sandbox.close();
+            siteRepositories.sandbox = null;
+            closes.increment();
+        }
+        if (siteRepositories.published != null) {
+            siteRepositories.published.close();
+            siteRepositories.published = null;
+            closes.increment();
+        }
+    }
+
+    protected void notifyClosed(String site) {
+        for (Consumer<String> listener : closeListeners) {
+            try {
+                listener.accept(site);
+            } catch (RuntimeException e) {
+                logger.error("Error notifying that the repositories of site " + site + " were closed", e);
+            }
+        }
+    }
+
+    /**
+     * Get registry statistics: open sites, hits, opens, closes and evictions skipped because the site was in use
+     * @return statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> toRet = new LinkedHashMap<String, Object>();
+        toRet.put("openSites", sites.size());
+        toRet.put("maxOpenSites", maxOpenSites);
+        toRet.put("idleTimeoutMs", idleTimeoutMillis);
+        toRet.put("pinnedSites", pinnedSites);
+        toRet.put("hits", hits.sum());
+        toRet.put("opens", opens.sum());
+        toRet.put("closes", closes.sum());
+        toRet.put("evictionsSkipped", evictionsSkipped.sum());
+        return toRet;
+    }
+
+    public int getMaxOpenSites() {
+        return maxOpenSites;
+    }
+
+    public void setMaxOpenSites(int maxOpenSites) {
+        this.maxOpenSites = maxOpenSites;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public Set<String> getPinnedSites() {
+        return pinnedSites;
+    }
+
+    public void setPinnedSites(Set<String> pinnedSites) {
+        this.pinnedSites = Collections.unmodifiableSet(new HashSet<String>(pinnedSites));
+    }
+
+    protected static class SiteRepositories {
+
+        Repository sandbox;
+        Repository published;
+        volatile long lastAccess = System.currentTimeMillis();
+        boolean closed = false;
+        int users = 0;
+
+        Repository get(GitRepositories repoType) {
+            return repoType == PUBLISHED ? published : sandbox;
+        }
+
+        void set(GitRepositories repoType, Repository repository) {
+            if (repoType == PUBLISHED) {
+                published = repository;
+            } else {
+                sandbox = repository;
+            }
+        }
+    }
+
+    /**
+     * Use of a repository that keeps its site open until closed. Closing it more than once has no effect.
+     */
+    public static class RepositoryLease implements AutoCloseable {
+
+        private final Repository repository;
+        private final SiteRepositories siteRepositories;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        protected RepositoryLease(Repository repository, SiteRepositories siteRepositories) {
+            this.repository = repository;
+            this.siteRepositories = siteRepositories;
+        }
+
+        /**
+         * Lease on a repository that is never evicted (e.g. the global repository), closing it does nothing
+         */
+        public static RepositoryLease untracked(Repository repository) {
+            return new RepositoryLease(repository, null);
+        }
+
+        public Repository getRepository() {
+            return repository;
+        }
+
+        /**
+         * Hand the lease over to a stream read from the repository, the lease is closed when the stream is closed
+         *
+         * @param in stream reading from the repository
+         * @return stream that closes the lease
+         */
+        public InputStream closeWith(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        RepositoryLease.this.close();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            if (siteRepositories != null && released.compareAndSet(false, true)) {
+                synchronized (siteRepositories) {
+                    siteRepositories.users--;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.IOException;
+
+/**
+ * Immutable index of every path in the tree of a single commit. Lookups are a hash map access instead of a
+ * {@link org.eclipse.jgit.treewalk.TreeWalk} from the root of the tree. Snapshots of consecutive commits share the
+ * entries that did not change.
+ *
+ * Paths are git paths (relative, unix separators), the root of the tree is stored under the empty path.
+ */
+public class TreeSnapshot {
+
+    public static final String ROOT_PATH = "";
+
+    private final ObjectId commitId;
+    private final PersistentMap<Entry> entries;
+
+    TreeSnapshot(ObjectId commitId, PersistentMap<Entry> entries) {
+        this.commitId = commitId;
+        this.entries = entries;
+    }
+
+    /**
+     * Commit this snapshot was built from
+     * @return commit id
+     */
+    public ObjectId getCommitId() {
+        return commitId;
+    }
+
+    /**
+     * Get entry for given git path
+     * @param gitPath git path as returned by {@link GitContentRepositoryHelper#getGitPath(String)}
+     * @return entry or null if the path does not exist in the commit
+     */
+    public Entry getEntry(String gitPath) {
+        if (gitPath == null || gitPath.equals(".")) {
+            gitPath = ROOT_PATH;
+        }
+        return entries.get(gitPath);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    PersistentMap<Entry> getEntries() {
+        return entries;
+    }
+
+    public static class Entry {
+
+        private final ObjectId objectId;
+        private final int rawMode;
+        private volatile long size = -1L;
+
+        Entry(ObjectId objectId, int rawMode) {
+            this.objectId = objectId;
+            this.rawMode = rawMode;
+        }
+
+        public ObjectId getObjectId() {
+            return objectId;
+        }
+
+        public FileMode getFileMode() {
+            return FileMode.fromBits(rawMode);
+        }
+
+        public boolean isFolder() {
+            return FileMode.TREE.equals(rawMode);
+        }
+
+        /**
+         * Size of the object, it is loaded from the object database on first access and then remembered. Objects
+         * are immutable so the value never changes for a given entry.
+         * @param repository repository that owns the object
+         * @return size in bytes
+         * @throws IOException if the object can not be read
+         */
+        public long getSize(Repository repository) throws IOException {
+            long toRet = size;
+            if (toRet < 0) {
+                toRet = repository.open(objectId).getSize();
+                size = toRet;
+            }
+            return toRet;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one {@link TreeSnapshot} per repository, matching the current HEAD commit of that repository.
+ *
+ * Snapshots are built lazily on first read after HEAD moves. When a previous snapshot exists only the subtrees that
+ * differ between the old and the new commit are walked and the new snapshot shares all other entries with the
+ * previous one, so a single write does not trigger a full rebuild or copy.
+ * Readers always see a complete snapshot: the new one is swapped in only after it has been fully built.
+ *
+ * The number of snapshots kept can be capped, the least recently used one is dropped when a new repository would go
+ * over the cap.
+ */
+public class TreeSnapshotCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TreeSnapshotCache.class);
+
+    protected Map<String, SnapshotHolder> holders = new ConcurrentHashMap<String, SnapshotHolder>();
+    protected int maxSnapshots = 0;
+
+    /**
+     * Get the snapshot of HEAD for the given repository, building it if HEAD moved since the last call.
+     *
+     * @param key cache key identifying the repository (site and repository type)
+     * @param repository repository
+     * @return snapshot for HEAD, or null if the repository does not have any commits
+     * @throws IOException if the tree can not be read
+     */
+    public TreeSnapshot getSnapshot(String key, Repository repository) throws IOException {
+        ObjectId head = repository.resolve(Constants.HEAD);
+        if (head == null) {
+            return null;
+        }
+
+        SnapshotHolder holder = holders.get(key);
+        if (holder == null) {
+            holder = holders.computeIfAbsent(key, k -> new SnapshotHolder());
+            evictOverLimit(key);
+        }
+        holder.lastAccess = System.currentTimeMillis();
+        TreeSnapshot snapshot = holder.snapshot;
+        if (snapshot != null && head.equals(snapshot.getCommitId())) {
+            return snapshot;
+        }
+
+        synchronized (holder) {
+            snapshot = holder.snapshot;
+            if (snapshot == null || !head.equals(snapshot.getCommitId())) {
+                long startTime = System.currentTimeMillis();
+                snapshot = buildSnapshot(repository, head, snapshot);
+                holder.snapshot = snapshot;
+                logger.debug("Built tree snapshot for " + key + " at commit " + head.getName() + " with " +
+                        snapshot.size() + " entries in " + (System.currentTimeMillis() - startTime) + " ms");
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drop the snapshot for the given repository (e.g. when the site is deleted)
+     * @param key cache key identifying the repository
+     */
+    public void invalidate(String key) {
+        holders.remove(key);
+    }
+
+    /**
+     * Drop the least recently used snapshots until the cache is back within {@link #maxSnapshots}, never dropping
+     * the one that was just requested
+     */
+    protected void evictOverLimit(String requestedKey) {
+        while (maxSnapshots > 0 && holders.size() > maxSnapshots) {
+            String eldestKey = null;
+            long eldestAccess = Long.MAX_VALUE;
+            for (Map.Entry<String, SnapshotHolder> entry : holders.entrySet()) {
+                if (!entry.getKey().equals(requestedKey) && entry.getValue().lastAccess < eldestAccess) {
+                    eldestKey = entry.getKey();
+                    eldestAccess = entry.getValue().lastAccess;
+                }
+            }
+            if (eldestKey == null) {
+                return;
+            }
+            holders.remove(eldestKey);
+            logger.debug("Dropped tree snapshot for " + eldestKey + ", the cache holds at most " + maxSnapshots +
+                    " snapshots");
+        }
+    }
+
+    protected TreeSnapshot buildSnapshot(Repository repository, ObjectId commitId, TreeSnapshot previous)
+            throws IOException {
+        PersistentMap.Editor<TreeSnapshot.Entry> entries;
+        RevTree newTree;
+        RevTree oldTree = null;
+
+        try (ObjectReader reader = repository.newObjectReader(); RevWalk revWalk = new RevWalk(reader)) {
+            RevCommit commit = revWalk.parseCommit(commitId);
+            newTree = commit.getTree();
+
+            if (previous != null) {
+                entries = previous.getEntries().edit();
+                oldTree = revWalk.parseCommit(previous.getCommitId()).getTree();
+            } else {
+                entries = PersistentMap.<TreeSnapshot.Entry>empty().edit();
+            }
+
+            try (TreeWalk tw = new TreeWalk(reader)) {
+                if (oldTree != null) {
+                    tw.addTree(oldTree);
+                } else {
+                    tw.addTree(new EmptyTreeIterator());
+                }
+                tw.addTree(newTree);
+                tw.setRecursive(false);
+                tw.setFilter(TreeFilter.ANY_DIFF);
+
+                while (tw.next()) {
+                    String path = tw.getPathString();
+                    int newMode = tw.getRawMode(1);
+                    if (newMode == FileMode.MISSING.getBits()) {
+                        // Only drop the entry if it is the one that existed in the old tree, a file replaced by a
+                        // folder with the same name shows up as two separate entries
+                        TreeSnapshot.Entry existing = entries.get(path);
+                        if (existing != null && existing.getObjectId().equals(tw.getObjectId(0))) {
+                            entries.remove(path);
+                        }
+                    } else {
+                        entries.put(path, new TreeSnapshot.Entry(tw.getObjectId(1), newMode));
+                    }
+                    if (tw.isSubtree()) {
+                        tw.enterSubtree();
+                    }
+                }
+            }
+        }
+
+        entries.put(TreeSnapshot.ROOT_PATH, new TreeSnapshot.Entry(newTree.getId(), FileMode.TREE.getBits()));
+        return new TreeSnapshot(commitId.copy(), entries.toMap());
+    }
+
+    public int getMaxSnapshots() {
+        return maxSnapshots;
+    }
+
+    /**
+     * Cap the number of snapshots kept, 0 or less keeps one per repository read
+     * @param maxSnapshots maximum number of snapshots
+     */
+    public void setMaxSnapshots(int maxSnapshots) {
+        this.maxSnapshots = maxSnapshots;
+    }
+
+    private static class SnapshotHolder {
+        volatile TreeSnapshot snapshot;
+        volatile long lastAccess;
+    }
+}
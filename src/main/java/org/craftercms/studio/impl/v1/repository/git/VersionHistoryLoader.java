@@ -0,0 +1,281 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import org.craftercms.studio.api.v1.to.VersionTO;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads the version history of many paths at once.
+ *
+ * A single {@link RevWalk} from HEAD, limited to the requested paths, finds the commits that touch any of them. For
+ * every such commit one {@link TreeWalk} over the commit and its parents tells which of the requested paths changed
+ * (a merge counts as a change only if the path differs from every parent, like "git log -- path"). The walk stops as
+ * soon as every path has the requested number of versions.
+ *
+ * Results are kept in a small LRU cache keyed by HEAD and path, so repeat views of the same items are free until
+ * HEAD moves.
+ */
+public class VersionHistoryLoader {
+
+    protected final int cacheSize;
+    protected final Map<String, CachedHistory> cache;
+
+    protected final LongAdder cacheHits = new LongAdder();
+    protected final LongAdder cacheMisses = new LongAdder();
+
+    public VersionHistoryLoader(int cacheSize) {
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<String, CachedHistory>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedHistory> eldest) {
+                return size() > VersionHistoryLoader.this.cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Get the version history of the given paths
+     *
+     * @param repository repository
+     * @param repositoryKey key identifying the repository in the cache (site and repository type)
+     * @param head commit to start from
+     * @param gitPaths paths relative to the repository root
+     * @param maxVersions max number of versions per path, 0 or less for the full history
+     * @return versions per path, newest first, in the order paths were given
+     * @throws IOException if the repository can not be read
+     */
+    public Map<String, VersionTO[]> getVersionHistory(Repository repository, String repositoryKey, ObjectId head,
+                                                      Collection<String> gitPaths, int maxVersions)
+            throws IOException {
+        Map<String, List<Version>> histories = new LinkedHashMap<String, List<Version>>();
+        Set<String> pending = new HashSet<String>();
+
+        for (String gitPath : gitPaths) {
+            CachedHistory cached = getCached(getCacheKey(repositoryKey, head, gitPath));
+            if (cached != null && (cached.complete || (maxVersions > 0 && cached.versions.size() >= maxVersions))) {
+                cacheHits.increment();
+                histories.put(gitPath, cached.versions);
+            } else {
+                cacheMisses.increment();
+                histories.put(gitPath, null);
+                pending.add(gitPath);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            Map<String, List<Version>> loaded = walk(repository, head, pending, maxVersions);
+            for (String gitPath : pending) {
+                List<Version> versions = loaded.get(gitPath);
+                boolean complete = maxVersions <= 0 || versions.size() < maxVersions;
+                putCached(getCacheKey(repositoryKey, head, gitPath), new CachedHistory(versions, complete));
+                histories.put(gitPath, versions);
+            }
+        }
+
+        Map<String, VersionTO[]> toRet = new LinkedHashMap<String, VersionTO[]>();
+        for (Map.Entry<String, List<Version>> entry : histories.entrySet()) {
+            List<Version> versions = entry.getValue();
+            int count = maxVersions > 0 ? Math.min(maxVersions, versions.size()) : versions.size();
+            VersionTO[] versionTOs = new VersionTO[count];
+            for (int i = 0; i < count; i++) {
+                versionTOs[i] = versions.get(i).toVersionTO();
+            }
+            toRet.put(entry.getKey(), versionTOs);
+        }
+        return toRet;
+    }
+
+    protected Map<String, List<Version>> walk(Repository repository, ObjectId head, Set<String> gitPaths,
+                                              int maxVersions) throws IOException {
+        Map<String, List<Version>> toRet = new HashMap<String, List<Version>>();
+        for (String gitPath : gitPaths) {
+            toRet.put(gitPath, new ArrayList<Version>());
+        }
+        Set<String> remaining = new HashSet<String>(gitPaths);
+        TreeFilter pathFilter = PathFilterGroup.createFromStrings(gitPaths);
+
+        try (ObjectReader reader = repository.newObjectReader(); RevWalk revWalk = new RevWalk(reader)) {
+            revWalk.setTreeFilter(AndTreeFilter.create(pathFilter, TreeFilter.ANY_DIFF));
+            revWalk.setRevFilter(RevFilter.ALL);
+            revWalk.markStart(revWalk.parseCommit(head));
+
+            RevCommit commit;
+            while (!remaining.isEmpty() && (commit = revWalk.next()) != null) {
+                Version version = null;
+                for (String gitPath : getChangedPaths(revWalk, commit, pathFilter, remaining)) {
+                    if (version == null) {
+                        version = new Version(commit);
+                    }
+                    List<Version> versions = toRet.get(gitPath);
+                    versions.add(version);
+                    if (maxVersions > 0 && versions.size() >= maxVersions) {
+                        remaining.remove(gitPath);
+                    }
+                }
+            }
+        }
+        return toRet;
+    }
+
+    /**
+     * Requested paths changed by a commit: paths that differ from every parent (from nothing for a root commit)
+     */
+    protected Set<String> getChangedPaths(RevWalk revWalk, RevCommit commit, TreeFilter pathFilter,
+                                          Set<String> requestedPaths) throws IOException {
+        Set<String> changed = new HashSet<String>();
+        int parentCount = commit.getParentCount();
+        try (TreeWalk treeWalk = new TreeWalk(revWalk.getObjectReader())) {
+            treeWalk.addTree(commit.getTree());
+            // Parents are rewritten by the walk to the closest commit touching the paths, the requested paths are the
+            // same in the real parents
+            for (int i = 0; i < parentCount; i++) {
+                RevCommit parent = commit.getParent(i);
+                revWalk.parseHeaders(parent);
+                treeWalk.addTree(parent.getTree());
+            }
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(parentCount == 0 ? pathFilter : AndTreeFilter.create(pathFilter, TreeFilter.ANY_DIFF));
+            while (treeWalk.next()) {
+                if (!differsFromAllParents(treeWalk, parentCount)) {
+                    continue;
+                }
+                // The changed file may be the requested path itself or a file under a requested folder
+                String path = treeWalk.getPathString();
+                for (String requestedPath : requestedPaths) {
+                    if (path.equals(requestedPath) || path.startsWith(requestedPath + "/")) {
+                        changed.add(requestedPath);
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    protected boolean differsFromAllParents(TreeWalk treeWalk, int parentCount) {
+        for (int i = 1; i <= parentCount; i++) {
+            if (treeWalk.getRawMode(0) == treeWalk.getRawMode(i) && treeWalk.idEqual(0, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected String getCacheKey(String repositoryKey, ObjectId head, String gitPath) {
+        return repositoryKey + ":" + head.getName() + ":" + gitPath;
+    }
+
+    protected CachedHistory getCached(String key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    protected void putCached(String key, CachedHistory cachedHistory) {
+        synchronized (cache) {
+            cache.put(key, cachedHistory);
+        }
+    }
+
+    /**
+     * Drop every cached history of a repository (e.g. when it is closed)
+     * @param repositoryKey key identifying the repository in the cache
+     */
+    public void invalidate(String repositoryKey) {
+        String prefix = repositoryKey + ":";
+        synchronized (cache) {
+            cache.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    /**
+     * Get cache statistics
+     * @return cache size, hits and misses
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> toRet = new LinkedHashMap<String, Object>();
+        synchronized (cache) {
+            toRet.put("size", cache.size());
+        }
+        toRet.put("maxSize", cacheSize);
+        toRet.put("hits", cacheHits.sum());
+        toRet.put("misses", cacheMisses.sum());
+        return toRet;
+    }
+
+    protected static class CachedHistory {
+
+        final List<Version> versions;
+        final boolean complete;
+
+        CachedHistory(List<Version> versions, boolean complete) {
+            this.versions = versions;
+            this.complete = complete;
+        }
+    }
+
+    /**
+     * Immutable version record, a new {@link VersionTO} is built for every caller
+     */
+    protected static class Version {
+
+        final String commitId;
+        final String author;
+        final int commitTime;
+        final String message;
+
+        Version(RevCommit commit) {
+            this.commitId = commit.getName();
+            this.author = commit.getAuthorIdent().getName();
+            this.commitTime = commit.getCommitTime();
+            this.message = commit.getFullMessage();
+        }
+
+        VersionTO toVersionTO() {
+            VersionTO versionTO = new VersionTO();
+            versionTO.setVersionNumber(commitId);
+            versionTO.setLastModifier(author);
+            versionTO.setLastModifiedDate(Instant.ofEpochSecond(commitTime).atZone(ZoneOffset.UTC));
+            versionTO.setComment(message);
+            return versionTO;
+        }
+    }
+}
@@ -19,34 +19,86 @@
 
 package org.craftercms.studio.impl.v1.repository.job;
 
+import org.craftercms.studio.api.v1.constant.DmConstants;
+import org.craftercms.studio.api.v1.dal.DependencyEntity;
+import org.craftercms.studio.api.v1.dal.ItemMetadata;
+import org.craftercms.studio.api.v1.dal.ItemState;
 import org.craftercms.studio.api.v1.dal.PublishRequestMapper;
+import org.craftercms.studio.api.v1.dal.RebuildCheckpoint;
+import org.craftercms.studio.api.v1.dal.RebuildMetadataMapper;
 import org.craftercms.studio.api.v1.job.CronJobContext;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
 import org.craftercms.studio.api.v1.repository.ContentRepository;
+import org.craftercms.studio.api.v1.repository.RepoOperationIterator;
+import org.craftercms.studio.api.v1.repository.RepositoryItem;
+import org.craftercms.studio.api.v1.repository.RepositoryLockManager;
+import org.craftercms.studio.api.v1.repository.RepositoryLockManager.RepositoryLock;
+import org.craftercms.studio.api.v1.service.activity.ActivityService;
+import org.craftercms.studio.api.v1.service.activity.ActivityService.ActivitySource;
+import org.craftercms.studio.api.v1.service.activity.ActivityService.ActivityType;
+import org.craftercms.studio.api.v1.service.GeneralLockService;
 import org.craftercms.studio.api.v1.service.content.ContentService;
 import org.craftercms.studio.api.v1.service.content.ObjectMetadataManager;
 import org.craftercms.studio.api.v1.service.dependency.DependencyService;
+import org.craftercms.studio.api.v1.service.deployment.DeploymentHistoryProvider;
 import org.craftercms.studio.api.v1.service.objectstate.ObjectStateService;
+import org.craftercms.studio.api.v1.service.objectstate.State;
 import org.craftercms.studio.api.v1.service.security.SecurityService;
 import org.craftercms.studio.api.v1.service.site.SiteService;
+import org.craftercms.studio.api.v1.to.RepoOperationTO;
+import org.craftercms.studio.api.v1.to.VersionTO;
 import org.craftercms.studio.api.v1.util.StudioConfiguration;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.task.TaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
 
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static org.craftercms.studio.api.v1.constant.GitRepositories.SANDBOX;
+import static org.craftercms.studio.api.v1.constant.StudioConstants.DATE_PATTERN_WORKFLOW_WITH_TZ;
+import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
+import static org.craftercms.studio.api.v1.dal.RebuildMetadataMapper.DEPENDENCIES_PARAM;
+import static org.craftercms.studio.api.v1.dal.RebuildMetadataMapper.ITEM_METADATA_PARAM;
+import static org.craftercms.studio.api.v1.dal.RebuildMetadataMapper.ITEM_STATES_PARAM;
+import static org.craftercms.studio.api.v1.dal.RebuildMetadataMapper.PATHS_PARAM;
+import static org.craftercms.studio.api.v1.dal.RebuildMetadataMapper.SITE_PARAM;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_REBUILD_METADATA_BATCH_SIZE;
+import static org.craftercms.studio.impl.v1.repository.job.SiteJobStatusRegistry.REBUILD_METADATA_JOB;
 
+/**
+ * Rebuilds the metadata of a site (item states, item metadata and dependencies) from its repository.
+ *
+ * The new rows are written to staging tables in chunks of {@code batchSize} items while authors keep working on the
+ * current metadata. Every item gets the author, date and id of its last commit, and an audit entry as if it had been
+ * created from the repository. Every chunk is committed together with a checkpoint holding the commit the staged
+ * rows reflect and the last path walked, so a rebuild interrupted by a restart resumes from there. Once the whole
+ * repository is staged, the items changed by later commits are staged again and the metadata and git log of the site
+ * are replaced in a single transaction, while content writes to the site are held off.
+ *
+ * The progress of every phase is reported to the {@link SiteJobStatusRegistry}.
+ */
 public class RebuildRepositoryMetadata {
 
     private final static Logger logger = LoggerFactory.getLogger(RebuildRepositoryMetadata.class);
 
-    private static ReentrantLock taskLock = new ReentrantLock();
+    public static final String PHASE_COUNTING = "COUNTING";
+    public static final String PHASE_STAGING = "STAGING";
+    public static final String PHASE_CATCHING_UP = "CATCHING_UP";
+    public static final String PHASE_SWAPPING = "SWAPPING";
+
+    private static final Set<String> runningSites = ConcurrentHashMap.newKeySet();
 
     @Autowired
     protected PublishRequestMapper publishRequestMapper;
+    @Autowired
+    protected RebuildMetadataMapper rebuildMetadataMapper;
 
     protected ObjectMetadataManager objectMetadataManager;
     protected ObjectStateService objectStateService;
@@ -57,18 +109,38 @@ public class RebuildRepositoryMetadata {
     protected StudioConfiguration studioConfiguration;
     protected SiteService siteService;
     protected ContentRepository contentRepository;
+    protected DeploymentHistoryProvider deploymentHistoryProvider;
+    protected GeneralLockService generalLockService;
+    protected PlatformTransactionManager transactionManager;
+    protected SiteJobStatusRegistry siteJobStatusRegistry;
+    protected RepositoryLockManager repositoryLockManager;
+    protected ActivityService activityService;
 
     public void execute(String site) {
-        if (taskLock.tryLock()) {
+        if (runningSites.add(site)) {
             try {
                 logger.debug("Starting Rebuild Repository Metadata Task.");
                 String ticket = securityService.getCurrentToken();
                 CronJobContext securityContext = new CronJobContext(ticket, securityService.getCurrentUser());
                 RebuildRepositoryMetadataTask task = new RebuildRepositoryMetadataTask(securityContext, site);
                 taskExecutor.execute(task);
-            } finally {
-                taskLock.unlock();
+            } catch (RuntimeException e) {
+                runningSites.remove(site);
+                throw e;
             }
+        } else {
+            logger.info("Repository metadata is already being rebuilt for site " + site);
+        }
+    }
+
+    /**
+     * Resume the rebuilds that were interrupted, run once after startup
+     */
+    public void resumeInterrupted() {
+        for (RebuildCheckpoint checkpoint : rebuildMetadataMapper.getCheckpoints()) {
+            logger.info("Resuming rebuild of repository metadata for site " + checkpoint.getSite() + " after " +
+                    checkpoint.getItems() + " items");
+            execute(checkpoint.getSite());
         }
     }
 
@@ -86,59 +158,378 @@ public class RebuildRepositoryMetadata {
         public void run() {
             logger.debug("Start rebuilding repository metadata for site " + site);
             CronJobContext.setCurrent(securityContext);
-            logger.debug("Cleaning existing repository metadata for site " + site);
-            cleanOldMetadata(site);
-            logger.debug("Initiate rebuild metadata process for site " + site);
-            rebuildMetadata(site);
-            CronJobContext.clear();
-            logger.debug("Finished rebuilding repository metadata for site " + site);
+            SiteJobStatus status = siteJobStatusRegistry.start(site, REBUILD_METADATA_JOB);
+            try {
+                rebuildMetadata(site, status);
+                status.finish(false);
+                logger.debug("Finished rebuilding repository metadata for site " + site);
+            } catch (Exception e) {
+                status.addError();
+                status.finish(true);
+                logger.error("Error rebuilding repository metadata for site " + site + ", the rebuild will resume " +
+                        "from the last checkpoint", e);
+            } finally {
+                CronJobContext.clear();
+                runningSites.remove(site);
+            }
+        }
+    }
+
+    protected boolean rebuildMetadata(String site, SiteJobStatus status) {
+        RebuildCheckpoint checkpoint = getCheckpoint(site);
+        if (checkpoint == null) {
+            checkpoint = startRebuild(site);
+        } else {
+            logger.info("Resuming rebuild of repository metadata for site " + site + " at commit " +
+                    checkpoint.getCommitId() + " after path " + checkpoint.getLastPath());
         }
+        if (checkpoint.getCompleted() < 1) {
+            stageRepository(site, checkpoint, status);
+        }
+        swapMetadata(site, checkpoint, status);
+        deploymentHistoryProvider.rebuildDeployedItemIndex(site);
+        return true;
     }
 
-    protected boolean cleanOldMetadata(String site) {
-        logger.debug("Clean repository metadata for site " + site);
-        Map<String, String> params = new HashMap<String, String>();
-        params.put("site", site);
+    protected RebuildCheckpoint getCheckpoint(String site) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(SITE_PARAM, site);
+        return rebuildMetadataMapper.getCheckpoint(params);
+    }
 
-        try {
-            // Delete all dependencies
-            logger.debug("Deleting dependencies for site " + site);
-            dependencyService.deleteSiteDependencies(site);
-        } catch (Exception error) {
-            logger.error("Failed to delete dependencies for site " + site);
+    /**
+     * Drop anything left from a previous rebuild and start a new one at the last commit of the repository
+     */
+    protected RebuildCheckpoint startRebuild(String site) {
+        RebuildCheckpoint checkpoint = new RebuildCheckpoint();
+        checkpoint.setSite(site);
+        checkpoint.setCommitId(contentRepository.getRepoLastCommitId(site));
+        logger.info("Rebuilding repository metadata for site " + site + " at commit " + checkpoint.getCommitId());
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(SITE_PARAM, site);
+        inTransaction("startRebuildRepositoryMetadata", () -> {
+            clearStaged(params);
+            rebuildMetadataMapper.insertCheckpoint(checkpoint);
+        });
+        return checkpoint;
+    }
+
+    /**
+     * Stage every item of the repository after the last path of the checkpoint
+     */
+    protected void stageRepository(String site, RebuildCheckpoint checkpoint, SiteJobStatus status) {
+        status.setCurrentCommitId(checkpoint.getCommitId());
+        status.startPhase(PHASE_COUNTING, SiteJobStatus.UNKNOWN);
+        long[] total = { 0 };
+        walk(site, FILE_SEPARATOR, null, path -> total[0]++);
+        status.startPhase(PHASE_STAGING, total[0], checkpoint.getItems());
+
+        int batchSize = getBatchSize();
+        List<String> paths = new ArrayList<String>(batchSize);
+        walk(site, FILE_SEPARATOR, checkpoint.getLastPath(), path -> {
+            paths.add(path);
+            if (paths.size() >= batchSize) {
+                stageItems(site, checkpoint, Collections.<String>emptyList(), paths, getCreatedActivities(paths),
+                        false, status);
+                paths.clear();
+            }
+        });
+        stageItems(site, checkpoint, Collections.<String>emptyList(), paths, getCreatedActivities(paths), true,
+                status);
+        logger.info("Staged " + checkpoint.getItems() + " items rebuilding repository metadata for site " + site);
+    }
+
+    /**
+     * Visit the items of a folder in the order of their paths, skipping those up to the given one
+     */
+    protected void walk(String site, String path, String after, Consumer<String> visitor) {
+        List<RepositoryItem> children = Arrays.asList(contentRepository.getContentChildren(site, path));
+        // The contents of a folder sort as its path followed by a separator
+        children.sort(Comparator.comparing(child -> child.isFolder ? child.name + FILE_SEPARATOR : child.name));
+        for (RepositoryItem child : children) {
+            String childPath = child.path + FILE_SEPARATOR + child.name;
+            if (child.isFolder) {
+                String prefix = childPath + FILE_SEPARATOR;
+                if (after == null || after.startsWith(prefix) || prefix.compareTo(after) > 0) {
+                    walk(site, childPath, after, visitor);
+                }
+            } else if (after == null || childPath.compareTo(after) > 0) {
+                visitor.accept(childPath);
+            }
         }
+    }
 
-        try {
-            // Delete deployment queue
-            logger.debug("Deleting deployment queue for site " + site);
-            publishRequestMapper.deleteDeploymentDataForSite(params);
-        } catch (Exception error) {
-            logger.error("Failed to delete deployment queue for site " + site);
+    /**
+     * Stage again the items changed since the commit of the checkpoint and move the checkpoint to the last commit.
+     * The checkpoint only moves with the last chunk, so a catch up interrupted half way starts over.
+     */
+    protected void catchUp(String site, RebuildCheckpoint checkpoint, SiteJobStatus status) {
+        String lastCommitId = contentRepository.getRepoLastCommitId(site);
+        if (lastCommitId.equals(checkpoint.getCommitId())) {
+            return;
+        }
+        Set<String> changed = new LinkedHashSet<String>();
+        List<Activity> activities = new ArrayList<Activity>();
+        try (RepoOperationIterator repoOperations =
+                     contentRepository.getOperationsIterator(site, checkpoint.getCommitId(), lastCommitId)) {
+            while (repoOperations.hasNext()) {
+                RepoOperationTO repoOperation = repoOperations.next();
+                changed.add(repoOperation.getPath());
+                if (repoOperation.getMoveToPath() != null) {
+                    changed.add(repoOperation.getMoveToPath());
+                }
+                activities.add(new Activity(repoOperation));
+            }
+        }
+        logger.debug("Staging " + changed.size() + " items changed in site " + site + " since commit " +
+                checkpoint.getCommitId());
+        status.setCurrentCommitId(lastCommitId);
+        status.startPhase(PHASE_CATCHING_UP, changed.size());
+
+        int batchSize = getBatchSize();
+        List<String> stale = new ArrayList<String>(batchSize);
+        List<String> paths = new ArrayList<String>(batchSize);
+        for (String path : changed) {
+            stale.add(path);
+            if (contentRepository.contentExists(site, path)) {
+                paths.add(path);
+            }
+            if (stale.size() >= batchSize) {
+                stageItems(site, checkpoint, stale, paths, Collections.<Activity>emptyList(), true, status);
+                status.addProcessed(stale.size() - paths.size());
+                stale.clear();
+                paths.clear();
+            }
         }
+        checkpoint.setCommitId(lastCommitId);
+        stageItems(site, checkpoint, stale, paths, activities, true, status);
+        status.addProcessed(stale.size() - paths.size());
+    }
 
-        try {
-            // Delete content metadata
-            logger.debug("Deleting content metadata for site " + site);
-            objectMetadataManager.deleteObjectMetadataForSite(site);
-        } catch (Exception error) {
-            logger.error("Failed to delete content metadata for site " + site);
+    /**
+     * Write the rows of some items to the staging tables, post their audit entries and move the checkpoint forward
+     * in one transaction
+     *
+     * @param stale items whose staged rows are deleted first
+     * @param paths items to stage
+     * @param activities audit entries to post
+     * @param completed true if the whole repository has been walked
+     */
+    protected void stageItems(String site, RebuildCheckpoint checkpoint, List<String> stale, List<String> paths,
+                              List<Activity> activities, boolean completed, SiteJobStatus status) {
+        List<ItemState> itemStates = new ArrayList<ItemState>();
+        List<ItemMetadata> itemMetadata = new ArrayList<ItemMetadata>();
+        List<DependencyEntity> dependencies = new ArrayList<DependencyEntity>();
+        Map<String, VersionTO[]> lastVersions = getLastVersions(site, paths);
+        for (String path : paths) {
+            // Same state the sync gives an item created from the repository
+            ItemState itemState = new ItemState();
+            itemState.setObjectId(UUID.randomUUID().toString());
+            itemState.setSite(site);
+            itemState.setPath(path);
+            itemState.setState(State.NEW_UNPUBLISHED_UNLOCKED.name());
+            itemStates.add(itemState);
+
+            ItemMetadata metadata = new ItemMetadata();
+            metadata.setSite(site);
+            metadata.setPath(path);
+            VersionTO[] versions = lastVersions.get(path);
+            if (versions != null && versions.length > 0) {
+                metadata.setModifier(versions[0].getLastModifier());
+                metadata.setModified(ZonedDateTime.parse(versions[0].getLastModifiedDate(),
+                        DateTimeFormatter.ofPattern(DATE_PATTERN_WORKFLOW_WITH_TZ)));
+                metadata.setCommitId(versions[0].getVersionNumber());
+            } else {
+                metadata.setCommitId(checkpoint.getCommitId());
+            }
+            itemMetadata.add(metadata);
+
+            dependencies.addAll(resolveDependencies(site, path, status));
+        }
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(SITE_PARAM, site);
+        params.put(PATHS_PARAM, stale);
+        params.put(ITEM_STATES_PARAM, itemStates);
+        params.put(ITEM_METADATA_PARAM, itemMetadata);
+        params.put(DEPENDENCIES_PARAM, dependencies);
+        if (completed) {
+            checkpoint.setCompleted(1);
+        }
+        if (!paths.isEmpty()) {
+            checkpoint.setLastPath(paths.get(paths.size() - 1));
+            checkpoint.setItems(checkpoint.getItems() + paths.size());
+        }
+        inTransaction("stageRepositoryMetadata", () -> {
+            if (!stale.isEmpty()) {
+                rebuildMetadataMapper.deleteStagedDependencies(params);
+                rebuildMetadataMapper.deleteStagedItemMetadata(params);
+                rebuildMetadataMapper.deleteStagedItemStates(params);
+            }
+            if (!paths.isEmpty()) {
+                rebuildMetadataMapper.insertStagedItemStates(params);
+                rebuildMetadataMapper.insertStagedItemMetadata(params);
+            }
+            if (!dependencies.isEmpty()) {
+                rebuildMetadataMapper.insertStagedDependencies(params);
+            }
+            for (Activity activity : activities) {
+                postActivity(site, activity, lastVersions);
+            }
+            rebuildMetadataMapper.updateCheckpoint(checkpoint);
+        });
+        status.addProcessed(paths.size());
+    }
+
+    /**
+     * Get the last commit of every item, in one walk of the history for all of them
+     */
+    protected Map<String, VersionTO[]> getLastVersions(String site, List<String> paths) {
+        Map<String, VersionTO[]> toRet = null;
+        if (!paths.isEmpty()) {
+            toRet = contentRepository.getContentVersionHistory(site, paths, 1);
         }
+        return toRet == null ? Collections.<String, VersionTO[]>emptyMap() : toRet;
+    }
 
+    /**
+     * Audit entries for items found walking the repository, one per item by the author of its last commit (resolved
+     * when the item is staged)
+     */
+    protected List<Activity> getCreatedActivities(List<String> paths) {
+        List<Activity> toRet = new ArrayList<Activity>(paths.size());
+        for (String path : paths) {
+            toRet.add(new Activity(ActivityType.CREATED, path, null));
+        }
+        return toRet;
+    }
+
+    protected void postActivity(String site, Activity activity, Map<String, VersionTO[]> lastVersions) {
+        String author = activity.author;
+        if (author == null) {
+            VersionTO[] versions = lastVersions.get(activity.path);
+            author = versions != null && versions.length > 0 ? versions[0].getLastModifier() : null;
+        }
+        Map<String, String> activityInfo = new HashMap<String, String>();
+        if (activity.type != ActivityType.DELETED && activity.path.endsWith(DmConstants.XML_PATTERN)) {
+            activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentService.getContentTypeClass(site, activity.path));
+        }
+        activityService.postActivity(site, author, activity.path, activity.type, ActivitySource.REPOSITORY,
+                activityInfo);
+    }
+
+    protected List<DependencyEntity> resolveDependencies(String site, String path, SiteJobStatus status) {
+        List<DependencyEntity> toRet = new ArrayList<DependencyEntity>();
         try {
-            // Delete content workflow states data
-            logger.debug("Deleting workflow states data for site " + site);
-            objectStateService.deleteObjectStatesForSite(site);
-        } catch (Exception error) {
-            logger.error("Failed to delete workflow states data for site " + site);
+            Map<String, Set<String>> dependencies = dependencyService.resolveDependencies(site, path);
+            if (dependencies != null) {
+                for (Map.Entry<String, Set<String>> entry : dependencies.entrySet()) {
+                    for (String target : entry.getValue()) {
+                        DependencyEntity dependency = new DependencyEntity();
+                        dependency.setSite(site);
+                        dependency.setSourcePath(path.replaceAll("//", "/"));
+                        dependency.setTargetPath(target.replaceAll("//", "/"));
+                        dependency.setType(entry.getKey());
+                        toRet.add(dependency);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            status.addError();
+            logger.error("Failed to extract dependencies for document: site " + site + " path " + path, e);
         }
+        return toRet;
+    }
 
-        return true;
+    /**
+     * Replace the metadata of the site with the staged rows. The sync of the site with the repository is stopped,
+     * and the sandbox repository is locked so no content write can move HEAD past the staged commit, while the last
+     * commits are staged and the rows are swapped.
+     */
+    protected void swapMetadata(String site, RebuildCheckpoint checkpoint, SiteJobStatus status) {
+        catchUp(site, checkpoint, status);
+        String syncLock = GeneralLockService.SYNC_DATABASE_WITH_REPO_LOCK + " " + site;
+        generalLockService.lock(syncLock);
+        try (RepositoryLock repositoryLock = repositoryLockManager.acquireWrite(site, SANDBOX)) {
+            catchUp(site, checkpoint, status);
+            status.startPhase(PHASE_SWAPPING, SiteJobStatus.UNKNOWN);
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put(SITE_PARAM, site);
+            inTransaction("swapRepositoryMetadata", () -> {
+                rebuildMetadataMapper.deleteDependencies(params);
+                rebuildMetadataMapper.deleteItemMetadata(params);
+                rebuildMetadataMapper.deleteItemStates(params);
+                publishRequestMapper.deleteDeploymentDataForSite(params);
+                rebuildMetadataMapper.copyStagedItemStates(params);
+                rebuildMetadataMapper.copyStagedItemMetadata(params);
+                rebuildMetadataMapper.copyStagedDependencies(params);
+                // Every commit up to HEAD is reflected in the new metadata
+                contentRepository.deleteGitLogForSite(site);
+                contentRepository.insertFullGitLog(site, 1);
+                clearStaged(params);
+                rebuildMetadataMapper.deleteCheckpoint(params);
+            });
+            dependencyService.invalidateSiteDependencies(site);
+            siteService.updateLastCommitId(site, checkpoint.getCommitId());
+            logger.info("Replaced repository metadata for site " + site + " with " + checkpoint.getItems() +
+                    " items rebuilt up to commit " + checkpoint.getCommitId());
+        } finally {
+            generalLockService.unlock(syncLock);
+        }
     }
 
+    private void clearStaged(Map<String, Object> params) {
+        rebuildMetadataMapper.clearStagedDependencies(params);
+        rebuildMetadataMapper.clearStagedItemMetadata(params);
+        rebuildMetadataMapper.clearStagedItemStates(params);
+    }
 
-    protected boolean rebuildMetadata(String site) {
-        siteService.syncDatabaseWithRepo(site, null);
-        return true;
+    private void inTransaction(String name, Runnable work) {
+        DefaultTransactionDefinition defaultTransactionDefinition = new DefaultTransactionDefinition();
+        defaultTransactionDefinition.setName(name);
+        TransactionStatus txStatus = transactionManager.getTransaction(defaultTransactionDefinition);
+        try {
+            work.run();
+        } catch (Throwable e) {
+            transactionManager.rollback(txStatus);
+            throw e;
+        }
+        transactionManager.commit(txStatus);
+    }
+
+    /**
+     * Audit entry to post once the rows of its item are staged
+     */
+    protected static class Activity {
+
+        final ActivityType type;
+        final String path;
+        final String author;
+
+        Activity(ActivityType type, String path, String author) {
+            this.type = type;
+            this.path = path;
+            this.author = author;
+        }
+
+        Activity(RepoOperationTO repoOperation) {
+            switch (repoOperation.getOperation()) {
+                case UPDATE:
+                    type = ActivityType.UPDATED;
+                    break;
+                case DELETE:
+                    type = ActivityType.DELETED;
+                    break;
+                case MOVE:
+                    type = ActivityType.MOVED;
+                    break;
+                default:
+                    type = ActivityType.CREATED;
+                    break;
+            }
+            path = repoOperation.getMoveToPath() != null ? repoOperation.getMoveToPath() : repoOperation.getPath();
+            author = repoOperation.getAuthor();
+        }
     }
 
     public int getBatchSize() {
@@ -172,4 +563,32 @@ public class RebuildRepositoryMetadata {
 
     public ContentRepository getContentRepository() { return contentRepository; }
     public void setContentRepository(ContentRepository contentRepository) { this.contentRepository = contentRepository; }
+
+    public DeploymentHistoryProvider getDeploymentHistoryProvider() { return deploymentHistoryProvider; }
+    public void setDeploymentHistoryProvider(DeploymentHistoryProvider deploymentHistoryProvider) {
+        this.deploymentHistoryProvider = deploymentHistoryProvider;
+    }
+
+    public GeneralLockService getGeneralLockService() { return generalLockService; }
+    public void setGeneralLockService(GeneralLockService generalLockService) {
+        this.generalLockService = generalLockService;
+    }
+
+    public PlatformTransactionManager getTransactionManager() { return transactionManager; }
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    public SiteJobStatusRegistry getSiteJobStatusRegistry() { return siteJobStatusRegistry; }
+    public void setSiteJobStatusRegistry(SiteJobStatusRegistry siteJobStatusRegistry) {
+        this.siteJobStatusRegistry = siteJobStatusRegistry;
+    }
+
+    public RepositoryLockManager getRepositoryLockManager() { return repositoryLockManager; }
+    public void setRepositoryLockManager(RepositoryLockManager repositoryLockManager) {
+        this.repositoryLockManager = repositoryLockManager;
+    }
+
+    public ActivityService getActivityService() { return activityService; }
+    public void setActivityService(ActivityService activityService) { this.activityService = activityService; }
 }
@@ -0,0 +1,134 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.job;
+
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.repository.ContentRepository;
+import org.craftercms.studio.api.v1.service.GeneralLockService;
+import org.craftercms.studio.api.v1.service.site.SiteService;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.craftercms.studio.impl.v1.job.RepositoryJob;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_MAINTENANCE_ENABLED;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_MAINTENANCE_MAX_SITES_PER_RUN;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_MAINTENANCE_PAUSE_MS;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_MAINTENANCE_WINDOW_END_HOUR;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_MAINTENANCE_WINDOW_START_HOUR;
+
+/**
+ * Scheduled job that runs repository maintenance on the sites that need it during the maintenance window.
+ *
+ * At most {@code maxSitesPerRun} sites are maintained per run, with a pause between sites. A site is skipped while
+ * its database is being synced with the repository, and the repository takes both repository write locks of the site
+ * so maintenance never overlaps publishing or content writes.
+ */
+public class RepositoryMaintenance extends RepositoryJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(RepositoryMaintenance.class);
+
+    private static final ReentrantLock singleWorkerLock = new ReentrantLock();
+
+    protected ContentRepository contentRepository;
+    protected SiteService siteService;
+    protected GeneralLockService generalLockService;
+    protected StudioConfiguration studioConfiguration;
+
+    @Override
+    public void execute() {
+        if (!Boolean.parseBoolean(studioConfiguration.getProperty(REPO_MAINTENANCE_ENABLED)) || !isInWindow()) {
+            return;
+        }
+        if (singleWorkerLock.tryLock()) {
+            try {
+                maintainSites();
+            } catch (Throwable err) {
+                logger.error("Unable to execute repository maintenance job", err);
+            } finally {
+                singleWorkerLock.unlock();
+            }
+        }
+    }
+
+    protected void maintainSites() throws InterruptedException {
+        int maxSites = Integer.parseInt(studioConfiguration.getProperty(REPO_MAINTENANCE_MAX_SITES_PER_RUN));
+        long pause = Long.parseLong(studioConfiguration.getProperty(REPO_MAINTENANCE_PAUSE_MS));
+
+        List<String> sites = new ArrayList<String>(siteService.getAllAvailableSites());
+        // Sites over the thresholds are maintained first come first served, shuffle so no site is always last
+        Collections.shuffle(sites);
+        int maintained = 0;
+        for (String site : sites) {
+            if (maintained >= maxSites || !isInWindow()) {
+                break;
+            }
+            String syncLock = GeneralLockService.SYNC_DATABASE_WITH_REPO_LOCK + " " + site;
+            if (!generalLockService.tryLock(syncLock)) {
+                logger.debug("Skipping repository maintenance for site " + site + ", database sync in progress");
+                continue;
+            }
+            boolean ran;
+            try {
+                ran = contentRepository.runRepositoryMaintenance(site, false);
+            } finally {
+                generalLockService.unlock(syncLock);
+            }
+            if (ran) {
+                maintained++;
+                Thread.sleep(pause);
+            }
+        }
+    }
+
+    protected boolean isInWindow() {
+        int startHour = Integer.parseInt(studioConfiguration.getProperty(REPO_MAINTENANCE_WINDOW_START_HOUR));
+        int endHour = Integer.parseInt(studioConfiguration.getProperty(REPO_MAINTENANCE_WINDOW_END_HOUR));
+        int hour = LocalTime.now().getHour();
+        if (startHour == endHour) {
+            return true;
+        } else if (startHour < endHour) {
+            return hour >= startHour && hour < endHour;
+        } else {
+            // Window across midnight
+            return hour >= startHour || hour < endHour;
+        }
+    }
+
+    public ContentRepository getContentRepository() { return contentRepository; }
+    public void setContentRepository(ContentRepository contentRepository) { this.contentRepository = contentRepository; }
+
+    public SiteService getSiteService() { return siteService; }
+    public void setSiteService(SiteService siteService) { this.siteService = siteService; }
+
+    public GeneralLockService getGeneralLockService() { return generalLockService; }
+    public void setGeneralLockService(GeneralLockService generalLockService) {
+        this.generalLockService = generalLockService;
+    }
+
+    public StudioConfiguration getStudioConfiguration() { return studioConfiguration; }
+    public void setStudioConfiguration(StudioConfiguration studioConfiguration) {
+        this.studioConfiguration = studioConfiguration;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.job;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a job running over the repository of a site (a metadata rebuild or a sync of the database).
+ *
+ * A job goes through phases, each with its own count of operations processed out of a total, which may not be known
+ * up front. The job updates it on every operation and monitoring reads it from other threads, so updates only write
+ * volatile fields and atomic counters and the rate and ETA are worked out when it is read.
+ */
+public class SiteJobStatus {
+
+    public static final long UNKNOWN = -1;
+
+    public static final String PHASE_COMPLETED = "COMPLETED";
+    public static final String PHASE_FAILED = "FAILED";
+
+    protected final String site;
+    protected final String job;
+    protected final long startTime = System.currentTimeMillis();
+
+    protected volatile String phase;
+    protected volatile long phaseStartTime;
+    protected volatile long phaseStartProcessed;
+    protected volatile long total = UNKNOWN;
+    protected final AtomicLong processed = new AtomicLong();
+    protected final AtomicLong errors = new AtomicLong();
+    protected volatile String currentCommitId;
+    protected volatile long endTime = 0;
+
+    public SiteJobStatus(String site, String job) {
+        this.site = site;
+        this.job = job;
+    }
+
+    /**
+     * Start a new phase
+     *
+     * @param phase name of the phase
+     * @param total operations the phase will process, {@link #UNKNOWN} if not known
+     */
+    public void startPhase(String phase, long total) {
+        startPhase(phase, total, 0);
+    }
+
+    /**
+     * Start a new phase resuming from a number of operations already processed
+     *
+     * @param phase name of the phase
+     * @param total operations the phase will process, {@link #UNKNOWN} if not known
+     * @param processed operations processed before, they do not count for the rate
+     */
+    public void startPhase(String phase, long total, long processed) {
+        this.processed.set(processed);
+        this.phaseStartProcessed = processed;
+        this.phaseStartTime = System.currentTimeMillis();
+        this.total = total;
+        this.phase = phase;
+    }
+
+    public void addProcessed(long count) {
+        processed.addAndGet(count);
+    }
+
+    public void addError() {
+        errors.incrementAndGet();
+    }
+
+    public void setCurrentCommitId(String currentCommitId) {
+        this.currentCommitId = currentCommitId;
+    }
+
+    /**
+     * End the job
+     *
+     * @param failed true if the job ended with an error
+     */
+    public void finish(boolean failed) {
+        endTime = System.currentTimeMillis();
+        phase = failed ? PHASE_FAILED : PHASE_COMPLETED;
+    }
+
+    public boolean isRunning() {
+        return endTime == 0;
+    }
+
+    /**
+     * @return operations processed per second in the current phase
+     */
+    public double getRate() {
+        long elapsed = Math.max((isRunning() ? System.currentTimeMillis() : endTime) - phaseStartTime, 1);
+        return (processed.get() - phaseStartProcessed) * 1000.0 / elapsed;
+    }
+
+    /**
+     * @return estimated milliseconds left in the current phase, {@link #UNKNOWN} if the total is not known or nothing
+     * has been processed yet
+     */
+    public long getEtaMillis() {
+        double rate = getRate();
+        if (!isRunning() || total == UNKNOWN || rate <= 0) {
+            return UNKNOWN;
+        }
+        return (long) (Math.max(total - processed.get(), 0) * 1000 / rate);
+    }
+
+    public String getSite() { return site; }
+    public String getJob() { return job; }
+    public long getStartTime() { return startTime; }
+    public long getEndTime() { return endTime; }
+    public String getPhase() { return phase; }
+    public long getTotal() { return total; }
+    public long getProcessed() { return processed.get(); }
+    public long getErrors() { return errors.get(); }
+    public String getCurrentCommitId() { return currentCommitId; }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> toRet = new LinkedHashMap<String, Object>();
+        toRet.put("site", site);
+        toRet.put("job", job);
+        toRet.put("running", isRunning());
+        toRet.put("phase", phase);
+        toRet.put("processed", processed.get());
+        toRet.put("total", total);
+        toRet.put("currentCommitId", currentCommitId);
+        toRet.put("errors", errors.get());
+        toRet.put("operationsPerSecond", Math.round(getRate() * 100) / 100.0);
+        toRet.put("etaMs", getEtaMillis());
+        toRet.put("startTime", startTime);
+        toRet.put("endTime", endTime);
+        return toRet;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.job;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the status of the last job of each kind run for every site, running or not, so monitoring can tell a job
+ * that is stuck from one that finished.
+ */
+public class SiteJobStatusRegistry {
+
+    public static final String REBUILD_METADATA_JOB = "rebuildMetadata";
+    public static final String SYNC_DATABASE_JOB = "syncDatabase";
+
+    protected final Map<String, SiteJobStatus> statuses = new ConcurrentHashMap<String, SiteJobStatus>();
+
+    /**
+     * Start tracking a new run of a job, replacing the status of the previous run
+     */
+    public SiteJobStatus start(String site, String job) {
+        SiteJobStatus status = new SiteJobStatus(site, job);
+        statuses.put(site + ":" + job, status);
+        return status;
+    }
+
+    public SiteJobStatus get(String site, String job) {
+        return statuses.get(site + ":" + job);
+    }
+
+    /**
+     * Forget the jobs of a deleted site
+     */
+    public void remove(String site) {
+        statuses.remove(site + ":" + REBUILD_METADATA_JOB);
+        statuses.remove(site + ":" + SYNC_DATABASE_JOB);
+    }
+
+    /**
+     * Get the status of the jobs of every site
+     * @return statuses by site and job
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> toRet = new TreeMap<String, Object>();
+        for (SiteJobStatus status : statuses.values()) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> jobs = (Map<String, Object>) toRet.computeIfAbsent(status.getSite(),
+                    k -> new TreeMap<String, Object>());
+            jobs.put(status.getJob(), status.toMap());
+        }
+        return toRet;
+    }
+}
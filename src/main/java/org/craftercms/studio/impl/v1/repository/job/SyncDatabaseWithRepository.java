@@ -30,6 +30,8 @@ public class SyncDatabaseWithRepository {
 
     private final static Logger logger = LoggerFactory.getLogger(SyncDatabaseWithRepository.class);
 
+    public static final String PHASE_SYNCING = "SYNCING";
+
     private static ReentrantLock taskLock = new ReentrantLock();
 
     public void execute(String site, String lastDbCommitId) {
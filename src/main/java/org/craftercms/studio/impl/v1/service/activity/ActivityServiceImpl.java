@@ -98,7 +98,25 @@ public class ActivityServiceImpl extends AbstractRegistrableService implements A
     @Override
     @ValidateParams
     public void postActivity(@ValidateStringParam(name = "site") String site, @ValidateStringParam(name = "user") String user, @ValidateSecurePathParam(name = "contentId") String contentId, ActivityType activity, ActivitySource source, Map<String,String> extraInfo) {
+        AuditFeed activityPost = createActivity(site, user, contentId, activity, source, extraInfo);
+        try {
+            activityPost.setCreationDate(ZonedDateTime.now(ZoneOffset.UTC));
+            long postId = insertFeedEntry(activityPost);
+            activityPost.setId(postId);
+            logger.debug("Posted: " + activityPost);
+
+        } catch (Exception e) {
+            // log error, subsume exception (for post activity)
+            logger.error("Error in posting feed", new ServiceException("Failed to post activity: " + e, e));
+        }
+    }
 
+    @Override
+    @ValidateParams
+    public AuditFeed createActivity(@ValidateStringParam(name = "site") String site,
+                                    @ValidateStringParam(name = "user") String user,
+                                    @ValidateSecurePathParam(name = "contentId") String contentId,
+                                    ActivityType activity, ActivitySource source, Map<String, String> extraInfo) {
         JSONObject activityPost = new JSONObject();
         activityPost.put(ACTIVITY_PROP_USER, user);
         activityPost.put(ACTIVITY_PROP_ID, contentId);
@@ -109,12 +127,13 @@ public class ActivityServiceImpl extends AbstractRegistrableService implements A
         if (extraInfo != null) {
             contentType = extraInfo.get(DmConstants.KEY_CONTENT_TYPE);
         }
-        postActivity(activity.toString(), source.toString(), site, null, activityPost.toString(),contentId,contentType, user);
-
+        return createActivityFeed(activity.toString(), source.toString(), site, null, activityPost.toString(),
+                contentId, contentType, user);
     }
 
-    private void postActivity(String activityType, String activitySource, String siteNetwork, String appTool, String activityData,
-                              String contentId, String contentType, String approver) {
+    private AuditFeed createActivityFeed(String activityType, String activitySource, String siteNetwork,
+                                         String appTool, String activityData, String contentId, String contentType,
+                                         String approver) {
         String currentUser = (StringUtils.isEmpty(approver)) ? securityService.getCurrentUser() : approver;
         try {
             // optional - default to empty string
@@ -167,35 +186,19 @@ public class ActivityServiceImpl extends AbstractRegistrableService implements A
             logger.error("Error in getting feeds", e);
         }
 
-        try {
-            ZonedDateTime postDate = ZonedDateTime.now(ZoneOffset.UTC);
-            AuditFeed activityPost = new AuditFeed();
-            activityPost.setUserId(currentUser);
-            activityPost.setSiteNetwork(siteNetwork);
-            activityPost.setSummary(activityData);
-            activityPost.setType(activityType);
-            activityPost.setCreationDate(postDate);
-            activityPost.setModifiedDate(postDate);
-            activityPost.setSummaryFormat("json");
-            activityPost.setContentId(contentId);
-            activityPost.setContentType(contentType);
-            activityPost.setSource(activitySource);
-            try {
-                activityPost.setCreationDate(ZonedDateTime.now(ZoneOffset.UTC));
-                long postId = insertFeedEntry(activityPost);
-                activityPost.setId(postId);
-                logger.debug("Posted: " + activityPost);
-
-            } catch (Exception e) {
-                throw new ServiceException("Failed to post activity: " + e, e);
-            }
-        }
-
-        catch (ServiceException e) {
-            // log error, subsume exception (for post activity)
-            logger.error("Error in posting feed", e);
-        }
-
+        ZonedDateTime postDate = ZonedDateTime.now(ZoneOffset.UTC);
+        AuditFeed activityPost = new AuditFeed();
+        activityPost.setUserId(currentUser);
+        activityPost.setSiteNetwork(siteNetwork);
+        activityPost.setSummary(activityData);
+        activityPost.setType(activityType);
+        activityPost.setCreationDate(postDate);
+        activityPost.setModifiedDate(postDate);
+        activityPost.setSummaryFormat("json");
+        activityPost.setContentId(contentId);
+        activityPost.setContentType(contentType);
+        activityPost.setSource(activitySource);
+        return activityPost;
     }
 
 
@@ -262,17 +265,26 @@ public class ActivityServiceImpl extends AbstractRegistrableService implements A
         }
 
         if (activityFeedEntries != null && activityFeedEntries.size() > 0) {
+            List<ContentItemTO> feedItems = new ArrayList<ContentItemTO>();
+            List<String> ids = new ArrayList<String>();
             for (int index = 0; index < activityFeedEntries.size() && remainingItem!=0; index++) {
                 JSONObject feedObject = JSONObject.fromObject(activityFeedEntries.get(index));
                 String id = (feedObject.containsKey(ACTIVITY_PROP_CONTENTID)) ? feedObject.getString(ACTIVITY_PROP_CONTENTID) : "";
                 ContentItemTO item = createActivityItem(site, feedObject, id);
                 item.published = true;
                 item.setPublished(true);
-                ZonedDateTime pubDate = deploymentService.getLastDeploymentDate(site, id);
+                feedItems.add(item);
+                ids.add(id);
+                remainingItem--;
+            }
+            // Resolve the publish dates of all rows with a single lookup
+            Map<String, ZonedDateTime> pubDates = deploymentService.getLastDeploymentDates(site, ids);
+            for (int index = 0; index < feedItems.size(); index++) {
+                ContentItemTO item = feedItems.get(index);
+                ZonedDateTime pubDate = pubDates.get(ids.get(index));
                 item.publishedDate = pubDate;
                 item.setPublishedDate(pubDate);
                 contentItems.add(item);
-                remainingItem--;
             }
         }
         logger.debug("Total Item post live filter : " + contentItems.size() + " hasMoreItems : "+hasMoreItems);
@@ -24,12 +24,13 @@ import org.craftercms.commons.validation.annotations.param.ValidateStringParam;
 import org.craftercms.studio.api.v1.constant.StudioConstants;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.repository.ContentRepository;
+import org.craftercms.studio.api.v1.repository.RepositoryItem;
 import org.craftercms.studio.api.v1.service.GeneralLockService;
 import org.craftercms.studio.api.v1.service.configuration.ContentTypesConfig;
 import org.craftercms.studio.api.v1.service.content.ContentService;
 import org.craftercms.studio.api.v1.to.*;
 import org.craftercms.studio.api.v1.util.StudioConfiguration;
-import org.craftercms.studio.impl.v1.service.StudioCacheContext;
 import org.craftercms.studio.impl.v1.util.ContentFormatUtils;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
@@ -39,6 +40,7 @@ import org.dom4j.Node;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import static org.craftercms.studio.api.v1.constant.StudioConstants.CONTENT_TYPE_UNKNOWN;
@@ -47,22 +49,113 @@ import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATIO
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATION_SITE_CONTENT_TYPES_CONFIG_PATH;
 
 /**
+ * Content type configurations are kept in a registry per site. The registry is tied to the object id of the content
+ * types folder as of the last commit, any change to a file under that folder (written from Studio or pulled from a
+ * remote) gives it a new id and the registry is dropped and loaded again on demand.
+ *
  * @author Dejan Brkic
  */
 public class ContentTypesConfigImpl implements ContentTypesConfig {
 
     private static final Logger logger = LoggerFactory.getLogger(ContentTypesConfigImpl.class);
 
+    protected final Map<String, SiteContentTypes> contentTypesCache = new ConcurrentHashMap<String, SiteContentTypes>();
+
     @Override
     @ValidateParams
     public ContentTypeConfigTO getContentTypeConfig(@ValidateStringParam(name = "site") final String site, @ValidateStringParam(name = "contentType") final String contentType) {
         if (StringUtils.isNotEmpty(contentType) && !StringUtils.equals(contentType, CONTENT_TYPE_UNKNOWN)) {
-            return loadConfiguration(site, contentType);
+            return getContentTypeConfig(getSiteContentTypes(site), site, contentType);
         } else {
             return null;
         }
     }
 
+    protected ContentTypeConfigTO getContentTypeConfig(SiteContentTypes siteContentTypes, String site,
+                                                       String contentType) {
+        // Content types that do not exist are cached too, as an empty value
+        return siteContentTypes.contentTypes.computeIfAbsent(contentType,
+                k -> Optional.ofNullable(loadConfiguration(site, k))).orElse(null);
+    }
+
+    @Override
+    @ValidateParams
+    public List<ContentTypeConfigTO> getContentTypes(@ValidateStringParam(name = "site") String site) {
+        SiteContentTypes siteContentTypes = getSiteContentTypes(site);
+        List<ContentTypeConfigTO> all = siteContentTypes.all;
+        if (all == null) {
+            synchronized (siteContentTypes) {
+                all = siteContentTypes.all;
+                if (all == null) {
+                    all = new ArrayList<ContentTypeConfigTO>();
+                    for (String contentType : findContentTypes(site)) {
+                        ContentTypeConfigTO config = getContentTypeConfig(siteContentTypes, site, contentType);
+                        if (config != null) {
+                            all.add(config);
+                        }
+                    }
+                    all = Collections.unmodifiableList(all);
+                    siteContentTypes.all = all;
+                }
+            }
+        }
+        return new ArrayList<ContentTypeConfigTO>(all);
+    }
+
+    @Override
+    @ValidateParams
+    public void reloadConfiguration(@ValidateStringParam(name = "site") String site) {
+        contentTypesCache.remove(site);
+        getContentTypes(site);
+    }
+
+    /**
+     * Get the registry of a site, replacing it if the content types folder changed since it was created
+     */
+    protected SiteContentTypes getSiteContentTypes(String site) {
+        String objectId = contentRepository.getContentObjectId(site, getContentTypesRootPath(site));
+        SiteContentTypes siteContentTypes = contentTypesCache.get(site);
+        if (siteContentTypes == null || !StringUtils.equals(siteContentTypes.objectId, objectId)) {
+            // Keep the registry another thread may have just created for the same folder
+            siteContentTypes = contentTypesCache.merge(site, new SiteContentTypes(objectId),
+                    (current, created) -> StringUtils.equals(current.objectId, created.objectId) ? current : created);
+        }
+        return siteContentTypes;
+    }
+
+    /**
+     * Find the names of all content types of a site: the paths, relative to the content types folder, of the folders
+     * that have a configuration file
+     */
+    protected List<String> findContentTypes(String site) {
+        String rootPath = getContentTypesRootPath(site);
+        List<String> contentTypes = new ArrayList<String>();
+        Deque<String> folders = new ArrayDeque<String>();
+        folders.push(rootPath);
+        while (!folders.isEmpty()) {
+            RepositoryItem[] children = contentRepository.getContentChildren(site, folders.pop());
+            if (children == null) {
+                continue;
+            }
+            for (RepositoryItem child : children) {
+                if (child.isFolder) {
+                    String folderPath = child.path + FILE_SEPARATOR + child.name;
+                    if (contentRepository.contentExists(site, folderPath + FILE_SEPARATOR + getConfigFileName())) {
+                        contentTypes.add(folderPath.substring(rootPath.length()));
+                    }
+                    folders.push(folderPath);
+                }
+            }
+        }
+        Collections.sort(contentTypes);
+        return contentTypes;
+    }
+
+    protected String getContentTypesRootPath(String site) {
+        return StringUtils.removeEnd(getConfigPath().replaceAll(StudioConstants.PATTERN_SITE, site)
+                .replaceAll(StudioConstants.PATTERN_CONTENT_TYPE, ""), FILE_SEPARATOR);
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     @ValidateParams
@@ -239,10 +332,10 @@ public class ContentTypesConfigImpl implements ContentTypesConfig {
     @Override
     @ValidateParams
     public ContentTypeConfigTO reloadConfiguration(@ValidateStringParam(name = "site") String site, @ValidateStringParam(name = "contentType") String contentType) {
-        StudioCacheContext cacheContext = new StudioCacheContext(site, true);
-        String siteConfigPath = getConfigPath().replaceAll(StudioConstants.PATTERN_SITE, site)
-                .replaceAll(StudioConstants.PATTERN_CONTENT_TYPE, contentType);
+        SiteContentTypes siteContentTypes = getSiteContentTypes(site);
         ContentTypeConfigTO config = loadConfiguration(site, contentType);
+        siteContentTypes.contentTypes.put(contentType, Optional.ofNullable(config));
+        siteContentTypes.all = null;
         return config;
     }
 
@@ -257,6 +350,9 @@ public class ContentTypesConfigImpl implements ContentTypesConfig {
     public ContentService getContentService() { return contentService; }
     public void setContentService(ContentService contentService) { this.contentService = contentService; }
 
+    public ContentRepository getContentRepository() { return contentRepository; }
+    public void setContentRepository(ContentRepository contentRepository) { this.contentRepository = contentRepository; }
+
     public GeneralLockService getGeneralLockService() { return generalLockService; }
     public void setGeneralLockService(GeneralLockService generalLockService) { this.generalLockService = generalLockService; }
 
@@ -264,6 +360,22 @@ public class ContentTypesConfigImpl implements ContentTypesConfig {
     public void setStudioConfiguration(StudioConfiguration studioConfiguration) { this.studioConfiguration = studioConfiguration; }
 
     protected ContentService contentService;
+    protected ContentRepository contentRepository;
     protected GeneralLockService generalLockService;
     protected StudioConfiguration studioConfiguration;
+
+    /**
+     * Content types of a site, as of a given version of the content types folder
+     */
+    protected static class SiteContentTypes {
+
+        final String objectId;
+        final Map<String, Optional<ContentTypeConfigTO>> contentTypes =
+                new ConcurrentHashMap<String, Optional<ContentTypeConfigTO>>();
+        volatile List<ContentTypeConfigTO> all;
+
+        SiteContentTypes(String objectId) {
+            this.objectId = objectId;
+        }
+    }
 }
@@ -27,6 +27,7 @@ import org.craftercms.studio.api.v1.service.configuration.ContentTypesConfig;
 import org.craftercms.studio.api.v1.service.content.ContentService;
 import org.craftercms.studio.api.v1.service.configuration.ServicesConfig;
 import org.craftercms.studio.api.v1.to.*;
+import org.craftercms.studio.api.v1.util.PatternSet;
 import org.craftercms.studio.api.v1.util.StudioConfiguration;
 import org.craftercms.studio.impl.v1.util.ContentFormatUtils;
 import org.dom4j.Document;
@@ -39,6 +40,9 @@ import org.slf4j.LoggerFactory;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATION_SITE_CONFIG_BASE_PATH;
@@ -86,8 +90,42 @@ public class ServicesConfigImpl implements ServicesConfig {
 
 	protected ContentRepository contentRepository;
 
+    /**
+     * Parsed site configuration per site, along with the object id of the configuration file it was parsed from.
+     * A commit that changes the file (written from Studio or pulled from a remote) changes its object id, so the
+     * entry is reloaded on the next access.
+     */
+    protected final Map<String, CachedSiteConfig> siteConfigCache = new ConcurrentHashMap<String, CachedSiteConfig>();
+    protected final Map<String, Object> siteConfigLoadLocks = new ConcurrentHashMap<String, Object>();
+
+    protected final LongAdder siteConfigCacheHits = new LongAdder();
+    protected final LongAdder siteConfigCacheMisses = new LongAdder();
+    protected final LongAdder siteConfigCacheReloads = new LongAdder();
+
     protected SiteConfigTO getSiteConfig(final String site) {
-        return loadConfiguration(site);
+        String objectId = contentRepository.getContentObjectId(site, getSiteConfigFilePath(site));
+        CachedSiteConfig cached = siteConfigCache.get(site);
+        if (cached != null && StringUtils.equals(cached.objectId, objectId)) {
+            siteConfigCacheHits.increment();
+            return cached.siteConfig;
+        }
+
+        // Only one thread parses the configuration of a site, the others wait and use its result
+        synchronized (siteConfigLoadLocks.computeIfAbsent(site, k -> new Object())) {
+            cached = siteConfigCache.get(site);
+            if (cached != null && StringUtils.equals(cached.objectId, objectId)) {
+                siteConfigCacheHits.increment();
+                return cached.siteConfig;
+            }
+            if (cached == null) {
+                siteConfigCacheMisses.increment();
+            } else {
+                siteConfigCacheReloads.increment();
+            }
+            SiteConfigTO siteConfig = loadConfiguration(site);
+            siteConfigCache.put(site, new CachedSiteConfig(objectId, siteConfig));
+            return siteConfig;
+        }
     }
 
     @Override
@@ -265,7 +303,7 @@ public class ServicesConfigImpl implements ServicesConfig {
          Document document = null;
          SiteConfigTO siteConfig = null;
          try {
-             document = contentService.getContentAsDocument(site, siteConfigPath + FILE_SEPARATOR +  getConfigFileName());
+             document = contentService.getContentAsDocument(site, getSiteConfigFilePath(site));
          } catch (DocumentException e) {
              LOGGER.error("Error while loading configuration for " + site + " at " + siteConfigPath, e);
          }
@@ -310,7 +348,7 @@ public class ServicesConfigImpl implements ServicesConfig {
 	 * get a list of string values
 	 *
 	 * @param nodes
-	 * @return a list of string values
+	 * @return an unmodifiable list of string values, the site configuration is cached and shared
 	 */
 	protected List<String> getStringList(List<Node> nodes) {
 		List<String> items = null;
@@ -322,7 +360,7 @@ public class ServicesConfigImpl implements ServicesConfig {
 		} else {
 			items = new ArrayList<String>(0);
 		}
-		return items;
+		return Collections.unmodifiableList(items);
 	}
 
 
@@ -347,6 +385,8 @@ public class ServicesConfigImpl implements ServicesConfig {
                                 patterns.add(pattern);
                             }
                         }
+                        // The site configuration is cached and shared, callers must not change its patterns
+                        patterns = Collections.unmodifiableList(patterns);
                         if (patternKey.equals(PATTERN_PAGE)) {
                             repo.setPagePatterns(patterns);
                         } else if (patternKey.equals(PATTERN_COMPONENT)) {
@@ -393,7 +433,7 @@ public class ServicesConfigImpl implements ServicesConfig {
                 folderConfig.setAttachRootPrefix(ContentFormatUtils.getBooleanValue(folderNode.valueOf(ATTR_ATTACH_ROOT_PREFIX)));
                 folders.add(folderConfig);
             }
-            repo.setFolders(folders);
+            repo.setFolders(Collections.unmodifiableList(folders));
         } else {
             LOGGER.warn(site.getName() + " does not have any folder configuration.");
         }
@@ -409,6 +449,68 @@ public class ServicesConfigImpl implements ServicesConfig {
         return null;
     }
 
+    @Override
+    @ValidateParams
+    public PatternSet getPagePatternSet(@ValidateStringParam(name = "site") String site) {
+        return getPatternSet(site, RepositoryConfigTO::getPagePatternSet);
+    }
+
+    @Override
+    @ValidateParams
+    public PatternSet getComponentPatternSet(@ValidateStringParam(name = "site") String site) {
+        return getPatternSet(site, RepositoryConfigTO::getComponentPatternSet);
+    }
+
+    @Override
+    @ValidateParams
+    public PatternSet getAssetPatternSet(@ValidateStringParam(name = "site") String site) {
+        return getPatternSet(site, RepositoryConfigTO::getAssetPatternSet);
+    }
+
+    @Override
+    @ValidateParams
+    public PatternSet getDocumentPatternSet(@ValidateStringParam(name = "site") String site) {
+        return getPatternSet(site, RepositoryConfigTO::getDocumentPatternSet);
+    }
+
+    @Override
+    @ValidateParams
+    public PatternSet getRenderingTemplatePatternSet(@ValidateStringParam(name = "site") String site) {
+        return getPatternSet(site, RepositoryConfigTO::getRenderingTemplatePatternSet);
+    }
+
+    @Override
+    @ValidateParams
+    public PatternSet getScriptsPatternSet(@ValidateStringParam(name = "site") String site) {
+        return getPatternSet(site, RepositoryConfigTO::getScriptsPatternSet);
+    }
+
+    @Override
+    @ValidateParams
+    public PatternSet getLevelDescriptorPatternSet(@ValidateStringParam(name = "site") String site) {
+        return getPatternSet(site, RepositoryConfigTO::getLevelDescriptorPatternSet);
+    }
+
+    @Override
+    @ValidateParams
+    public PatternSet getDisplayInWidgetPathPatternSet(@ValidateStringParam(name = "site") String site) {
+        return getPatternSet(site, RepositoryConfigTO::getDisplayPatternSet);
+    }
+
+    @Override
+    @ValidateParams
+    public PatternSet getPreviewableMimetypesPatternSet(@ValidateStringParam(name = "site") String site) {
+        return getPatternSet(site, RepositoryConfigTO::getPreviewableMimetypesPatternSet);
+    }
+
+    protected PatternSet getPatternSet(String site, Function<RepositoryConfigTO, PatternSet> patternSetGetter) {
+        SiteConfigTO config = getSiteConfig(site);
+        if (config != null && config.getRepositoryConfig() != null) {
+            return patternSetGetter.apply(config.getRepositoryConfig());
+        }
+        return PatternSet.EMPTY;
+    }
+
     public String getConfigPath() {
         return studioConfiguration.getProperty(CONFIGURATION_SITE_CONFIG_BASE_PATH);
     }
@@ -417,10 +519,26 @@ public class ServicesConfigImpl implements ServicesConfig {
         return studioConfiguration.getProperty(CONFIGURATION_SITE_GENERAL_CONFIG_FILE_NAME);
     }
 
+    protected String getSiteConfigFilePath(String site) {
+        return getConfigPath().replaceFirst(StudioConstants.PATTERN_SITE, site) + FILE_SEPARATOR +
+                getConfigFileName();
+    }
+
     @Override
     @ValidateParams
     public void reloadConfiguration(@ValidateStringParam(name = "site") String site) {
-        SiteConfigTO config = loadConfiguration(site);
+        siteConfigCache.remove(site);
+        getSiteConfig(site);
+    }
+
+    @Override
+    public Map<String, Object> getSiteConfigCacheStatistics() {
+        Map<String, Object> toRet = new LinkedHashMap<String, Object>();
+        toRet.put("size", siteConfigCache.size());
+        toRet.put("hits", siteConfigCacheHits.sum());
+        toRet.put("misses", siteConfigCacheMisses.sum());
+        toRet.put("reloads", siteConfigCacheReloads.sum());
+        return toRet;
     }
 
     public void setContentService(ContentService contentService) {
@@ -448,4 +566,15 @@ public class ServicesConfigImpl implements ServicesConfig {
 
     protected GeneralLockService generalLockService;
     protected StudioConfiguration studioConfiguration;
+
+    protected static class CachedSiteConfig {
+
+        final String objectId;
+        final SiteConfigTO siteConfig;
+
+        CachedSiteConfig(String objectId, SiteConfigTO siteConfig) {
+            this.objectId = objectId;
+            this.siteConfig = siteConfig;
+        }
+    }
 }
@@ -27,10 +27,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -113,6 +115,8 @@ import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARAT
 import static org.craftercms.studio.api.v1.ebus.EBusConstants.EVENT_PREVIEW_SYNC;
 import static org.craftercms.studio.api.v1.service.objectstate.TransitionEvent.SAVE;
 import static org.craftercms.studio.api.v1.service.objectstate.TransitionEvent.SAVE_FOR_PREVIEW;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.OBJECT_STATE_BULK_OPERATIONS_BATCH_SIZE;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_VERSION_HISTORY_MAX_ITEMS;
 
 /**
  * Content Services that other services may use
@@ -1360,16 +1364,16 @@ public class ContentServiceImpl implements ContentService {
 
         logger.debug("Populating page props '{}'", contentPath);
         item.setLevelDescriptor(item.name.equals(servicesConfig.getLevelDescriptorName(site)));
-        item.page = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getPagePatterns(site));
+        item.page = servicesConfig.getPagePatternSet(site).matches(item.getUri());
         item.isPage = item.page;
         item.previewable = item.page;               // TODO: SJ: This and item below are duplicated due to UI issues
         item.isPreviewable = item.previewable;      // TODO: SJ: Fix this in 3.1+
-        item.component = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getComponentPatterns(site)) ||
+        item.component = servicesConfig.getComponentPatternSet(site).matches(item.getUri()) ||
                 item.isLevelDescriptor();
         item.isComponent = item.component;
-        item.asset = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getAssetPatterns(site));
+        item.asset = servicesConfig.getAssetPatternSet(site).matches(item.getUri());
         item.isAsset = item.asset;
-        item.document = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getDocumentPatterns(site));
+        item.document = servicesConfig.getDocumentPatternSet(site).matches(item.getUri());
         item.isDocument = item.document;
 
         item.uri = contentPath;
@@ -1474,7 +1478,7 @@ public class ContentServiceImpl implements ContentService {
         }
     }
 
-    protected ContentItemTO populateItemChildren(ContentItemTO item, int depth) {
+    protected ContentItemTO populateItemChildren(ContentItemTO item, int depth, List<ContentItemTO> loadedItems) {
         // TODO: SJ: Refactor  in 3.1+
         String contentPath = item.uri;
 
@@ -1516,10 +1520,10 @@ public class ContentServiceImpl implements ContentService {
                             if (childPath.startsWith(FILE_SEPARATOR + "site" + FILE_SEPARATOR + "website" +
                                     FILE_SEPARATOR) && childRepoItems[j].isFolder &&
                                     contentExists(item.site,childPath + FILE_SEPARATOR + DmConstants.INDEX_FILE )) {
-                                children.add(getContentItem(item.site, childPath + FILE_SEPARATOR +
-                                        DmConstants.INDEX_FILE, depth - 1));
+                                children.add(buildContentItem(item.site, childPath + FILE_SEPARATOR +
+                                        DmConstants.INDEX_FILE, depth - 1, loadedItems));
                             } else {
-                                children.add(getContentItem(item.site, childPath, depth - 1));
+                                children.add(buildContentItem(item.site, childPath, depth - 1, loadedItems));
                             }
                         }
                     }
@@ -1580,43 +1584,113 @@ public class ContentServiceImpl implements ContentService {
     public ContentItemTO getContentItem(@ValidateStringParam(name = "site") String site,
                                         @ValidateSecurePathParam(name = "path") String path,
                                         @ValidateIntegerParam(name = "depth") int depth) {
-        ContentItemTO item = null;
         logger.debug("Getting content item for site '{}' path '{}' depth '{}'", site, path, depth);
 
         DebugUtils.addDebugStack(logger);
         long startTime = System.currentTimeMillis();
 
+        List<ContentItemTO> loadedItems = new ArrayList<ContentItemTO>();
+        ContentItemTO item = buildContentItem(site, path, depth, loadedItems);
+        populateItemsStatus(site, loadedItems);
+
+        long executionTime = System.currentTimeMillis() - startTime;
+        logger.debug("Content item from site '{}' path '{}' retrieved in '{}' milli-seconds",
+                site, path, executionTime);
+        return item;
+    }
+
+    @Override
+    @ValidateParams
+    public List<ContentItemTO> getContentItems(@ValidateStringParam(name = "site") String site, List<String> paths,
+                                               @ValidateIntegerParam(name = "depth") int depth) {
+        logger.debug("Getting {} content items for site '{}' depth '{}'", paths.size(), site, depth);
+        long startTime = System.currentTimeMillis();
+
+        List<ContentItemTO> items = new ArrayList<ContentItemTO>(paths.size());
+        List<ContentItemTO> loadedItems = new ArrayList<ContentItemTO>();
+        for (String path : paths) {
+            items.add(buildContentItem(site, path, depth, loadedItems));
+        }
+        populateItemsStatus(site, loadedItems);
+
+        long executionTime = System.currentTimeMillis() - startTime;
+        logger.debug("{} content items from site '{}' retrieved in '{}' milli-seconds", paths.size(), site,
+                executionTime);
+        return items;
+    }
+
+    /**
+     * Build an item and its children from the repository, leaving the lock and workflow status to
+     * {@link #populateItemsStatus(String, List)} so it can be loaded for all of them at once
+     *
+     * @param loadedItems existing items built, to populate their status later
+     */
+    protected ContentItemTO buildContentItem(String site, String path, int depth, List<ContentItemTO> loadedItems) {
+        ContentItemTO item = null;
         try {
             if (contentExists(site, path)) {
-                // get item from cache
                 item = loadContentItem(site, path);
 
                 if (depth != 0) {
-                    item = populateItemChildren(item, depth);
+                    item = populateItemChildren(item, depth, loadedItems);
                 }
+                loadedItems.add(item);
+            } else {
+                item = createDummyDmContentItemForDeletedNode(site, path);
+            }
+        }
+        catch(Exception err) {
+            logger.debug("error constructing item for object at site '{}' path '{}'", err, site, path);
+        }
+        return item;
+    }
+
+    /**
+     * Populate the lock and workflow status of items, loading the metadata and states in batches
+     */
+    protected void populateItemsStatus(String site, List<ContentItemTO> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        List<String> uris = new ArrayList<String>(items.size());
+        for (ContentItemTO item : items) {
+            uris.add(item.getUri());
+        }
+        // Paths are compared ignoring case, same as the database does
+        Map<String, ItemMetadata> metadata = new TreeMap<String, ItemMetadata>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, ItemState> states = new TreeMap<String, ItemState>(String.CASE_INSENSITIVE_ORDER);
+        try {
+            int batchSize = Integer.parseInt(studioConfiguration.getProperty(OBJECT_STATE_BULK_OPERATIONS_BATCH_SIZE));
+            for (List<String> batch : ListUtils.partition(uris, batchSize)) {
+                metadata.putAll(objectMetadataManager.getProperties(site, batch));
+                states.putAll(objectStateService.getObjectStates(site, batch));
+            }
+        } catch (Exception err) {
+            logger.debug("error loading status of content items for site '{}'", err, site);
+            return;
+        }
+
+        for (ContentItemTO item : items) {
+            try {
+                // The maps are keyed by the paths stored in the database, which are normalized
+                String cleanUri =
+                        StringUtils.defaultString(FilenameUtils.normalize(item.getUri(), true), item.getUri());
 
                 // POPULATE LOCK STATUS
-                populateMetadata(site, item);
+                populateMetadata(item, metadata.get(cleanUri));
 
                 // POPULATE WORKFLOW STATUS
                 if (!item.isFolder() || item.isContainer()) {
-                    populateWorkflowProperties(site, item);
+                    populateWorkflowProperties(site, item, states.get(cleanUri));
                 } else {
                     item.setNew(!objectStateService.isFolderLive(site, item.getUri()));
                     item.isNew = item.isNew();
                 }
-            } else {
-                item = createDummyDmContentItemForDeletedNode(site, path);
+            } catch (Exception err) {
+                logger.debug("error constructing item for object at site '{}' path '{}'", err, site,
+                        item.getUri());
             }
         }
-        catch(Exception err) {
-            logger.debug("error constructing item for object at site '{}' path '{}'", err, site, path);
-        }
-
-        long executionTime = System.currentTimeMillis() - startTime;
-        logger.debug("Content item from site '{}' path '{}' retrieved in '{}' milli-seconds",
-                site, path, executionTime);
-        return item;
     }
 
     protected ContentItemTO loadContentItem(String site, String path) {
@@ -1632,18 +1706,18 @@ public class ContentServiceImpl implements ContentService {
             }
         } else {
             item.setLevelDescriptor(item.name.equals(servicesConfig.getLevelDescriptorName(site)));
-            item.page = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getPagePatterns(site));
+            item.page = servicesConfig.getPagePatternSet(site).matches(item.getUri());
             item.isPage = item.page;
             item.previewable = item.page;
             item.isPreviewable = item.previewable;
-            item.asset = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getAssetPatterns(site)) ||
-                    ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getRenderingTemplatePatterns(site)) ||
-                    ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getScriptsPatterns(site));
+            item.asset = servicesConfig.getAssetPatternSet(site).matches(item.getUri()) ||
+                    servicesConfig.getRenderingTemplatePatternSet(site).matches(item.getUri()) ||
+                    servicesConfig.getScriptsPatternSet(site).matches(item.getUri());
             item.isAsset = item.asset;
-            item.component = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getComponentPatterns(site)) ||
+            item.component = servicesConfig.getComponentPatternSet(site).matches(item.getUri()) ||
                     item.isLevelDescriptor() || item.asset;
             item.isComponent = item.component;
-            item.document = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getDocumentPatterns(site));
+            item.document = servicesConfig.getDocumentPatternSet(site).matches(item.getUri());
             item.isDocument = item.document;
             item.browserUri =item.getUri();
             item.setContentType(getContentTypeClass(site, path));
@@ -1677,8 +1751,7 @@ public class ContentServiceImpl implements ContentService {
                 MimetypesFileTypeMap mimeTypesMap = new MimetypesFileTypeMap();
                 String mimeType = mimeTypesMap.getContentType(item.getName());
                 if (mimeType != null && !StringUtils.isEmpty(mimeType)) {
-                    item.setPreviewable(ContentUtils.matchesPatterns(mimeType, servicesConfig
-                            .getPreviewableMimetypesPaterns(site)));
+                    item.setPreviewable(servicesConfig.getPreviewableMimetypesPatternSet(site).matches(mimeType));
                     item.isPreviewable = item.previewable;
                 }
             }
@@ -1686,8 +1759,7 @@ public class ContentServiceImpl implements ContentService {
         // TODO CodeRev:but what if the config is null?
     }
 
-    protected void populateWorkflowProperties(String site, ContentItemTO item) {
-        ItemState state = objectStateService.getObjectState(site, item.getUri(), false);
+    protected void populateWorkflowProperties(String site, ContentItemTO item, ItemState state) {
         if (state != null) {
             if (item.isFolder()) {
                 boolean liveFolder = objectStateService.isFolderLive(site, item.getUri());
@@ -1720,14 +1792,7 @@ public class ContentServiceImpl implements ContentService {
         }
     }
 
-    protected void populateMetadata(String site, ContentItemTO item) {
-        // TODO: SJ: Refactor to return a ContentItemTO instead of changing the parameter
-        // TODO: SJ: Change method name to be getContentItemMetadata or similar
-        // TODO: SJ: 3.1+
-
-        // TODO: SJ: Create a method String getValueIfNotNull(String) to use to return not null/empty string if null
-        // TODO: SJ: Use that method to reduce redundant code here. 3.1+
-        ItemMetadata metadata = objectMetadataManager.getProperties(site, item.getUri());
+    protected void populateMetadata(ContentItemTO item, ItemMetadata metadata) {
         if (metadata != null) {
             // Set the lock owner to empty string if we get a null to not confuse the UI, or set it to what's in the
             // database if it's not null
@@ -1823,6 +1888,42 @@ public class ContentServiceImpl implements ContentService {
         return _contentRepository.getContentVersionHistory(site, path);
     }
 
+    @Override
+    @ValidateParams
+    public Map<String, VersionTO[]> getContentItemsVersionHistory(@ValidateStringParam(name = "site") String site,
+                                                                  List<String> paths, int maxVersions) {
+        // Parameter validation only covers single parameters, check every path like the single item variant does
+        if (maxVersions < 1) {
+            throw new IllegalArgumentException("maxVersions must be greater than 0, got " + maxVersions);
+        }
+        int maxItems = Integer.parseInt(studioConfiguration.getProperty(REPO_VERSION_HISTORY_MAX_ITEMS));
+        if (paths == null || paths.size() > maxItems) {
+            throw new IllegalArgumentException("Between 0 and " + maxItems + " paths are allowed, got " +
+                    (paths == null ? null : paths.size()));
+        }
+        for (String path : paths) {
+            if (!isSecurePath(path)) {
+                throw new IllegalArgumentException("Invalid path " + path);
+            }
+        }
+        return _contentRepository.getContentVersionHistory(site, paths, maxVersions);
+    }
+
+    /**
+     * A secure path is not blank and can not climb out of the site with ".." segments
+     */
+    protected boolean isSecurePath(String path) {
+        if (StringUtils.isBlank(path) || path.indexOf('\0') >= 0) {
+            return false;
+        }
+        for (String segment : StringUtils.split(path, "/\\")) {
+            if (segment.equals("..")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     @ValidateParams
     public boolean revertContentItem(@ValidateStringParam(name = "site") String site,
@@ -1967,16 +2068,16 @@ public class ContentServiceImpl implements ContentService {
     @ValidateParams
     public String getContentTypeClass(@ValidateStringParam(name = "site") String site, String uri) {
         // TODO: SJ: This reads: if can't guess what it is, it's a page. This is to be replaced in 3.1+
-        if (matchesPatterns(uri, servicesConfig.getPagePatterns(site))) {
+        if (servicesConfig.getPagePatternSet(site).matches(uri)) {
             return CONTENT_TYPE_PAGE;
-        } else if (matchesPatterns(uri, servicesConfig.getComponentPatterns(site)) ||
+        } else if (servicesConfig.getComponentPatternSet(site).matches(uri) ||
                 uri.endsWith(FILE_SEPARATOR + servicesConfig.getLevelDescriptorName(site))) {
             return CONTENT_TYPE_COMPONENT;
-        } else if (matchesPatterns(uri, servicesConfig.getDocumentPatterns(site))) {
+        } else if (servicesConfig.getDocumentPatternSet(site).matches(uri)) {
             return CONTENT_TYPE_DOCUMENT;
-        } else if (matchesPatterns(uri, servicesConfig.getAssetPatterns(site))) {
+        } else if (servicesConfig.getAssetPatternSet(site).matches(uri)) {
             return CONTENT_TYPE_ASSET;
-        } else if (matchesPatterns(uri, servicesConfig.getRenderingTemplatePatterns(site))) {
+        } else if (servicesConfig.getRenderingTemplatePatternSet(site).matches(uri)) {
             return CONTENT_TYPE_RENDERING_TEMPLATE;
         } else if (StringUtils.startsWith(uri, contentTypeService.getConfigPath())) {
             return CONTENT_TYPE_CONTENT_TYPE;
@@ -1985,14 +2086,7 @@ public class ContentServiceImpl implements ContentService {
     }
 
     protected boolean matchesPatterns(String uri, List<String> patterns) {
-        if (patterns != null) {
-            for (String pattern : patterns) {
-                if (uri.matches(pattern)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return ContentUtils.matchesPatterns(uri, patterns);
     }
 
     @Override
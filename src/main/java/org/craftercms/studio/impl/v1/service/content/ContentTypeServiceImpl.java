@@ -23,14 +23,12 @@ import org.apache.commons.lang3.StringUtils;
 import org.craftercms.commons.validation.annotations.param.ValidateParams;
 import org.craftercms.commons.validation.annotations.param.ValidateSecurePathParam;
 import org.craftercms.commons.validation.annotations.param.ValidateStringParam;
-import org.craftercms.studio.api.v1.constant.StudioConstants;
 import org.craftercms.studio.api.v1.constant.DmConstants;
 import org.craftercms.studio.api.v1.exception.ContentNotFoundException;
 import org.craftercms.studio.api.v1.exception.ServiceException;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
 import org.craftercms.studio.api.v1.repository.ContentRepository;
-import org.craftercms.studio.api.v1.repository.RepositoryItem;
 import org.craftercms.studio.api.v1.service.configuration.ContentTypesConfig;
 import org.craftercms.studio.api.v1.service.configuration.ServicesConfig;
 import org.craftercms.studio.api.v1.service.content.ContentService;
@@ -43,7 +41,6 @@ import org.dom4j.DocumentException;
 
 import java.util.*;
 
-import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATION_SITE_CONTENT_TYPES_CONFIG_BASE_PATH;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATION_SITE_CONTENT_TYPES_CONFIG_FILE_NAME;
 
@@ -199,70 +196,13 @@ public class ContentTypeServiceImpl implements ContentTypeService {
     }
 
     protected List<ContentTypeConfigTO> getAllContentTypes(String site) {
-        String contentTypesRootPath = getConfigPath().replaceAll(StudioConstants.PATTERN_SITE, site);
-
-        RepositoryItem[] folders = contentRepository.getContentChildren(site, contentTypesRootPath);
-        List<ContentTypeConfigTO> contentTypes = new ArrayList<>();
-
-        if (folders != null) {
-            for (int i = 0; i < folders.length; i++) {
-                String configPath = folders[i].path + FILE_SEPARATOR + folders[i].name + FILE_SEPARATOR + getConfigFileName();
-                if (contentService.contentExists(site, configPath)) {
-                    ContentTypeConfigTO config = contentTypesConfig.reloadConfiguration(site, configPath.replace(contentTypesRootPath, "").replace(FILE_SEPARATOR + getConfigFileName(), ""));
-                    if (config != null) {
-                        contentTypes.add(config);
-                    }
-                }
-
-                reloadContentTypeConfigForChildren(site, folders[i], contentTypes);
-            }
-        }
-        return contentTypes;
+        return contentTypesConfig.getContentTypes(site);
     }
 
     @Override
     @ValidateParams
     public void reloadConfiguration(@ValidateStringParam(name = "site") String site) {
-        String contentTypesRootPath = getConfigPath().replaceAll(StudioConstants.PATTERN_SITE, site);
-        RepositoryItem[] folders = contentRepository.getContentChildren(site, contentTypesRootPath);
-        List<ContentTypeConfigTO> contentTypes = new ArrayList<>();
-
-        if (folders != null) {
-            for (int i = 0; i < folders.length; i++) {
-                String configPath = folders[i].path + FILE_SEPARATOR + folders[i].name + FILE_SEPARATOR + getConfigFileName();
-                if (contentService.contentExists(site, configPath)) {
-                    ContentTypeConfigTO config = contentTypesConfig.reloadConfiguration(site, configPath.replace(contentTypesRootPath, "").replace(FILE_SEPARATOR + getConfigFileName(), ""));
-                    if (config != null) {
-                        contentTypes.add(config);
-                    }
-                }
-
-                reloadContentTypeConfigForChildren(site, folders[i], contentTypes);
-            }
-        }
-    }
-
-    protected void reloadContentTypeConfigForChildren(String site, RepositoryItem node, List<ContentTypeConfigTO> contentTypes) {
-        String contentTypesRootPath = getConfigPath().replaceAll(StudioConstants.PATTERN_SITE, site);
-        String fullPath = node.path + FILE_SEPARATOR + node.name;
-        logger.debug("Get Content Type Config fot Children path = {0}", fullPath );
-        RepositoryItem[] folders = contentRepository.getContentChildren(site, fullPath);
-        if (folders != null) {
-            for (int i = 0; i < folders.length; i++) {
-                if (folders[i].isFolder) {
-                    String configPath = folders[i].path + FILE_SEPARATOR + folders[i].name + FILE_SEPARATOR + getConfigFileName();
-                    if (contentService.contentExists(site, configPath)) {
-                        ContentTypeConfigTO config = contentTypesConfig.reloadConfiguration(site, configPath.replace(contentTypesRootPath, "").replace(FILE_SEPARATOR + getConfigFileName(), ""));
-                        if (config != null) {
-                            contentTypes.add(config);
-                        }
-                    }
-                    // traverse the children file-folder structure
-
-                    reloadContentTypeConfigForChildren(site, folders[i], contentTypes);
-                }
-            }
-        }
+        contentTypesConfig.reloadConfiguration(site);
     }
 
     public String getConfigPath() {
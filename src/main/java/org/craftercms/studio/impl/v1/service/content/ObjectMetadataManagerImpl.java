@@ -30,9 +30,11 @@ import org.craftercms.studio.api.v1.service.content.ObjectMetadataManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 public class ObjectMetadataManagerImpl implements ObjectMetadataManager {
 
@@ -91,6 +93,27 @@ public class ObjectMetadataManagerImpl implements ObjectMetadataManager {
         return itemMetadataMapper.getProperties(params);
     }
 
+    @Override
+    @ValidateParams
+    public Map<String, ItemMetadata> getProperties(@ValidateStringParam(name = "site") String site,
+                                                   List<String> paths) {
+        Map<String, ItemMetadata> toRet = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (paths == null || paths.isEmpty()) {
+            return toRet;
+        }
+        List<String> cleanPaths = new ArrayList<>();
+        for (String path : paths) {
+            cleanPaths.add(FilenameUtils.normalize(path, true));
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("site", site);
+        params.put("paths", cleanPaths);
+        for (ItemMetadata metadata : itemMetadataMapper.getPropertiesForSiteAndPaths(params)) {
+            toRet.put(metadata.getPath(), metadata);
+        }
+        return toRet;
+    }
+
     @Override
     @ValidateParams
     public boolean metadataExist(@ValidateStringParam(name = "site") String site, @ValidateSecurePathParam(name = "path") String path) {
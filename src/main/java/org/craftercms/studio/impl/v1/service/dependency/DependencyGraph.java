@@ -0,0 +1,266 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.dependency;
+
+import org.craftercms.studio.api.v1.dal.DependencyEntity;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Dependencies of a site kept in memory, indexed both ways: from an item to the items it depends on and from an item
+ * to the items that depend on it. It mirrors the rows of the dependency table (the type of the dependency is not
+ * kept) and has to be updated with every change made to them.
+ */
+public class DependencyGraph {
+
+    private final Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> dependants = new HashMap<String, Set<String>>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int edges = 0;
+
+    /**
+     * Build the graph of a site out of all its dependency rows
+     */
+    public DependencyGraph(Collection<DependencyEntity> entities) {
+        for (DependencyEntity entity : entities) {
+            addEdge(entity.getSourcePath(), entity.getTargetPath());
+        }
+    }
+
+    /**
+     * Replace the dependencies of some items, same as deleting the rows of those sources and inserting the new ones
+     *
+     * @param sources items whose dependencies were deleted
+     * @param entities rows inserted
+     */
+    public void replaceDependencies(Collection<String> sources, Collection<DependencyEntity> entities) {
+        lock.writeLock().lock();
+        try {
+            for (String source : sources) {
+                Set<String> targets = dependencies.remove(source);
+                if (targets != null) {
+                    for (String target : targets) {
+                        removeFrom(dependants, target, source);
+                    }
+                    edges -= targets.size();
+                }
+            }
+            for (DependencyEntity entity : entities) {
+                addEdge(entity.getSourcePath(), entity.getTargetPath());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove every dependency from or to an item
+     */
+    public void removePath(String path) {
+        lock.writeLock().lock();
+        try {
+            Set<String> targets = dependencies.remove(path);
+            if (targets != null) {
+                for (String target : targets) {
+                    removeFrom(dependants, target, path);
+                }
+                edges -= targets.size();
+            }
+            Set<String> sources = dependants.remove(path);
+            if (sources != null) {
+                for (String source : sources) {
+                    removeFrom(dependencies, source, path);
+                }
+                edges -= sources.size();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Move every dependency from or to an item to a new path
+     */
+    public void movePath(String oldPath, String newPath) {
+        lock.writeLock().lock();
+        try {
+            Set<String> targets = dependencies.remove(oldPath);
+            if (targets != null) {
+                for (String target : targets) {
+                    removeFrom(dependants, target, oldPath);
+                }
+                edges -= targets.size();
+            }
+            Set<String> sources = dependants.remove(oldPath);
+            if (sources != null) {
+                for (String source : sources) {
+                    removeFrom(dependencies, source, oldPath);
+                }
+                edges -= sources.size();
+            }
+            if (targets != null) {
+                for (String target : targets) {
+                    addEdge(newPath, target.equals(oldPath) ? newPath : target);
+                }
+            }
+            if (sources != null) {
+                for (String source : sources) {
+                    addEdge(source, newPath);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the items the given items depend on, following the dependencies of the dependencies
+     *
+     * @param paths items to start from
+     * @param depth levels to follow, -1 for no limit
+     * @param filter dependencies to include and follow, null for all
+     * @return dependencies found
+     */
+    public Set<String> getDependencies(Collection<String> paths, int depth, Predicate<String> filter) {
+        lock.readLock().lock();
+        try {
+            return traverse(paths, depth, level -> getAdjacent(dependencies, level, filter));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the items depending on the given items, following the items depending on those
+     *
+     * @param paths items to start from
+     * @param depth levels to follow, -1 for no limit
+     * @return items depending on them
+     */
+    public Set<String> getDependants(Collection<String> paths, int depth) {
+        lock.readLock().lock();
+        try {
+            return traverse(paths, depth, level -> getAdjacent(dependants, level, null));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the direct dependencies of each of the given items
+     *
+     * @return dependencies by item, items without dependencies are left out
+     */
+    public Map<String, Set<String>> getDirectDependencies(Collection<String> paths) {
+        Map<String, Set<String>> toRet = new HashMap<String, Set<String>>();
+        lock.readLock().lock();
+        try {
+            for (String path : paths) {
+                Set<String> targets = dependencies.get(path);
+                if (targets != null) {
+                    toRet.put(path, new HashSet<String>(targets));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return toRet;
+    }
+
+    /**
+     * @return number of distinct dependencies
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return edges;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Breadth first traversal that visits every item once, so cycles end it
+     *
+     * @param paths items to start from
+     * @param depth levels to follow, -1 for no limit
+     * @param step gets the items adjacent to a level
+     * @return items reached, the start items are only included if they are reached again
+     */
+    public static Set<String> traverse(Collection<String> paths, int depth,
+                                       Function<Set<String>, Collection<String>> step) {
+        Set<String> toRet = new LinkedHashSet<String>();
+        Set<String> visited = new HashSet<String>(paths);
+        Set<String> level = new HashSet<String>(paths);
+        int d = depth;
+        while (!level.isEmpty() && (depth < 0 || d-- > 0)) {
+            Set<String> next = new HashSet<String>();
+            for (String path : step.apply(level)) {
+                toRet.add(path);
+                if (visited.add(path)) {
+                    next.add(path);
+                }
+            }
+            level = next;
+        }
+        return toRet;
+    }
+
+    private static Set<String> getAdjacent(Map<String, Set<String>> index, Set<String> level,
+                                           Predicate<String> filter) {
+        Set<String> toRet = new HashSet<String>();
+        for (String path : level) {
+            Set<String> adjacent = index.get(path);
+            if (adjacent != null) {
+                for (String other : adjacent) {
+                    if (filter == null || filter.test(other)) {
+                        toRet.add(other);
+                    }
+                }
+            }
+        }
+        return toRet;
+    }
+
+    private void addEdge(String source, String target) {
+        if (dependencies.computeIfAbsent(source, k -> new HashSet<String>()).add(target)) {
+            dependants.computeIfAbsent(target, k -> new HashSet<String>()).add(source);
+            edges++;
+        }
+    }
+
+    private static void removeFrom(Map<String, Set<String>> index, String key, String value) {
+        Set<String> values = index.get(key);
+        if (values != null) {
+            values.remove(value);
+            if (values.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+}
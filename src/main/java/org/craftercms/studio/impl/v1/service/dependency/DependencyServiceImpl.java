@@ -21,8 +21,10 @@ package org.craftercms.studio.impl.v1.service.dependency;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.craftercms.studio.api.v1.constant.StudioConstants;
+import org.craftercms.studio.api.v1.dal.DatabaseDialect;
 import org.craftercms.studio.api.v1.dal.DependencyEntity;
 import org.craftercms.studio.api.v1.dal.DependencyMapper;
+import org.craftercms.studio.api.v1.dal.ItemState;
 import org.craftercms.studio.api.v1.dal.ItemStateMapper;
 import org.craftercms.studio.api.v1.exception.ContentNotFoundException;
 import org.craftercms.studio.api.v1.exception.ServiceException;
@@ -49,15 +51,24 @@ import org.springframework.transaction.support.DefaultTransactionDefinition;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
 import static org.craftercms.studio.api.v1.constant.StudioConstants.INDEX_FILE;
+import static org.craftercms.studio.api.v1.dal.DependencyMapper.DEPTH_PARAM;
 import static org.craftercms.studio.api.v1.dal.DependencyMapper.EDITED_STATES_PARAM;
 import static org.craftercms.studio.api.v1.dal.DependencyMapper.NEW_PATH_PARAM;
 import static org.craftercms.studio.api.v1.dal.DependencyMapper.NEW_STATES_PARAM;
@@ -70,6 +81,7 @@ import static org.craftercms.studio.api.v1.dal.DependencyMapper.SITE_PARAM;
 import static org.craftercms.studio.api.v1.dal.DependencyMapper.SORUCE_PATH_COLUMN_NAME;
 import static org.craftercms.studio.api.v1.dal.DependencyMapper.TARGET_PATH_COLUMN_NAME;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATION_DEPENDENCY_ITEM_SPECIFIC_PATTERNS;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.DEPENDENCIES_GRAPH_ENABLED;
 
 public class DependencyServiceImpl implements DependencyService {
 
@@ -87,6 +99,10 @@ public class DependencyServiceImpl implements DependencyService {
     protected ObjectMetadataManager objectMetadataManager;
     protected ContentRepository contentRepository;
     protected ServicesConfig servicesConfig;
+    protected DatabaseDialect databaseDialect;
+
+    protected final Map<String, DependencyGraph> dependencyGraphs = new ConcurrentHashMap<String, DependencyGraph>();
+    protected final Map<String, AtomicLong> dependencyGraphVersions = new ConcurrentHashMap<String, AtomicLong>();
 
     @Override
     public Set<String> upsertDependencies(String site, String path)
@@ -120,6 +136,8 @@ public class DependencyServiceImpl implements DependencyService {
                 transactionManager.rollback(txStatus);
                 throw new ServiceException("Failed to upsert dependencies for site: " + site + " path: " + path, e);
             }
+            updateDependencyGraph(site,
+                    graph -> graph.replaceDependencies(Collections.singletonList(path), dependencyEntities));
 
         }
         return toRet;
@@ -128,22 +146,39 @@ public class DependencyServiceImpl implements DependencyService {
     @Override
     public Set<String> upsertDependencies(String site, List<String> paths)
             throws SiteNotFoundException, ContentNotFoundException, ServiceException {
+        Map<String, Map<String, Set<String>>> dependencies = new LinkedHashMap<String, Map<String, Set<String>>>();
+        logger.debug("Resolving dependencies for list of paths.");
+        for (String path : paths) {
+            dependencies.put(path, resolveDependencies(site, path));
+        }
+        return upsertDependencies(site, dependencies);
+    }
+
+    @Override
+    public Map<String, Set<String>> resolveDependencies(String site, String path) {
+        logger.debug("Resolving dependencies for content site: " + site + " path: " + path);
+        return dependencyResolver.resolve(site, path);
+    }
+
+    @Override
+    public Set<String> upsertDependencies(String site, Map<String, Map<String, Set<String>>> dependencies)
+            throws ServiceException {
         Set<String> toRet = new HashSet<String>();
         List<DependencyEntity> dependencyEntities = new ArrayList<>();
         StringBuilder sbPaths = new StringBuilder();
-        logger.debug("Resolving dependencies for list of paths.");
-        for (String path : paths) {
+        for (Map.Entry<String, Map<String, Set<String>>> entry : dependencies.entrySet()) {
+            String path = entry.getKey();
             sbPaths.append("\n").append(path);
-            logger.debug("Resolving dependencies for content site: " + site + " path: " + path);
-            Map<String, Set<String>> dependencies = dependencyResolver.resolve(site, path);
-            if (dependencies != null) {
-                logger.debug("Found " + dependencies.size() + " dependencies. " +
+            if (entry.getValue() != null) {
+                logger.debug("Found " + entry.getValue().size() + " dependencies. " +
                         "Create entities to insert into database.");
-                for (String type : dependencies.keySet()) {
-                    dependencyEntities.addAll(createDependencyEntities(site, path, dependencies.get(type), type, toRet));
+                for (String type : entry.getValue().keySet()) {
+                    dependencyEntities.addAll(createDependencyEntities(site, path, entry.getValue().get(type), type,
+                            toRet));
                 }
             }
         }
+        List<String> paths = new ArrayList<String>(dependencies.keySet());
         logger.debug("Preparing transaction for database updates.");
         DefaultTransactionDefinition defaultTransactionDefinition = new DefaultTransactionDefinition();
         defaultTransactionDefinition.setName("upsertDependencies");
@@ -164,6 +199,7 @@ public class DependencyServiceImpl implements DependencyService {
             throw new ServiceException("Failed to upsert dependencies for site: " + site + " paths: " +
                     sbPaths.toString(), e);
         }
+        updateDependencyGraph(site, graph -> graph.replaceDependencies(paths, dependencyEntities));
 
         return toRet;
     }
@@ -225,8 +261,12 @@ public class DependencyServiceImpl implements DependencyService {
         logger.debug("Get all publishing dependencies");
         pathsParams.addAll(paths);
         boolean exitCondition = false;
+        Function<Set<String>, List<Map<String, String>>> step = getPublishingDependenciesStep(site, pathsParams);
         do {
-            List<String> deps = getPublishingDependenciesForListFromDB(site, pathsParams);
+            List<String> deps = new ArrayList<String>();
+            for (Map<String, String> d : step.apply(pathsParams)) {
+                deps.add(d.get(TARGET_PATH_COLUMN_NAME));
+            }
             exitCondition = !toRet.addAll(deps);
             pathsParams.clear();
             pathsParams.addAll(deps);
@@ -235,17 +275,6 @@ public class DependencyServiceImpl implements DependencyService {
         return toRet;
     }
 
-    private List<String> getPublishingDependenciesForListFromDB(String site, Set<String> paths) {
-        Map<String, Object> params = new HashMap<String, Object>();
-        params.put(SITE_PARAM, site);
-        params.put(PATHS_PARAM, paths);
-        params.put(REGEX_PARAM, getItemSpecificDependenciesPatterns());
-        Collection<State> onlyEditStates = CollectionUtils.removeAll(State.CHANGE_SET_STATES, State.NEW_STATES);
-        params.put(EDITED_STATES_PARAM, onlyEditStates);
-        params.put(NEW_STATES_PARAM, State.NEW_STATES);
-        return dependencyMapper.getPublishingDependenciesForList(params);
-    }
-
     @Override
     public Set<String> getItemSpecificDependencies(String site, String path, int depth)
             throws SiteNotFoundException, ContentNotFoundException, ServiceException {
@@ -259,28 +288,23 @@ public class DependencyServiceImpl implements DependencyService {
             throw new ContentNotFoundException();
         }
 
-        Set<String> toRet = new HashSet<String>();
-        Set<String> paths = new HashSet<String>();
-        boolean exitCondition = false;
-        paths.add(path);
-        if (depth < 0) {
-            do {
-                List<String> deps = getItemSpecificDependenciesFromDB(site, paths);
-                exitCondition = !toRet.addAll(deps);
-                paths.clear();
-                paths.addAll(deps);
-            } while (!exitCondition);
-        } else {
-            int d = depth;
-            while (d-- > 0) {
-                List<String> deps = getItemSpecificDependenciesFromDB(site, paths);
-                exitCondition = !toRet.addAll(deps);
-                paths.clear();
-                paths.addAll(deps);
-                if (exitCondition) break;
-            }
+        DependencyGraph graph = getDependencyGraph(site);
+        if (graph != null) {
+            return graph.getDependencies(Collections.singletonList(path), depth, getItemSpecificDependenciesFilter());
         }
-        return toRet;
+        if (isRecursiveQueriesEnabled()) {
+            return getDependenciesClosureFromDB(site, path, depth, getItemSpecificDependenciesPatterns());
+        }
+        return DependencyGraph.traverse(Collections.singletonList(path), depth,
+                level -> getItemSpecificDependenciesFromDB(site, level));
+    }
+
+    private Collection<String> getItemSpecificDependencies(String site, Set<String> paths) {
+        DependencyGraph graph = getDependencyGraph(site);
+        if (graph != null) {
+            return graph.getDependencies(paths, 1, getItemSpecificDependenciesFilter());
+        }
+        return getItemSpecificDependenciesFromDB(site, paths);
     }
 
     private List<String> getItemSpecificDependenciesFromDB(String site, Set<String> paths) {
@@ -309,26 +333,23 @@ public class DependencyServiceImpl implements DependencyService {
 
         logger.debug("Get dependency items for content " + path + " for site " + site);
 
-        Set<String> toRet = new HashSet<String>();
-        Set<String> paths = new HashSet<String>();
-        paths.add(path);
-        boolean exitCondition;
-        if (depth < 0) {
-            do {
-                List<String> deps = getItemDependenciesFromDB(site, paths);
-                exitCondition = !toRet.addAll(deps);
-                paths.clear();
-                paths.addAll(deps);
-            } while (!exitCondition);
-        } else {
-            int d = depth;
-            while (d-- > 0) {
-                List<String> deps = getItemDependenciesFromDB(site, paths);
-                exitCondition = !toRet.addAll(deps);
-                if (exitCondition) break;
-            }
+        DependencyGraph graph = getDependencyGraph(site);
+        if (graph != null) {
+            return graph.getDependencies(Collections.singletonList(path), depth, null);
         }
-        return toRet;
+        if (isRecursiveQueriesEnabled()) {
+            return getDependenciesClosureFromDB(site, path, depth, null);
+        }
+        return DependencyGraph.traverse(Collections.singletonList(path), depth,
+                level -> getItemDependenciesFromDB(site, level));
+    }
+
+    private Collection<String> getItemDependencies(String site, Set<String> paths) {
+        DependencyGraph graph = getDependencyGraph(site);
+        if (graph != null) {
+            return graph.getDependencies(paths, 1, null);
+        }
+        return getItemDependenciesFromDB(site, paths);
     }
 
     private List<String> getItemDependenciesFromDB(String site, Set<String> paths) {
@@ -355,27 +376,45 @@ public class DependencyServiceImpl implements DependencyService {
         }
 
         logger.debug("Get items depending on content " + path + " for site " + site);
-        Set<String> toRet = new HashSet<String>();
-        Set<String> paths = new HashSet<String>();
-        paths.add(path);
-        if (depth < 0) {
-            do {
-                List<String> deps = getItemsDependingOnFromDB(site, paths);
-                toRet.addAll(deps);
-                paths.clear();
-                paths.addAll(deps);
-            } while (!CollectionUtils.isNotEmpty(paths));
-        } else {
-            int d = depth;
-            while (d-- > 0) {
-                List<String> deps = getItemsDependingOnFromDB(site, paths);
-                toRet.addAll(deps);
-                paths.clear();
-                paths.addAll(deps);
+        DependencyGraph graph = getDependencyGraph(site);
+        if (graph != null) {
+            return graph.getDependants(Collections.singletonList(path), depth);
+        }
+        if (isRecursiveQueriesEnabled()) {
+            if (depth == 0) {
+                return new HashSet<String>();
             }
+            return new HashSet<String>(dependencyMapper.getItemsDependingOnClosure(getClosureParams(site, path,
+                    depth)));
         }
+        return DependencyGraph.traverse(Collections.singletonList(path), depth,
+                level -> getItemsDependingOnFromDB(site, level));
+    }
+
+    /**
+     * Same items {@link DependencyGraph#traverse(Collection, int, Function)} reaches, in a single recursive query
+     *
+     * @param regex patterns the dependencies have to match to be included and followed, null for all
+     */
+    private Set<String> getDependenciesClosureFromDB(String site, String path, int depth, List<String> regex) {
+        if (depth == 0) {
+            return new HashSet<String>();
+        }
+        Map<String, Object> params = getClosureParams(site, path, depth);
+        params.put(REGEX_PARAM, regex);
+        return new HashSet<String>(dependencyMapper.getDependenciesClosure(params));
+    }
 
-        return toRet;
+    private Map<String, Object> getClosureParams(String site, String path, int depth) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(SITE_PARAM, site);
+        params.put(PATHS_PARAM, Collections.singletonList(path));
+        params.put(DEPTH_PARAM, depth < 0 ? -1 : depth);
+        return params;
+    }
+
+    protected boolean isRecursiveQueriesEnabled() {
+        return databaseDialect != null && databaseDialect.isRecursiveQueriesEnabled();
     }
 
     private List<String> getItemsDependingOnFromDB(String site, Set<String> paths) {
@@ -405,7 +444,20 @@ public class DependencyServiceImpl implements DependencyService {
         params.put(SITE_ID_PARAM, site);
         params.put(OLD_PATH_PARAM, oldPath);
         params.put(NEW_PATH_PARAM, newPath);
-        dependencyMapper.moveDependency(params);
+        DefaultTransactionDefinition defaultTransactionDefinition = new DefaultTransactionDefinition();
+        defaultTransactionDefinition.setName("moveDependencies");
+        TransactionStatus txStatus = transactionManager.getTransaction(defaultTransactionDefinition);
+        try {
+            // Separate updates so each one can use the index of its column
+            dependencyMapper.moveSourceDependencies(params);
+            dependencyMapper.moveTargetDependencies(params);
+            transactionManager.commit(txStatus);
+        } catch (Exception e) {
+            transactionManager.rollback(txStatus);
+            throw new ServiceException("Failed to move dependencies for site: " + site + " from path: " + oldPath +
+                    " to path: " + newPath, e);
+        }
+        updateDependencyGraph(site, graph -> graph.movePath(oldPath, newPath));
 
         return getItemDependencies(site, newPath, 1);
     }
@@ -421,7 +473,18 @@ public class DependencyServiceImpl implements DependencyService {
         Map<String, String> params = new HashMap<String, String>();
         params.put(SITE_PARAM, site);
         params.put(PATH_PARAM, path);
-        dependencyMapper.deleteDependenciesForSiteAndPath(params);
+        DefaultTransactionDefinition defaultTransactionDefinition = new DefaultTransactionDefinition();
+        defaultTransactionDefinition.setName("deleteItemDependencies");
+        TransactionStatus txStatus = transactionManager.getTransaction(defaultTransactionDefinition);
+        try {
+            dependencyMapper.deleteAllSourceDependencies(params);
+            dependencyMapper.deleteDependenciesForSiteAndTargetPath(params);
+            transactionManager.commit(txStatus);
+        } catch (Exception e) {
+            transactionManager.rollback(txStatus);
+            throw new ServiceException("Failed to delete dependencies for site: " + site + " path: " + path, e);
+        }
+        updateDependencyGraph(site, graph -> graph.removePath(path));
     }
 
     @Override
@@ -430,6 +493,16 @@ public class DependencyServiceImpl implements DependencyService {
         Map<String, String> params = new HashMap<String, String>();
         params.put(SITE_PARAM, site);
         dependencyMapper.deleteDependenciesForSite(params);
+        invalidateSiteDependencies(site);
+    }
+
+    @Override
+    public void invalidateSiteDependencies(String site) {
+        AtomicLong version = getDependencyGraphVersion(site);
+        synchronized (version) {
+            version.incrementAndGet();
+            dependencyGraphs.remove(site);
+        }
     }
 
     @Override
@@ -488,7 +561,7 @@ public class DependencyServiceImpl implements DependencyService {
         depsSource.addAll(children);
         Set<String> dependencies = getContentTypeFilteredDeleteDependencies(site, depsSource);
         toRet.addAll(dependencies);
-        List<String> itemSpecificcDeps = getItemSpecificDependenciesFromDB(site, depsSource);
+        Collection<String> itemSpecificcDeps = getItemSpecificDependencies(site, depsSource);
         toRet.addAll(itemSpecificcDeps);
         boolean doItAgain = false;
 
@@ -510,7 +583,7 @@ public class DependencyServiceImpl implements DependencyService {
 
     private Set<String> getContentTypeFilteredDeleteDependencies(String site, Set<String> paths) {
         Set<String> toRet = new HashSet<String>();
-        List<String> deps = getItemDependenciesFromDB(site, paths);
+        Collection<String> deps = getItemDependencies(site, paths);
         for (String dep : deps) {
             ContentItemTO item = contentService.getContentItem(site, dep, 0);
             List<DeleteDependencyConfigTO> deleteDependencyConfigList =
@@ -559,6 +632,24 @@ public class DependencyServiceImpl implements DependencyService {
         return itemSpecificDependenciesPatterns;
     }
 
+    /**
+     * Same check the database does with RLIKE on the target path, case insensitive like the table collation
+     */
+    protected Predicate<String> getItemSpecificDependenciesFilter() {
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String regex : getItemSpecificDependenciesPatterns()) {
+            patterns.add(Pattern.compile(regex, Pattern.CASE_INSENSITIVE));
+        }
+        return path -> {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(path).find()) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
     @Override
     public Map<String, List<CalculateDependenciesEntityTO>> calculateDependencies(String site, List<String> paths)
             throws ServiceException {
@@ -617,8 +708,9 @@ public class DependencyServiceImpl implements DependencyService {
                 }
             }
         }
+        Function<Set<String>, List<Map<String, String>>> step = getPublishingDependenciesStep(site, pathsParams);
         do {
-            List<Map<String, String>> deps = calculatePublishingDependenciesForListFromDB(site, pathsParams);
+            List<Map<String, String>> deps = step.apply(pathsParams);
             List<String> targetPaths = new ArrayList<String>();
             for (Map<String, String> d : deps) {
                 String srcPath = d.get(SORUCE_PATH_COLUMN_NAME);
@@ -670,7 +762,50 @@ public class DependencyServiceImpl implements DependencyService {
         return possibleParents;
     }
 
+    /**
+     * Choose how each level of publishing dependencies is found: from the graph, from the closure of the paths
+     * loaded with a single recursive query, or with one query per level
+     *
+     * @param paths items the traversal starts from
+     * @return function giving the source_path/target_path rows of the dependencies of a level
+     */
+    private Function<Set<String>, List<Map<String, String>>> getPublishingDependenciesStep(String site,
+                                                                                          Set<String> paths) {
+        DependencyGraph graph = getDependencyGraph(site);
+        if (graph != null) {
+            Map<String, String> itemStates = new HashMap<String, String>();
+            return level -> calculatePublishingDependenciesFromGraph(site, graph, level, itemStates);
+        }
+        if (isRecursiveQueriesEnabled()) {
+            Map<String, List<Map<String, String>>> closure = new HashMap<String, List<Map<String, String>>>();
+            for (Map<String, String> row : calculatePublishingDependenciesClosureFromDB(site, paths)) {
+                closure.computeIfAbsent(row.get(SORUCE_PATH_COLUMN_NAME), k -> new ArrayList<Map<String, String>>())
+                        .add(row);
+            }
+            return level -> {
+                List<Map<String, String>> rows = new ArrayList<Map<String, String>>();
+                for (String path : level) {
+                    rows.addAll(closure.getOrDefault(path, Collections.emptyList()));
+                }
+                return rows;
+            };
+        }
+        return level -> calculatePublishingDependenciesForListFromDB(site, level);
+    }
+
     private List<Map<String, String>> calculatePublishingDependenciesForListFromDB(String site, Set<String> paths) {
+        return dependencyMapper.calculatePublishingDependenciesForList(getPublishingDependenciesParams(site, paths));
+    }
+
+    /**
+     * Same rows as {@link #calculatePublishingDependenciesForListFromDB(String, Set)} for every item reachable from
+     * the given ones
+     */
+    private List<Map<String, String>> calculatePublishingDependenciesClosureFromDB(String site, Set<String> paths) {
+        return dependencyMapper.calculatePublishingDependenciesClosure(getPublishingDependenciesParams(site, paths));
+    }
+
+    private Map<String, Object> getPublishingDependenciesParams(String site, Set<String> paths) {
         Map<String, Object> params = new HashMap<String, Object>();
         params.put(SITE_PARAM, site);
         params.put(PATHS_PARAM, paths);
@@ -678,7 +813,111 @@ public class DependencyServiceImpl implements DependencyService {
         Collection<State> onlyEditStates = CollectionUtils.removeAll(State.CHANGE_SET_STATES, State.NEW_STATES);
         params.put(EDITED_STATES_PARAM, onlyEditStates);
         params.put(NEW_STATES_PARAM, State.NEW_STATES);
-        return dependencyMapper.calculatePublishingDependenciesForList(params);
+        return params;
+    }
+
+    /**
+     * Same rows as {@link #calculatePublishingDependenciesForListFromDB(String, Set)}, taking the dependencies from
+     * the graph and loading only the states of the targets not seen before
+     *
+     * @param itemStates states already loaded, a null state means the item has none
+     */
+    private List<Map<String, String>> calculatePublishingDependenciesFromGraph(String site, DependencyGraph graph,
+                                                                            Set<String> paths,
+                                                                            Map<String, String> itemStates) {
+        Map<String, Set<String>> dependencies = graph.getDirectDependencies(paths);
+        Set<String> unknownStates = new HashSet<String>();
+        for (Set<String> targets : dependencies.values()) {
+            for (String target : targets) {
+                if (!itemStates.containsKey(target)) {
+                    unknownStates.add(target);
+                }
+            }
+        }
+        if (!unknownStates.isEmpty()) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put(ItemStateMapper.SITE_PARAM, site);
+            params.put(PATHS_PARAM, unknownStates);
+            for (ItemState itemState : itemStateMapper.getObjectStateForSiteAndPaths(params)) {
+                itemStates.put(itemState.getPath(), itemState.getState());
+            }
+            for (String target : unknownStates) {
+                itemStates.putIfAbsent(target, null);
+            }
+        }
+
+        Set<String> newStates = new HashSet<String>();
+        for (State state : State.NEW_STATES) {
+            newStates.add(state.name());
+        }
+        Set<String> editedStates = new HashSet<String>();
+        for (State state : CollectionUtils.removeAll(State.CHANGE_SET_STATES, State.NEW_STATES)) {
+            editedStates.add(state.name());
+        }
+        Predicate<String> itemSpecific = getItemSpecificDependenciesFilter();
+
+        List<Map<String, String>> toRet = new ArrayList<Map<String, String>>();
+        for (Map.Entry<String, Set<String>> dependency : dependencies.entrySet()) {
+            for (String target : dependency.getValue()) {
+                String state = itemStates.get(target);
+                if (state != null && (newStates.contains(state) ||
+                        (editedStates.contains(state) && itemSpecific.test(target)))) {
+                    Map<String, String> row = new HashMap<String, String>();
+                    row.put(SORUCE_PATH_COLUMN_NAME, dependency.getKey());
+                    row.put(TARGET_PATH_COLUMN_NAME, target);
+                    toRet.add(row);
+                }
+            }
+        }
+        return toRet;
+    }
+
+    /**
+     * Get the in memory graph of a site, loading it from the database if needed
+     *
+     * @return graph, null if it is disabled or the dependencies changed while it was being loaded
+     */
+    protected DependencyGraph getDependencyGraph(String site) {
+        if (!Boolean.parseBoolean(studioConfiguration.getProperty(DEPENDENCIES_GRAPH_ENABLED))) {
+            return null;
+        }
+        DependencyGraph graph = dependencyGraphs.get(site);
+        if (graph == null) {
+            AtomicLong version = getDependencyGraphVersion(site);
+            long loadedVersion = version.get();
+            logger.debug("Loading dependency graph for site: " + site);
+            Map<String, String> params = new HashMap<String, String>();
+            params.put(SITE_PARAM, site);
+            DependencyGraph loaded = new DependencyGraph(dependencyMapper.getDependenciesForSite(params));
+            synchronized (version) {
+                if (version.get() != loadedVersion) {
+                    logger.debug("Dependencies for site " + site + " changed while loading the graph, " +
+                            "using the database");
+                    return null;
+                }
+                graph = dependencyGraphs.computeIfAbsent(site, s -> loaded);
+            }
+            logger.debug("Loaded dependency graph for site: " + site + " with " + graph.size() + " dependencies");
+        }
+        return graph;
+    }
+
+    /**
+     * Apply a change already committed to the database to the graph of the site, if it is loaded
+     */
+    protected void updateDependencyGraph(String site, Consumer<DependencyGraph> update) {
+        AtomicLong version = getDependencyGraphVersion(site);
+        synchronized (version) {
+            version.incrementAndGet();
+            DependencyGraph graph = dependencyGraphs.get(site);
+            if (graph != null) {
+                update.accept(graph);
+            }
+        }
+    }
+
+    private AtomicLong getDependencyGraphVersion(String site) {
+        return dependencyGraphVersions.computeIfAbsent(site, s -> new AtomicLong());
     }
 
     public StudioConfiguration getStudioConfiguration() {
@@ -744,4 +983,12 @@ public class DependencyServiceImpl implements DependencyService {
     public void setServicesConfig(ServicesConfig servicesConfig) {
         this.servicesConfig = servicesConfig;
     }
+
+    public DatabaseDialect getDatabaseDialect() {
+        return databaseDialect;
+    }
+
+    public void setDatabaseDialect(DatabaseDialect databaseDialect) {
+        this.databaseDialect = databaseDialect;
+    }
 }
@@ -19,27 +19,44 @@
 package org.craftercms.studio.impl.v1.service.dependency;
 
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.craftercms.studio.api.v1.constant.StudioConstants;
+import org.craftercms.studio.api.v1.exception.ContentNotFoundException;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.repository.ContentRepository;
 import org.craftercms.studio.api.v1.service.content.ContentService;
 import org.craftercms.studio.api.v1.service.dependency.DependencyResolver;
 import org.craftercms.studio.api.v1.to.DependencyResolverConfigTO;
+import org.craftercms.studio.api.v1.util.PatternSet;
 import org.craftercms.studio.api.v1.util.StudioConfiguration;
-import org.craftercms.studio.impl.v1.util.ContentUtils;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.Element;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.
@@ -54,61 +71,71 @@ public class RegexDependencyResolver implements DependencyResolver {
     private static final String PARENT_DEPENDENCY_TYPE = "parent";
 
     protected ContentService contentService;
+    protected ContentRepository contentRepository;
     protected StudioConfiguration studioConfiguration;
+    protected int bufferSize = 8192;
+
+    /** Compiled rules by site, tagged with the object id of the configuration they were compiled from */
+    protected final Map<String, CompiledConfig> compiledConfigs = new ConcurrentHashMap<String, CompiledConfig>();
+
+    protected final LongAdder resolveCount = new LongAdder();
+    protected final LongAdder configCompilations = new LongAdder();
+    protected final LongAdder existenceLookups = new LongAdder();
+    protected final LongAdder pathsChecked = new LongAdder();
 
     @Override
     public Map<String, Set<String>> resolve(String site, String path) {
         Map<String, Set<String>> toRet = new HashMap<String, Set<String>>();
-        DependencyResolverConfigTO config = getConfiguraion(site);
-        if (config != null) {
-            String content = contentService.getContentAsString(site, path);
-            if (content != null) {
-                Map<String, DependencyResolverConfigTO.ItemType> itemTypes = config.getItemTypes();
-                if (itemTypes != null) {
-                    for (Map.Entry<String, DependencyResolverConfigTO.ItemType> entry : itemTypes.entrySet()) {
-                        DependencyResolverConfigTO.ItemType itemType = entry.getValue();
-                        List<String> includes = itemType.getIncludes();
-                        if (ContentUtils.matchesPatterns(path, includes)) {
-                            Map<String, DependencyResolverConfigTO.DependencyType> dependencyTypes =
-                                    itemType.getDependencyTypes();
-                            for (Map.Entry<String, DependencyResolverConfigTO.DependencyType> dependencyTypeEntry :
-                                    dependencyTypes.entrySet()) {
-                                Set<String> extractedPaths = new HashSet<String>();
-                                DependencyResolverConfigTO.DependencyType dependencyType = dependencyTypeEntry.getValue();
-                                List<DependencyResolverConfigTO.DependencyExtractionPattern> extractionPatterns =
-                                        dependencyType.getIncludes();
-                                for (DependencyResolverConfigTO.DependencyExtractionPattern extractionPattern :
-                                        extractionPatterns) {
-                                    Pattern pattern = Pattern.compile(extractionPattern.getFindRegex());
-                                    Matcher matcher = pattern.matcher(content);
-                                    while (matcher.find()) {
-                                        String matchedPath = matcher.group();
-                                        if (CollectionUtils.isNotEmpty(extractionPattern.getTransforms())) {
-                                            for (DependencyResolverConfigTO.DependencyExtractionTransform transform :
-                                                    extractionPattern.getTransforms()) {
-                                                Pattern find = Pattern.compile(transform.getMatch());
-                                                Matcher replaceMatcher = find.matcher(matchedPath);
-                                                matchedPath = replaceMatcher.replaceAll(transform.getReplace());
-                                            }
-                                        }
-                                        if (contentService.contentExists(site, matchedPath)) {
-                                            extractedPaths.add(matchedPath);
-                                        } else {
-                                            String message = "Found reference to " + matchedPath + " in content at " +
-                                                    path + " but content does not exist in referenced path for site " +
-                                                    site + ".\n"
-                                                    + "Regular expression for extracting dependencies matched " +
-                                                    "string, and after applying transformation rules to get value " +
-                                                    "for dependency path, that dependency path was not found in" +
-                                                    " site repository as a content.";
-                                            logger.debug(message);
-                                        }
-                                    }
-                                }
-                                toRet.put(dependencyType.getName(), extractedPaths);
+        resolveCount.increment();
+        CompiledConfig config = getCompiledConfig(site);
+        if (config.itemTypes != null) {
+            // Same as before, the dependency types of a later item type replace the ones of an earlier item type
+            Map<String, DependencyTypeRules> dependencyTypes = new LinkedHashMap<String, DependencyTypeRules>();
+            for (ItemTypeRules itemType : config.itemTypes) {
+                if (itemType.includes.matches(path)) {
+                    for (DependencyTypeRules dependencyType : itemType.dependencyTypes) {
+                        dependencyTypes.put(dependencyType.name, dependencyType);
+                    }
+                }
+            }
+            if (dependencyTypes.isEmpty()) {
+                return toRet;
+            }
+
+            // Extract the candidate paths of every rule, then check they exist all at once
+            Map<ExtractionRule, Set<String>> candidates = extract(site, path, dependencyTypes.values());
+            if (candidates != null) {
+                Set<String> allCandidates = new HashSet<String>();
+                for (Set<String> matchedPaths : candidates.values()) {
+                    allCandidates.addAll(matchedPaths);
+                }
+                Set<String> existing = Collections.emptySet();
+                if (!allCandidates.isEmpty()) {
+                    existenceLookups.increment();
+                    pathsChecked.add(allCandidates.size());
+                    existing = contentRepository.getExistingContent(site, allCandidates);
+                }
+
+                for (DependencyTypeRules dependencyType : dependencyTypes.values()) {
+                    Set<String> extractedPaths = new HashSet<String>();
+                    for (ExtractionRule rule : dependencyType.rules) {
+                        for (String matchedPath : candidates.get(rule)) {
+                            if (existing.contains(matchedPath)) {
+                                extractedPaths.add(matchedPath);
+                                rule.resolved.increment();
+                            } else {
+                                String message = "Found reference to " + matchedPath + " in content at " +
+                                        path + " but content does not exist in referenced path for site " +
+                                        site + ".\n"
+                                        + "Regular expression for extracting dependencies matched " +
+                                        "string, and after applying transformation rules to get value " +
+                                        "for dependency path, that dependency path was not found in" +
+                                        " site repository as a content.";
+                                logger.debug(message);
                             }
                         }
                     }
+                    toRet.put(dependencyType.name, extractedPaths);
                 }
             } else {
                 logger.error("Failed to extract dependencies. Content not found for site: " + site + ", path: "
@@ -122,6 +149,118 @@ public class RegexDependencyResolver implements DependencyResolver {
         return toRet;
     }
 
+    /**
+     * Run the rules over the content while it is read from the repository, without loading it as a whole
+     *
+     * @return candidate paths found by each rule, null if the content can not be read
+     */
+    protected Map<ExtractionRule, Set<String>> extract(String site, String path,
+                                                       Collection<DependencyTypeRules> dependencyTypes) {
+        Map<ExtractionRule, Set<String>> toRet = new LinkedHashMap<ExtractionRule, Set<String>>();
+        List<ExtractionRule> rules = new ArrayList<ExtractionRule>();
+        List<SegmentedPattern.Scanner> scanners = new ArrayList<SegmentedPattern.Scanner>();
+        for (DependencyTypeRules dependencyType : dependencyTypes) {
+            for (ExtractionRule rule : dependencyType.rules) {
+                Set<String> matchedPaths = new LinkedHashSet<String>();
+                toRet.put(rule, matchedPaths);
+                rules.add(rule);
+                scanners.add(rule.newScanner(matchedPaths));
+            }
+        }
+
+        try (InputStream content = contentRepository.getContent(site, path)) {
+            if (content == null) {
+                return null;
+            }
+            // Decode the same way the content was read as a string
+            Reader reader = new InputStreamReader(content, Charset.defaultCharset());
+            char[] buffer = new char[bufferSize];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                for (int i = 0; i < rules.size(); i++) {
+                    rules.get(i).feed(scanners.get(i), buffer, read);
+                }
+            }
+            for (int i = 0; i < rules.size(); i++) {
+                rules.get(i).finish(scanners.get(i));
+            }
+        } catch (ContentNotFoundException | IOException e) {
+            logger.debug("Failed to read content for site: " + site + ", path: " + path, e);
+            return null;
+        }
+        return toRet;
+    }
+
+    /**
+     * Get the compiled rules of a site, compiling them again only if the configuration changed in the repository
+     */
+    protected CompiledConfig getCompiledConfig(String site) {
+        String objectId = contentRepository.getContentObjectId(site, getConfigLocation(site));
+        CompiledConfig compiled = compiledConfigs.get(site);
+        if (compiled == null || !StringUtils.equals(compiled.objectId, objectId)) {
+            configCompilations.increment();
+            compiled = compile(objectId, getConfiguraion(site));
+            compiledConfigs.put(site, compiled);
+        }
+        return compiled;
+    }
+
+    protected CompiledConfig compile(String objectId, DependencyResolverConfigTO config) {
+        if (config == null) {
+            return new CompiledConfig(objectId, null);
+        }
+        List<ItemTypeRules> itemTypes = new ArrayList<ItemTypeRules>();
+        if (config.getItemTypes() != null) {
+            for (Map.Entry<String, DependencyResolverConfigTO.ItemType> itemTypeEntry :
+                    config.getItemTypes().entrySet()) {
+                DependencyResolverConfigTO.ItemType itemType = itemTypeEntry.getValue();
+                List<DependencyTypeRules> dependencyTypes = new ArrayList<DependencyTypeRules>();
+                for (DependencyResolverConfigTO.DependencyType dependencyType :
+                        itemType.getDependencyTypes().values()) {
+                    List<ExtractionRule> rules = new ArrayList<ExtractionRule>();
+                    for (DependencyResolverConfigTO.DependencyExtractionPattern extractionPattern :
+                            dependencyType.getIncludes()) {
+                        try {
+                            rules.add(new ExtractionRule(itemTypeEntry.getKey(), dependencyType.getName(),
+                                    extractionPattern));
+                        } catch (PatternSyntaxException e) {
+                            logger.error("Invalid dependency resolver rule for item type " + itemTypeEntry.getKey() +
+                                    " and dependency type " + dependencyType.getName() + ", skipping the rule", e);
+                        }
+                    }
+                    dependencyTypes.add(new DependencyTypeRules(dependencyType.getName(), rules));
+                }
+                itemTypes.add(new ItemTypeRules(PatternSet.compile(itemType.getIncludes()), dependencyTypes));
+            }
+        }
+        return new CompiledConfig(objectId, itemTypes);
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> toRet = new LinkedHashMap<String, Object>();
+        toRet.put("resolves", resolveCount.sum());
+        toRet.put("configCompilations", configCompilations.sum());
+        toRet.put("existenceLookups", existenceLookups.sum());
+        toRet.put("pathsChecked", pathsChecked.sum());
+        Map<String, Object> sites = new TreeMap<String, Object>();
+        for (Map.Entry<String, CompiledConfig> entry : compiledConfigs.entrySet()) {
+            List<Map<String, Object>> rules = new ArrayList<Map<String, Object>>();
+            if (entry.getValue().itemTypes != null) {
+                for (ItemTypeRules itemType : entry.getValue().itemTypes) {
+                    for (DependencyTypeRules dependencyType : itemType.dependencyTypes) {
+                        for (ExtractionRule rule : dependencyType.rules) {
+                            rules.add(rule.getStatistics());
+                        }
+                    }
+                }
+            }
+            sites.put(entry.getKey(), rules);
+        }
+        toRet.put("sites", sites);
+        return toRet;
+    }
+
     @SuppressWarnings("unchecked")
     private DependencyResolverConfigTO getConfiguraion(String site) {
         DependencyResolverConfigTO config = null;
@@ -226,6 +365,22 @@ public class RegexDependencyResolver implements DependencyResolver {
         this.contentService = contentService;
     }
 
+    public ContentRepository getContentRepository() {
+        return contentRepository;
+    }
+
+    public void setContentRepository(ContentRepository contentRepository) {
+        this.contentRepository = contentRepository;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
     public StudioConfiguration getStudioConfiguration() {
         return studioConfiguration;
     }
@@ -233,4 +388,112 @@ public class RegexDependencyResolver implements DependencyResolver {
     public void setStudioConfiguration(StudioConfiguration studioConfiguration) {
         this.studioConfiguration = studioConfiguration;
     }
+
+    protected static class CompiledConfig {
+
+        final String objectId;
+        final List<ItemTypeRules> itemTypes;
+
+        CompiledConfig(String objectId, List<ItemTypeRules> itemTypes) {
+            this.objectId = objectId;
+            this.itemTypes = itemTypes;
+        }
+    }
+
+    protected static class ItemTypeRules {
+
+        final PatternSet includes;
+        final List<DependencyTypeRules> dependencyTypes;
+
+        ItemTypeRules(PatternSet includes, List<DependencyTypeRules> dependencyTypes) {
+            this.includes = includes;
+            this.dependencyTypes = dependencyTypes;
+        }
+    }
+
+    protected static class DependencyTypeRules {
+
+        final String name;
+        final List<ExtractionRule> rules;
+
+        DependencyTypeRules(String name, List<ExtractionRule> rules) {
+            this.name = name;
+            this.rules = rules;
+        }
+    }
+
+    /**
+     * A find regex with its transforms, compiled, and the counters of what it matched
+     */
+    protected static class ExtractionRule {
+
+        final String itemType;
+        final String dependencyType;
+        final SegmentedPattern find;
+        final List<Pattern> transformMatches = new ArrayList<Pattern>();
+        final List<String> transformReplacements = new ArrayList<String>();
+
+        final LongAdder evaluations = new LongAdder();
+        final LongAdder matches = new LongAdder();
+        final LongAdder resolved = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final AtomicInteger maxSegment = new AtomicInteger();
+
+        ExtractionRule(String itemType, String dependencyType,
+                       DependencyResolverConfigTO.DependencyExtractionPattern extractionPattern) {
+            this.itemType = itemType;
+            this.dependencyType = dependencyType;
+            this.find = new SegmentedPattern(Pattern.compile(extractionPattern.getFindRegex()));
+            if (CollectionUtils.isNotEmpty(extractionPattern.getTransforms())) {
+                for (DependencyResolverConfigTO.DependencyExtractionTransform transform :
+                        extractionPattern.getTransforms()) {
+                    transformMatches.add(Pattern.compile(transform.getMatch()));
+                    transformReplacements.add(transform.getReplace());
+                }
+            }
+        }
+
+        /**
+         * Create a scanner that applies the transforms to every match and adds the result to the given set
+         */
+        SegmentedPattern.Scanner newScanner(Set<String> matchedPaths) {
+            return find.newScanner(match -> {
+                String matchedPath = match;
+                for (int i = 0; i < transformMatches.size(); i++) {
+                    matchedPath = transformMatches.get(i).matcher(matchedPath)
+                            .replaceAll(transformReplacements.get(i));
+                }
+                matches.increment();
+                matchedPaths.add(matchedPath);
+            });
+        }
+
+        void feed(SegmentedPattern.Scanner scanner, char[] chars, int length) {
+            long start = System.nanoTime();
+            scanner.feed(chars, 0, length);
+            nanos.add(System.nanoTime() - start);
+        }
+
+        void finish(SegmentedPattern.Scanner scanner) {
+            long start = System.nanoTime();
+            scanner.finish();
+            nanos.add(System.nanoTime() - start);
+            evaluations.increment();
+            maxSegment.accumulateAndGet(scanner.getMaxPending(), Math::max);
+        }
+
+        Map<String, Object> getStatistics() {
+            Map<String, Object> toRet = new LinkedHashMap<String, Object>();
+            toRet.put("itemType", itemType);
+            toRet.put("dependencyType", dependencyType);
+            toRet.put("findRegex", find.getPattern().pattern());
+            toRet.put("separators", find.getSeparators());
+            toRet.put("evaluations", evaluations.sum());
+            toRet.put("matches", matches.sum());
+            toRet.put("resolved", resolved.sum());
+            toRet.put("timeMs", TimeUnit.NANOSECONDS.toMillis(nanos.sum()));
+            toRet.put("maxSegmentChars", maxSegment.get());
+            return toRet;
+        }
+    }
 }
@@ -0,0 +1,307 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.dependency;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A regex that can be run over a stream of characters, finding the same matches as {@link Matcher#find()} over the
+ * whole text without keeping the whole text in memory.
+ *
+ * The pattern is analyzed to find separators: characters that none of its atoms (literals, classes, escapes, dot) can
+ * match. No match can contain a separator, so the text is cut at every separator and each segment is searched on its
+ * own. The pattern must not look at the context of a match (anchors, word boundaries, lookarounds, back references or
+ * inline flags), otherwise it has no separators and the whole text is kept as a single segment, exactly like before.
+ *
+ * Memory is bounded by the longest run of text without a separator, e.g. {@code /site/components/([^<]+)\.xml} is cut
+ * at every {@code <}.
+ */
+public final class SegmentedPattern {
+
+    /** Characters tried as separators, the ones that delimit values in XML, HTML, CSS and scripts */
+    public static final String SEPARATOR_CANDIDATES = "<>\"'\n\r\t ";
+
+    private static final String UNSAFE_ESCAPES = "bBAGZzQEk123456789";
+
+    private final Pattern pattern;
+    private final String separators;
+
+    public SegmentedPattern(Pattern pattern) {
+        this.pattern = pattern;
+        this.separators = findSeparators(pattern.pattern(), SEPARATOR_CANDIDATES);
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return characters the text is cut at, empty if the pattern has to see the whole text
+     */
+    public String getSeparators() {
+        return separators;
+    }
+
+    /**
+     * Create a scanner for a new text
+     *
+     * @param onMatch receives every match, in the same order as {@link Matcher#find()}
+     * @return scanner
+     */
+    public Scanner newScanner(Consumer<String> onMatch) {
+        return new Scanner(onMatch);
+    }
+
+    /**
+     * Find which of the candidate characters can not be part of any match
+     *
+     * @param regex regular expression
+     * @param candidates candidate characters
+     * @return separators, empty if the regex is not supported
+     */
+    static String findSeparators(String regex, String candidates) {
+        List<String> atoms = getAtoms(regex);
+        if (atoms == null) {
+            return "";
+        }
+        List<Pattern> compiledAtoms = new ArrayList<Pattern>(atoms.size());
+        try {
+            for (String atom : atoms) {
+                compiledAtoms.add(Pattern.compile(atom));
+            }
+        } catch (PatternSyntaxException e) {
+            return "";
+        }
+
+        StringBuilder separators = new StringBuilder();
+        for (int i = 0; i < candidates.length(); i++) {
+            String candidate = String.valueOf(candidates.charAt(i));
+            boolean separator = true;
+            for (Pattern atom : compiledAtoms) {
+                if (atom.matcher(candidate).matches()) {
+                    separator = false;
+                    break;
+                }
+            }
+            if (separator) {
+                separators.append(candidates.charAt(i));
+            }
+        }
+        return separators.toString();
+    }
+
+    /**
+     * Split a regex into the atoms that consume characters, skipping groups, alternations and quantifiers
+     *
+     * @return atoms, null if the regex uses a construct that depends on the context of the match
+     */
+    private static List<String> getAtoms(String regex) {
+        List<String> atoms = new ArrayList<String>();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\':
+                    int escapeEnd = getEscapeEnd(regex, i);
+                    if (escapeEnd < 0) {
+                        return null;
+                    }
+                    atoms.add(regex.substring(i, escapeEnd));
+                    i = escapeEnd;
+                    break;
+                case '[':
+                    int classEnd = getClassEnd(regex, i);
+                    if (classEnd < 0) {
+                        return null;
+                    }
+                    atoms.add(regex.substring(i, classEnd));
+                    i = classEnd;
+                    break;
+                case '(':
+                    if (regex.startsWith("(?:", i)) {
+                        i += 3;
+                    } else if (regex.startsWith("(?", i)) {
+                        // Lookarounds, named groups and inline flags
+                        return null;
+                    } else {
+                        i++;
+                    }
+                    break;
+                case '{':
+                    int quantifierEnd = regex.indexOf('}', i);
+                    if (quantifierEnd < 0) {
+                        return null;
+                    }
+                    i = quantifierEnd + 1;
+                    break;
+                case ')':
+                case '|':
+                case '*':
+                case '+':
+                case '?':
+                    i++;
+                    break;
+                case '^':
+                case '$':
+                    return null;
+                default:
+                    int end = i + Character.charCount(regex.codePointAt(i));
+                    atoms.add(regex.substring(i, end));
+                    i = end;
+                    break;
+            }
+        }
+        return atoms;
+    }
+
+    private static int getEscapeEnd(String regex, int start) {
+        if (start + 1 >= regex.length()) {
+            return -1;
+        }
+        char c = regex.charAt(start + 1);
+        if (UNSAFE_ESCAPES.indexOf(c) >= 0) {
+            return -1;
+        }
+        if ((c == 'p' || c == 'P' || c == 'x') && start + 2 < regex.length() && regex.charAt(start + 2) == '{') {
+            int end = regex.indexOf('}', start);
+            return end < 0 ? -1 : end + 1;
+        }
+        switch (c) {
+            case 'p':
+            case 'P':
+            case 'c':
+                return Math.min(start + 3, regex.length());
+            case 'x':
+                return Math.min(start + 4, regex.length());
+            case 'u':
+                return Math.min(start + 6, regex.length());
+            case '0':
+                int end = start + 2;
+                int maxEnd = Math.min(start + 5, regex.length());
+                while (end < maxEnd && regex.charAt(end) >= '0' && regex.charAt(end) <= '7') {
+                    end++;
+                }
+                return end;
+            default:
+                return start + 1 + Character.charCount(regex.codePointAt(start + 1));
+        }
+    }
+
+    private static int getClassEnd(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+                    return -1;
+                }
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+                i++;
+                // A closing bracket right after the opening one (or its negation) is a literal
+                if (i < regex.length() && regex.charAt(i) == '^') {
+                    i++;
+                }
+                if (i < regex.length() && regex.charAt(i) == ']') {
+                    i++;
+                }
+                continue;
+            }
+            if (c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Receives the text in chunks and reports the matches of every complete segment
+     */
+    public final class Scanner {
+
+        private final Consumer<String> onMatch;
+        private final StringBuilder pending = new StringBuilder();
+        private final Matcher matcher = pattern.matcher("");
+        private int maxPending = 0;
+
+        private Scanner(Consumer<String> onMatch) {
+            this.onMatch = onMatch;
+        }
+
+        /**
+         * Feed the next chunk of the text
+         */
+        public void feed(char[] chars, int offset, int length) {
+            int segmentStart = offset;
+            int end = offset + length;
+            if (!separators.isEmpty()) {
+                for (int i = offset; i < end; i++) {
+                    if (separators.indexOf(chars[i]) >= 0) {
+                        if (pending.length() > 0) {
+                            pending.append(chars, segmentStart, i - segmentStart);
+                            find(pending);
+                            pending.setLength(0);
+                        } else {
+                            find(CharBuffer.wrap(chars, segmentStart, i - segmentStart));
+                        }
+                        segmentStart = i + 1;
+                    }
+                }
+            }
+            pending.append(chars, segmentStart, end - segmentStart);
+            maxPending = Math.max(maxPending, pending.length());
+        }
+
+        /**
+         * Search the last segment, must be called once the whole text was fed
+         */
+        public void finish() {
+            find(pending);
+            pending.setLength(0);
+        }
+
+        /**
+         * @return longest segment kept in memory, in characters
+         */
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        private void find(CharSequence segment) {
+            matcher.reset(segment);
+            while (matcher.find()) {
+                onMatch.accept(matcher.group());
+            }
+        }
+    }
+}
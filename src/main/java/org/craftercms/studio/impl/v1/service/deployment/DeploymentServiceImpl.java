@@ -392,6 +392,7 @@ public class DeploymentServiceImpl implements DeploymentService {
         Map<String, String> params = new HashMap<String, String>();
         params.put("site", site);
         publishRequestMapper.deleteDeploymentDataForSite(params);
+        deployContentToEnvironmentStoreJob.removeSite(site);
         signalWorkersToContinue();
     }
 
@@ -816,6 +817,33 @@ public class DeploymentServiceImpl implements DeploymentService {
         return deploymentHistoryProvider.getLastDeploymentDate(site, path);
     }
 
+    @Override
+    @ValidateParams
+    public Map<String, ZonedDateTime> getLastDeploymentDates(@ValidateStringParam(name = "site") String site,
+                                                             List<String> paths) {
+        return deploymentHistoryProvider.getLastDeploymentDates(site, paths);
+    }
+
+    @Override
+    @ValidateParams
+    public List<DeploymentSyncHistory> getPublishLog(@ValidateStringParam(name = "site") String site,
+                                                     @ValidateStringParam(name = "environment") String environment,
+                                                     @ValidateSecurePathParam(name = "path") String path,
+                                                     ZonedDateTime fromDate, ZonedDateTime toDate,
+                                                     @ValidateIntegerParam(name = "offset") int offset,
+                                                     @ValidateIntegerParam(name = "limit") int limit) {
+        return deploymentHistoryProvider.getPublishLog(site, environment, path, fromDate, toDate, offset, limit);
+    }
+
+    @Override
+    @ValidateParams
+    public int getPublishLogTotal(@ValidateStringParam(name = "site") String site,
+                                  @ValidateStringParam(name = "environment") String environment,
+                                  @ValidateSecurePathParam(name = "path") String path,
+                                  ZonedDateTime fromDate, ZonedDateTime toDate) {
+        return deploymentHistoryProvider.getPublishLogTotal(site, environment, path, fromDate, toDate);
+    }
+
     @Override
     @ValidateParams
     public boolean enablePublishing(@ValidateStringParam(name = "site") String site, boolean enabled)
@@ -291,7 +291,7 @@ public class PublishingManagerImpl implements PublishingManager {
 
         if (StringUtils.equals(item.getAction(), PublishRequest.Action.NEW) ||
                 StringUtils.equals(item.getAction(), PublishRequest.Action.MOVE)) {
-            if (ContentUtils.matchesPatterns(path, servicesConfig.getPagePatterns(site))) {
+            if (servicesConfig.getPagePatternSet(site).matches(path)) {
                 String helpPath = path.replace(FILE_SEPARATOR + getIndexFile(), "");
                 int idx = helpPath.lastIndexOf(FILE_SEPARATOR);
                 String parentPath = helpPath.substring(0, idx) + FILE_SEPARATOR + getIndexFile();
@@ -23,6 +23,7 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang3.StringUtils;
@@ -47,21 +48,32 @@ import org.craftercms.studio.impl.v1.job.RepositoryJob;
 
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.*;
 
+/**
+ * Publishes the items ready of every site.
+ *
+ * Every run queues the sites on the {@link PublishingWorkerPool}, which publishes up to
+ * {@code studio.job.deployContentToEnvironment.workers} sites at the same time and never the same site twice. A site
+ * publishes up to {@code processingChunkSize} items per environment in a turn, times its weight in
+ * {@code siteWeights}, and goes back to the end of the queue if it has more items ready.
+ */
 public class DeployContentToEnvironmentStore extends RepositoryJob {
 
     private static final Logger logger = LoggerFactory.getLogger(DeployContentToEnvironmentStore.class);
 
     protected static final ReentrantLock singleWorkerLock = new ReentrantLock();
 
-    private static boolean stopSignaled = false;
+    private static volatile boolean stopSignaled = false;
     private static boolean running = false;
+    private static final AtomicInteger activeTurns = new AtomicInteger();
+
+    protected PublishingWorkerPool workerPool;
 
     public static synchronized void signalToStop(boolean toStop) {
         stopSignaled = toStop;
     }
 
     public synchronized static boolean isRunning() {
-        return running;
+        return running || activeTurns.get() > 0;
     }
 
     public synchronized static void setRunning(boolean isRunning) {
@@ -89,78 +101,127 @@ public class DeployContentToEnvironmentStore extends RepositoryJob {
         try {
             Set<String> siteNames = siteService.getAllAvailableSites();
             if (siteNames != null && siteNames.size() > 0) {
+                PublishingWorkerPool pool = getWorkerPool();
                 for (String site : siteNames) {
-                    try {
-                        syncRepository(site);
-                    } catch (Exception e) {
-                        logger.error("Failed to sync database from repository for site " + site, e);
-                        siteService.enablePublishing(site, false);
-                    }
-                    if (siteService.isPublishingEnabled(site)) {
-                        if (!publishingManager.isPublishingBlocked(site)) {
-                            String statusMessage = StringUtils.EMPTY;
+                    // Sites still queued or publishing since the last run keep their place in the queue
+                    pool.submit(site);
+                }
+            }
+        } catch (Exception err) {
+            logger.error("Error while executing deployment to environment store", err);
+            notificationService.notifyDeploymentError("UNKNOWN", err);
+        }
+    }
+
+    /**
+     * Publish a turn of a site, run by the publishing workers
+     *
+     * @return true if the site has items ready left after its turn
+     */
+    protected boolean publishTurn(String site) {
+        activeTurns.incrementAndGet();
+        try {
+            if (stopSignaled || !isMasterPublishingNode()) {
+                return false;
+            }
+            return publishSite(site, getTurnSize(site));
+        } finally {
+            activeTurns.decrementAndGet();
+        }
+    }
+
+    /**
+     * Sync the database of a site with its repository and publish up to a number of the items ready on each of its
+     * environments
+     *
+     * @return true if an environment has items ready left
+     */
+    protected boolean publishSite(String site, int maxItems) {
+        boolean more = false;
+        try {
+            syncRepository(site);
+        } catch (Exception e) {
+            logger.error("Failed to sync database from repository for site " + site, e);
+            siteService.enablePublishing(site, false);
+        }
+        if (siteService.isPublishingEnabled(site)) {
+            if (!publishingManager.isPublishingBlocked(site)) {
+                String statusMessage = StringUtils.EMPTY;
+                try {
+                    Set<String> environments = getAllPublishingEnvironments(site);
+                    for (String environment : environments) {
+                        logger.debug("Processing content ready for deployment for site \"{0}\"", site);
+                        List<PublishRequest> itemsReady = publishingManager.getItemsReadyForDeployment(site, environment);
+                        List<PublishRequest> itemsToDeploy = getTurn(itemsReady, maxItems);
+                        more = more || (itemsReady != null && itemsToDeploy.size() < itemsReady.size());
+
+                        if (itemsToDeploy != null && itemsToDeploy.size() > 0) {
+                            logger.info("Starting publishing on environment " + environment + " for site " + site);
+                            logger.debug("Site \"{0}\" has {1} items ready for deployment", site, itemsToDeploy.size());
+
+                            String author = itemsToDeploy.get(0).getUser();
+                            StringBuilder sbComment = new StringBuilder();
+                            List<DeploymentItemTO> completeDeploymentItemList = new ArrayList<DeploymentItemTO>();
+                            Set<String> processedPaths = new HashSet<String>();
+                            SimpleDateFormat sdf = new SimpleDateFormat(StudioConstants.DATE_PATTERN_WORKFLOW_WITH_TZ);
+                            String messagePath = StringUtils.EMPTY;
                             try {
-                                Set<String> environments = getAllPublishingEnvironments(site);
-                                for (String environment : environments) {
-                                    logger.debug("Processing content ready for deployment for site \"{0}\"", site);
-                                    List<PublishRequest> itemsToDeploy = publishingManager.getItemsReadyForDeployment(site, environment);
-
-                                    if (itemsToDeploy != null && itemsToDeploy.size() > 0) {
-                                        logger.info("Starting publishing on environment " + environment + " for site " + site);
-                                        logger.debug("Site \"{0}\" has {1} items ready for deployment", site, itemsToDeploy.size());
-
-                                        String author = itemsToDeploy.get(0).getUser();
-                                        StringBuilder sbComment = new StringBuilder();
-                                        List<DeploymentItemTO> completeDeploymentItemList = new ArrayList<DeploymentItemTO>();
-                                        Set<String> processedPaths = new HashSet<String>();
-                                        SimpleDateFormat sdf = new SimpleDateFormat(StudioConstants.DATE_PATTERN_WORKFLOW_WITH_TZ);
-                                        String messagePath = StringUtils.EMPTY;
-                                        try {
-                                            logger.debug("Mark items as processing for site \"{0}\"", site);
-                                            for (PublishRequest item : itemsToDeploy) {
-                                                processPublishingRequest(site, environment, item, completeDeploymentItemList, processedPaths);
-                                            }
-                                            deploy(site, environment, completeDeploymentItemList, author, sbComment.toString());
-                                            publishingManager.markItemsCompleted(site, environment, itemsToDeploy);
-                                            logger.debug("Mark deployment completed for processed items for site \"{0}\"", site);
-                                            logger.info("Finished publishing environment " + environment + " for site " + site);
-                                        } catch (DeploymentException err) {
-                                            logger.error("Error while executing deployment to environment store for site \"{0}\", number of items \"{1}\"", err, site, itemsToDeploy.size());
-                                            publishingManager.markItemsReady(site, environment, itemsToDeploy);
-                                            siteService.enablePublishing(site, false);
-                                            statusMessage = studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_STOPPED_ERROR);
-                                            statusMessage = statusMessage.replace("{item_path}", messagePath).replace("{datetime}", ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern(sdf.toPattern())));
-                                            siteService.updatePublishingStatusMessage(site, statusMessage);
-                                            throw err;
-                                        } catch (Exception err){
-                                            logger.error("Unexpected error while executing deployment to environment " +
-                                                    "store for site \"{0}\", number of items \"{1}\"", err, site, itemsToDeploy.size());
-                                            publishingManager.markItemsReady(site, environment, itemsToDeploy);
-                                            siteService.enablePublishing(site, false);
-                                            statusMessage = studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_STOPPED_ERROR);
-                                            statusMessage = statusMessage.replace("{item_path}", messagePath).replace("{datetime}", ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern(sdf.toPattern())));
-                                            siteService.updatePublishingStatusMessage(site, statusMessage);
-                                            throw err;
-                                        }
-                                    }
+                                logger.debug("Mark items as processing for site \"{0}\"", site);
+                                for (PublishRequest item : itemsToDeploy) {
+                                    processPublishingRequest(site, environment, item, completeDeploymentItemList, processedPaths);
                                 }
-                            } catch (Exception err) {
-                                logger.error("Error while executing deployment to environment store for site: " + site, err);
-                                notificationService.notifyDeploymentError(site, err);
-                                logger.info("Continue executing deployment for other sites.");
+                                deploy(site, environment, completeDeploymentItemList, author, sbComment.toString());
+                                publishingManager.markItemsCompleted(site, environment, itemsToDeploy);
+                                logger.debug("Mark deployment completed for processed items for site \"{0}\"", site);
+                                logger.info("Finished publishing environment " + environment + " for site " + site);
+                            } catch (DeploymentException err) {
+                                logger.error("Error while executing deployment to environment store for site \"{0}\", number of items \"{1}\"", err, site, itemsToDeploy.size());
+                                publishingManager.markItemsReady(site, environment, itemsToDeploy);
+                                siteService.enablePublishing(site, false);
+                                statusMessage = studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_STOPPED_ERROR);
+                                statusMessage = statusMessage.replace("{item_path}", messagePath).replace("{datetime}", ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern(sdf.toPattern())));
+                                siteService.updatePublishingStatusMessage(site, statusMessage);
+                                throw err;
+                            } catch (Exception err){
+                                logger.error("Unexpected error while executing deployment to environment " +
+                                        "store for site \"{0}\", number of items \"{1}\"", err, site, itemsToDeploy.size());
+                                publishingManager.markItemsReady(site, environment, itemsToDeploy);
+                                siteService.enablePublishing(site, false);
+                                statusMessage = studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_STOPPED_ERROR);
+                                statusMessage = statusMessage.replace("{item_path}", messagePath).replace("{datetime}", ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern(sdf.toPattern())));
+                                siteService.updatePublishingStatusMessage(site, statusMessage);
+                                throw err;
                             }
-                        } else {
-                            logger.info("Publishing is blocked for site " + site);
                         }
-                    } else {
-                        logger.info("Publishing is disabled for site " + site);
                     }
+                } catch (Exception err) {
+                    logger.error("Error while executing deployment to environment store for site: " + site, err);
+                    notificationService.notifyDeploymentError(site, err);
+                    logger.info("Continue executing deployment for other sites.");
+                    more = false;
                 }
+            } else {
+                logger.info("Publishing is blocked for site " + site);
             }
-        } catch (Exception err) {
-            logger.error("Error while executing deployment to environment store", err);
-            notificationService.notifyDeploymentError("UNKNOWN", err);
+        } else {
+            logger.info("Publishing is disabled for site " + site);
         }
+        return more;
+    }
+
+    /**
+     * Take the first items ready, without splitting a package between turns
+     */
+    protected List<PublishRequest> getTurn(List<PublishRequest> itemsReady, int maxItems) {
+        if (itemsReady == null || itemsReady.size() <= maxItems) {
+            return itemsReady;
+        }
+        int end = maxItems;
+        String packageId = itemsReady.get(end - 1).getPackageId();
+        while (end < itemsReady.size() && packageId != null && packageId.equals(itemsReady.get(end).getPackageId())) {
+            end++;
+        }
+        return new ArrayList<PublishRequest>(itemsReady.subList(0, end));
     }
 
     private void processPublishingRequest(String site, String environment, PublishRequest item, List<DeploymentItemTO> completeDeploymentItemList, Set<String> processedPaths) throws ServiceException, DeploymentException {
@@ -263,6 +324,62 @@ public class DeployContentToEnvironmentStore extends RepositoryJob {
         return toReturn;
     }
 
+    public int getWorkers() {
+        int toReturn = Integer.parseInt(studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_WORKERS));
+        return Math.max(toReturn, 1);
+    }
+
+    /**
+     * Get the number of items a site publishes per environment in a turn, the chunk size times the weight of the site
+     */
+    public int getTurnSize(String site) {
+        int weight = 1;
+        String siteWeights = studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_SITE_WEIGHTS);
+        if (StringUtils.isNotEmpty(siteWeights)) {
+            for (String siteWeight : StringUtils.split(siteWeights, ',')) {
+                String[] pair = StringUtils.split(siteWeight, ':');
+                if (pair.length == 2 && site.equals(pair[0].trim())) {
+                    try {
+                        weight = Math.max(Integer.parseInt(pair[1].trim()), 1);
+                    } catch (NumberFormatException e) {
+                        logger.warn("Invalid publishing weight for site " + site + ": " + siteWeight);
+                    }
+                }
+            }
+        }
+        return (int) Math.min((long) getProcessingChunkSize() * weight, Integer.MAX_VALUE);
+    }
+
+    protected synchronized PublishingWorkerPool getWorkerPool() {
+        if (workerPool == null) {
+            workerPool = new PublishingWorkerPool(getWorkers(), this::publishTurn);
+        }
+        return workerPool;
+    }
+
+    /**
+     * Get publishing worker statistics, including the time every site waited for a worker
+     * @return statistics
+     */
+    public Map<String, Object> getWorkerStatistics() {
+        return getWorkerPool().getStatistics();
+    }
+
+    /**
+     * Remove a deleted site from the publishing workers
+     */
+    public synchronized void removeSite(String site) {
+        if (workerPool != null) {
+            workerPool.remove(site);
+        }
+    }
+
+    public synchronized void destroy() {
+        if (workerPool != null) {
+            workerPool.shutdown();
+        }
+    }
+
     public PublishingManager getPublishingManager() { return publishingManager; }
     public void setPublishingManager(PublishingManager publishingManager) { this.publishingManager = publishingManager; }
 
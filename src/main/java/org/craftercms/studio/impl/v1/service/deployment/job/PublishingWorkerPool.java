@@ -0,0 +1,181 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.deployment.job;
+
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Publishes sites on a fixed number of worker threads, which caps how many sites publish at the same time.
+ *
+ * A site is queued at most once, so it is either waiting for a worker, being published or idle and two workers never
+ * publish the same site. Workers take the sites in the order they were queued and a site that still has items ready
+ * after its turn goes back to the end of the queue, so sites take turns and one publishing thousands of items does not
+ * hold back the scheduled items of the others. The time every site waits in the queue is tracked.
+ */
+public class PublishingWorkerPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublishingWorkerPool.class);
+
+    protected final int workers;
+    protected final Predicate<String> publisher;
+    protected final ExecutorService executor;
+    protected final Map<String, SiteQueue> sites = new ConcurrentHashMap<String, SiteQueue>();
+    protected final AtomicInteger running = new AtomicInteger();
+    protected final LongAdder turns = new LongAdder();
+
+    /**
+     * @param workers number of sites published at the same time
+     * @param publisher publishes a turn of a site, returns true if the site still has items ready after it
+     */
+    public PublishingWorkerPool(int workers, Predicate<String> publisher) {
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = workers;
+        this.publisher = publisher;
+        this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "publishing-worker-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queue a site to be published unless it is already queued or being published
+     *
+     * @return true if the site was queued
+     */
+    public boolean submit(String site) {
+        SiteQueue siteQueue = sites.computeIfAbsent(site, SiteQueue::new);
+        if (!siteQueue.queued.compareAndSet(false, true)) {
+            return false;
+        }
+        enqueue(siteQueue);
+        return true;
+    }
+
+    /**
+     * Forget a deleted site, a turn of the site still waiting in the queue is skipped
+     */
+    public void remove(String site) {
+        sites.remove(site);
+    }
+
+    protected void enqueue(SiteQueue siteQueue) {
+        long queuedAt = System.currentTimeMillis();
+        try {
+            executor.execute(() -> publish(siteQueue, queuedAt));
+        } catch (RejectedExecutionException e) {
+            siteQueue.queued.set(false);
+            logger.debug("Publishing workers are shut down, site " + siteQueue.site + " was not queued");
+        }
+    }
+
+    protected void publish(SiteQueue siteQueue, long queuedAt) {
+        if (sites.get(siteQueue.site) != siteQueue) {
+            logger.debug("Site " + siteQueue.site + " was removed, skipping its publishing turn");
+            return;
+        }
+        long waitTime = System.currentTimeMillis() - queuedAt;
+        siteQueue.turns.increment();
+        siteQueue.totalWaitMillis.add(waitTime);
+        siteQueue.lastWaitMillis = waitTime;
+        siteQueue.maxWaitMillis.accumulateAndGet(waitTime, Math::max);
+        logger.debug("Site " + siteQueue.site + " waited " + waitTime + " ms for a publishing worker");
+
+        boolean more = false;
+        running.incrementAndGet();
+        try {
+            more = publisher.test(siteQueue.site);
+        } catch (Throwable e) {
+            logger.error("Error publishing site " + siteQueue.site, e);
+        } finally {
+            running.decrementAndGet();
+        }
+        if (more && sites.get(siteQueue.site) == siteQueue) {
+            enqueue(siteQueue);
+        } else {
+            siteQueue.queued.set(false);
+        }
+        turns.increment();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Get worker statistics: sites queued and being published, turns and the time every site waited in the queue
+     * @return statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> toRet = new LinkedHashMap<String, Object>();
+        Map<String, Object> siteStatistics = new TreeMap<String, Object>();
+        int queued = 0;
+        for (SiteQueue siteQueue : sites.values()) {
+            if (siteQueue.queued.get()) {
+                queued++;
+            }
+            siteStatistics.put(siteQueue.site, siteQueue.getStatistics());
+        }
+        toRet.put("workers", workers);
+        toRet.put("running", running.get());
+        toRet.put("queued", queued - running.get());
+        toRet.put("turns", turns.sum());
+        toRet.put("sites", siteStatistics);
+        return toRet;
+    }
+
+    protected static class SiteQueue {
+
+        protected final String site;
+        protected final AtomicBoolean queued = new AtomicBoolean();
+        protected final LongAdder turns = new LongAdder();
+        protected final LongAdder totalWaitMillis = new LongAdder();
+        protected final AtomicLong maxWaitMillis = new AtomicLong();
+        protected volatile long lastWaitMillis;
+
+        protected SiteQueue(String site) {
+            this.site = site;
+        }
+
+        protected Map<String, Object> getStatistics() {
+            long count = turns.sum();
+            Map<String, Object> toRet = new LinkedHashMap<String, Object>();
+            toRet.put("active", queued.get());
+            toRet.put("turns", count);
+            toRet.put("lastWaitMs", lastWaitMillis);
+            toRet.put("maxWaitMs", maxWaitMillis.get());
+            toRet.put("avgWaitMs", count > 0 ? totalWaitMillis.sum() / count : 0);
+            return toRet;
+        }
+    }
+}
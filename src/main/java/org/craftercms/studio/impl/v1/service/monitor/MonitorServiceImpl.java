@@ -21,14 +21,30 @@ package org.craftercms.studio.impl.v1.service.monitor;
 import org.craftercms.commons.monitoring.MemoryMonitor;
 import org.craftercms.commons.monitoring.StatusMonitor;
 import org.craftercms.commons.monitoring.VersionMonitor;
+import org.craftercms.studio.api.v1.repository.ContentRepository;
+import org.craftercms.studio.api.v1.repository.RepositoryLockManager;
+import org.craftercms.studio.api.v1.service.configuration.ServicesConfig;
+import org.craftercms.studio.api.v1.service.dependency.DependencyResolver;
 import org.craftercms.studio.api.v1.service.monitor.MonitorService;
+import org.craftercms.studio.api.v1.service.security.SecurityService;
+import org.craftercms.studio.impl.v1.repository.job.SiteJobStatusRegistry;
+import org.craftercms.studio.impl.v1.service.deployment.job.DeployContentToEnvironmentStore;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.jar.Manifest;
 
 public class MonitorServiceImpl implements MonitorService {
 
+    protected RepositoryLockManager repositoryLockManager;
+    protected ContentRepository contentRepository;
+    protected ServicesConfig servicesConfig;
+    protected SecurityService securityService;
+    protected DependencyResolver dependencyResolver;
+    protected SiteJobStatusRegistry siteJobStatusRegistry;
+    protected DeployContentToEnvironmentStore deployContentToEnvironmentStore;
+
     @Override
     public VersionMonitor getVersion(Manifest manifest) throws IOException {
         return VersionMonitor.getVersion(manifest);
@@ -43,4 +59,105 @@ public class MonitorServiceImpl implements MonitorService {
     public List<MemoryMonitor> getMemory() {
         return MemoryMonitor.getMemoryStats();
     }
+
+    @Override
+    public Map<String, Map<String, Object>> getRepositoryLockStatistics() {
+        return repositoryLockManager.getStatistics();
+    }
+
+    @Override
+    public Map<String, Object> getGroupCommitStatistics() {
+        return contentRepository.getGroupCommitStatistics();
+    }
+
+    @Override
+    public Map<String, Object> getRepositoryRegistryStatistics() {
+        return contentRepository.getRepositoryRegistryStatistics();
+    }
+
+    @Override
+    public Map<String, Object> getRepositoryMaintenanceStatistics() {
+        return contentRepository.getRepositoryMaintenanceStatistics();
+    }
+
+    @Override
+    public Map<String, Object> getSiteConfigCacheStatistics() {
+        return servicesConfig.getSiteConfigCacheStatistics();
+    }
+
+    @Override
+    public Map<String, Object> getPermissionsCacheStatistics() {
+        return securityService.getPermissionsCacheStatistics();
+    }
+
+    @Override
+    public Map<String, Object> getDependencyResolverStatistics() {
+        return dependencyResolver.getStatistics();
+    }
+
+    @Override
+    public Map<String, Object> getSiteJobStatistics() {
+        return siteJobStatusRegistry.getStatistics();
+    }
+
+    @Override
+    public Map<String, Object> getPublishingWorkerStatistics() {
+        return deployContentToEnvironmentStore.getWorkerStatistics();
+    }
+
+    public RepositoryLockManager getRepositoryLockManager() {
+        return repositoryLockManager;
+    }
+
+    public void setRepositoryLockManager(RepositoryLockManager repositoryLockManager) {
+        this.repositoryLockManager = repositoryLockManager;
+    }
+
+    public ContentRepository getContentRepository() {
+        return contentRepository;
+    }
+
+    public void setContentRepository(ContentRepository contentRepository) {
+        this.contentRepository = contentRepository;
+    }
+
+    public ServicesConfig getServicesConfig() {
+        return servicesConfig;
+    }
+
+    public void setServicesConfig(ServicesConfig servicesConfig) {
+        this.servicesConfig = servicesConfig;
+    }
+
+    public SecurityService getSecurityService() {
+        return securityService;
+    }
+
+    public void setSecurityService(SecurityService securityService) {
+        this.securityService = securityService;
+    }
+
+    public DependencyResolver getDependencyResolver() {
+        return dependencyResolver;
+    }
+
+    public void setDependencyResolver(DependencyResolver dependencyResolver) {
+        this.dependencyResolver = dependencyResolver;
+    }
+
+    public SiteJobStatusRegistry getSiteJobStatusRegistry() {
+        return siteJobStatusRegistry;
+    }
+
+    public void setSiteJobStatusRegistry(SiteJobStatusRegistry siteJobStatusRegistry) {
+        this.siteJobStatusRegistry = siteJobStatusRegistry;
+    }
+
+    public DeployContentToEnvironmentStore getDeployContentToEnvironmentStore() {
+        return deployContentToEnvironmentStore;
+    }
+
+    public void setDeployContentToEnvironmentStore(DeployContentToEnvironmentStore deployContentToEnvironmentStore) {
+        this.deployContentToEnvironmentStore = deployContentToEnvironmentStore;
+    }
 }
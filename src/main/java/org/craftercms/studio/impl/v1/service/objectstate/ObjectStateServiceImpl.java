@@ -104,6 +104,27 @@ public class ObjectStateServiceImpl extends AbstractRegistrableService implement
         itemStateMapper.setSystemProcessingBySiteAndPath(params);
     }
 
+    @Override
+    @ValidateParams
+    public Map<String, ItemState> getObjectStates(@ValidateStringParam(name = "site") String site,
+                                                  List<String> paths) {
+        Map<String, ItemState> toRet = new TreeMap<String, ItemState>(String.CASE_INSENSITIVE_ORDER);
+        if (paths == null || paths.isEmpty()) {
+            return toRet;
+        }
+        List<String> cleanPaths = new ArrayList<String>();
+        for (String path : paths) {
+            cleanPaths.add(FilenameUtils.normalize(path, true));
+        }
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("site", site);
+        params.put("paths", cleanPaths);
+        for (ItemState state : itemStateMapper.getObjectStateForSiteAndPaths(params)) {
+            toRet.put(state.getPath(), state);
+        }
+        return toRet;
+    }
+
     @Override
     @ValidateParams
     public void setSystemProcessingBulk(@ValidateStringParam(name = "site") String site, List<String> paths, boolean isSystemProcessing) {
@@ -192,6 +213,11 @@ public class ObjectStateServiceImpl extends AbstractRegistrableService implement
         logger.debug("Transition finished for " + event.name() + " on object " + lockKey);
     }
 
+    @Override
+    public State getNextState(State currentState, TransitionEvent event) {
+        return transitionTable[currentState.ordinal()][event.ordinal()];
+    }
+
     @Override
     @ValidateParams
     public void deployCommitId(@ValidateStringParam(name = "site") String site, @ValidateStringParam(name = "commitId") String commitId) {
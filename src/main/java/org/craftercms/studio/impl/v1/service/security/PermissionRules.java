@@ -0,0 +1,155 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.security;
+
+import org.craftercms.studio.api.v1.constant.StudioConstants;
+import org.craftercms.studio.api.v1.constant.StudioXmlConstants;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.to.PermissionsConfigTO;
+import org.dom4j.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Permission mappings compiled out of the XML: the rules of every role with their regex compiled and their allowed
+ * permissions already read, so resolving the permissions of a path does not run XPath or compile regexes.
+ */
+public class PermissionRules {
+
+    private static final Logger logger = LoggerFactory.getLogger(PermissionRules.class);
+
+    public static final PermissionRules EMPTY = new PermissionRules(Collections.<String, List<Rule>>emptyMap());
+
+    protected final Map<String, List<Rule>> rulesByRole;
+
+    protected PermissionRules(Map<String, List<Rule>> rulesByRole) {
+        this.rulesByRole = rulesByRole;
+    }
+
+    /**
+     * Compile the rules of a permission mappings file
+     *
+     * @param permissionsConfig loaded permission mappings, may be null
+     * @param scope site id, or the global scope, the mappings were loaded for
+     * @return compiled rules
+     */
+    @SuppressWarnings("unchecked")
+    public static PermissionRules compile(PermissionsConfigTO permissionsConfig, String scope) {
+        if (permissionsConfig == null || permissionsConfig.getPermissions() == null) {
+            return EMPTY;
+        }
+        Map<String, Map<String, List<Node>>> permissionsMap = permissionsConfig.getPermissions();
+        Map<String, List<Node>> scopeRoles = permissionsMap.get(scope);
+        if (scopeRoles == null || scopeRoles.isEmpty()) {
+            scopeRoles = permissionsMap.get("*");
+        }
+        if (scopeRoles == null || scopeRoles.isEmpty()) {
+            return EMPTY;
+        }
+
+        Map<String, List<Rule>> rulesByRole = new HashMap<String, List<Rule>>();
+        for (Map.Entry<String, List<Node>> role : scopeRoles.entrySet()) {
+            List<Rule> rules = new ArrayList<Rule>();
+            if (role.getValue() != null) {
+                for (Node ruleNode : role.getValue()) {
+                    String regex = ruleNode.valueOf(StudioXmlConstants.DOCUMENT_ATTR_REGEX);
+                    Pattern pattern;
+                    try {
+                        pattern = Pattern.compile(regex);
+                    } catch (PatternSyntaxException e) {
+                        logger.error("Invalid permission rule regex " + regex + " for role " + role.getKey() +
+                                " in " + scope + ", skipping the rule", e);
+                        continue;
+                    }
+                    Set<String> permissions = new HashSet<String>();
+                    List<Node> permissionNodes =
+                            ruleNode.selectNodes(StudioXmlConstants.DOCUMENT_ELM_ALLOWED_PERMISSIONS);
+                    for (Node permissionNode : permissionNodes) {
+                        permissions.add(permissionNode.getText().toLowerCase());
+                    }
+                    rules.add(new Rule(pattern, Collections.unmodifiableSet(permissions)));
+                }
+            }
+            rulesByRole.put(role.getKey(), Collections.unmodifiableList(rules));
+        }
+        return new PermissionRules(Collections.unmodifiableMap(rulesByRole));
+    }
+
+    /**
+     * Resolve the permissions of a path for the given roles. A role without rules gets the rules of the "*" role,
+     * and read permission if there are none of those either.
+     *
+     * @param path path
+     * @param roles roles of the user
+     * @return permissions
+     */
+    public Set<String> getPermissions(String path, Set<String> roles) {
+        Set<String> permissions = new HashSet<String>();
+        if (roles == null || roles.isEmpty()) {
+            logger.debug("No user or group matching found. adding default permission: "
+                    + StudioConstants.PERMISSION_VALUE_READ);
+            permissions.add(StudioConstants.PERMISSION_VALUE_READ);
+            return permissions;
+        }
+        if (rulesByRole.isEmpty()) {
+            logger.debug("No default site is set. adding default permission: "
+                    + StudioConstants.PERMISSION_VALUE_READ);
+            permissions.add(StudioConstants.PERMISSION_VALUE_READ);
+            return permissions;
+        }
+        for (String role : roles) {
+            List<Rule> rules = rulesByRole.get(role);
+            if (rules == null || rules.isEmpty()) {
+                rules = rulesByRole.get("*");
+            }
+            if (rules != null && !rules.isEmpty()) {
+                for (Rule rule : rules) {
+                    if (rule.pattern.matcher(path).matches()) {
+                        permissions.addAll(rule.permissions);
+                    }
+                }
+            } else {
+                logger.debug("No default role is set. adding default permission: "
+                        + StudioConstants.PERMISSION_VALUE_READ);
+                permissions.add(StudioConstants.PERMISSION_VALUE_READ);
+            }
+        }
+        return permissions;
+    }
+
+    protected static class Rule {
+
+        final Pattern pattern;
+        final Set<String> permissions;
+
+        Rule(Pattern pattern, Set<String> permissions) {
+            this.pattern = pattern;
+            this.permissions = permissions;
+        }
+    }
+}
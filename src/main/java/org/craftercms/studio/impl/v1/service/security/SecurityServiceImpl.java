@@ -29,13 +29,19 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
@@ -63,6 +69,7 @@ import org.craftercms.studio.api.v1.exception.security.UserExternallyManagedExce
 import org.craftercms.studio.api.v1.exception.security.UserNotFoundException;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.repository.ContentRepository;
 import org.craftercms.studio.api.v1.service.GeneralLockService;
 import org.craftercms.studio.api.v1.service.activity.ActivityService;
 import org.craftercms.studio.api.v1.service.content.ContentService;
@@ -108,6 +115,8 @@ public class SecurityServiceImpl implements SecurityService {
 
     private static final Logger logger = LoggerFactory.getLogger(SecurityServiceImpl.class);
 
+    protected static final String GLOBAL_PERMISSIONS_SCOPE = "###GLOBAL###";
+
     protected SecurityProvider securityProvider;
     protected ContentTypeService contentTypeService;
     protected ActivityService activityService;
@@ -118,6 +127,22 @@ public class SecurityServiceImpl implements SecurityService {
     protected JavaMailSender emailServiceNoAuth;
     protected UserDetailsManager userDetailsManager;
     protected ObjectFactory<FreeMarkerConfig> freeMarkerConfig;
+    protected ContentRepository contentRepository;
+
+    /** Role and permission mappings by site and path, compiled and tagged with the object id they were read from */
+    protected final Map<String, CachedPermissionsConfig> permissionsConfigCache =
+            new ConcurrentHashMap<String, CachedPermissionsConfig>();
+    protected final Map<String, CachedUserGroups> userGroupsCache = new ConcurrentHashMap<String, CachedUserGroups>();
+    protected final Map<String, Set<String>> permissionsDecisionCache =
+            new LinkedHashMap<String, Set<String>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+                    return size() > getPermissionsDecisionCacheSize();
+                }
+            };
+
+    protected final LongAdder permissionsDecisionCacheHits = new LongAdder();
+    protected final LongAdder permissionsDecisionCacheMisses = new LongAdder();
 
     @Override
     @ValidateParams
@@ -126,6 +151,8 @@ public class SecurityServiceImpl implements SecurityService {
             throws BadCredentialsException, AuthenticationSystemException {
         String toRet = securityProvider.authenticate(username, password);
         if (StringUtils.isNotEmpty(toRet)) {
+            // Groups may have been updated by the authentication (e.g. LDAP)
+            userGroupsCache.remove(username);
             RequestContext requestContext = RequestContext.getCurrent();
             HttpServletRequest httpServletRequest = requestContext.getRequest();
             String ipAddress = httpServletRequest.getRemoteAddr();
@@ -173,15 +200,48 @@ public class SecurityServiceImpl implements SecurityService {
     public Set<String> getUserPermissions(@ValidateStringParam(name = "site") final String site,
                                           @ValidateSecurePathParam(name = "path") String path,
                                           @ValidateStringParam(name = "user") String user, List<String> groups) {
+        CachedPermissionsConfig rolesConfig = null;
+        CachedPermissionsConfig permissionsConfig = null;
+        if (StringUtils.isNotEmpty(site)) {
+            rolesConfig = getCachedConfiguration(site, getRoleMappingsFileName());
+            permissionsConfig = getCachedConfiguration(site, getPermissionsFileName());
+        }
+        CachedPermissionsConfig globalRolesConfig = getCachedGlobalRolesConfiguration();
+        CachedPermissionsConfig globalPermissionsConfig = getCachedGlobalPermissionsConfiguration();
+        Set<String> userGroups = getUserGroups(user);
+
+        String decisionKey = getPermissionsDecisionKey(site, path, userGroups, groups, rolesConfig,
+                permissionsConfig, globalRolesConfig, globalPermissionsConfig);
+        Set<String> cached;
+        synchronized (permissionsDecisionCache) {
+            cached = permissionsDecisionCache.get(decisionKey);
+        }
+        if (cached != null) {
+            permissionsDecisionCacheHits.increment();
+            return new HashSet<String>(cached);
+        }
+        permissionsDecisionCacheMisses.increment();
+
+        Set<String> permissions = resolveUserPermissions(site, path, userGroups, groups, rolesConfig,
+                permissionsConfig, globalRolesConfig, globalPermissionsConfig);
+        synchronized (permissionsDecisionCache) {
+            permissionsDecisionCache.put(decisionKey, Collections.unmodifiableSet(new HashSet<String>(permissions)));
+        }
+        return permissions;
+    }
+
+    protected Set<String> resolveUserPermissions(String site, String path, Set<String> userGroups,
+                                                 List<String> groups, CachedPermissionsConfig rolesConfig,
+                                                 CachedPermissionsConfig permissionsConfig,
+                                                 CachedPermissionsConfig globalRolesConfig,
+                                                 CachedPermissionsConfig globalPermissionsConfig) {
         Set<String> permissions = new HashSet<String>();
         if (StringUtils.isNotEmpty(site)) {
-            PermissionsConfigTO rolesConfig = loadConfiguration(site, getRoleMappingsFileName());
-            PermissionsConfigTO permissionsConfig = loadConfiguration(site, getPermissionsFileName());
             Set<String> roles = new HashSet<String>();
-            addUserRoles(roles, site, user);
-            addGroupRoles(roles, site, groups, rolesConfig);
+            addUserRoles(roles, userGroups, rolesConfig.config);
+            addGroupRoles(roles, site, groups, rolesConfig.config);
             // resolve the permission
-            permissions = populateUserPermissions(site, path, roles, permissionsConfig);
+            permissions = permissionsConfig.rules.getPermissions(path, roles);
             // check if the user is allowed to edit the content
 
             if (path.indexOf("/site") == 0) { // If it's content a file
@@ -202,31 +262,53 @@ public class SecurityServiceImpl implements SecurityService {
             }
         }
 
-        PermissionsConfigTO globalRolesConfig = loadGlobalRolesConfiguration();
-        PermissionsConfigTO globalPermissionsConfig = loadGlobalPermissionsConfiguration();
         Set<String> roles = new HashSet<String>();
-        addGlobalUserRoles(user, roles, globalRolesConfig);
-        addGlobalGroupRoles(roles, groups, globalRolesConfig);
-        permissions.addAll(populateUserGlobalPermissions(path, roles, globalPermissionsConfig));
+        addUserRoles(roles, userGroups, globalRolesConfig.config);
+        addGlobalGroupRoles(roles, groups, globalRolesConfig.config);
+        permissions.addAll(globalPermissionsConfig.rules.getPermissions(path, roles));
         return permissions;
     }
 
-    protected void addGlobalUserRoles(String user, Set<String> roles, PermissionsConfigTO rolesConfig) {
-        Set<String> groups = securityProvider.getUserGroups(user);
-        if (rolesConfig != null && groups != null) {
-            Map<String, List<String>> rolesMap = rolesConfig.getRoles();
-            for (String group : groups) {
-                String groupName = group.replaceFirst("GROUP_", "");
-                List<String> userRoles = rolesMap.get(groupName);
-                if (roles != null && userRoles != null) {
-                    roles.addAll(userRoles);
-                }
+    /**
+     * Build the key of a permissions decision: everything the decision depends on, the groups of the user and the
+     * versions of the permission mappings, role mappings and, for content, the content types and the item itself
+     */
+    protected String getPermissionsDecisionKey(String site, String path, Set<String> userGroups,
+                                               List<String> groups, CachedPermissionsConfig rolesConfig,
+                                               CachedPermissionsConfig permissionsConfig,
+                                               CachedPermissionsConfig globalRolesConfig,
+                                               CachedPermissionsConfig globalPermissionsConfig) {
+        StringBuilder key = new StringBuilder(StringUtils.defaultString(site)).append(':').append(path);
+        key.append('|').append(getGroupsFingerprint(userGroups));
+        key.append('|').append(getGroupsFingerprint(groups));
+        if (StringUtils.isNotEmpty(site)) {
+            key.append('|').append(rolesConfig.objectId).append(':').append(permissionsConfig.objectId);
+            if (path.indexOf("/site") == 0) {
+                key.append(':').append(contentRepository.getContentObjectId(site, getContentTypesRootPath(site)));
+                key.append(':').append(contentRepository.getContentObjectId(site, path));
             }
         }
+        key.append('|').append(globalRolesConfig.objectId).append(':').append(globalPermissionsConfig.objectId);
+        return key.toString();
+    }
+
+    protected String getGroupsFingerprint(Collection<String> groups) {
+        if (groups == null || groups.isEmpty()) {
+            return StringUtils.EMPTY;
+        }
+        List<String> sorted = new ArrayList<String>(groups);
+        Collections.sort(sorted);
+        return StringUtils.join(sorted, ',');
+    }
+
+    protected String getContentTypesRootPath(String site) {
+        String configPath = studioConfiguration.getProperty(CONFIGURATION_SITE_CONTENT_TYPES_CONFIG_BASE_PATH);
+        return StringUtils.removeEnd(configPath.replaceAll(StudioConstants.PATTERN_SITE, site)
+                .replaceAll(StudioConstants.PATTERN_CONTENT_TYPE, ""), FILE_SEPARATOR);
     }
 
     protected void addGlobalGroupRoles(Set<String> roles, List<String> groups, PermissionsConfigTO rolesConfig) {
-        if (groups != null) {
+        if (groups != null && rolesConfig != null && rolesConfig.getRoles() != null) {
             Map<String, List<String>> rolesMap = rolesConfig.getRoles();
             for (String group : groups) {
                 List<String> groupRoles = rolesMap.get(group);
@@ -238,77 +320,29 @@ public class SecurityServiceImpl implements SecurityService {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    protected Set<String> populateUserGlobalPermissions(String path, Set<String> roles,
-                                                  PermissionsConfigTO permissionsConfig) {
-        Set<String> permissions = new HashSet<String>();
-        if (roles != null && !roles.isEmpty()) {
-            for (String role : roles) {
-                Map<String, Map<String, List<Node>>> permissionsMap = permissionsConfig.getPermissions();
-                Map<String, List<Node>> siteRoles = permissionsMap.get("###GLOBAL###");
-                if (siteRoles == null || siteRoles.isEmpty()) {
-                    siteRoles = permissionsMap.get("*");
-                }
-                if (siteRoles != null && !siteRoles.isEmpty()) {
-                    List<Node> ruleNodes = siteRoles.get(role);
-                    if (ruleNodes == null || ruleNodes.isEmpty()) {
-                        ruleNodes = siteRoles.get("*");
-                    }
-                    if (ruleNodes != null && !ruleNodes.isEmpty()) {
-                        for (Node ruleNode : ruleNodes) {
-                            String regex = ruleNode.valueOf(StudioXmlConstants.DOCUMENT_ATTR_REGEX);
-                            if (path.matches(regex)) {
-                                logger.debug("Global permissions found by matching " + regex + " for " + role);
-
-                                List<Node> permissionNodes =
-                                        ruleNode.selectNodes(StudioXmlConstants.DOCUMENT_ELM_ALLOWED_PERMISSIONS);
-                                for (Node permissionNode : permissionNodes) {
-                                    String permission = permissionNode.getText().toLowerCase();
-                                    logger.debug("adding global permissions " + permission + " to " + path
-                                            + " for " + role);
-                                    permissions.add(permission);
-                                }
-                            }
-                        }
-                    } else {
-                        logger.debug("No default role is set. adding default permission: "
-                                + StudioConstants.PERMISSION_VALUE_READ);
-                        // If no default role is set
-                        permissions.add(StudioConstants.PERMISSION_VALUE_READ);
-                    }
-                } else {
-                    logger.debug("No default site is set. adding default permission: "
-                            + StudioConstants.PERMISSION_VALUE_READ);
-                    // If no default site is set
-                    permissions.add(StudioConstants.PERMISSION_VALUE_READ);
-                }
-            }
-        } else {
-            logger.debug("No user or group matching found. adding default permission: "
-                    + StudioConstants.PERMISSION_VALUE_READ);
-            // If user or group did not match the roles-mapping file
-            permissions.add(StudioConstants.PERMISSION_VALUE_READ);
-        }
-        return permissions;
-    }
-
     /* Derives a key based off the site and filename */
     protected String getPermissionsKey(String site, String filename) {
         return new StringBuffer(site).append(":").append(filename).toString();
     }
 
     /**
-     * add user roles
+     * add the roles mapped to the groups the user belongs to
      *
      * @param roles
-     * @param site
-     * @param user
+     * @param userGroups
+     * @param rolesConfig
      */
-    protected void addUserRoles(Set<String> roles, String site, String user) {
-        if (!StringUtils.isEmpty(user)) {
-            Set<String> userRoles = this.getUserRoles(site, user);
-            logger.debug("Adding roles by user: " + userRoles);
-            roles.addAll(userRoles);
+    protected void addUserRoles(Set<String> roles, Set<String> userGroups, PermissionsConfigTO rolesConfig) {
+        if (userGroups != null && rolesConfig != null && rolesConfig.getRoles() != null) {
+            Map<String, List<String>> rolesMap = rolesConfig.getRoles();
+            for (String group : userGroups) {
+                String groupName = group.replaceFirst("GROUP_", "");
+                List<String> userRoles = rolesMap.get(groupName);
+                if (userRoles != null) {
+                    roles.addAll(userRoles);
+                }
+            }
+            logger.debug("Adding roles by user groups " + userGroups + ": " + roles);
         }
     }
 
@@ -317,22 +351,13 @@ public class SecurityServiceImpl implements SecurityService {
     public Set<String> getUserRoles(@ValidateStringParam(name = "site") final String site,
                                     @ValidateStringParam(name = "user") String user) {
 
-        Set<String> groups = securityProvider.getUserGroups(user);
+        Set<String> groups = getUserGroups(user);
         if (groups != null && groups.size() > 0) {
             logger.debug("Groups for " + user + " in " + site + ": " + groups);
 
-            PermissionsConfigTO rolesConfig = loadConfiguration(site, getRoleMappingsFileName());
+            PermissionsConfigTO rolesConfig = getCachedConfiguration(site, getRoleMappingsFileName()).config;
             Set<String> userRoles = new HashSet<String>();
-            if (rolesConfig != null) {
-                Map<String, List<String>> rolesMap = rolesConfig.getRoles();
-                for (String group : groups) {
-                    String groupName = group.replaceFirst("GROUP_", "");
-                    List<String> roles = rolesMap.get(groupName);
-                    if (roles != null) {
-                        userRoles.addAll(roles);
-                    }
-                }
-            }
+            addUserRoles(userRoles, groups, rolesConfig);
             return userRoles;
         } else {
             logger.debug("No groups found for " + user + " in " + site);
@@ -349,7 +374,7 @@ public class SecurityServiceImpl implements SecurityService {
      */
     protected void addGroupRoles(Set<String> roles, String site, List<String> groups,
                                  PermissionsConfigTO rolesConfig) {
-        if (groups != null) {
+        if (groups != null && rolesConfig != null && rolesConfig.getRoles() != null) {
             Map<String, List<String>> rolesMap = rolesConfig.getRoles();
             for (String group : groups) {
                 List<String> groupRoles = rolesMap.get(group);
@@ -362,66 +387,90 @@ public class SecurityServiceImpl implements SecurityService {
     }
 
     /**
-     * populate user permissions
+     * Get the groups of a user, cached for a short time since they are needed for every permission check
      *
-     * @param site
-     * @param path
-     * @param roles
-     * @param permissionsConfig
+     * @param user user name
+     * @return groups
      */
-    @SuppressWarnings("unchecked")
-    protected Set<String> populateUserPermissions(String site, String path, Set<String> roles,
-                                                  PermissionsConfigTO permissionsConfig) {
-        Set<String> permissions = new HashSet<String>();
-        if (roles != null && !roles.isEmpty()) {
-            for (String role : roles) {
-                Map<String, Map<String, List<Node>>> permissionsMap = permissionsConfig.getPermissions();
-                Map<String, List<Node>> siteRoles = permissionsMap.get(site);
-                if (siteRoles == null || siteRoles.isEmpty()) {
-                    siteRoles = permissionsMap.get("*");
-                }
-                if (siteRoles != null && !siteRoles.isEmpty()) {
-                    List<Node> ruleNodes = siteRoles.get(role);
-                    if (ruleNodes == null || ruleNodes.isEmpty()) {
-                        ruleNodes = siteRoles.get("*");
-                    }
-                    if (ruleNodes != null && !ruleNodes.isEmpty()) {
-                        for (Node ruleNode : ruleNodes) {
-                            String regex = ruleNode.valueOf(StudioXmlConstants.DOCUMENT_ATTR_REGEX);
-                            if (path.matches(regex)) {
-                                logger.debug("Permissions found by matching " + regex + " for " + role
-                                        + " in " + site);
-
-                                List<Node> permissionNodes = ruleNode.selectNodes(
-                                        StudioXmlConstants.DOCUMENT_ELM_ALLOWED_PERMISSIONS);
-                                for (Node permissionNode : permissionNodes) {
-                                    String permission = permissionNode.getText().toLowerCase();
-                                    logger.debug("adding permissions " + permission + " to " + path + " for "
-                                            + role + " in " + site);
-                                    permissions.add(permission);
-                                }
-                            }
-                        }
-                    } else {
-                        logger.debug("No default role is set. adding default permission: "
-                                + StudioConstants.PERMISSION_VALUE_READ);
-                        // If no default role is set
-                        permissions.add(StudioConstants.PERMISSION_VALUE_READ);
-                    }
-                } else {
-                    logger.debug("No default site is set. adding default permission: "
-                            + StudioConstants.PERMISSION_VALUE_READ);
-                    // If no default site is set
-                    permissions.add(StudioConstants.PERMISSION_VALUE_READ);
-                }
-            }
-        } else {
-            logger.debug("No user or group matching found. adding default permission: "
-                    + StudioConstants.PERMISSION_VALUE_READ);
-            // If user or group did not match the roles-mapping file
-            permissions.add(StudioConstants.PERMISSION_VALUE_READ);
+    protected Set<String> getUserGroups(String user) {
+        long ttl = getUserGroupsCacheTtlMillis();
+        if (StringUtils.isEmpty(user) || ttl <= 0) {
+            return securityProvider.getUserGroups(user);
         }
-        return permissions;
+        long now = System.currentTimeMillis();
+        CachedUserGroups cached = userGroupsCache.get(user);
+        if (cached != null && now - cached.loaded < ttl) {
+            return cached.groups;
+        }
+        Set<String> groups = securityProvider.getUserGroups(user);
+        if (groups != null) {
+            groups = Collections.unmodifiableSet(new HashSet<String>(groups));
+        }
+        userGroupsCache.put(user, new CachedUserGroups(groups, now));
+        return groups;
+    }
+
+    protected long getUserGroupsCacheTtlMillis() {
+        return TimeUnit.SECONDS.toMillis(
+                Long.parseLong(studioConfiguration.getProperty(SECURITY_PERMISSIONS_USER_GROUPS_CACHE_TTL)));
+    }
+
+    protected int getPermissionsDecisionCacheSize() {
+        return Integer.parseInt(studioConfiguration.getProperty(SECURITY_PERMISSIONS_DECISION_CACHE_SIZE));
+    }
+
+    protected CachedPermissionsConfig getCachedConfiguration(String site, String filename) {
+        String path = getConfigPath().replaceFirst(StudioConstants.PATTERN_SITE, site) + FILE_SEPARATOR + filename;
+        return getCachedPermissionsConfig(site, path, site, () -> loadConfiguration(site, filename));
+    }
+
+    protected CachedPermissionsConfig getCachedGlobalRolesConfiguration() {
+        String path = getGlobalConfigPath() + FILE_SEPARATOR + getGlobalRoleMappingsFileName();
+        return getCachedPermissionsConfig(StringUtils.EMPTY, path, GLOBAL_PERMISSIONS_SCOPE,
+                this::loadGlobalRolesConfiguration);
+    }
+
+    protected CachedPermissionsConfig getCachedGlobalPermissionsConfiguration() {
+        String path = getGlobalConfigPath() + FILE_SEPARATOR + getGlobalPermissionsFileName();
+        return getCachedPermissionsConfig(StringUtils.EMPTY, path, GLOBAL_PERMISSIONS_SCOPE,
+                this::loadGlobalPermissionsConfiguration);
+    }
+
+    /**
+     * Get a mappings file, loading and compiling it again only if it changed in the repository
+     *
+     * @param site site of the file, empty for global files
+     * @param path path of the file
+     * @param scope scope of the permission rules in the file
+     * @param loader loads the file
+     * @return cached mappings
+     */
+    protected CachedPermissionsConfig getCachedPermissionsConfig(String site, String path, String scope,
+                                                                 Supplier<PermissionsConfigTO> loader) {
+        String key = getPermissionsKey(site, path);
+        String objectId = contentRepository.getContentObjectId(site, path);
+        CachedPermissionsConfig cached = permissionsConfigCache.get(key);
+        if (cached != null && StringUtils.equals(cached.objectId, objectId)) {
+            return cached;
+        }
+        PermissionsConfigTO config = loader.get();
+        cached = new CachedPermissionsConfig(objectId, config, PermissionRules.compile(config, scope));
+        permissionsConfigCache.put(key, cached);
+        return cached;
+    }
+
+    @Override
+    public Map<String, Object> getPermissionsCacheStatistics() {
+        Map<String, Object> toRet = new LinkedHashMap<String, Object>();
+        synchronized (permissionsDecisionCache) {
+            toRet.put("decisions", permissionsDecisionCache.size());
+        }
+        toRet.put("maxDecisions", getPermissionsDecisionCacheSize());
+        toRet.put("hits", permissionsDecisionCacheHits.sum());
+        toRet.put("misses", permissionsDecisionCacheMisses.sum());
+        toRet.put("configs", permissionsConfigCache.size());
+        toRet.put("users", userGroupsCache.size());
+        return toRet;
     }
 
     protected PermissionsConfigTO loadConfiguration(String site, String filename) {
@@ -582,14 +631,25 @@ public class SecurityServiceImpl implements SecurityService {
     @Override
     @ValidateParams
     public void reloadConfiguration(@ValidateStringParam(name = "site") String site) {
-        PermissionsConfigTO permissionsConfigTO = loadConfiguration(site, getPermissionsFileName());
-        PermissionsConfigTO rolesConfigTO = loadConfiguration(site, getRoleMappingsFileName());
+        permissionsConfigCache.keySet().removeIf(key -> key.startsWith(getPermissionsKey(site, StringUtils.EMPTY)));
+        clearPermissionsDecisionCache();
+        getCachedConfiguration(site, getPermissionsFileName());
+        getCachedConfiguration(site, getRoleMappingsFileName());
     }
 
     @Override
     public void reloadGlobalConfiguration() {
-        PermissionsConfigTO permissionsConfigTO = loadGlobalPermissionsConfiguration();
-        PermissionsConfigTO rolesConfigTO = loadGlobalRolesConfiguration();
+        permissionsConfigCache.keySet().removeIf(
+                key -> key.startsWith(getPermissionsKey(StringUtils.EMPTY, StringUtils.EMPTY)));
+        clearPermissionsDecisionCache();
+        getCachedGlobalPermissionsConfiguration();
+        getCachedGlobalRolesConfiguration();
+    }
+
+    protected void clearPermissionsDecisionCache() {
+        synchronized (permissionsDecisionCache) {
+            permissionsDecisionCache.clear();
+        }
     }
 
     @Override
@@ -643,6 +703,7 @@ public class SecurityServiceImpl implements SecurityService {
             throw new DeleteUserNotAllowedException();
         } else {
             boolean toRet = securityProvider.deleteUser(username);
+            userGroupsCache.remove(username);
             if (toRet) {
                 ActivityService.ActivityType activityType = ActivityService.ActivityType.DELETED;
                 String user = getCurrentUser();
@@ -799,7 +860,9 @@ public class SecurityServiceImpl implements SecurityService {
                                @ValidateNoTagsParam(name = "groupName") String groupName,
                                @ValidateNoTagsParam(name = "description") String description)
             throws GroupNotFoundException, SiteNotFoundException {
-        return securityProvider.updateGroup(siteId, groupName, description);
+        boolean toRet = securityProvider.updateGroup(siteId, groupName, description);
+        userGroupsCache.clear();
+        return toRet;
     }
 
     @Override
@@ -807,7 +870,9 @@ public class SecurityServiceImpl implements SecurityService {
     public boolean deleteGroup(@ValidateStringParam(name = "site") String site,
                                @ValidateStringParam(name = "group") String group)
             throws GroupNotFoundException, SiteNotFoundException {
-        return securityProvider.deleteGroup(site, group);
+        boolean toRet = securityProvider.deleteGroup(site, group);
+        userGroupsCache.clear();
+        return toRet;
     }
 
     @Override
@@ -817,6 +882,7 @@ public class SecurityServiceImpl implements SecurityService {
                                   @ValidateStringParam(name = "username") String username)
             throws UserAlreadyExistsException, UserNotFoundException, GroupNotFoundException, SiteNotFoundException {
         boolean toRet = securityProvider.addUserToGroup(siteId, groupName, username);
+        userGroupsCache.remove(username);
         if (toRet) {
             ActivityService.ActivityType activityType = ActivityService.ActivityType.ADD_USER_TO_GROUP;
             String user = getCurrentUser();
@@ -835,6 +901,7 @@ public class SecurityServiceImpl implements SecurityService {
                                        @ValidateStringParam(name = "username") String username)
             throws UserNotFoundException, GroupNotFoundException, SiteNotFoundException {
         boolean toRet = securityProvider.removeUserFromGroup(siteId, groupName, username);
+        userGroupsCache.remove(username);
         if (toRet) {
             ActivityService.ActivityType activityType = ActivityService.ActivityType.REMOVE_USER_FROM_GROUP;
             String user = getCurrentUser();
@@ -1228,6 +1295,14 @@ public class SecurityServiceImpl implements SecurityService {
         this.freeMarkerConfig = freeMarkerConfig;
     }
 
+    public ContentRepository getContentRepository() {
+        return contentRepository;
+    }
+
+    public void setContentRepository(ContentRepository contentRepository) {
+        this.contentRepository = contentRepository;
+    }
+
     public ActivityService getActivityService() {
         return activityService;
     }
@@ -1235,4 +1310,28 @@ public class SecurityServiceImpl implements SecurityService {
     public void setActivityService(ActivityService activityService) {
         this.activityService = activityService;
     }
+
+    protected static class CachedPermissionsConfig {
+
+        final String objectId;
+        final PermissionsConfigTO config;
+        final PermissionRules rules;
+
+        CachedPermissionsConfig(String objectId, PermissionsConfigTO config, PermissionRules rules) {
+            this.objectId = objectId;
+            this.config = config;
+            this.rules = rules;
+        }
+    }
+
+    protected static class CachedUserGroups {
+
+        final Set<String> groups;
+        final long loaded;
+
+        CachedUserGroups(Set<String> groups, long loaded) {
+            this.groups = groups;
+            this.loaded = loaded;
+        }
+    }
 }
@@ -0,0 +1,597 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.site;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.ibatis.session.SqlSession;
+import org.craftercms.studio.api.v1.constant.DmConstants;
+import org.craftercms.studio.api.v1.dal.AuditFeed;
+import org.craftercms.studio.api.v1.dal.AuditFeedMapper;
+import org.craftercms.studio.api.v1.dal.GitLog;
+import org.craftercms.studio.api.v1.dal.GitLogMapper;
+import org.craftercms.studio.api.v1.dal.ItemMetadata;
+import org.craftercms.studio.api.v1.dal.ItemMetadataMapper;
+import org.craftercms.studio.api.v1.dal.ItemState;
+import org.craftercms.studio.api.v1.dal.ItemStateMapper;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.service.activity.ActivityService;
+import org.craftercms.studio.api.v1.service.content.ContentService;
+import org.craftercms.studio.api.v1.service.objectstate.ObjectStateService;
+import org.craftercms.studio.api.v1.service.objectstate.State;
+import org.craftercms.studio.api.v1.service.objectstate.TransitionEvent;
+import org.craftercms.studio.api.v1.to.RepoOperationTO;
+
+/**
+ * Repository operations synced to the database together. The item state, item metadata and git log rows the
+ * operations touch are loaded up front, the operations are applied to those rows in memory following the same rules
+ * as syncing them one by one, and the resulting changes are written with one JDBC batch per statement. Dependencies
+ * are not written here, they are collected in order for the caller to update once the batch is committed. The caller
+ * must hold the item locks of {@link #getLockKeys(Collection)} from loading the rows until they are written.
+ */
+class RepoOperationsBatch {
+
+    private static final Logger logger = LoggerFactory.getLogger(RepoOperationsBatch.class);
+
+    private final String site;
+    private final ObjectStateService objectStateService;
+    private final ContentService contentService;
+    private final ActivityService activityService;
+
+    private final Map<String, GitLog> gitLogs = new HashMap<String, GitLog>();
+    private final Map<String, Integer> loadedProcessed = new HashMap<String, Integer>();
+    private final Map<String, StateRow> states = new TreeMap<String, StateRow>(String.CASE_INSENSITIVE_ORDER);
+    private final List<StateRow> stateRows = new ArrayList<StateRow>();
+    private final Map<String, MetadataRow> metadata =
+            new TreeMap<String, MetadataRow>(String.CASE_INSENSITIVE_ORDER);
+    private final List<MetadataRow> metadataRows = new ArrayList<MetadataRow>();
+    private final List<AuditFeed> activities = new ArrayList<AuditFeed>();
+    private final List<DependencyUpdate> dependencyUpdates = new ArrayList<DependencyUpdate>();
+
+    private boolean diverged;
+    private String currentCommitId;
+    private boolean result = true;
+
+    RepoOperationsBatch(String site, boolean diverged, String currentCommitId, ObjectStateService objectStateService,
+                        ContentService contentService, ActivityService activityService) {
+        this.site = site;
+        this.diverged = diverged;
+        this.currentCommitId = currentCommitId;
+        this.objectStateService = objectStateService;
+        this.contentService = contentService;
+        this.activityService = activityService;
+    }
+
+    /**
+     * Get the commits whose git log rows have to be loaded for the given operations
+     */
+    List<String> getCommitIds(Collection<RepoOperationTO> operations) {
+        Set<String> commitIds = new TreeSet<String>();
+        if (currentCommitId != null) {
+            commitIds.add(currentCommitId);
+        }
+        for (RepoOperationTO operation : operations) {
+            commitIds.add(operation.getCommitId());
+        }
+        return new ArrayList<String>(commitIds);
+    }
+
+    /**
+     * Get the paths whose item state and item metadata rows have to be loaded for the given operations
+     */
+    List<String> getPaths(Collection<RepoOperationTO> operations) {
+        Set<String> paths = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+        for (RepoOperationTO operation : operations) {
+            paths.add(FilenameUtils.normalize(operation.getPath(), true));
+            if (operation.getMoveToPath() != null) {
+                paths.add(FilenameUtils.normalize(operation.getMoveToPath(), true));
+            }
+        }
+        return new ArrayList<String>(paths);
+    }
+
+    /**
+     * Get the keys of the item locks taken by {@link ObjectStateService} for the paths of the given operations, both
+     * as given and normalized
+     */
+    List<String> getLockKeys(Collection<RepoOperationTO> operations) {
+        Set<String> lockKeys = new TreeSet<String>();
+        for (RepoOperationTO operation : operations) {
+            addLockKeys(lockKeys, operation.getPath());
+            if (operation.getMoveToPath() != null) {
+                addLockKeys(lockKeys, operation.getMoveToPath());
+            }
+        }
+        return new ArrayList<String>(lockKeys);
+    }
+
+    private void addLockKeys(Set<String> lockKeys, String path) {
+        lockKeys.add(site + ":" + path);
+        String cleanPath = FilenameUtils.normalize(path, true);
+        if (cleanPath != null) {
+            lockKeys.add(site + ":" + cleanPath);
+        }
+    }
+
+    /**
+     * Set the rows loaded from the database, rows missing from these maps are taken as not existing
+     */
+    void load(Map<String, GitLog> loadedGitLogs, Map<String, ItemState> loadedStates,
+              Map<String, ItemMetadata> loadedMetadata) {
+        for (GitLog gitLog : loadedGitLogs.values()) {
+            gitLogs.put(gitLog.getCommitId(), gitLog);
+            loadedProcessed.put(gitLog.getCommitId(), gitLog.getProcessed());
+        }
+        for (ItemState itemState : loadedStates.values()) {
+            StateRow row = new StateRow(itemState, true);
+            states.put(itemState.getPath(), row);
+            stateRows.add(row);
+        }
+        for (ItemMetadata itemMetadata : loadedMetadata.values()) {
+            MetadataRow row = new MetadataRow(itemMetadata.getPath(), itemMetadata.getRenamed());
+            metadata.put(itemMetadata.getPath(), row);
+            metadataRows.add(row);
+        }
+    }
+
+    /**
+     * Apply an operation to the loaded rows
+     *
+     * @return false if the batch cannot reproduce the result of syncing the operation on its own (the operation
+     * would break a unique key), the batch has to be discarded then
+     */
+    boolean add(RepoOperationTO repoOperation) {
+        GitLog gitLog = gitLogs.get(repoOperation.getCommitId());
+        if (gitLog != null) {
+            diverged = diverged || gitLog.getProcessed() < 1;
+        } else {
+            gitLog = new GitLog();
+            gitLog.setSiteId(site);
+            gitLog.setCommitId(repoOperation.getCommitId());
+            gitLog.setProcessed(0);
+            gitLogs.put(gitLog.getCommitId(), gitLog);
+            diverged = true;
+        }
+
+        if (currentCommitId == null) {
+            currentCommitId = gitLog.getCommitId();
+        } else if (!currentCommitId.equals(gitLog.getCommitId())) {
+            GitLog current = gitLogs.get(currentCommitId);
+            if (current != null) {
+                current.setProcessed(1);
+            }
+            currentCommitId = gitLog.getCommitId();
+        }
+
+        if (!diverged) {
+            return true;
+        }
+
+        String path = FilenameUtils.normalize(repoOperation.getPath(), true);
+        switch (repoOperation.getOperation()) {
+            case CREATE:
+            case COPY:
+                if (states.get(path) == null) {
+                    insertState(path);
+                } else {
+                    transition(path);
+                }
+                if (!metadata.containsKey(path)) {
+                    insertMetadata(path);
+                }
+                setMetadata(path, repoOperation, false, null, true);
+                dependencyUpdates.add(new DependencyUpdate(repoOperation.getPath(), false));
+                addActivity(repoOperation, repoOperation.getPath(), ActivityService.ActivityType.CREATED);
+                break;
+
+            case UPDATE:
+                // An item without state ends up as new unpublished unlocked, whether it gets the state before the
+                // save transition or from it
+                if (states.get(path) == null) {
+                    insertState(path);
+                } else {
+                    transition(path);
+                }
+                if (!metadata.containsKey(path)) {
+                    insertMetadata(path);
+                }
+                setMetadata(path, repoOperation, false, null, true);
+                dependencyUpdates.add(new DependencyUpdate(repoOperation.getPath(), false));
+                addActivity(repoOperation, repoOperation.getPath(), ActivityService.ActivityType.UPDATED);
+                break;
+
+            case DELETE:
+                StateRow deletedState = states.remove(path);
+                if (deletedState != null) {
+                    deletedState.deleted = true;
+                }
+                MetadataRow deletedMetadata = metadata.remove(path);
+                if (deletedMetadata != null) {
+                    deletedMetadata.deleted = true;
+                }
+                dependencyUpdates.add(new DependencyUpdate(repoOperation.getPath(), true));
+                addActivity(repoOperation, repoOperation.getPath(), ActivityService.ActivityType.DELETED);
+                break;
+
+            case MOVE:
+                String moveToPath = FilenameUtils.normalize(repoOperation.getMoveToPath(), true);
+                StateRow stateRename = states.get(path);
+                if (stateRename == null) {
+                    if (states.get(moveToPath) == null) {
+                        insertState(moveToPath);
+                    } else {
+                        transition(moveToPath);
+                    }
+                } else {
+                    if (!moveState(path, moveToPath)) {
+                        return false;
+                    }
+                    transition(moveToPath);
+                }
+
+                if (!metadata.containsKey(path)) {
+                    if (!metadata.containsKey(moveToPath)) {
+                        insertMetadata(moveToPath);
+                    } else if (metadata.get(moveToPath).renamed < 1) {
+                        setMetadata(moveToPath, repoOperation, true, repoOperation.getPath(), true);
+                    }
+                } else {
+                    if (!metadata.containsKey(moveToPath)) {
+                        MetadataRow row = metadata.remove(path);
+                        row.path = moveToPath;
+                        metadata.put(moveToPath, row);
+                        setMetadata(moveToPath, repoOperation, true, repoOperation.getPath(), false);
+                    } else {
+                        if (metadata.get(moveToPath).renamed < 1) {
+                            setMetadata(moveToPath, repoOperation, true, repoOperation.getPath(), false);
+                        }
+                        metadata.remove(path).deleted = true;
+                    }
+                }
+
+                dependencyUpdates.add(new DependencyUpdate(repoOperation.getMoveToPath(), false));
+                addActivity(repoOperation, repoOperation.getMoveToPath(), ActivityService.ActivityType.UPDATED);
+                break;
+
+            default:
+                logger.error("Error: Unknown repo operation for site " + site + " operation: " +
+                        repoOperation.getOperation());
+                result = false;
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Check the rows can be written: rows moved to the original path of another moved row would need the moves to
+     * run in a given order, which the batches do not keep
+     */
+    boolean isWritable() {
+        return !hasChainedMoves(stateRows) && !hasChainedMoves(metadataRows);
+    }
+
+    /**
+     * Write the changes to the loaded rows. Deletes go first and inserts last, so paths released by deleted or moved
+     * rows are free when they are taken again.
+     */
+    void write(SqlSession sqlSession) {
+        ItemStateMapper itemStateMapper = sqlSession.getMapper(ItemStateMapper.class);
+        ItemMetadataMapper itemMetadataMapper = sqlSession.getMapper(ItemMetadataMapper.class);
+        GitLogMapper gitLogMapper = sqlSession.getMapper(GitLogMapper.class);
+        AuditFeedMapper auditFeedMapper = sqlSession.getMapper(AuditFeedMapper.class);
+
+        for (StateRow row : stateRows) {
+            if (row.deleted && row.loaded) {
+                itemStateMapper.deleteObjectState(row.itemState.getObjectId());
+            }
+        }
+        for (StateRow row : stateRows) {
+            if (!row.deleted && row.loaded && !row.loadedPath.equals(row.itemState.getPath())) {
+                itemStateMapper.updateObjectPath(getMoveParams(row.loadedPath, row.itemState.getPath()));
+            }
+        }
+        for (StateRow row : stateRows) {
+            if (!row.deleted && row.loaded && !row.loadedState.equals(row.itemState.getState())) {
+                itemStateMapper.setObjectState(row.itemState);
+            }
+        }
+        for (StateRow row : stateRows) {
+            if (!row.deleted && !row.loaded) {
+                itemStateMapper.insertEntry(row.itemState);
+            }
+        }
+
+        for (MetadataRow row : metadataRows) {
+            if (row.deleted && row.loadedPath != null) {
+                itemMetadataMapper.deleteEntry(getPathParams(row.loadedPath));
+            }
+        }
+        for (MetadataRow row : metadataRows) {
+            if (!row.deleted && row.loadedPath != null && !row.loadedPath.equals(row.path)) {
+                itemMetadataMapper.updateObjectPath(getMoveParams(row.loadedPath, row.path));
+            }
+        }
+        for (MetadataRow row : metadataRows) {
+            if (!row.deleted && row.loadedPath == null) {
+                itemMetadataMapper.insertEntry(getPathParams(row.path));
+            }
+        }
+        for (MetadataRow row : metadataRows) {
+            if (!row.deleted && !row.properties.isEmpty()) {
+                Map<String, Object> params = new HashMap<String, Object>(row.properties);
+                params.put(ItemMetadata.PROP_SITE, site);
+                params.put(ItemMetadata.PROP_PATH, row.path);
+                itemMetadataMapper.setProperties(params);
+            }
+        }
+
+        for (GitLog gitLog : gitLogs.values()) {
+            Integer processed = loadedProcessed.get(gitLog.getCommitId());
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("siteId", site);
+            params.put("commitId", gitLog.getCommitId());
+            params.put("processed", gitLog.getProcessed());
+            if (processed == null) {
+                gitLogMapper.insertGitLog(params);
+            } else if (processed != gitLog.getProcessed()) {
+                gitLogMapper.markGitLogProcessed(params);
+            }
+        }
+
+        for (AuditFeed activity : activities) {
+            auditFeedMapper.insertActivityFeed(activity);
+        }
+    }
+
+    boolean isDiverged() {
+        return diverged;
+    }
+
+    String getCurrentCommitId() {
+        return currentCommitId;
+    }
+
+    /**
+     * @return false if an operation of an unknown type was found
+     */
+    boolean getResult() {
+        return result;
+    }
+
+    /**
+     * Get the dependency updates of the operations, in the same order as the operations
+     */
+    List<DependencyUpdate> getDependencyUpdates() {
+        return dependencyUpdates;
+    }
+
+    private void insertState(String path) {
+        ItemState newEntry = new ItemState();
+        newEntry.setObjectId(UUID.randomUUID().toString());
+        newEntry.setSite(site);
+        newEntry.setPath(path);
+        newEntry.setSystemProcessing(0);
+        newEntry.setState(State.NEW_UNPUBLISHED_UNLOCKED.name());
+        StateRow row = new StateRow(newEntry, false);
+        states.put(path, row);
+        stateRows.add(row);
+    }
+
+    private void transition(String path) {
+        ItemState itemState = states.get(path).itemState;
+        try {
+            State nextState = objectStateService.getNextState(State.valueOf(itemState.getState()),
+                    TransitionEvent.SAVE);
+            if (nextState == State.NOOP) {
+                logger.warn("Transition not defined for event " + TransitionEvent.SAVE.name() +
+                        " and current state " + itemState.getState() + " [object id: " + itemState.getObjectId() +
+                        "]");
+            } else {
+                itemState.setState(nextState.name());
+            }
+        } catch (IllegalArgumentException e) {
+            logger.error("Transition not defined for event", e);
+        }
+    }
+
+    private boolean moveState(String path, String moveToPath) {
+        StateRow row = states.remove(path);
+        if (states.containsKey(moveToPath)) {
+            return false;
+        }
+        row.itemState.setPath(moveToPath);
+        states.put(moveToPath, row);
+        return true;
+    }
+
+    private void insertMetadata(String path) {
+        MetadataRow row = new MetadataRow(null, 0);
+        row.path = path;
+        metadata.put(path, row);
+        metadataRows.add(row);
+    }
+
+    private void setMetadata(String path, RepoOperationTO repoOperation, boolean renamed, String oldUrl,
+                             boolean modified) {
+        MetadataRow row = metadata.get(path);
+        if (row == null) {
+            return;
+        }
+        // Same as updating the row several times, null values leave the column as it is
+        setProperty(row, ItemMetadata.PROP_MODIFIER, repoOperation.getAuthor());
+        setProperty(row, ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
+        if (modified) {
+            setProperty(row, ItemMetadata.PROP_MODIFIED, repoOperation.getDateTime());
+        }
+        if (renamed) {
+            setProperty(row, ItemMetadata.PROP_RENAMED, 1);
+            setProperty(row, ItemMetadata.PROP_OLD_URL, oldUrl);
+            row.renamed = 1;
+        }
+    }
+
+    private static void setProperty(MetadataRow row, String name, Object value) {
+        if (value != null) {
+            row.properties.put(name, value);
+        }
+    }
+
+    private void addActivity(RepoOperationTO repoOperation, String path, ActivityService.ActivityType type) {
+        Map<String, String> activityInfo = new HashMap<String, String>();
+        String contentClass = contentService.getContentTypeClass(site, path);
+        if (path.endsWith(DmConstants.XML_PATTERN)) {
+            activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
+        }
+        activities.add(activityService.createActivity(site, repoOperation.getAuthor(), path, type,
+                ActivityService.ActivitySource.REPOSITORY, activityInfo));
+    }
+
+    private Map<String, Object> getPathParams(String path) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("site", site);
+        params.put("path", path);
+        return params;
+    }
+
+    private Map<String, Object> getMoveParams(String oldPath, String newPath) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("site", site);
+        params.put("oldPath", oldPath);
+        params.put("newPath", newPath);
+        return params;
+    }
+
+    private static boolean hasChainedMoves(List<? extends Row> rows) {
+        Set<String> movedFrom = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+        for (Row row : rows) {
+            if (row.isMoved()) {
+                movedFrom.add(row.getLoadedPath());
+            }
+        }
+        for (Row row : rows) {
+            if (row.isMoved() && !row.getPath().equalsIgnoreCase(row.getLoadedPath()) &&
+                    movedFrom.contains(row.getPath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Dependencies of an item to extract again, or to delete
+     */
+    static final class DependencyUpdate {
+
+        private final String path;
+        private final boolean delete;
+
+        DependencyUpdate(String path, boolean delete) {
+            this.path = path;
+            this.delete = delete;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        boolean isDelete() {
+            return delete;
+        }
+    }
+
+    private interface Row {
+
+        String getLoadedPath();
+
+        String getPath();
+
+        boolean isMoved();
+    }
+
+    private static final class StateRow implements Row {
+
+        private final ItemState itemState;
+        private final boolean loaded;
+        private final String loadedPath;
+        private final String loadedState;
+        private boolean deleted;
+
+        private StateRow(ItemState itemState, boolean loaded) {
+            this.itemState = itemState;
+            this.loaded = loaded;
+            this.loadedPath = itemState.getPath();
+            this.loadedState = itemState.getState();
+        }
+
+        @Override
+        public String getLoadedPath() {
+            return loadedPath;
+        }
+
+        @Override
+        public String getPath() {
+            return itemState.getPath();
+        }
+
+        @Override
+        public boolean isMoved() {
+            return loaded && !deleted && !loadedPath.equals(itemState.getPath());
+        }
+    }
+
+    private static final class MetadataRow implements Row {
+
+        private final String loadedPath;
+        private final Map<String, Object> properties = new HashMap<String, Object>();
+        private String path;
+        private int renamed;
+        private boolean deleted;
+
+        private MetadataRow(String loadedPath, int renamed) {
+            this.loadedPath = loadedPath;
+            this.path = loadedPath;
+            this.renamed = renamed;
+        }
+
+        @Override
+        public String getLoadedPath() {
+            return loadedPath;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public boolean isMoved() {
+            return loadedPath != null && !deleted && !loadedPath.equals(path);
+        }
+    }
+}
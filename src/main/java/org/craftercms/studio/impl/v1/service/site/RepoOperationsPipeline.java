@@ -0,0 +1,238 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.site;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.craftercms.studio.api.v1.to.RepoOperationTO;
+
+/**
+ * Repository operations read ahead of the database sync. A producer thread computes the operations into a bounded
+ * queue and, for each one that needs its dependencies extracted, starts resolving them on a pool of threads. The
+ * sync takes the operations from this iterator in their original order and picks up the dependencies already resolved
+ * with {@link #getDependencies(String)}, so only the database updates stay sequential.
+ *
+ * Dependencies are resolved from the current content of the item, same as when they are extracted during the sync,
+ * so resolving them ahead of time doesn't change the result. Operations on the same path share the resolution until
+ * all of them have been released. An error reading the operations is thrown by {@link #hasNext()} and
+ * {@link #next()}, wrapped in an {@link IllegalStateException}, once the operations read before it have been taken.
+ */
+class RepoOperationsPipeline implements Iterator<RepoOperationTO>, AutoCloseable {
+
+    private static final RepoOperationTO END = new RepoOperationTO(null, null, null, null, null);
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private final String site;
+    private final Iterator<RepoOperationTO> repoOperations;
+    private final Function<String, Map<String, Set<String>>> dependencyResolver;
+    private final BlockingQueue<RepoOperationTO> queue;
+    private final ExecutorService resolvers;
+    private final Map<String, Resolution> resolutions = new ConcurrentHashMap<String, Resolution>();
+    private final Thread producer;
+
+    private volatile boolean closed;
+    private volatile Throwable producerError;
+    private RepoOperationTO next;
+
+    /**
+     * @param site site being synced
+     * @param repoOperations operations to sync, only read by the producer thread
+     * @param dependencyResolver resolves the dependencies of a path, null when the path has none
+     * @param threads number of threads resolving dependencies
+     * @param queueSize max number of operations read ahead
+     */
+    RepoOperationsPipeline(String site, Iterator<RepoOperationTO> repoOperations,
+                           Function<String, Map<String, Set<String>>> dependencyResolver, int threads,
+                           int queueSize) {
+        this.site = site;
+        this.repoOperations = repoOperations;
+        this.dependencyResolver = dependencyResolver;
+        this.queue = new ArrayBlockingQueue<RepoOperationTO>(queueSize);
+        AtomicInteger count = new AtomicInteger();
+        this.resolvers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "sync-dependencies-" + site + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.producer = new Thread(this::produce, "sync-operations-" + site);
+        this.producer.setDaemon(true);
+    }
+
+    void start() {
+        producer.start();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for repository operations for site " +
+                        site, e);
+            }
+        }
+        if (next == END) {
+            if (producerError != null) {
+                throw new IllegalStateException("Error reading repository operations for site " + site,
+                        producerError);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public RepoOperationTO next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        RepoOperationTO toRet = next;
+        next = null;
+        return toRet;
+    }
+
+    /**
+     * Get the resolution of the dependencies of a path of an operation taken from this iterator and not released yet
+     *
+     * @return null if the dependencies of the path were not resolved ahead of time
+     */
+    Future<Map<String, Set<String>>> getDependencies(String path) {
+        Resolution resolution = resolutions.get(path);
+        return resolution != null ? resolution.future : null;
+    }
+
+    /**
+     * Let go of the dependencies resolved for an operation once it has been synced
+     */
+    void release(RepoOperationTO repoOperation) {
+        String path = getDependenciesPath(repoOperation);
+        if (path != null) {
+            resolutions.computeIfPresent(path, (key, resolution) -> {
+                if (--resolution.pending > 0) {
+                    return resolution;
+                }
+                // Nothing to do if the operation was skipped before its dependencies were resolved
+                resolution.future.cancel(false);
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+        try {
+            producer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Threads are not interrupted, they may be reading from the repository
+        for (Resolution resolution : resolutions.values()) {
+            resolution.future.cancel(false);
+        }
+        resolutions.clear();
+        resolvers.shutdown();
+    }
+
+    /**
+     * Path whose dependencies are extracted when syncing the operation
+     */
+    static String getDependenciesPath(RepoOperationTO repoOperation) {
+        switch (repoOperation.getOperation()) {
+            case CREATE:
+            case COPY:
+            case UPDATE:
+                return repoOperation.getPath();
+            case MOVE:
+                return repoOperation.getMoveToPath();
+            default:
+                return null;
+        }
+    }
+
+    private void produce() {
+        try {
+            while (!closed && repoOperations.hasNext()) {
+                RepoOperationTO repoOperation = repoOperations.next();
+                String path = getDependenciesPath(repoOperation);
+                if (path != null) {
+                    resolutions.compute(path, (key, resolution) -> {
+                        if (resolution == null) {
+                            return new Resolution(resolvers.submit(() -> dependencyResolver.apply(key)));
+                        }
+                        resolution.pending++;
+                        return resolution;
+                    });
+                }
+                if (!put(repoOperation)) {
+                    return;
+                }
+            }
+        } catch (Throwable e) {
+            // Rethrown to the sync by hasNext once it reaches the end of the operations read so far
+            producerError = e;
+        } finally {
+            put(END);
+        }
+    }
+
+    /**
+     * Wait for room in the queue until the pipeline is closed
+     *
+     * @return false if the pipeline was closed
+     */
+    private boolean put(RepoOperationTO repoOperation) {
+        try {
+            while (!queue.offer(repoOperation, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static class Resolution {
+
+        final Future<Map<String, Set<String>>> future;
+        int pending = 1;
+
+        Resolution(Future<Map<String, Set<String>>> future) {
+            this.future = future;
+        }
+    }
+}
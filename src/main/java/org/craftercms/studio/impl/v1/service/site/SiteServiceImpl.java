@@ -24,17 +24,24 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpStatus;
@@ -43,6 +50,7 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.ibatis.session.SqlSession;
 import org.craftercms.commons.validation.annotations.param.ValidateIntegerParam;
 import org.craftercms.commons.validation.annotations.param.ValidateNoTagsParam;
 import org.craftercms.commons.validation.annotations.param.ValidateParams;
@@ -75,6 +83,7 @@ import org.craftercms.studio.api.v1.exception.security.UserNotFoundException;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
 import org.craftercms.studio.api.v1.repository.ContentRepository;
+import org.craftercms.studio.api.v1.repository.RepoOperationIterator;
 import org.craftercms.studio.api.v1.repository.RepositoryItem;
 import org.craftercms.studio.api.v1.service.GeneralLockService;
 import org.craftercms.studio.api.v1.service.activity.ActivityService;
@@ -106,6 +115,8 @@ import org.craftercms.studio.api.v1.to.SiteTO;
 import org.craftercms.studio.api.v1.util.StudioConfiguration;
 import org.craftercms.studio.api.v2.service.notification.NotificationService;
 import org.craftercms.studio.impl.v1.repository.job.RebuildRepositoryMetadata;
+import org.craftercms.studio.impl.v1.repository.job.SiteJobStatus;
+import org.craftercms.studio.impl.v1.repository.job.SiteJobStatusRegistry;
 import org.craftercms.studio.impl.v1.repository.job.SyncDatabaseWithRepository;
 import org.craftercms.studio.impl.v1.util.ContentUtils;
 import org.dom4j.Document;
@@ -113,9 +124,10 @@ import org.dom4j.DocumentException;
 import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
 import org.dom4j.Node;
-import org.dom4j.io.SAXReader;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.xml.sax.SAXException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
 
 import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
 import static org.craftercms.studio.api.v1.constant.StudioConstants.REMOTE_REPOSITORY_CREATE_OPTION_CLONE;
@@ -133,6 +145,13 @@ import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATIO
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATION_SITE_PREVIEW_DESTROY_CONTEXT_URL;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_DEFAULT;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.PREVIEW_ENGINE_URL;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_SYNC_DATABASE_BATCH_ENABLED;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_SYNC_DATABASE_BATCH_SIZE;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_SYNC_DATABASE_PIPELINE_ENABLED;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_SYNC_DATABASE_PIPELINE_QUEUE_SIZE;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_SYNC_DATABASE_PIPELINE_THREADS;
+import static org.craftercms.studio.impl.v1.repository.job.SiteJobStatusRegistry.SYNC_DATABASE_JOB;
+import static org.craftercms.studio.impl.v1.repository.job.SyncDatabaseWithRepository.PHASE_SYNCING;
 
 /**
  * Note: consider renaming
@@ -164,9 +183,12 @@ public class SiteServiceImpl implements SiteService {
     protected GeneralLockService generalLockService;
     protected RebuildRepositoryMetadata rebuildRepositoryMetadata;
     protected SyncDatabaseWithRepository syncDatabaseWithRepository;
+    protected SiteJobStatusRegistry siteJobStatusRegistry;
     protected EventService eventService;
 
     protected StudioConfiguration studioConfiguration;
+    protected PlatformTransactionManager transactionManager;
+    protected SqlSession batchSqlSession;
 
     @Autowired
     protected SiteFeedMapper siteFeedMapper;
@@ -1152,6 +1174,7 @@ public class SiteServiceImpl implements SiteService {
 	        objectMetadataManager.deleteObjectMetadataForSite(siteId);
 	        dmPageNavigationOrderService.deleteSequencesForSite(siteId);
 	        contentRepository.deleteGitLogForSite(siteId);
+	        siteJobStatusRegistry.remove(siteId);
 	        insertDeleteSiteAuditLog(siteId);
 	    } catch(Exception e) {
 		    success = false;
@@ -1321,231 +1344,61 @@ public class SiteServiceImpl implements SiteService {
     public boolean syncDatabaseWithRepo(@ValidateStringParam(name = "site") String site,
                                         @ValidateStringParam(name = "fromCommitId") String fromCommitId) {
 		boolean toReturn = true;
-        List<RepoOperationTO> repoOperations = contentRepository.getOperations(site, fromCommitId, contentRepository
-		    .getRepoLastCommitId(site));
-        if (CollectionUtils.isEmpty(repoOperations)) {
-            logger.debug("Database is up to date with repository for site: " + site);
-            contentRepository.markGitLogVerifiedProcessed(site, fromCommitId);
-            return toReturn;
+        // Repository maintenance skips sites that are being synced
+        String syncLock = GeneralLockService.SYNC_DATABASE_WITH_REPO_LOCK + " " + site;
+        generalLockService.lock(syncLock);
+        // Operations are computed lazily while they are processed
+        try (RepoOperationIterator repoOperations = contentRepository.getOperationsIterator(site, fromCommitId,
+                contentRepository.getRepoLastCommitId(site))) {
+            if (!repoOperations.hasNext()) {
+                logger.debug("Database is up to date with repository for site: " + site);
+                contentRepository.markGitLogVerifiedProcessed(site, fromCommitId);
+                return toReturn;
+            }
+            // Operations are streamed, the total is not known up front
+            SiteJobStatus status = siteJobStatusRegistry.start(site, SYNC_DATABASE_JOB);
+            status.startPhase(PHASE_SYNCING, SiteJobStatus.UNKNOWN);
+            try {
+                toReturn = syncDatabaseWithRepo(site, fromCommitId, repoOperations, status);
+                status.finish(false);
+            } catch (RuntimeException e) {
+                status.addError();
+                status.finish(true);
+                throw e;
+            }
+        } finally {
+            generalLockService.unlock(syncLock);
         }
+        return toReturn;
+    }
 
+    private boolean syncDatabaseWithRepo(String site, String fromCommitId, Iterator<RepoOperationTO> repoOperations,
+                                         SiteJobStatus status) {
         logger.info("Syncing database with repository for site: " + site + " fromCommitId = " +
                 (StringUtils.isEmpty(fromCommitId) ? "Empty repo" : fromCommitId));
-        logger.debug("Operations to sync: ");
-	    for (RepoOperationTO repoOperation: repoOperations) {
-	    	logger.debug("\tOperation: " + repoOperation.getOperation().toString() + " " + repoOperation.getPath());
-	    }
 
-	    boolean diverged = false;
-	    GitLog current = null;
-
-	    // Process all operations and track if one or more have failed
-	    for (RepoOperationTO repoOperation: repoOperations) {
-            boolean gitLogProcessed = false;
-            logger.debug("Verifying repo opertation " + repoOperation.getOperation().toString() + " " +
-                    repoOperation.getPath());
-            logger.debug("Get Git Log from database for commit id " + repoOperation.getCommitId());
-            GitLog gitLog = contentRepository.getGitLog(site, repoOperation.getCommitId());
-            if (gitLog != null) {
-                diverged = diverged || gitLog.getProcessed() < 1;
-            } else {
-                logger.debug("Git Log does not exist in database for commit id " + repoOperation.getCommitId());
-                logger.debug("Inserting Git Log for commit id " + repoOperation.getCommitId() + " and site " + site);
-                contentRepository.insertGitLog(site, repoOperation.getCommitId(), 0);
-                logger.debug("Repository diverged from database. All repository operations onwards need to be processed");
-                diverged = true;
-                gitLogProcessed = false;
-                gitLog = contentRepository.getGitLog(site, repoOperation.getCommitId());
+        SyncState syncState = new SyncState();
+        syncState.status = status;
+        if (Boolean.parseBoolean(studioConfiguration.getProperty(REPO_SYNC_DATABASE_PIPELINE_ENABLED))) {
+            int threads = Integer.parseInt(studioConfiguration.getProperty(REPO_SYNC_DATABASE_PIPELINE_THREADS));
+            if (threads < 1) {
+                threads = Runtime.getRuntime().availableProcessors();
             }
-
-            if (current == null) {
-                current = gitLog;
-            } else {
-	            if (!current.getCommitId().equals(gitLog.getCommitId())) {
-                    contentRepository.markGitLogVerifiedProcessed(site, current.getCommitId());
-                    current = gitLog;
-                }
+            int queueSize = Integer.parseInt(studioConfiguration.getProperty(REPO_SYNC_DATABASE_PIPELINE_QUEUE_SIZE));
+            try (RepoOperationsPipeline pipeline = new RepoOperationsPipeline(site, repoOperations,
+                    path -> hasDependencies(site, path) ? dependencyService.resolveDependencies(site, path) : null,
+                    threads, queueSize)) {
+                pipeline.start();
+                syncState.pipeline = pipeline;
+                syncRepoOperations(site, pipeline, syncState);
             }
-
-	        if (diverged) {
-                Map<String, String> activityInfo = new HashMap<String, String>();
-                String contentClass;
-                Map<String, Object> properties;
-                switch (repoOperation.getOperation()) {
-                    case CREATE:
-                    case COPY:
-                        ItemState state = objectStateService.getObjectState(site, repoOperation.getPath(), false);
-
-                        if (state == null) {
-                            logger.debug("Insert item state for site: " + site + " path: " + repoOperation.getPath());
-                            objectStateService.insertNewEntry(site, repoOperation.getPath());
-                        } else {
-                            logger.debug("Set item state for site: " + site + " path: " + repoOperation.getPath());
-                            objectStateService.transition(site, repoOperation.getPath(), TransitionEvent.SAVE);
-                        }
-
-                        logger.debug("Set item metadata for site: " + site + " path: " + repoOperation.getPath());
-                        if (!objectMetadataManager.metadataExist(site, repoOperation.getPath())) {
-                            objectMetadataManager.insertNewObjectMetadata(site, repoOperation.getPath());
-                        }
-                        properties = new HashMap<String, Object>();
-                        properties.put(ItemMetadata.PROP_SITE, site);
-                        properties.put(ItemMetadata.PROP_PATH, repoOperation.getPath());
-                        properties.put(ItemMetadata.PROP_MODIFIER, repoOperation.getAuthor());
-                        properties.put(ItemMetadata.PROP_MODIFIED, repoOperation.getDateTime());
-                        properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
-                        objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
-                        logger.debug("Extract dependencies for site: " + site + " path: " +
-                                repoOperation.getPath());
-                        toReturn = toReturn && extractDependenciesForItem(site, repoOperation.getPath());
-                        contentClass = contentService.getContentTypeClass(site, repoOperation.getPath());
-                        if (repoOperation.getPath().endsWith(DmConstants.XML_PATTERN)) {
-                            activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
-                        }
-                        logger.debug("Insert audit log for site: " + site + " path: " + repoOperation.getPath());
-                        activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getPath(),
-                                ActivityService.ActivityType.CREATED, ActivityService.ActivitySource.REPOSITORY,
-                                activityInfo);
-                        break;
-
-                    case UPDATE:
-                        logger.debug("Set item state for site: " + site + " path: " + repoOperation.getPath());
-                        objectStateService.getObjectState(site, repoOperation.getPath());
-                        objectStateService.transition(site, repoOperation.getPath(), TransitionEvent.SAVE);
-
-                        logger.debug("Set item metadata for site: " + site + " path: " + repoOperation.getPath());
-                        if (!objectMetadataManager.metadataExist(site, repoOperation.getPath())) {
-                            objectMetadataManager.insertNewObjectMetadata(site, repoOperation.getPath());
-                        }
-                        properties = new HashMap<String, Object>();
-                        properties.put(ItemMetadata.PROP_SITE, site);
-                        properties.put(ItemMetadata.PROP_PATH, repoOperation.getPath());
-                        properties.put(ItemMetadata.PROP_MODIFIER, repoOperation.getAuthor());
-                        properties.put(ItemMetadata.PROP_MODIFIED, repoOperation.getDateTime());
-                        properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
-                        objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
-
-                        logger.debug("Extract dependencies for site: " + site + " path: " + repoOperation.getPath());
-                        toReturn = toReturn && extractDependenciesForItem(site, repoOperation.getPath());
-                        contentClass = contentService.getContentTypeClass(site, repoOperation.getPath());
-                        if (repoOperation.getPath().endsWith(DmConstants.XML_PATTERN)) {
-                            activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
-                        }
-                        logger.debug("Insert audit log for site: " + site + " path: " + repoOperation.getPath());
-                        activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getPath(),
-                                ActivityService.ActivityType.UPDATED, ActivityService.ActivitySource.REPOSITORY,
-                                activityInfo);
-                        break;
-
-                    case DELETE:
-                        logger.debug("Delete item state for site: " + site + " path: " + repoOperation.getPath());
-                        objectStateService.deleteObjectStateForPath(site, repoOperation.getPath());
-                        logger.debug("Delete item metadata for site: " + site + " path: " + repoOperation.getPath());
-                        objectMetadataManager.deleteObjectMetadata(site, repoOperation.getPath());
-                        logger.debug("Extract dependencies for site: " + site + " path: " + repoOperation.getPath());
-                        try {
-                            dependencyService.deleteItemDependencies(site, repoOperation.getPath());
-                        } catch (ServiceException e) {
-                            logger.error("Error deleting dependencies for site " + site + " file: " +
-                                    repoOperation.getPath(), e);
-                        }
-                        contentClass = contentService.getContentTypeClass(site, repoOperation.getPath());
-                        if (repoOperation.getPath().endsWith(DmConstants.XML_PATTERN)) {
-                            activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
-                        }
-                        logger.debug("Insert audit log for site: " + site + " path: " + repoOperation.getPath());
-                        activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getPath(),
-                                ActivityService.ActivityType.DELETED, ActivityService.ActivitySource.REPOSITORY,
-                                activityInfo);
-                        break;
-
-                    case MOVE:
-                        ItemState stateRename = objectStateService.getObjectState(site, repoOperation.getPath(), false);
-                        logger.debug("Set item state for site: " + site + " path: " + repoOperation.getMoveToPath());
-                        if (stateRename == null) {
-                            objectStateService.getObjectState(site, repoOperation.getMoveToPath());
-                            objectStateService.transition(site, repoOperation.getMoveToPath(), TransitionEvent.SAVE);
-                        } else {
-                            objectStateService.updateObjectPath(site, repoOperation.getPath(),
-                                    repoOperation.getMoveToPath());
-                            objectStateService.transition(site, repoOperation.getMoveToPath(), TransitionEvent.SAVE);
-                        }
-
-                        logger.debug("Set item metadata for site: " + site + " path: " +
-                                repoOperation.getMoveToPath());
-                        if (!objectMetadataManager.metadataExist(site, repoOperation.getPath())) {
-                            if (!objectMetadataManager.metadataExist(site, repoOperation.getMoveToPath())) {
-                                objectMetadataManager.insertNewObjectMetadata(site, repoOperation.getMoveToPath());
-                            } else {
-                                if (!objectMetadataManager.isRenamed(site, repoOperation.getMoveToPath())) {
-                                    // set renamed and old path
-                                    properties = new HashMap<String, Object>();
-                                    properties.put(ItemMetadata.PROP_SITE, site);
-                                    properties.put(ItemMetadata.PROP_PATH, repoOperation.getMoveToPath());
-                                    properties.put(ItemMetadata.PROP_RENAMED, 1);
-                                    properties.put(ItemMetadata.PROP_OLD_URL, repoOperation.getPath());
-                                    properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
-                                    properties.put(ItemMetadata.PROP_MODIFIER, repoOperation.getAuthor());
-                                    properties.put(ItemMetadata.PROP_MODIFIED, repoOperation.getDateTime());
-                                    objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(),
-                                            properties);
-                                }
-                            }
-                        } else {
-                            if (!objectMetadataManager.metadataExist(site, repoOperation.getMoveToPath())) {
-                                // preform move: update path, set renamed, set old url
-                                objectMetadataManager.updateObjectPath(site, repoOperation.getPath(),
-                                        repoOperation.getMoveToPath());
-                                properties = new HashMap<String, Object>();
-                                properties.put(ItemMetadata.PROP_SITE, site);
-                                properties.put(ItemMetadata.PROP_PATH, repoOperation.getMoveToPath());
-                                properties.put(ItemMetadata.PROP_RENAMED, 1);
-                                properties.put(ItemMetadata.PROP_OLD_URL, repoOperation.getPath());
-                                properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
-                                properties.put(ItemMetadata.PROP_MODIFIER, repoOperation.getAuthor());
-                                objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
-                            } else {
-                                // if not already renamed set renamed and old url
-                                if (!objectMetadataManager.isRenamed(site, repoOperation.getMoveToPath())) {
-                                    // set renamed and old path
-                                    properties = new HashMap<String, Object>();
-                                    properties.put(ItemMetadata.PROP_SITE, site);
-                                    properties.put(ItemMetadata.PROP_PATH, repoOperation.getMoveToPath());
-                                    properties.put(ItemMetadata.PROP_RENAMED, 1);
-                                    properties.put(ItemMetadata.PROP_OLD_URL, repoOperation.getPath());
-                                    properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
-                                    properties.put(ItemMetadata.PROP_MODIFIER, repoOperation.getAuthor());
-                                    objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(),
-                                            properties);
-                                }
-                                objectMetadataManager.deleteObjectMetadata(site, repoOperation.getPath());
-                            }
-                        }
-
-                        logger.debug("Extract dependencies for site: " + site + " path: " + repoOperation.getPath());
-                        toReturn = toReturn && extractDependenciesForItem(site, repoOperation.getMoveToPath());
-                        contentClass = contentService.getContentTypeClass(site, repoOperation.getMoveToPath());
-                        if (repoOperation.getMoveToPath().endsWith(DmConstants.XML_PATTERN)) {
-                            activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
-                        }
-                        logger.debug("Insert audit log for site: " + site + " path: " +
-                                repoOperation.getMoveToPath());
-                        activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getMoveToPath(),
-                                ActivityService.ActivityType.UPDATED, ActivityService.ActivitySource.REPOSITORY,
-                                activityInfo);
-                        break;
-
-                    default:
-                        logger.error("Error: Unknown repo operation for site " + site + " operation: " +
-                                repoOperation.getOperation());
-                        toReturn = false;
-                        break;
-                }
-            }
-	    }
-        if (current != null) {
-            contentRepository.markGitLogVerifiedProcessed(site, current.getCommitId());
-            updateLastVerifiedGitlogCommitId(site, current.getCommitId());
+        } else {
+            syncRepoOperations(site, repoOperations, syncState);
+        }
+        boolean toReturn = syncState.result;
+        if (syncState.currentCommitId != null) {
+            contentRepository.markGitLogVerifiedProcessed(site, syncState.currentCommitId);
+            updateLastVerifiedGitlogCommitId(site, syncState.currentCommitId);
         }
 
 	    // At this point we have attempted to process all operations, some may have failed
@@ -1579,29 +1432,448 @@ public class SiteServiceImpl implements SiteService {
 	    return toReturn;
     }
 
+    private void syncRepoOperations(String site, Iterator<RepoOperationTO> repoOperations, SyncState syncState) {
+        if (Boolean.parseBoolean(studioConfiguration.getProperty(REPO_SYNC_DATABASE_BATCH_ENABLED))) {
+            syncRepoOperationsInBatches(site, repoOperations, syncState);
+        } else {
+            // Process all operations and track if one or more have failed
+            while (repoOperations.hasNext()) {
+                RepoOperationTO repoOperation = repoOperations.next();
+                boolean result = syncState.begin();
+                syncRepoOperation(site, repoOperation, syncState);
+                syncState.end(result, 1);
+                syncState.release(repoOperation);
+            }
+        }
+    }
+
+    private void syncRepoOperation(String site, RepoOperationTO repoOperation, SyncState syncState) {
+        boolean gitLogProcessed = false;
+        logger.debug("Verifying repo opertation " + repoOperation.getOperation().toString() + " " +
+                repoOperation.getPath());
+        logger.debug("Get Git Log from database for commit id " + repoOperation.getCommitId());
+        GitLog gitLog = contentRepository.getGitLog(site, repoOperation.getCommitId());
+        if (gitLog != null) {
+            syncState.diverged = syncState.diverged || gitLog.getProcessed() < 1;
+        } else {
+            logger.debug("Git Log does not exist in database for commit id " + repoOperation.getCommitId());
+            logger.debug("Inserting Git Log for commit id " + repoOperation.getCommitId() + " and site " + site);
+            contentRepository.insertGitLog(site, repoOperation.getCommitId(), 0);
+            logger.debug("Repository diverged from database. All repository operations onwards need to be processed");
+            syncState.diverged = true;
+            gitLogProcessed = false;
+            gitLog = contentRepository.getGitLog(site, repoOperation.getCommitId());
+        }
+
+        if (syncState.currentCommitId == null) {
+            syncState.currentCommitId = gitLog.getCommitId();
+        } else {
+            if (!syncState.currentCommitId.equals(gitLog.getCommitId())) {
+                contentRepository.markGitLogVerifiedProcessed(site, syncState.currentCommitId);
+                syncState.currentCommitId = gitLog.getCommitId();
+            }
+        }
+
+        if (syncState.diverged) {
+            Map<String, String> activityInfo = new HashMap<String, String>();
+            String contentClass;
+            Map<String, Object> properties;
+            switch (repoOperation.getOperation()) {
+                case CREATE:
+                case COPY:
+                    ItemState state = objectStateService.getObjectState(site, repoOperation.getPath(), false);
+
+                    if (state == null) {
+                        logger.debug("Insert item state for site: " + site + " path: " + repoOperation.getPath());
+                        objectStateService.insertNewEntry(site, repoOperation.getPath());
+                    } else {
+                        logger.debug("Set item state for site: " + site + " path: " + repoOperation.getPath());
+                        objectStateService.transition(site, repoOperation.getPath(), TransitionEvent.SAVE);
+                    }
+
+                    logger.debug("Set item metadata for site: " + site + " path: " + repoOperation.getPath());
+                    if (!objectMetadataManager.metadataExist(site, repoOperation.getPath())) {
+                        objectMetadataManager.insertNewObjectMetadata(site, repoOperation.getPath());
+                    }
+                    properties = new HashMap<String, Object>();
+                    properties.put(ItemMetadata.PROP_SITE, site);
+                    properties.put(ItemMetadata.PROP_PATH, repoOperation.getPath());
+                    properties.put(ItemMetadata.PROP_MODIFIER, repoOperation.getAuthor());
+                    properties.put(ItemMetadata.PROP_MODIFIED, repoOperation.getDateTime());
+                    properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
+                    objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
+                    logger.debug("Extract dependencies for site: " + site + " path: " +
+                            repoOperation.getPath());
+                    syncState.result = syncState.result &&
+                            extractDependenciesForItem(site, repoOperation.getPath(), syncState.pipeline);
+                    contentClass = contentService.getContentTypeClass(site, repoOperation.getPath());
+                    if (repoOperation.getPath().endsWith(DmConstants.XML_PATTERN)) {
+                        activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
+                    }
+                    logger.debug("Insert audit log for site: " + site + " path: " + repoOperation.getPath());
+                    activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getPath(),
+                            ActivityService.ActivityType.CREATED, ActivityService.ActivitySource.REPOSITORY,
+                            activityInfo);
+                    break;
+
+                case UPDATE:
+                    logger.debug("Set item state for site: " + site + " path: " + repoOperation.getPath());
+                    objectStateService.getObjectState(site, repoOperation.getPath());
+                    objectStateService.transition(site, repoOperation.getPath(), TransitionEvent.SAVE);
+
+                    logger.debug("Set item metadata for site: " + site + " path: " + repoOperation.getPath());
+                    if (!objectMetadataManager.metadataExist(site, repoOperation.getPath())) {
+                        objectMetadataManager.insertNewObjectMetadata(site, repoOperation.getPath());
+                    }
+                    properties = new HashMap<String, Object>();
+                    properties.put(ItemMetadata.PROP_SITE, site);
+                    properties.put(ItemMetadata.PROP_PATH, repoOperation.getPath());
+                    properties.put(ItemMetadata.PROP_MODIFIER, repoOperation.getAuthor());
+                    properties.put(ItemMetadata.PROP_MODIFIED, repoOperation.getDateTime());
+                    properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
+                    objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
+
+                    logger.debug("Extract dependencies for site: " + site + " path: " + repoOperation.getPath());
+                    syncState.result = syncState.result &&
+                            extractDependenciesForItem(site, repoOperation.getPath(), syncState.pipeline);
+                    contentClass = contentService.getContentTypeClass(site, repoOperation.getPath());
+                    if (repoOperation.getPath().endsWith(DmConstants.XML_PATTERN)) {
+                        activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
+                    }
+                    logger.debug("Insert audit log for site: " + site + " path: " + repoOperation.getPath());
+                    activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getPath(),
+                            ActivityService.ActivityType.UPDATED, ActivityService.ActivitySource.REPOSITORY,
+                            activityInfo);
+                    break;
+
+                case DELETE:
+                    logger.debug("Delete item state for site: " + site + " path: " + repoOperation.getPath());
+                    objectStateService.deleteObjectStateForPath(site, repoOperation.getPath());
+                    logger.debug("Delete item metadata for site: " + site + " path: " + repoOperation.getPath());
+                    objectMetadataManager.deleteObjectMetadata(site, repoOperation.getPath());
+                    logger.debug("Extract dependencies for site: " + site + " path: " + repoOperation.getPath());
+                    try {
+                        dependencyService.deleteItemDependencies(site, repoOperation.getPath());
+                    } catch (ServiceException e) {
+                        logger.error("Error deleting dependencies for site " + site + " file: " +
+                                repoOperation.getPath(), e);
+                    }
+                    contentClass = contentService.getContentTypeClass(site, repoOperation.getPath());
+                    if (repoOperation.getPath().endsWith(DmConstants.XML_PATTERN)) {
+                        activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
+                    }
+                    logger.debug("Insert audit log for site: " + site + " path: " + repoOperation.getPath());
+                    activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getPath(),
+                            ActivityService.ActivityType.DELETED, ActivityService.ActivitySource.REPOSITORY,
+                            activityInfo);
+                    break;
+
+                case MOVE:
+                    ItemState stateRename = objectStateService.getObjectState(site, repoOperation.getPath(), false);
+                    logger.debug("Set item state for site: " + site + " path: " + repoOperation.getMoveToPath());
+                    if (stateRename == null) {
+                        objectStateService.getObjectState(site, repoOperation.getMoveToPath());
+                        objectStateService.transition(site, repoOperation.getMoveToPath(), TransitionEvent.SAVE);
+                    } else {
+                        objectStateService.updateObjectPath(site, repoOperation.getPath(),
+                                repoOperation.getMoveToPath());
+                        objectStateService.transition(site, repoOperation.getMoveToPath(), TransitionEvent.SAVE);
+                    }
+
+                    logger.debug("Set item metadata for site: " + site + " path: " +
+                            repoOperation.getMoveToPath());
+                    if (!objectMetadataManager.metadataExist(site, repoOperation.getPath())) {
+                        if (!objectMetadataManager.metadataExist(site, repoOperation.getMoveToPath())) {
+                            objectMetadataManager.insertNewObjectMetadata(site, repoOperation.getMoveToPath());
+                        } else {
+                            if (!objectMetadataManager.isRenamed(site, repoOperation.getMoveToPath())) {
+                                // set renamed and old path
+                                properties = new HashMap<String, Object>();
+                                properties.put(ItemMetadata.PROP_SITE, site);
+                                properties.put(ItemMetadata.PROP_PATH, repoOperation.getMoveToPath());
+                                properties.put(ItemMetadata.PROP_RENAMED, 1);
+                                properties.put(ItemMetadata.PROP_OLD_URL, repoOperation.getPath());
+                                properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
+                                properties.put(ItemMetadata.PROP_MODIFIER, repoOperation.getAuthor());
+                                properties.put(ItemMetadata.PROP_MODIFIED, repoOperation.getDateTime());
+                                objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(),
+                                        properties);
+                            }
+                        }
+                    } else {
+                        if (!objectMetadataManager.metadataExist(site, repoOperation.getMoveToPath())) {
+                            // preform move: update path, set renamed, set old url
+                            objectMetadataManager.updateObjectPath(site, repoOperation.getPath(),
+                                    repoOperation.getMoveToPath());
+                            properties = new HashMap<String, Object>();
+                            properties.put(ItemMetadata.PROP_SITE, site);
+                            properties.put(ItemMetadata.PROP_PATH, repoOperation.getMoveToPath());
+                            properties.put(ItemMetadata.PROP_RENAMED, 1);
+                            properties.put(ItemMetadata.PROP_OLD_URL, repoOperation.getPath());
+                            properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
+                            properties.put(ItemMetadata.PROP_MODIFIER, repoOperation.getAuthor());
+                            objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
+                        } else {
+                            // if not already renamed set renamed and old url
+                            if (!objectMetadataManager.isRenamed(site, repoOperation.getMoveToPath())) {
+                                // set renamed and old path
+                                properties = new HashMap<String, Object>();
+                                properties.put(ItemMetadata.PROP_SITE, site);
+                                properties.put(ItemMetadata.PROP_PATH, repoOperation.getMoveToPath());
+                                properties.put(ItemMetadata.PROP_RENAMED, 1);
+                                properties.put(ItemMetadata.PROP_OLD_URL, repoOperation.getPath());
+                                properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
+                                properties.put(ItemMetadata.PROP_MODIFIER, repoOperation.getAuthor());
+                                objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(),
+                                        properties);
+                            }
+                            objectMetadataManager.deleteObjectMetadata(site, repoOperation.getPath());
+                        }
+                    }
+
+                    logger.debug("Extract dependencies for site: " + site + " path: " + repoOperation.getPath());
+                    syncState.result = syncState.result &&
+                            extractDependenciesForItem(site, repoOperation.getMoveToPath(), syncState.pipeline);
+                    contentClass = contentService.getContentTypeClass(site, repoOperation.getMoveToPath());
+                    if (repoOperation.getMoveToPath().endsWith(DmConstants.XML_PATTERN)) {
+                        activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
+                    }
+                    logger.debug("Insert audit log for site: " + site + " path: " +
+                            repoOperation.getMoveToPath());
+                    activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getMoveToPath(),
+                            ActivityService.ActivityType.UPDATED, ActivityService.ActivitySource.REPOSITORY,
+                            activityInfo);
+                    break;
+
+                default:
+                    logger.error("Error: Unknown repo operation for site " + site + " operation: " +
+                            repoOperation.getOperation());
+                    syncState.result = false;
+                    break;
+            }
+        }
+    }
+
+    private void syncRepoOperationsInBatches(String site, Iterator<RepoOperationTO> repoOperations,
+                                             SyncState syncState) {
+        int batchSize = Integer.parseInt(studioConfiguration.getProperty(REPO_SYNC_DATABASE_BATCH_SIZE));
+        List<RepoOperationTO> batch = new ArrayList<RepoOperationTO>(batchSize);
+        long start = System.currentTimeMillis();
+        long synced = 0;
+        while (repoOperations.hasNext()) {
+            batch.add(repoOperations.next());
+            if (batch.size() >= batchSize || !repoOperations.hasNext()) {
+                boolean result = syncState.begin();
+                if (!syncRepoOperationsBatch(site, batch, syncState)) {
+                    for (RepoOperationTO repoOperation : batch) {
+                        syncRepoOperation(site, repoOperation, syncState);
+                    }
+                }
+                syncState.end(result, batch.size());
+                for (RepoOperationTO repoOperation : batch) {
+                    syncState.release(repoOperation);
+                }
+                synced += batch.size();
+                batch.clear();
+                long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+                logger.info("Synced " + synced + " repository operations with database for site: " + site +
+                        " (" + (synced * 1000 / elapsed) + " ops/sec)");
+            }
+        }
+    }
+
+    /**
+     * Sync a batch of operations reading the rows they touch with one query per table and writing the changes as
+     * JDBC batches in a single transaction
+     *
+     * @return false if nothing was written, the operations have to be synced one by one then
+     */
+    private boolean syncRepoOperationsBatch(String site, List<RepoOperationTO> repoOperations, SyncState syncState) {
+        RepoOperationsBatch batch = new RepoOperationsBatch(site, syncState.diverged, syncState.currentCommitId,
+                objectStateService, contentService, activityService);
+
+        // Hold the same item locks as the object state service, so no transition changes the rows between loading
+        // and writing them. Locks are only tried, a busy item sends the batch to the one by one sync.
+        List<String> lockKeys = batch.getLockKeys(repoOperations);
+        List<String> lockedKeys = new ArrayList<String>(lockKeys.size());
+        try {
+            for (String lockKey : lockKeys) {
+                if (!generalLockService.tryLock(lockKey)) {
+                    logger.debug("Item " + lockKey + " is locked, syncing the batch of repository operations one " +
+                            "by one");
+                    return false;
+                }
+                lockedKeys.add(lockKey);
+            }
+            if (!writeRepoOperationsBatch(site, repoOperations, batch)) {
+                return false;
+            }
+        } finally {
+            for (String lockKey : lockedKeys) {
+                generalLockService.unlock(lockKey);
+            }
+        }
+
+        syncState.diverged = batch.isDiverged();
+        syncState.currentCommitId = batch.getCurrentCommitId();
+        syncState.result = batch.getResult() && syncState.result;
+        syncState.result = updateDependencies(site, batch.getDependencyUpdates(), syncState.pipeline) &&
+                syncState.result;
+        return true;
+    }
+
+    /**
+     * Load the rows of a batch, apply its operations and write the changes in a single transaction
+     *
+     * @return false if nothing was written
+     */
+    private boolean writeRepoOperationsBatch(String site, List<RepoOperationTO> repoOperations,
+                                             RepoOperationsBatch batch) {
+        try {
+            List<String> paths = batch.getPaths(repoOperations);
+            batch.load(contentRepository.getGitLogs(site, batch.getCommitIds(repoOperations)),
+                    objectStateService.getObjectStates(site, paths), objectMetadataManager.getProperties(site, paths));
+            for (RepoOperationTO repoOperation : repoOperations) {
+                if (!batch.add(repoOperation)) {
+                    logger.debug("Operation " + repoOperation.getOperation() + " " + repoOperation.getPath() +
+                            " cannot be synced in a batch for site " + site + ", syncing the batch one by one");
+                    return false;
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Error preparing batch of repository operations for site " + site +
+                    ", syncing the batch one by one", e);
+            return false;
+        }
+        if (!batch.isWritable()) {
+            logger.debug("Batch of repository operations for site " + site + " moves items in a chain, syncing the " +
+                    "batch one by one");
+            return false;
+        }
+
+        DefaultTransactionDefinition defaultTransactionDefinition = new DefaultTransactionDefinition();
+        defaultTransactionDefinition.setName("syncRepoOperationsBatch");
+        TransactionStatus txStatus = transactionManager.getTransaction(defaultTransactionDefinition);
+        try {
+            batch.write(batchSqlSession);
+            batchSqlSession.flushStatements();
+            transactionManager.commit(txStatus);
+        } catch (Exception e) {
+            if (!txStatus.isCompleted()) {
+                transactionManager.rollback(txStatus);
+            }
+            logger.warn("Error writing batch of repository operations for site " + site +
+                    ", syncing the batch one by one", e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Update the dependencies of the items of a batch in order, extracting the dependencies of consecutive items
+     * together
+     */
+    private boolean updateDependencies(String site, List<RepoOperationsBatch.DependencyUpdate> dependencyUpdates,
+                                       RepoOperationsPipeline pipeline) {
+        boolean toReturn = true;
+        Set<String> paths = new LinkedHashSet<String>();
+        for (RepoOperationsBatch.DependencyUpdate dependencyUpdate : dependencyUpdates) {
+            if (!dependencyUpdate.isDelete()) {
+                if (hasDependencies(site, dependencyUpdate.getPath())) {
+                    paths.add(dependencyUpdate.getPath());
+                }
+            } else {
+                toReturn = extractDependenciesForItems(site, paths, pipeline) && toReturn;
+                paths.clear();
+                try {
+                    dependencyService.deleteItemDependencies(site, dependencyUpdate.getPath());
+                } catch (ServiceException e) {
+                    logger.error("Error deleting dependencies for site " + site + " file: " +
+                            dependencyUpdate.getPath(), e);
+                }
+            }
+        }
+        return extractDependenciesForItems(site, paths, pipeline) && toReturn;
+    }
+
+    private boolean extractDependenciesForItems(String site, Set<String> paths, RepoOperationsPipeline pipeline) {
+        if (paths.size() > 1) {
+            try {
+                Map<String, Map<String, Set<String>>> dependencies = getResolvedDependencies(paths, pipeline);
+                if (dependencies != null) {
+                    dependencyService.upsertDependencies(site, dependencies);
+                } else {
+                    dependencyService.upsertDependencies(site, new ArrayList<String>(paths));
+                }
+                return true;
+            } catch (ServiceException e) {
+                logger.debug("Error extracting dependencies for a batch of files for site " + site +
+                        ", extracting them one by one", e);
+            }
+        }
+        boolean toReturn = true;
+        for (String path : paths) {
+            toReturn = extractDependenciesForItem(site, path, pipeline) && toReturn;
+        }
+        return toReturn;
+    }
+
+    private boolean extractDependenciesForItem(String site, String path, RepoOperationsPipeline pipeline) {
+        if (pipeline == null || !hasDependencies(site, path)) {
+            return extractDependenciesForItem(site, path);
+        }
+        Map<String, Map<String, Set<String>>> dependencies =
+                getResolvedDependencies(Collections.singleton(path), pipeline);
+        if (dependencies == null) {
+            return extractDependenciesForItem(site, path);
+        }
+        boolean toReturn = true;
+        try {
+            if (dependencies.get(path) != null) {
+                dependencyService.upsertDependencies(site, dependencies);
+            }
+        } catch (ServiceException e) {
+            logger.error("Error extracting dependencies for site " + site + " file: " + path, e);
+            toReturn = false;
+        }
+        return toReturn;
+    }
+
+    /**
+     * Get the dependencies the pipeline resolved ahead of time for the given paths
+     *
+     * @return null if any of them was not resolved or failed, they have to be resolved again then
+     */
+    private Map<String, Map<String, Set<String>>> getResolvedDependencies(Collection<String> paths,
+                                                                          RepoOperationsPipeline pipeline) {
+        if (pipeline == null) {
+            return null;
+        }
+        Map<String, Map<String, Set<String>>> toRet = new LinkedHashMap<String, Map<String, Set<String>>>();
+        for (String path : paths) {
+            Future<Map<String, Set<String>>> future = pipeline.getDependencies(path);
+            if (future == null) {
+                return null;
+            }
+            try {
+                toRet.put(path, future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException | CancellationException e) {
+                logger.debug("Dependencies resolved ahead of time failed for site file: " + path, e);
+                return null;
+            }
+        }
+        return toRet;
+    }
+
     protected boolean extractDependenciesForItem(String site, String path) {
 		boolean toReturn = true;
 
 	    try {
-		    if (path.endsWith(DmConstants.XML_PATTERN)) {
-			    SAXReader saxReader = new SAXReader();
-				try {
-					saxReader.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-					saxReader.setFeature("http://xml.org/sax/features/external-general-entities", false);
-					saxReader.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-				}catch (SAXException ex){
-					logger.error("Unable to turn off external entity loading, This could be a security risk.", ex);
-				}
-
+		    if (hasDependencies(site, path)) {
 			    dependencyService.upsertDependencies(site, path);
-		    } else {
-			    boolean isCss = path.endsWith(DmConstants.CSS_PATTERN);
-			    boolean isJs = path.endsWith(DmConstants.JS_PATTERN);
-			    boolean isTemplate = ContentUtils.matchesPatterns(path, servicesConfig.getRenderingTemplatePatterns
-				    (site));
-			    if (isCss || isJs || isTemplate) {
-				    dependencyService.upsertDependencies(site, path);
-			    }
 		    }
 	    } catch (ServiceException e) {
 		    logger.error("Error extracting dependencies for site " + site + " file: " + path, e);
@@ -1611,6 +1883,17 @@ public class SiteServiceImpl implements SiteService {
 	    return toReturn;
     }
 
+    protected boolean hasDependencies(String site, String path) {
+        if (path.endsWith(DmConstants.XML_PATTERN)) {
+            return true;
+        } else {
+            boolean isCss = path.endsWith(DmConstants.CSS_PATTERN);
+            boolean isJs = path.endsWith(DmConstants.JS_PATTERN);
+            boolean isTemplate = servicesConfig.getRenderingTemplatePatternSet(site).matches(path);
+            return isCss || isJs || isTemplate;
+        }
+    }
+
     @Override
     @ValidateParams
     public boolean exists(@ValidateStringParam(name = "site") String site) {
@@ -1921,6 +2204,13 @@ public class SiteServiceImpl implements SiteService {
 	    this.syncDatabaseWithRepository = syncDatabaseWithRepository;
 	}
 
+    public SiteJobStatusRegistry getSiteJobStatusRegistry() {
+        return siteJobStatusRegistry;
+    }
+    public void setSiteJobStatusRegistry(SiteJobStatusRegistry siteJobStatusRegistry) {
+        this.siteJobStatusRegistry = siteJobStatusRegistry;
+    }
+
     public StudioConfiguration getStudioConfiguration() {
 	    return studioConfiguration;
 	}
@@ -1939,10 +2229,68 @@ public class SiteServiceImpl implements SiteService {
 	    this.eventService = eventService;
 	}
 
+    public PlatformTransactionManager getTransactionManager() {
+        return transactionManager;
+    }
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    public SqlSession getBatchSqlSession() {
+        return batchSqlSession;
+    }
+    public void setBatchSqlSession(SqlSession batchSqlSession) {
+        this.batchSqlSession = batchSqlSession;
+    }
+
 	public PreviewDeployer getPreviewDeployer() {
 		return previewDeployer;
 	}
 	public void setPreviewDeployer(final PreviewDeployer previewDeployer) {
 		this.previewDeployer = previewDeployer;
 	}
+
+    /**
+     * Progress of a sync carried from one operation to the next
+     */
+    private static class SyncState {
+
+        boolean result = true;
+        boolean diverged = false;
+        String currentCommitId = null;
+        RepoOperationsPipeline pipeline = null;
+        SiteJobStatus status = null;
+
+        /**
+         * Start syncing some operations, their result is tracked apart so their failure counts as one error
+         *
+         * @return result of the operations synced before
+         */
+        boolean begin() {
+            boolean toReturn = result;
+            result = true;
+            return toReturn;
+        }
+
+        /**
+         * Finish syncing some operations
+         *
+         * @param previousResult result of the operations synced before
+         * @param count number of operations synced
+         */
+        void end(boolean previousResult, int count) {
+            if (!result) {
+                status.addError();
+            }
+            result = previousResult && result;
+            status.setCurrentCommitId(currentCommitId);
+            status.addProcessed(count);
+        }
+
+        void release(RepoOperationTO repoOperation) {
+            if (pipeline != null) {
+                pipeline.release(repoOperation);
+            }
+        }
+    }
 }
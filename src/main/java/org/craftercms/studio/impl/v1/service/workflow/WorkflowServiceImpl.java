@@ -434,16 +434,13 @@ public class WorkflowServiceImpl implements WorkflowService {
         // the category item to add all other items that do not belong to
         // regular categories specified in the configuration
         if (changeSet != null) {
-            // add all content items from each task if task is the review task
+            List<ItemState> existingStates = new ArrayList<>();
+            List<String> existingPaths = new ArrayList<>();
             for (ItemState state : changeSet) {
                 try {
                     if (contentService.contentExists( state.getSite(), state.getPath())) {
-                        ContentItemTO item = contentService.getContentItem(state.getSite(), state.getPath(), 0);
-                        Set<String> permissions = securityService.getUserPermissions(site, item.getUri(),
-                                securityService.getCurrentUser(), Collections.<String>emptyList());
-                        if (permissions.contains(StudioConstants.PERMISSION_VALUE_PUBLISH)) {
-                            addToQueue(site, goLiveQueue, inProcessQueue, item, state);
-                        }
+                        existingStates.add(state);
+                        existingPaths.add(state.getPath());
                     } else {
                         _cancelWorkflow(site, state.getPath());
                         objectStateService.deleteObjectStateForPath(site, state.getPath());
@@ -454,6 +451,23 @@ public class WorkflowServiceImpl implements WorkflowService {
                             + e.getMessage());
                 }
             }
+
+            // add all content items from each task if task is the review task
+            List<ContentItemTO> items = contentService.getContentItems(site, existingPaths, 0);
+            for (int i = 0; i < existingStates.size(); i++) {
+                ItemState state = existingStates.get(i);
+                try {
+                    ContentItemTO item = items.get(i);
+                    Set<String> permissions = securityService.getUserPermissions(site, item.getUri(),
+                            securityService.getCurrentUser(), Collections.<String>emptyList());
+                    if (permissions.contains(StudioConstants.PERMISSION_VALUE_PUBLISH)) {
+                        addToQueue(site, goLiveQueue, inProcessQueue, item, state);
+                    }
+                } catch (Exception e) {
+                    logger.error("Could not warm cache for [" + state.getSite() + " : " + state.getPath() + "] "
+                            + e.getMessage());
+                }
+            }
         }
     }
 
@@ -521,15 +535,17 @@ public class WorkflowServiceImpl implements WorkflowService {
 
         if (changeSet != null) {
             List<String> displayPatterns = servicesConfig.getDisplayInWidgetPathPatterns(site);
-            //List<String> inProgressItems = new FastList<String>();
+            List<String> inProgressPaths = new ArrayList<>();
             for (ItemState state : changeSet) {
                 if (contentService.contentExists(state.getSite(), state.getPath())) {
                     if (ContentUtils.matchesPatterns(state.getPath(), displayPatterns)) {
-                        ContentItemTO item = contentService.getContentItem(state.getSite(), state.getPath(), 0);
-                        addInProgressItems(site, item, categoryItems, comparator, inProgressOnly);
+                        inProgressPaths.add(state.getPath());
                     }
                 }
             }
+            for (ContentItemTO item : contentService.getContentItems(site, inProgressPaths, 0)) {
+                addInProgressItems(site, item, categoryItems, comparator, inProgressOnly);
+            }
         }
 
         logger.debug("Time taken after listChangedAll() : " + (System.currentTimeMillis() - st));
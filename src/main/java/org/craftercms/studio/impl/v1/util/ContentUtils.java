@@ -21,6 +21,7 @@ import org.apache.commons.io.IOUtils;
 import org.craftercms.studio.api.v1.constant.StudioConstants;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.util.PatternSet;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.io.SAXReader;
@@ -28,6 +29,9 @@ import org.xml.sax.SAXException;
 
 import java.io.*;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
 
@@ -36,6 +40,9 @@ public class ContentUtils {
 
 	private static final Logger logger = LoggerFactory.getLogger(ContentUtils.class);
 
+    private static final int MAX_COMPILED_PATTERNS = 1000;
+    private static final Map<String, Pattern> COMPILED_PATTERNS = new ConcurrentHashMap<String, Pattern>();
+
     /**
      * release resource
      *
@@ -122,7 +129,7 @@ public class ContentUtils {
 	public static boolean matchesPatterns(String uri, List<String> patterns) {
 		if (patterns != null) {
 			for (String pattern : patterns) {
-				if (uri.matches(pattern)) {
+				if (getCompiledPattern(pattern).matcher(uri).matches()) {
 					return true;
 				}
 			}
@@ -130,6 +137,25 @@ public class ContentUtils {
 		return false;
 	}
 
+    public static boolean matchesPatterns(String uri, PatternSet patterns) {
+        return patterns != null && patterns.matches(uri);
+    }
+
+    /**
+     * Compiled patterns for callers that still match against lists of strings, cleared when it gets too big
+     */
+    private static Pattern getCompiledPattern(String pattern) {
+        Pattern compiled = COMPILED_PATTERNS.get(pattern);
+        if (compiled == null) {
+            compiled = Pattern.compile(pattern);
+            if (COMPILED_PATTERNS.size() >= MAX_COMPILED_PATTERNS) {
+                COMPILED_PATTERNS.clear();
+            }
+            COMPILED_PATTERNS.put(pattern, compiled);
+        }
+        return compiled;
+    }
+
 	public static String getParentUrl(String url) {
 		int lastIndex = url.lastIndexOf(FILE_SEPARATOR);
 		return url.substring(0, lastIndex);
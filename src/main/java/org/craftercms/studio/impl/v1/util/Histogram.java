@@ -0,0 +1,83 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2018 Crafter Software Corporation. All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe histogram with fixed bucket boundaries. Recording a value does not allocate.
+ */
+public class Histogram {
+
+    private final long[] upperBounds;
+    private final LongAdder[] counts;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param upperBounds inclusive upper bound of each bucket in ascending order, values above the last bound are
+     *                    counted in an extra overflow bucket
+     */
+    public Histogram(long... upperBounds) {
+        this.upperBounds = upperBounds.clone();
+        this.counts = new LongAdder[upperBounds.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        int bucket = 0;
+        while (bucket < upperBounds.length && value > upperBounds[bucket]) {
+            bucket++;
+        }
+        counts[bucket].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Snapshot of the histogram: count, sum, max, mean and the count of every bucket keyed by its upper bound
+     * @return histogram values
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> toRet = new LinkedHashMap<String, Object>();
+        long total = count.sum();
+        toRet.put("count", total);
+        toRet.put("sum", sum.sum());
+        toRet.put("max", max.get());
+        toRet.put("mean", total == 0 ? 0 : sum.sum() / total);
+        Map<String, Long> buckets = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < upperBounds.length; i++) {
+            buckets.put("<=" + upperBounds[i], counts[i].sum());
+        }
+        buckets.put(">" + upperBounds[upperBounds.length - 1], counts[upperBounds.length].sum());
+        toRet.put("buckets", buckets);
+        return toRet;
+    }
+}
@@ -2,4 +2,74 @@ ALTER TABLE `publish_request` ADD COLUMN `package_id` VARCHAR(50) NULL ;
 
 ALTER TABLE `remote_repository` ADD UNIQUE `uq_rr_site_remote_name` (`site_id`, `remote_name`) ;
 
-UPDATE _meta SET version = '3.0.11.3' ;
\ No newline at end of file
+CREATE TABLE IF NOT EXISTS deployed_item
+(
+  `id`                  BIGINT(20)    NOT NULL AUTO_INCREMENT,
+  `site`                VARCHAR(50)   NOT NULL,
+  `environment`         VARCHAR(20)   NOT NULL,
+  `path`                VARCHAR(2000) NOT NULL,
+  `last_deployed_date`  DATETIME      NOT NULL,
+  `commit_id`           VARCHAR(50)   NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE `uq_di_site_environment_path` (`site`, `environment`, `path`(900)),
+  INDEX `deployed_item_site_path_idx` (`site`, `path`(900))
+)
+  ENGINE = InnoDB
+  DEFAULT CHARSET = utf8
+  ROW_FORMAT = DYNAMIC ;
+
+CREATE TABLE IF NOT EXISTS publish_log
+(
+  `id`              BIGINT(20)    NOT NULL AUTO_INCREMENT,
+  `site`            VARCHAR(50)   NOT NULL,
+  `environment`     VARCHAR(20)   NOT NULL,
+  `path`            VARCHAR(2000) NOT NULL,
+  `commit_id`       VARCHAR(50)   NULL,
+  `package_id`      VARCHAR(50)   NULL,
+  `username`        VARCHAR(255)  NULL,
+  `published_date`  DATETIME      NOT NULL,
+  PRIMARY KEY (`id`),
+  INDEX `publish_log_site_date_idx` (`site`, `published_date`),
+  INDEX `publish_log_site_path_idx` (`site`, `path`(900))
+)
+  ENGINE = InnoDB
+  DEFAULT CHARSET = utf8
+  ROW_FORMAT = DYNAMIC ;
+
+ALTER TABLE `dependency` ADD COLUMN IF NOT EXISTS `target_path_hash` CHAR(32) NOT NULL AFTER `target_path` ;
+
+UPDATE `dependency` SET `target_path_hash` = MD5(`target_path`) ;
+
+ALTER TABLE `dependency` ADD INDEX IF NOT EXISTS `dependency_site_targetpathhash_type_idx`
+  (`site`, `target_path_hash`, `type`) ;
+
+CREATE TABLE IF NOT EXISTS `item_state_rebuild` LIKE `item_state` ;
+
+CREATE TABLE IF NOT EXISTS `item_metadata_rebuild` LIKE `item_metadata` ;
+
+CREATE TABLE IF NOT EXISTS `dependency_rebuild` LIKE `dependency` ;
+
+CREATE TABLE IF NOT EXISTS `rebuild_checkpoint` (
+  `site`      VARCHAR(50)   NOT NULL,
+  `commit_id` VARCHAR(50)   NOT NULL,
+  `last_path` VARCHAR(2000) NULL,
+  `completed` INT           NOT NULL DEFAULT 0,
+  `items`     BIGINT(20)    NOT NULL DEFAULT 0,
+  PRIMARY KEY (`site`)
+)
+  ENGINE = InnoDB
+  DEFAULT CHARSET = utf8
+  ROW_FORMAT = DYNAMIC ;
+
+CREATE TABLE IF NOT EXISTS deployed_item_index
+(
+  `site`         VARCHAR(50)   NOT NULL,
+  `environment`  VARCHAR(20)   NOT NULL,
+  `commit_id`    VARCHAR(50)   NOT NULL,
+  PRIMARY KEY (`site`, `environment`)
+)
+  ENGINE = InnoDB
+  DEFAULT CHARSET = utf8
+  ROW_FORMAT = DYNAMIC ;
+
+UPDATE _meta SET version = '3.0.11.8' ;
\ No newline at end of file
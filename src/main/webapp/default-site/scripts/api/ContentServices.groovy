@@ -194,6 +194,18 @@ class ContentServices {
 		return contentServicesImpl.getContentItemVersionHistory(site, path) 
 	}
 
+	/**
+	 * get the version history for many items at once
+	 * @param site - the project ID
+	 * @param paths - the paths of the items
+	 * @param maxVersions - max number of versions per item, at least 1
+	 * @oaran context - container for passing request, token and other values that may be needed by the implementation
+	 */
+	static getContentItemsVersionHistory(site, paths, maxVersions, context) {
+		def contentServicesImpl = ServiceFactory.getContentServices(context)
+		return contentServicesImpl.getContentItemsVersionHistory(site, paths, maxVersions)
+	}
+
 	/** 
 	 * revert a version (create a new version based on an old version)
 	 * @param site - the project ID
@@ -33,6 +33,16 @@ class DeploymentServices {
     }
 
 
+    static getPublishLog(site, environment, path, fromDate, toDate, offset, limit, context) {
+        def deploymentServicesImpl = ServiceFactory.getDeploymentServices(context)
+        return deploymentServicesImpl.getPublishLog(site, environment, path, fromDate, toDate, offset, limit)
+    }
+
+    static getPublishLogTotal(site, environment, path, fromDate, toDate, context) {
+        def deploymentServicesImpl = ServiceFactory.getDeploymentServices(context)
+        return deploymentServicesImpl.getPublishLogTotal(site, environment, path, fromDate, toDate)
+    }
+
     static getScheduledItems(context, site, sort, ascending, subSort, subAscending, filterType) {
         def deploymentServicesImpl = ServiceFactory.getDeploymentServices(context)
         deploymentServicesImpl.getScheduledItems(site, sort, ascending, subSort, subAscending, filterType)
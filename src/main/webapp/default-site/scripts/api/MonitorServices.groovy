@@ -50,4 +50,49 @@ class MonitorServices {
         def monitorServiceImpl = ServiceFactory.getMonitorServices(context);
         return monitorServiceImpl.getMemory();
     }
+
+    static getRepositoryLockStatistics(context) {
+        def monitorServiceImpl = ServiceFactory.getMonitorServices(context);
+        return monitorServiceImpl.getRepositoryLockStatistics();
+    }
+
+    static getGroupCommitStatistics(context) {
+        def monitorServiceImpl = ServiceFactory.getMonitorServices(context);
+        return monitorServiceImpl.getGroupCommitStatistics();
+    }
+
+    static getRepositoryRegistryStatistics(context) {
+        def monitorServiceImpl = ServiceFactory.getMonitorServices(context);
+        return monitorServiceImpl.getRepositoryRegistryStatistics();
+    }
+
+    static getRepositoryMaintenanceStatistics(context) {
+        def monitorServiceImpl = ServiceFactory.getMonitorServices(context);
+        return monitorServiceImpl.getRepositoryMaintenanceStatistics();
+    }
+
+    static getSiteConfigCacheStatistics(context) {
+        def monitorServiceImpl = ServiceFactory.getMonitorServices(context);
+        return monitorServiceImpl.getSiteConfigCacheStatistics();
+    }
+
+    static getPermissionsCacheStatistics(context) {
+        def monitorServiceImpl = ServiceFactory.getMonitorServices(context);
+        return monitorServiceImpl.getPermissionsCacheStatistics();
+    }
+
+    static getDependencyResolverStatistics(context) {
+        def monitorServiceImpl = ServiceFactory.getMonitorServices(context);
+        return monitorServiceImpl.getDependencyResolverStatistics();
+    }
+
+    static getSiteJobStatistics(context) {
+        def monitorServiceImpl = ServiceFactory.getMonitorServices(context);
+        return monitorServiceImpl.getSiteJobStatistics();
+    }
+
+    static getPublishingWorkerStatistics(context) {
+        def monitorServiceImpl = ServiceFactory.getMonitorServices(context);
+        return monitorServiceImpl.getPublishingWorkerStatistics();
+    }
 }
@@ -157,6 +157,17 @@ class SpringContentServices {
         return springBackedService.getContentItemVersionHistory(site, path)
 	}
 
+	/**
+	 * get the version history for many items at once
+	 * @param site - the project ID
+	 * @param paths - the paths of the items
+	 * @param maxVersions - max number of versions per item, at least 1
+	 */
+	def getContentItemsVersionHistory(site, paths, maxVersions) {
+        def springBackedService = this.context.applicationContext.get(CONTENT_SERVICES_BEAN)
+        return springBackedService.getContentItemsVersionHistory(site, paths, maxVersions)
+	}
+
 	/**
 	 *  Get the content for a specific version
 	 * @param site - the project ID
@@ -30,6 +30,16 @@ class SpringDeploymentServices {
         return springBackedService.getDeploymentHistory(site, daysFromToday, numberOfItems, sort, ascending, filterType)
     }
 
+    def getPublishLog(site, environment, path, fromDate, toDate, offset, limit) {
+        def springBackedService = this.context.applicationContext.get(DEPLOYMENT_SERVICES_BEAN)
+        return springBackedService.getPublishLog(site, environment, path, fromDate, toDate, offset, limit)
+    }
+
+    def getPublishLogTotal(site, environment, path, fromDate, toDate) {
+        def springBackedService = this.context.applicationContext.get(DEPLOYMENT_SERVICES_BEAN)
+        return springBackedService.getPublishLogTotal(site, environment, path, fromDate, toDate)
+    }
+
     def getScheduledItems(site, sort, ascending, subSort, subAscending, filterType) {
 
         def springBackedService = this.context.applicationContext.get(DEPLOYMENT_SERVICES_BEAN)
@@ -45,4 +45,49 @@ class SpringMonitorServices {
         def springBackedService = this.context.applicationContext.get("studioMonitorService")
         return springBackedService.getMemory()
     }
-}
\ No newline at end of file
+
+    def getRepositoryLockStatistics() {
+        def springBackedService = this.context.applicationContext.get("studioMonitorService")
+        return springBackedService.getRepositoryLockStatistics()
+    }
+
+    def getGroupCommitStatistics() {
+        def springBackedService = this.context.applicationContext.get("studioMonitorService")
+        return springBackedService.getGroupCommitStatistics()
+    }
+
+    def getRepositoryRegistryStatistics() {
+        def springBackedService = this.context.applicationContext.get("studioMonitorService")
+        return springBackedService.getRepositoryRegistryStatistics()
+    }
+
+    def getRepositoryMaintenanceStatistics() {
+        def springBackedService = this.context.applicationContext.get("studioMonitorService")
+        return springBackedService.getRepositoryMaintenanceStatistics()
+    }
+
+    def getSiteConfigCacheStatistics() {
+        def springBackedService = this.context.applicationContext.get("studioMonitorService")
+        return springBackedService.getSiteConfigCacheStatistics()
+    }
+
+    def getPermissionsCacheStatistics() {
+        def springBackedService = this.context.applicationContext.get("studioMonitorService")
+        return springBackedService.getPermissionsCacheStatistics()
+    }
+
+    def getDependencyResolverStatistics() {
+        def springBackedService = this.context.applicationContext.get("studioMonitorService")
+        return springBackedService.getDependencyResolverStatistics()
+    }
+
+    def getSiteJobStatistics() {
+        def springBackedService = this.context.applicationContext.get("studioMonitorService")
+        return springBackedService.getSiteJobStatistics()
+    }
+
+    def getPublishingWorkerStatistics() {
+        def springBackedService = this.context.applicationContext.get("studioMonitorService")
+        return springBackedService.getPublishingWorkerStatistics()
+    }
+}
@@ -0,0 +1,37 @@
+import scripts.api.ContentServices;
+
+def result = [:]
+def site = params.site
+def paths = (params.paths) ? params.paths.split(",").collect { it.trim() }.findAll { it } : []
+def maxVersions = 0
+
+/** Validate Parameters */
+def invalidParams = false;
+def paramsList = []
+
+// maxVersions
+try {
+    maxVersions = params.maxVersions.toInteger()
+    if (maxVersions < 1) {
+        invalidParams = true
+        paramsList.add("maxVersions")
+    }
+} catch (Exception exc) {
+    invalidParams = true
+    paramsList.add("maxVersions")
+}
+
+if (invalidParams) {
+    response.setStatus(400)
+    result.message = "Invalid parameter(s): " + paramsList
+} else {
+    def context = ContentServices.createContext(applicationContext, request)
+    try {
+        result.items = ContentServices.getContentItemsVersionHistory(site, paths, maxVersions, context)
+    } catch (IllegalArgumentException e) {
+        response.setStatus(400)
+        result.message = "Bad Request: " + e.getMessage()
+    }
+}
+
+return result
@@ -0,0 +1,24 @@
+import scripts.api.DeploymentServices;
+
+import java.time.ZoneOffset
+import java.time.ZonedDateTime
+
+def result = [:]
+def site = params.site
+def environment = params.environment
+def path = params.path
+def days = (params.days) ? params.days.toInteger() : 0
+def offset = (params.offset) ? params.offset.toInteger() : 0
+def limit = (params.limit) ? params.limit.toInteger() : 10
+
+def toDate = ZonedDateTime.now(ZoneOffset.UTC)
+def fromDate = (days > 0) ? toDate.minusDays(days) : null
+
+def context = DeploymentServices.createContext(applicationContext, request)
+
+result.total = DeploymentServices.getPublishLogTotal(site, environment, path, fromDate, toDate, context)
+result.offset = offset
+result.limit = limit
+result.entries = DeploymentServices.getPublishLog(site, environment, path, fromDate, toDate, offset, limit, context)
+
+return result
@@ -0,0 +1,244 @@
+package org.craftercms.studio.api.v1.dal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.scripting.defaults.DefaultParameterHandler;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.craftercms.studio.api.v1.constant.StudioConstants.JSON_PROPERTY_DEPENDENCIES;
+import static org.craftercms.studio.api.v1.dal.DependencyMapper.NEW_PATH_PARAM;
+import static org.craftercms.studio.api.v1.dal.DependencyMapper.OLD_PATH_PARAM;
+import static org.craftercms.studio.api.v1.dal.DependencyMapper.PATHS_PARAM;
+import static org.craftercms.studio.api.v1.dal.DependencyMapper.PATH_PARAM;
+import static org.craftercms.studio.api.v1.dal.DependencyMapper.SITE_ID_PARAM;
+import static org.craftercms.studio.api.v1.dal.DependencyMapper.SITE_PARAM;
+import static org.craftercms.studio.api.v1.dal.EmbeddedDatabase.DATABASE;
+import static org.testng.Assert.*;
+
+/**
+ * Runs the dependency mapper against an embedded MariaDB created with the same scripts Studio uses, and checks the
+ * lookups by target path use the target path hash index instead of scanning the table.
+ */
+public class DependencyMapperTest {
+
+    private static final String UPGRADE_SCRIPT = "crafter/studio/database/upgrade-3.0.11.5.sql";
+    private static final String TARGET_PATH_INDEX = "dependency_site_targetpathhash_type_idx";
+
+    private static final int SITES = 3;
+    private static final int PAGES_PER_SITE = 2000;
+    private static final int COMPONENTS_PER_SITE = 500;
+
+    private EmbeddedDatabase db;
+    private Configuration configuration;
+    private SqlSessionFactory sqlSessionFactory;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        db = new EmbeddedDatabase();
+        db.start();
+        configuration = db.newConfiguration(DependencyMapper.class);
+        sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            DependencyMapper mapper = session.getMapper(DependencyMapper.class);
+            for (int site = 0; site < SITES; site++) {
+                List<DependencyEntity> dependencies = new ArrayList<>();
+                for (int page = 0; page < PAGES_PER_SITE; page++) {
+                    dependencies.add(createDependency(getSite(site), getPage(page),
+                            getComponent(page % COMPONENTS_PER_SITE), page % 2 == 0 ? "component" : "page"));
+                    if (dependencies.size() == 500) {
+                        insertList(mapper, dependencies);
+                        dependencies.clear();
+                    }
+                }
+                insertList(mapper, dependencies);
+            }
+        }
+        try (Connection conn = db.getConnection(DATABASE); Statement statement = conn.createStatement()) {
+            statement.execute("ANALYZE TABLE dependency");
+        }
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        db.stop();
+    }
+
+    @Test
+    public void testInsertStoresTargetPathHash() throws Exception {
+        try (Connection conn = db.getConnection(DATABASE); Statement statement = conn.createStatement();
+             ResultSet rs = statement.executeQuery(
+                     "SELECT COUNT(*) FROM dependency WHERE target_path_hash <> MD5(target_path)")) {
+            assertTrue(rs.next());
+            assertEquals(rs.getInt(1), 0);
+        }
+    }
+
+    @Test
+    public void testGetItemsDependingOnUsesTargetPathIndex() throws Exception {
+        Map<String, Object> params = new HashMap<>();
+        params.put(SITE_PARAM, getSite(1));
+        params.put(PATHS_PARAM, Arrays.asList(getComponent(7), getComponent(8)));
+
+        assertEquals(explain("getItemsDependingOn", params), TARGET_PATH_INDEX);
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            List<String> sources = session.getMapper(DependencyMapper.class).getItemsDependingOn(params);
+            assertEquals(new HashSet<>(sources), new HashSet<>(Arrays.asList(
+                    getPage(7), getPage(507), getPage(1007), getPage(1507),
+                    getPage(8), getPage(508), getPage(1008), getPage(1508))));
+        }
+    }
+
+    @Test
+    public void testGetDependantUsesTargetPathIndex() throws Exception {
+        Map<String, Object> params = new HashMap<>();
+        params.put(SITE_PARAM, getSite(2));
+        params.put("targetPath", getComponent(42));
+
+        assertEquals(explain("getDependant", params), TARGET_PATH_INDEX);
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            assertEquals(session.getMapper(DependencyMapper.class).getDependant(params).size(),
+                    PAGES_PER_SITE / COMPONENTS_PER_SITE);
+        }
+    }
+
+    @Test
+    public void testDeleteByTargetPathUsesTargetPathIndex() throws Exception {
+        Map<String, Object> params = new HashMap<>();
+        params.put(SITE_PARAM, getSite(0));
+        params.put(PATH_PARAM, getComponent(100));
+
+        assertEquals(explain("deleteDependenciesForSiteAndTargetPath", params), TARGET_PATH_INDEX);
+    }
+
+    @Test
+    public void testMoveTargetDependenciesUpdatesHash() throws Exception {
+        Map<String, Object> params = new HashMap<>();
+        params.put(SITE_ID_PARAM, getSite(0));
+        params.put(OLD_PATH_PARAM, getComponent(200));
+        params.put(NEW_PATH_PARAM, "/site/components/moved/component-200.xml");
+
+        assertEquals(explain("moveTargetDependencies", params), TARGET_PATH_INDEX);
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            DependencyMapper mapper = session.getMapper(DependencyMapper.class);
+            mapper.moveTargetDependencies(params);
+
+            Map<String, Object> dependantParams = new HashMap<>();
+            dependantParams.put(SITE_PARAM, getSite(0));
+            dependantParams.put("targetPath", "/site/components/moved/component-200.xml");
+            assertEquals(mapper.getDependant(dependantParams).size(), PAGES_PER_SITE / COMPONENTS_PER_SITE);
+            dependantParams.put("targetPath", getComponent(200));
+            assertTrue(mapper.getDependant(dependantParams).isEmpty());
+        }
+    }
+
+    @Test
+    public void testUpgradeAddsAndFillsTargetPathHash() throws Exception {
+        try (Connection conn = db.getConnection(""); Statement statement = conn.createStatement()) {
+            statement.execute("CREATE DATABASE crafter_upgrade DEFAULT CHARACTER SET utf8");
+        }
+        try (Connection conn = db.getConnection("crafter_upgrade")) {
+            try (Statement statement = conn.createStatement()) {
+                statement.execute("CREATE TABLE _meta (`version` VARCHAR(10) NOT NULL, PRIMARY KEY (`version`))");
+                statement.execute("INSERT INTO _meta (version) VALUES ('3.0.11.5')");
+                statement.execute("CREATE TABLE `dependency` (" +
+                        "`id` BIGINT(20) NOT NULL AUTO_INCREMENT, `site` VARCHAR(50) NOT NULL, " +
+                        "`source_path` TEXT NOT NULL, `target_path` TEXT NOT NULL, `type` VARCHAR(50) NOT NULL, " +
+                        "PRIMARY KEY (`id`), KEY `dependency_site_idx` (`site`), " +
+                        "KEY `dependency_sourcepath_idx` (`source_path`(1000))) " +
+                        "ENGINE = InnoDB DEFAULT CHARSET = utf8 ROW_FORMAT = DYNAMIC");
+                // Later upgrade steps copy the structure of these
+                statement.execute("CREATE TABLE `item_state` (`object_id` VARCHAR(255) NOT NULL, " +
+                        "PRIMARY KEY (`object_id`)) ENGINE = InnoDB DEFAULT CHARSET = utf8");
+                statement.execute("CREATE TABLE `item_metadata` (`id` INT NOT NULL AUTO_INCREMENT, " +
+                        "PRIMARY KEY (`id`)) ENGINE = InnoDB DEFAULT CHARSET = utf8");
+                statement.execute("INSERT INTO dependency (site, source_path, target_path, type) VALUES " +
+                        "('upgrade', '/site/website/index.xml', '/site/components/header.xml', 'component'), " +
+                        "('upgrade', '/site/website/index.xml', '/static-assets/images/caf\u00e9.jpg', 'asset')");
+            }
+
+            db.runScript(conn, UPGRADE_SCRIPT);
+
+            try (Statement statement = conn.createStatement()) {
+                try (ResultSet rs = statement.executeQuery(
+                        "SELECT COUNT(*) FROM dependency WHERE target_path_hash = MD5(target_path)")) {
+                    assertTrue(rs.next());
+                    assertEquals(rs.getInt(1), 2);
+                }
+                try (ResultSet rs = statement.executeQuery(
+                        "SHOW INDEX FROM dependency WHERE Key_name = '" + TARGET_PATH_INDEX + "'")) {
+                    List<String> columns = new ArrayList<>();
+                    while (rs.next()) {
+                        columns.add(rs.getString("Column_name"));
+                    }
+                    assertEquals(columns, Arrays.asList("site", "target_path_hash", "type"));
+                }
+                try (ResultSet rs = statement.executeQuery("SELECT version FROM _meta")) {
+                    assertTrue(rs.next());
+                    assertEquals(rs.getString(1), "3.0.11.8");
+                }
+            }
+        }
+    }
+
+    private String explain(String statementId, Map<String, Object> params) throws Exception {
+        MappedStatement statement = configuration.getMappedStatement(DependencyMapper.class.getName() + "." +
+                statementId);
+        BoundSql boundSql = statement.getBoundSql(params);
+        try (Connection conn = db.getConnection(DATABASE);
+             PreparedStatement ps = conn.prepareStatement("EXPLAIN " + boundSql.getSql())) {
+            new DefaultParameterHandler(statement, params, boundSql).setParameters(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getString("key");
+            }
+        }
+    }
+
+    private void insertList(DependencyMapper mapper, List<DependencyEntity> dependencies) {
+        if (!dependencies.isEmpty()) {
+            Map<String, Object> params = new HashMap<>();
+            params.put(JSON_PROPERTY_DEPENDENCIES, new ArrayList<>(dependencies));
+            mapper.insertList(params);
+        }
+    }
+
+    private static DependencyEntity createDependency(String site, String sourcePath, String targetPath,
+                                                     String type) {
+        DependencyEntity dependency = new DependencyEntity();
+        dependency.setSite(site);
+        dependency.setSourcePath(sourcePath);
+        dependency.setTargetPath(targetPath);
+        dependency.setType(type);
+        return dependency;
+    }
+
+    private static String getSite(int site) {
+        return "site-" + site;
+    }
+
+    private static String getPage(int page) {
+        return "/site/website/page-" + page + "/index.xml";
+    }
+
+    private static String getComponent(int component) {
+        return "/site/components/component-" + component + ".xml";
+    }
+}
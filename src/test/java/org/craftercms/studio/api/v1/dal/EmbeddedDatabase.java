@@ -0,0 +1,83 @@
+package org.craftercms.studio.api.v1.dal;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import ch.vorburger.exec.ManagedProcessException;
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfiguration;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+
+/**
+ * Embedded MariaDB with the Studio schema created by the same script the database initializer runs
+ */
+public class EmbeddedDatabase {
+
+    public static final String DRIVER = "org.mariadb.jdbc.Driver";
+    public static final String DATABASE = "crafter";
+
+    private static final String DELIMITER = " ;";
+    private static final String CREATE_SCRIPT = "crafter/studio/database/createDDL.sql";
+
+    private DB db;
+    private String serverUrl;
+
+    public void start() throws Exception {
+        DBConfigurationBuilder builder = DBConfigurationBuilder.newInstance();
+        builder.setPort(0);
+        DBConfiguration dbConfiguration = builder.build();
+        db = DB.newEmbeddedDB(dbConfiguration);
+        db.start();
+        Class.forName(DRIVER);
+        serverUrl = "jdbc:mariadb://127.0.0.1:" + dbConfiguration.getPort() + "/";
+
+        try (Connection conn = getConnection("")) {
+            runScript(conn, CREATE_SCRIPT);
+        }
+    }
+
+    public void stop() throws ManagedProcessException {
+        if (db != null) {
+            db.stop();
+        }
+    }
+
+    /**
+     * MyBatis configuration connected to the Studio database with the given mappers loaded
+     */
+    public Configuration newConfiguration(Class<?>... mappers) {
+        UnpooledDataSource dataSource = new UnpooledDataSource(DRIVER, getUrl(DATABASE), "root", "");
+        Configuration configuration =
+                new Configuration(new Environment("test", new JdbcTransactionFactory(), dataSource));
+        for (Class<?> mapper : mappers) {
+            configuration.addMapper(mapper);
+        }
+        return configuration;
+    }
+
+    public Connection getConnection(String database) throws SQLException {
+        return DriverManager.getConnection(getUrl(database));
+    }
+
+    public void runScript(Connection conn, String script) throws Exception {
+        ScriptRunner scriptRunner = new ScriptRunner(conn);
+        scriptRunner.setDelimiter(DELIMITER);
+        scriptRunner.setStopOnError(true);
+        scriptRunner.setLogWriter(null);
+        try (Reader reader = new InputStreamReader(getClass().getClassLoader().getResourceAsStream(script))) {
+            scriptRunner.runScript(reader);
+        }
+    }
+
+    private String getUrl(String database) {
+        return serverUrl + database + "?user=root&password=";
+    }
+}
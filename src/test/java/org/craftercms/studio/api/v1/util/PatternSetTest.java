@@ -0,0 +1,166 @@
+package org.craftercms.studio.api.v1.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class PatternSetTest {
+
+    private static final List<String> PAGE_PATTERNS = Arrays.asList("/site/website/([^<]+)\\.xml");
+
+    private static final List<String> COMPONENT_PATTERNS = Arrays.asList(
+            "/site/components/([^<]+)\\.xml",
+            "/site/system/page-components/([^<]+)\\.xml",
+            "/site/component-bindings/([^<]+)\\.xml",
+            "/site/indexes/([^<]+)\\.xml",
+            "/site/resources/([^<]+)\\.xml");
+
+    private static final List<String> ASSET_PATTERNS = Arrays.asList("/static-assets/([^<\"'\\)]+)");
+
+    private static final List<String> RENDERING_TEMPLATE_PATTERNS = Arrays.asList("/templates/([^<\"]+)\\.ftl");
+
+    private static final List<String> SCRIPTS_PATTERNS = Arrays.asList("/scripts/([^<\"]+)\\.groovy");
+
+    private static final List<String> PREVIEWABLE_MIMETYPES_PATTERNS = Arrays.asList(
+            "image/(.*)",
+            "application/pdf",
+            "video/(.*)",
+            "application/msword",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+            "application/vnd.ms-excel",
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+            "application/vnd.ms-powerpoint");
+
+    private static final List<String> DISPLAY_PATTERNS = Arrays.asList(".*");
+
+    private static final String[] VALUES = {
+            "",
+            "/",
+            "/site",
+            "/site/",
+            "/site/website",
+            "/site/website/",
+            "/site/website/.xml",
+            "/site/website/a.xml",
+            "/site/website/index.xml",
+            "/site/website/indexxxml",
+            "/site/website/index.xml.bak",
+            "/site/website/articles/2018/article.xml",
+            "/site/website/a<b.xml",
+            "/site/website/a\nb.xml",
+            "/site/website/index.xml\n",
+            "/site/components/header.xml",
+            "/site/components/header.xm",
+            "/site/system/page-components/nav.xml",
+            "/site/component-bindings/binding.xml",
+            "/site/indexes/index.xml",
+            "/site/resources/strings.xml",
+            "/site/website/components/header.xml",
+            "/static-assets/",
+            "/static-assets/css/main.css",
+            "/static-assets/images/it's.png",
+            "/static-assets/images/a\"b.png",
+            "/static-assets/images/a)b.png",
+            "/static-assets/app.js",
+            "/static-assets/appxjs",
+            "/templates/web/entry.ftl",
+            "/templates/web/\"entry.ftl",
+            "/templates/.ftl",
+            "/scripts/rest/get.groovy",
+            "/scripts/.groovy",
+            ".htaccess",
+            "xhtaccess",
+            "image/",
+            "image/png",
+            "image/png\r",
+            "video/mp4",
+            "application/pdf",
+            "application/pdfx",
+            "application/msword",
+            "application/vnd.ms-excel",
+            "application/vndxms-excel",
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+            "a",
+            "b",
+            "ab",
+            "aa",
+            "text/plain",
+            "/site/website/a\u2028b.xml",
+            "image/png\u0085"
+    };
+
+    @DataProvider(name = "patterns")
+    public Object[][] patterns() {
+        return new Object[][] {
+                // Default patterns of the site configuration
+                { PAGE_PATTERNS },
+                { COMPONENT_PATTERNS },
+                { ASSET_PATTERNS },
+                { RENDERING_TEMPLATE_PATTERNS },
+                { SCRIPTS_PATTERNS },
+                { PREVIEWABLE_MIMETYPES_PATTERNS },
+                { DISPLAY_PATTERNS },
+                // Escaped dots
+                { Arrays.asList("/site/website/index\\.xml", "/static-assets/app\\.js", "\\.htaccess") },
+                { Arrays.asList("/static-assets/.*\\.js") },
+                // Any characters in the middle of the pattern
+                { Arrays.asList("/site/.*/index\\.xml") },
+                { Arrays.asList("/site/website/.*\\.xml", "/site/(.*)/header\\.xml") },
+                { Arrays.asList("/site/.*", "/static-assets/(.*)") },
+                // Alternation
+                { Arrays.asList("a|b") },
+                { Arrays.asList("/site/(website|components)/.*") },
+                { Arrays.asList("/site/website/index\\.xml|/site/components/.*", "image/(png|jpeg)") },
+                // Back references can not be combined into a single alternation
+                { Arrays.asList("(a)\\1", "/site/website/.*\\.xml", "video/(.*)") },
+                // All the shapes together
+                { concat(PAGE_PATTERNS, COMPONENT_PATTERNS, ASSET_PATTERNS, PREVIEWABLE_MIMETYPES_PATTERNS,
+                        Arrays.asList("/site/.*/index\\.xml", "a|b", "\\.htaccess")) }
+        };
+    }
+
+    @Test(dataProvider = "patterns")
+    public void testMatchesSameAsStringMatches(List<String> patterns) {
+        PatternSet patternSet = PatternSet.compile(patterns);
+        for (String value : VALUES) {
+            boolean expected = false;
+            for (String pattern : patterns) {
+                if (value.matches(pattern)) {
+                    expected = true;
+                    break;
+                }
+            }
+            assertEquals(patternSet.matches(value), expected, "Value '" + value + "' with patterns " + patterns);
+        }
+    }
+
+    @Test
+    public void testEmptyAndNull() {
+        assertSame(PatternSet.compile(null), PatternSet.EMPTY);
+        assertSame(PatternSet.compile(Collections.<String>emptyList()), PatternSet.EMPTY);
+        assertFalse(PatternSet.EMPTY.matches(""));
+        assertFalse(PatternSet.compile(DISPLAY_PATTERNS).matches(null));
+    }
+
+    @Test
+    public void testInvalidPatternIsIgnored() {
+        PatternSet patternSet = PatternSet.compile(Arrays.asList("/site/([^<]+", "/site/website/.*"));
+        assertTrue(patternSet.matches("/site/website/index.xml"));
+        assertFalse(patternSet.matches("/site/components/header.xml"));
+    }
+
+    @SafeVarargs
+    private static List<String> concat(List<String>... lists) {
+        List<String> toRet = new ArrayList<String>();
+        for (List<String> list : lists) {
+            toRet.addAll(list);
+        }
+        return toRet;
+    }
+}
@@ -0,0 +1,104 @@
+package org.craftercms.studio.impl.v1.repository.git;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Checks {@link PersistentMap} against a {@link HashMap} and that edits never change a map already built.
+ */
+public class PersistentMapTest {
+
+    private static final int KEYS = 5000;
+    private static final int ROUNDS = 20;
+    private static final int CHANGES = 300;
+
+    @Test
+    public void testAgainstHashMap() {
+        Random random = new Random(42);
+        List<String> keys = getKeys();
+        Map<String, Integer> expected = new HashMap<>();
+        PersistentMap<Integer> map = PersistentMap.empty();
+        List<Map<String, Integer>> expectedVersions = new ArrayList<>();
+        List<PersistentMap<Integer>> versions = new ArrayList<>();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            PersistentMap.Editor<Integer> editor = map.edit();
+            for (int i = 0; i < CHANGES; i++) {
+                String key = keys.get(random.nextInt(keys.size()));
+                if (random.nextInt(3) == 0) {
+                    editor.remove(key);
+                    expected.remove(key);
+                } else {
+                    editor.put(key, i);
+                    expected.put(key, i);
+                }
+                assertEquals(editor.get(key), expected.get(key));
+            }
+            map = editor.toMap();
+            // Changes made after the map was built must not show in it
+            editor.put(keys.get(0), -1);
+            editor.remove(keys.get(1));
+            expectedVersions.add(new HashMap<>(expected));
+            versions.add(map);
+        }
+
+        for (int i = 0; i < versions.size(); i++) {
+            assertSameContent(versions.get(i), expectedVersions.get(i), keys);
+        }
+    }
+
+    @Test
+    public void testRemoveAll() {
+        List<String> keys = getKeys();
+        PersistentMap.Editor<Integer> editor = PersistentMap.<Integer>empty().edit();
+        for (int i = 0; i < keys.size(); i++) {
+            editor.put(keys.get(i), i);
+        }
+        PersistentMap<Integer> full = editor.toMap();
+        for (String key : keys) {
+            editor.remove(key);
+        }
+        PersistentMap<Integer> empty = editor.toMap();
+
+        assertEquals(full.size(), keys.size());
+        assertEquals(empty.size(), 0);
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(full.get(keys.get(i)), Integer.valueOf(i));
+            assertNull(empty.get(keys.get(i)));
+        }
+    }
+
+    private static void assertSameContent(PersistentMap<Integer> map, Map<String, Integer> expected,
+                                          List<String> keys) {
+        assertEquals(map.size(), expected.size());
+        for (String key : keys) {
+            assertEquals(map.get(key), expected.get(key), key);
+        }
+    }
+
+    /**
+     * Repository like paths plus keys that share their hash code ("Aa" and "BB" do)
+     */
+    private static List<String> getKeys() {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            keys.add("site/website/folder-" + (i % 50) + "/page-" + i + "/index.xml");
+        }
+        String[] colliding = { "Aa", "BB" };
+        for (String first : colliding) {
+            for (String second : colliding) {
+                for (String third : colliding) {
+                    keys.add("static-assets/" + first + second + third);
+                }
+            }
+        }
+        return keys;
+    }
+}
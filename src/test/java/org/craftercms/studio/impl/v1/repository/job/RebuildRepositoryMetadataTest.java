@@ -0,0 +1,306 @@
+package org.craftercms.studio.impl.v1.repository.job;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.craftercms.studio.api.v1.dal.ItemMetadata;
+import org.craftercms.studio.api.v1.dal.ItemState;
+import org.craftercms.studio.api.v1.dal.PublishRequestMapper;
+import org.craftercms.studio.api.v1.dal.RebuildCheckpoint;
+import org.craftercms.studio.api.v1.dal.RebuildMetadataMapper;
+import org.craftercms.studio.api.v1.repository.ContentRepository;
+import org.craftercms.studio.api.v1.repository.RepositoryItem;
+import org.craftercms.studio.api.v1.repository.RepositoryLockManager;
+import org.craftercms.studio.api.v1.repository.RepositoryLockManager.RepositoryLock;
+import org.craftercms.studio.api.v1.service.GeneralLockService;
+import org.craftercms.studio.api.v1.service.activity.ActivityService;
+import org.craftercms.studio.api.v1.service.activity.ActivityService.ActivitySource;
+import org.craftercms.studio.api.v1.service.activity.ActivityService.ActivityType;
+import org.craftercms.studio.api.v1.service.content.ContentService;
+import org.craftercms.studio.api.v1.service.dependency.DependencyService;
+import org.craftercms.studio.api.v1.service.site.SiteService;
+import org.craftercms.studio.api.v1.to.VersionTO;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.craftercms.studio.api.v1.constant.GitRepositories.SANDBOX;
+import static org.craftercms.studio.api.v1.dal.RebuildMetadataMapper.ITEM_METADATA_PARAM;
+import static org.craftercms.studio.api.v1.dal.RebuildMetadataMapper.ITEM_STATES_PARAM;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_REBUILD_METADATA_BATCH_SIZE;
+import static org.craftercms.studio.impl.v1.repository.job.SiteJobStatusRegistry.REBUILD_METADATA_JOB;
+import static org.testng.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Stages a synthetic repository and checks the walk reports its progress, resumes from a checkpoint without staging
+ * any item twice, fills the rows from the last commit of every item and swaps them in with the sandbox locked.
+ */
+public class RebuildRepositoryMetadataTest {
+
+    private static final String SITE = "synthetic";
+    private static final int BATCH_SIZE = 7;
+    private static final String AUTHOR = "author";
+    private static final ZonedDateTime COMMIT_DATE = ZonedDateTime.of(2018, 5, 4, 3, 2, 1, 0, ZoneOffset.UTC);
+
+    private TreeSet<String> files;
+    private RebuildMetadataMapper rebuildMetadataMapper;
+    private SiteJobStatusRegistry siteJobStatusRegistry;
+    private ContentRepository contentRepository;
+    private PlatformTransactionManager transactionManager;
+    private RepositoryLockManager repositoryLockManager;
+    private RepositoryLock repositoryLock;
+    private ActivityService activityService;
+    private RebuildRepositoryMetadata rebuild;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        files = new TreeSet<>();
+        for (int i = 0; i < 12; i++) {
+            files.add("/site/website/page-" + i + "/index.xml");
+            files.add("/site/components/component-" + i + ".xml");
+        }
+        files.add("/site/website/index.xml");
+        files.add("/site/website-old/index.xml");
+        files.add("/static-assets/css/main.css");
+        files.add("/templates/web/page.ftl");
+
+        contentRepository = mock(ContentRepository.class);
+        when(contentRepository.getContentChildren(eq(SITE), anyString()))
+                .thenAnswer(invocation -> getChildren((String) invocation.getArguments()[1]));
+        when(contentRepository.getContentVersionHistory(eq(SITE), anyList(), eq(1)))
+                .thenAnswer(invocation -> getLastVersions((List<String>) invocation.getArguments()[1]));
+        when(contentRepository.getRepoLastCommitId(SITE)).thenReturn("commit");
+
+        StudioConfiguration studioConfiguration = mock(StudioConfiguration.class);
+        when(studioConfiguration.getProperty(REPO_REBUILD_METADATA_BATCH_SIZE))
+                .thenReturn(Integer.toString(BATCH_SIZE));
+
+        DependencyService dependencyService = mock(DependencyService.class);
+        when(dependencyService.resolveDependencies(eq(SITE), anyString()))
+                .thenReturn(Collections.<String, Set<String>>emptyMap());
+
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any(TransactionDefinition.class)))
+                .thenReturn(mock(TransactionStatus.class));
+
+        repositoryLock = mock(RepositoryLock.class);
+        repositoryLockManager = mock(RepositoryLockManager.class);
+        when(repositoryLockManager.acquireWrite(SITE, SANDBOX)).thenReturn(repositoryLock);
+
+        activityService = mock(ActivityService.class);
+        rebuildMetadataMapper = mock(RebuildMetadataMapper.class);
+        siteJobStatusRegistry = new SiteJobStatusRegistry();
+
+        rebuild = new RebuildRepositoryMetadata();
+        rebuild.rebuildMetadataMapper = rebuildMetadataMapper;
+        rebuild.setContentRepository(contentRepository);
+        rebuild.setStudioConfiguration(studioConfiguration);
+        rebuild.setDependencyService(dependencyService);
+        rebuild.setTransactionManager(transactionManager);
+        rebuild.setSiteJobStatusRegistry(siteJobStatusRegistry);
+        rebuild.setRepositoryLockManager(repositoryLockManager);
+        rebuild.setActivityService(activityService);
+        rebuild.setContentService(mock(ContentService.class));
+        rebuild.setGeneralLockService(mock(GeneralLockService.class));
+        rebuild.setSiteService(mock(SiteService.class));
+        rebuild.publishRequestMapper = mock(PublishRequestMapper.class);
+    }
+
+    @Test
+    public void testStagesEveryFileInPathOrder() {
+        RebuildCheckpoint checkpoint = createCheckpoint(null, 0);
+        SiteJobStatus status = siteJobStatusRegistry.start(SITE, REBUILD_METADATA_JOB);
+
+        rebuild.stageRepository(SITE, checkpoint, status);
+
+        assertEquals(getStagedPaths(), new ArrayList<>(files));
+        assertEquals(checkpoint.getLastPath(), files.last());
+        assertEquals(checkpoint.getItems(), files.size());
+        assertEquals(checkpoint.getCompleted(), 1);
+        assertEquals(status.getPhase(), RebuildRepositoryMetadata.PHASE_STAGING);
+        assertEquals(status.getTotal(), files.size());
+        assertEquals(status.getProcessed(), files.size());
+        assertEquals(status.getErrors(), 0);
+        assertEquals(status.getCurrentCommitId(), "commit");
+    }
+
+    @Test
+    public void testResumesAfterLastPath() {
+        List<String> paths = new ArrayList<>(files);
+        int done = 10;
+        RebuildCheckpoint checkpoint = createCheckpoint(paths.get(done - 1), done);
+        SiteJobStatus status = siteJobStatusRegistry.start(SITE, REBUILD_METADATA_JOB);
+
+        rebuild.stageRepository(SITE, checkpoint, status);
+
+        assertEquals(getStagedPaths(), paths.subList(done, paths.size()));
+        assertEquals(checkpoint.getItems(), files.size());
+        assertEquals(status.getProcessed(), files.size());
+        assertEquals(status.getTotal(), files.size());
+    }
+
+    @Test
+    public void testFailedDependenciesCountAsErrors() {
+        when(rebuild.getDependencyService().resolveDependencies(SITE, "/templates/web/page.ftl"))
+                .thenThrow(new RuntimeException("unreadable"));
+        SiteJobStatus status = siteJobStatusRegistry.start(SITE, REBUILD_METADATA_JOB);
+
+        rebuild.stageRepository(SITE, createCheckpoint(null, 0), status);
+        status.finish(false);
+
+        assertEquals(status.getErrors(), 1);
+        assertEquals(getStagedPaths(), new ArrayList<>(files));
+        assertFalse(status.isRunning());
+        assertEquals(status.getEtaMillis(), SiteJobStatus.UNKNOWN);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> jobs = (Map<String, Object>) siteJobStatusRegistry.getStatistics().get(SITE);
+        assertEquals(((Map<?, ?>) jobs.get(REBUILD_METADATA_JOB)).get("phase"), SiteJobStatus.PHASE_COMPLETED);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRowsFromLastCommit() {
+        rebuild.stageRepository(SITE, createCheckpoint(null, 0), siteJobStatusRegistry.start(SITE,
+                REBUILD_METADATA_JOB));
+
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(rebuildMetadataMapper, atLeastOnce()).insertStagedItemMetadata(params.capture());
+        List<String> paths = new ArrayList<>();
+        for (Map batch : params.getAllValues()) {
+            for (ItemMetadata metadata : (List<ItemMetadata>) batch.get(ITEM_METADATA_PARAM)) {
+                assertEquals(metadata.getModifier(), AUTHOR);
+                assertEquals(metadata.getModified(), COMMIT_DATE);
+                assertEquals(metadata.getCommitId(), getLastCommitId(metadata.getPath()));
+                paths.add(metadata.getPath());
+            }
+        }
+        assertEquals(paths, new ArrayList<>(files));
+        for (String path : files) {
+            verify(activityService).postActivity(eq(SITE), eq(AUTHOR), eq(path), eq(ActivityType.CREATED),
+                    eq(ActivitySource.REPOSITORY), anyMap());
+        }
+    }
+
+    @Test
+    public void testSwapHoldsSandboxLock() {
+        RebuildCheckpoint checkpoint = createCheckpoint(files.last(), files.size());
+        checkpoint.setCompleted(1);
+
+        rebuild.swapMetadata(SITE, checkpoint, siteJobStatusRegistry.start(SITE, REBUILD_METADATA_JOB));
+
+        InOrder inOrder = inOrder(repositoryLockManager, contentRepository, rebuildMetadataMapper, repositoryLock);
+        inOrder.verify(repositoryLockManager).acquireWrite(SITE, SANDBOX);
+        inOrder.verify(contentRepository).getRepoLastCommitId(SITE);
+        inOrder.verify(rebuildMetadataMapper).copyStagedItemStates(anyMap());
+        inOrder.verify(contentRepository).insertFullGitLog(SITE, 1);
+        inOrder.verify(rebuildMetadataMapper).deleteCheckpoint(anyMap());
+        inOrder.verify(repositoryLock).close();
+    }
+
+    @Test
+    public void testErrorRollsBack() {
+        Error error = new StackOverflowError();
+        doThrow(error).when(rebuildMetadataMapper).insertStagedItemStates(anyMap());
+        try {
+            rebuild.stageRepository(SITE, createCheckpoint(null, 0), siteJobStatusRegistry.start(SITE,
+                    REBUILD_METADATA_JOB));
+            fail("Error staging the items not rethrown");
+        } catch (StackOverflowError e) {
+            assertSame(e, error);
+        }
+        verify(transactionManager).rollback(any(TransactionStatus.class));
+        verify(transactionManager, never()).commit(any(TransactionStatus.class));
+    }
+
+    @Test
+    public void testEtaNeedsTotalAndProgress() {
+        SiteJobStatus status = new SiteJobStatus(SITE, REBUILD_METADATA_JOB);
+        status.startPhase(RebuildRepositoryMetadata.PHASE_COUNTING, SiteJobStatus.UNKNOWN);
+        status.addProcessed(10);
+        assertEquals(status.getEtaMillis(), SiteJobStatus.UNKNOWN);
+
+        status.startPhase(RebuildRepositoryMetadata.PHASE_STAGING, 100, 40);
+        assertEquals(status.getEtaMillis(), SiteJobStatus.UNKNOWN);
+        status.addProcessed(10);
+        assertTrue(status.getRate() > 0);
+        assertTrue(status.getEtaMillis() >= 0);
+    }
+
+    private RebuildCheckpoint createCheckpoint(String lastPath, long items) {
+        RebuildCheckpoint checkpoint = new RebuildCheckpoint();
+        checkpoint.setSite(SITE);
+        checkpoint.setCommitId("commit");
+        checkpoint.setLastPath(lastPath);
+        checkpoint.setItems(items);
+        return checkpoint;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> getStagedPaths() {
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(rebuildMetadataMapper, atLeastOnce()).insertStagedItemStates(params.capture());
+        List<String> toRet = new ArrayList<>();
+        for (Map batch : params.getAllValues()) {
+            List<ItemState> itemStates = (List<ItemState>) batch.get(ITEM_STATES_PARAM);
+            assertTrue(itemStates.size() <= BATCH_SIZE);
+            for (ItemState itemState : itemStates) {
+                toRet.add(itemState.getPath());
+            }
+        }
+        return toRet;
+    }
+
+    private Map<String, VersionTO[]> getLastVersions(List<String> paths) {
+        Map<String, VersionTO[]> toRet = new LinkedHashMap<>();
+        for (String path : paths) {
+            VersionTO version = new VersionTO();
+            version.setVersionNumber(getLastCommitId(path));
+            version.setLastModifier(AUTHOR);
+            version.setLastModifiedDate(COMMIT_DATE);
+            toRet.put(path, new VersionTO[] { version });
+        }
+        return toRet;
+    }
+
+    private static String getLastCommitId(String path) {
+        return "commit-" + Math.abs(path.hashCode());
+    }
+
+    /**
+     * Children of a folder of the synthetic repository, in reverse order so the walk has to sort them
+     */
+    private RepositoryItem[] getChildren(String path) {
+        String parent = path.equals("/") ? "" : path;
+        TreeSet<String> names = new TreeSet<>(Collections.reverseOrder());
+        List<RepositoryItem> toRet = new ArrayList<>();
+        for (String file : files) {
+            if (file.startsWith(parent + "/")) {
+                String rest = file.substring(parent.length() + 1);
+                int slash = rest.indexOf('/');
+                String name = slash < 0 ? rest : rest.substring(0, slash);
+                if (names.add(name)) {
+                    RepositoryItem item = new RepositoryItem();
+                    item.path = parent;
+                    item.name = name;
+                    item.isFolder = slash >= 0;
+                    toRet.add(item);
+                }
+            }
+        }
+        Collections.reverse(toRet);
+        return toRet.toArray(new RepositoryItem[toRet.size()]);
+    }
+}
@@ -0,0 +1,220 @@
+package org.craftercms.studio.impl.v1.service.dependency;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.craftercms.studio.api.v1.dal.DependencyEntity;
+import org.craftercms.studio.api.v1.dal.DependencyMapper;
+import org.craftercms.studio.api.v1.dal.EmbeddedDatabase;
+import org.craftercms.studio.api.v1.dal.ItemStateMapper;
+import org.craftercms.studio.api.v1.service.content.ContentService;
+import org.craftercms.studio.api.v1.service.objectstate.State;
+import org.craftercms.studio.api.v1.service.site.SiteService;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.craftercms.studio.impl.v1.dal.DatabaseDialectImpl;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.craftercms.studio.api.v1.constant.StudioConstants.JSON_PROPERTY_DEPENDENCIES;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATION_DEPENDENCY_ITEM_SPECIFIC_PATTERNS;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.DB_RECURSIVE_QUERIES_ENABLED;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.DEPENDENCIES_GRAPH_ENABLED;
+import static org.testng.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks the recursive queries and the in memory graph find the same dependencies as the traversal issuing one query
+ * per level, over a random graph with cycles.
+ */
+public class DependencyServiceImplTest {
+
+    private static final String SITE = "equivalence";
+    private static final String ITEM_SPECIFIC_PATTERNS = "/site/components/item/.*,/static-assets/item/.*";
+    private static final int ITEMS_PER_TYPE = 30;
+    private static final int MAX_DEPENDENCIES = 3;
+    private static final int[] DEPTHS = { 0, 1, 2, 5, -1 };
+
+    private EmbeddedDatabase db;
+    private List<String> paths;
+    private DependencyServiceImpl perLevelService;
+    private DependencyServiceImpl recursiveService;
+    private DependencyServiceImpl graphService;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        db = new EmbeddedDatabase();
+        db.start();
+        Configuration configuration = db.newConfiguration(DependencyMapper.class, ItemStateMapper.class);
+        SqlSessionManager sqlSessionManager =
+                SqlSessionManager.newInstance(new SqlSessionFactoryBuilder().build(configuration));
+        DependencyMapper dependencyMapper = sqlSessionManager.getMapper(DependencyMapper.class);
+        ItemStateMapper itemStateMapper = sqlSessionManager.getMapper(ItemStateMapper.class);
+        DataSource dataSource = configuration.getEnvironment().getDataSource();
+
+        paths = new ArrayList<>();
+        for (int i = 0; i < ITEMS_PER_TYPE; i++) {
+            paths.add("/site/website/page-" + i + "/index.xml");
+            paths.add("/site/components/item/component-" + i + ".xml");
+            paths.add("/site/components/shared/component-" + i + ".xml");
+            paths.add("/static-assets/item/asset-" + i + ".css");
+            paths.add("/static-assets/shared/asset-" + i + ".css");
+        }
+
+        Random random = new Random(42);
+        List<DependencyEntity> dependencies = new ArrayList<>();
+        for (String source : paths) {
+            int count = random.nextInt(MAX_DEPENDENCIES + 1);
+            for (int i = 0; i < count; i++) {
+                DependencyEntity dependency = new DependencyEntity();
+                dependency.setSite(SITE);
+                dependency.setSourcePath(source);
+                dependency.setTargetPath(paths.get(random.nextInt(paths.size())));
+                dependency.setType("test");
+                dependencies.add(dependency);
+            }
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put(JSON_PROPERTY_DEPENDENCIES, dependencies);
+        dependencyMapper.insertList(params);
+
+        State[] states = State.values();
+        try (Connection conn = db.getConnection(EmbeddedDatabase.DATABASE);
+             PreparedStatement statement = conn.prepareStatement(
+                     "INSERT INTO item_state (object_id, site, path, state, system_processing) " +
+                     "VALUES (?, ?, ?, ?, 0)")) {
+            for (int i = 0; i < paths.size(); i++) {
+                // Leave some items without state, same as items that were never synced
+                if (random.nextInt(10) > 0) {
+                    statement.setString(1, "object-" + i);
+                    statement.setString(2, SITE);
+                    statement.setString(3, paths.get(i));
+                    statement.setString(4, states[random.nextInt(states.length)].name());
+                    statement.executeUpdate();
+                }
+            }
+        }
+
+        perLevelService = createService(dependencyMapper, itemStateMapper, dataSource, false, false);
+        recursiveService = createService(dependencyMapper, itemStateMapper, dataSource, false, true);
+        graphService = createService(dependencyMapper, itemStateMapper, dataSource, true, false);
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        db.stop();
+    }
+
+    @DataProvider(name = "paths")
+    public Object[][] paths() {
+        List<Object[]> cases = new ArrayList<>();
+        for (String path : paths) {
+            cases.add(new Object[] { path });
+        }
+        return cases.toArray(new Object[cases.size()][]);
+    }
+
+    @DataProvider(name = "traversals")
+    public Object[][] traversals() {
+        List<Object[]> cases = new ArrayList<>();
+        for (String path : paths) {
+            for (int depth : DEPTHS) {
+                cases.add(new Object[] { path, depth });
+            }
+        }
+        return cases.toArray(new Object[cases.size()][]);
+    }
+
+    @Test
+    public void testEmbeddedDatabaseSupportsRecursiveQueries() {
+        assertTrue(recursiveService.isRecursiveQueriesEnabled());
+        assertFalse(perLevelService.isRecursiveQueriesEnabled());
+    }
+
+    @Test(dataProvider = "traversals")
+    public void testItemDependenciesMatch(String path, int depth) throws Exception {
+        assertEquals(recursiveService.getItemDependencies(SITE, path, depth),
+                perLevelService.getItemDependencies(SITE, path, depth));
+        assertEquals(graphService.getItemDependencies(SITE, path, depth),
+                perLevelService.getItemDependencies(SITE, path, depth));
+    }
+
+    @Test(dataProvider = "traversals")
+    public void testItemSpecificDependenciesMatch(String path, int depth) throws Exception {
+        assertEquals(recursiveService.getItemSpecificDependencies(SITE, path, depth),
+                perLevelService.getItemSpecificDependencies(SITE, path, depth));
+        assertEquals(graphService.getItemSpecificDependencies(SITE, path, depth),
+                perLevelService.getItemSpecificDependencies(SITE, path, depth));
+    }
+
+    @Test(dataProvider = "traversals")
+    public void testItemsDependingOnMatch(String path, int depth) throws Exception {
+        assertEquals(recursiveService.getItemsDependingOn(SITE, path, depth),
+                perLevelService.getItemsDependingOn(SITE, path, depth));
+        assertEquals(graphService.getItemsDependingOn(SITE, path, depth),
+                perLevelService.getItemsDependingOn(SITE, path, depth));
+    }
+
+    @Test(dataProvider = "paths")
+    public void testPublishingDependenciesMatch(String path) throws Exception {
+        List<String> start = Collections.singletonList(path);
+        assertEquals(recursiveService.getPublishingDependencies(SITE, start),
+                perLevelService.getPublishingDependencies(SITE, start));
+        assertEquals(graphService.getPublishingDependencies(SITE, start),
+                perLevelService.getPublishingDependencies(SITE, start));
+        assertEquals(recursiveService.calculateDependenciesPaths(SITE, start),
+                perLevelService.calculateDependenciesPaths(SITE, start));
+        assertEquals(graphService.calculateDependenciesPaths(SITE, start),
+                perLevelService.calculateDependenciesPaths(SITE, start));
+    }
+
+    @Test
+    public void testGraphHasLongPaths() throws Exception {
+        int largest = 0;
+        for (String path : paths) {
+            largest = Math.max(largest, perLevelService.getItemDependencies(SITE, path, -1).size());
+        }
+        assertTrue(largest > MAX_DEPENDENCIES * MAX_DEPENDENCIES);
+    }
+
+    private static DependencyServiceImpl createService(DependencyMapper dependencyMapper,
+                                                       ItemStateMapper itemStateMapper, DataSource dataSource,
+                                                       boolean graphEnabled, boolean recursiveQueriesEnabled) {
+        StudioConfiguration studioConfiguration = mock(StudioConfiguration.class);
+        when(studioConfiguration.getProperty(DEPENDENCIES_GRAPH_ENABLED)).thenReturn(Boolean.toString(graphEnabled));
+        when(studioConfiguration.getProperty(DB_RECURSIVE_QUERIES_ENABLED))
+                .thenReturn(Boolean.toString(recursiveQueriesEnabled));
+        when(studioConfiguration.getProperty(CONFIGURATION_DEPENDENCY_ITEM_SPECIFIC_PATTERNS))
+                .thenReturn(ITEM_SPECIFIC_PATTERNS);
+
+        SiteService siteService = mock(SiteService.class);
+        when(siteService.exists(SITE)).thenReturn(true);
+        ContentService contentService = mock(ContentService.class);
+        when(contentService.contentExists(eq(SITE), anyString())).thenReturn(true);
+
+        DatabaseDialectImpl databaseDialect = new DatabaseDialectImpl();
+        databaseDialect.setDataSource(dataSource);
+        databaseDialect.setStudioConfiguration(studioConfiguration);
+
+        DependencyServiceImpl service = new DependencyServiceImpl();
+        service.dependencyMapper = dependencyMapper;
+        service.itemStateMapper = itemStateMapper;
+        service.setStudioConfiguration(studioConfiguration);
+        service.setSiteService(siteService);
+        service.setContentService(contentService);
+        service.setDatabaseDialect(databaseDialect);
+        return service;
+    }
+}
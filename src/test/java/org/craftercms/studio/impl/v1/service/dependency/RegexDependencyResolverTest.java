@@ -0,0 +1,176 @@
+package org.craftercms.studio.impl.v1.service.dependency;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.craftercms.studio.api.v1.repository.ContentRepository;
+import org.craftercms.studio.api.v1.service.content.ContentService;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.dom4j.Document;
+import org.dom4j.io.SAXReader;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.
+        CONFIGURATION_SITE_DEPENDENCY_RESOLVER_CONFIG_BASE_PATH;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.
+        CONFIGURATION_SITE_DEPENDENCY_RESOLVER_CONFIG_FILE_NAME;
+import static org.testng.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class RegexDependencyResolverTest {
+
+    private static final String SITE = "test";
+    private static final String CONFIG_PATH = "/config/studio/dependency/resolver-config.xml";
+
+    private static final String[] CONTENT_PATHS = {
+            "/site/website/index.xml",
+            "/site/website/articles/long-article.xml",
+            "/site/components/header.xml",
+            "/static-assets/css/main.css",
+            "/templates/web/entry.ftl"
+    };
+
+    private static final int[] BUFFER_SIZES = { 1, 7, 8192 };
+
+    private Path goldenDir;
+    private Set<String> existingPaths;
+    private RegexDependencyResolver resolver;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        goldenDir = Paths.get(getClass().getResource("/dependency/golden").toURI());
+        existingPaths = new HashSet<>(readLines(goldenDir.resolve("existing.txt")));
+
+        Document config = new SAXReader().read(getClass().getResourceAsStream("/dependency/resolver-config.xml"));
+        ContentService contentService = mock(ContentService.class);
+        when(contentService.getContentAsDocument(SITE, CONFIG_PATH)).thenReturn(config);
+
+        StudioConfiguration studioConfiguration = mock(StudioConfiguration.class);
+        when(studioConfiguration.getProperty(CONFIGURATION_SITE_DEPENDENCY_RESOLVER_CONFIG_BASE_PATH))
+                .thenReturn("/config/studio/dependency");
+        when(studioConfiguration.getProperty(CONFIGURATION_SITE_DEPENDENCY_RESOLVER_CONFIG_FILE_NAME))
+                .thenReturn("resolver-config.xml");
+
+        ContentRepository contentRepository = mock(ContentRepository.class);
+        when(contentRepository.getContentObjectId(SITE, CONFIG_PATH)).thenReturn("config-object-id");
+        when(contentRepository.getContent(eq(SITE), anyString())).thenAnswer(invocation -> {
+            String path = (String) invocation.getArguments()[1];
+            return Files.newInputStream(goldenDir.resolve(path.substring(1)));
+        });
+        when(contentRepository.getExistingContent(eq(SITE), anyCollectionOf(String.class))).thenAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            Set<String> existing = new HashSet<>((Collection<String>) invocation.getArguments()[1]);
+            existing.retainAll(existingPaths);
+            return existing;
+        });
+
+        resolver = new RegexDependencyResolver();
+        resolver.setContentService(contentService);
+        resolver.setStudioConfiguration(studioConfiguration);
+        resolver.setContentRepository(contentRepository);
+    }
+
+    @DataProvider(name = "golden")
+    public Object[][] goldenFiles() {
+        List<Object[]> cases = new ArrayList<>();
+        for (String path : CONTENT_PATHS) {
+            for (int bufferSize : BUFFER_SIZES) {
+                cases.add(new Object[] { path, bufferSize });
+            }
+        }
+        return cases.toArray(new Object[cases.size()][]);
+    }
+
+    @Test(dataProvider = "golden")
+    public void testResolveMatchesGoldenFile(String path, int bufferSize) throws Exception {
+        resolver.setBufferSize(bufferSize);
+
+        Map<String, Set<String>> dependencies = resolver.resolve(SITE, path);
+
+        assertEquals(toLines(dependencies), readLines(goldenDir.resolve(path.substring(1) + ".deps")));
+    }
+
+    @Test
+    public void testResolveReturnsEmptyForUnknownItemType() {
+        assertTrue(resolver.resolve(SITE, "/static-assets/images/logo.svg").isEmpty());
+    }
+
+    @Test
+    public void testSeparatorsAreCharactersNoAtomCanMatch() {
+        assertEquals(SegmentedPattern.findSeparators("/site/components/([^<]+)\\.xml", "<>\" "), "<");
+        assertEquals(SegmentedPattern.findSeparators("/static-assets/([^\"'\\)]+)", "<>\"' "), "\"'");
+        assertEquals(SegmentedPattern.findSeparators("<content-type>/(.*)/(.*)</content-type>", "<>\n\r "), "\n\r");
+    }
+
+    @Test
+    public void testContextSensitivePatternsAreNotSegmented() {
+        assertEquals(SegmentedPattern.findSeparators("(?<=src=\")/static-assets/[^\"]+", "<>\""), "");
+        assertEquals(SegmentedPattern.findSeparators("^/site/[^<]+$", "<>\""), "");
+        assertEquals(SegmentedPattern.findSeparators("\\b/site/[^<]+", "<>\""), "");
+        assertEquals(SegmentedPattern.findSeparators("(\\w+)=\\1", "<>\""), "");
+    }
+
+    @Test
+    public void testScannerFindsMatchesAcrossChunks() throws Exception {
+        String text = new String(Files.readAllBytes(goldenDir.resolve("site/website/articles/long-article.xml")),
+                Charset.defaultCharset());
+        SegmentedPattern pattern = new SegmentedPattern(Pattern.compile("/static-assets/([^<\"'\\)]+)"));
+
+        List<String> expected = new ArrayList<>();
+        Matcher matcher = pattern.getPattern().matcher(text);
+        while (matcher.find()) {
+            expected.add(matcher.group());
+        }
+
+        for (int chunkSize : BUFFER_SIZES) {
+            List<String> found = new ArrayList<>();
+            SegmentedPattern.Scanner scanner = pattern.newScanner(found::add);
+            char[] chars = text.toCharArray();
+            for (int offset = 0; offset < chars.length; offset += chunkSize) {
+                scanner.feed(chars, offset, Math.min(chunkSize, chars.length - offset));
+            }
+            scanner.finish();
+
+            assertEquals(found, expected);
+            assertTrue(scanner.getMaxPending() < text.length());
+        }
+    }
+
+    private static List<String> readLines(Path file) throws Exception {
+        String content = new String(Files.readAllBytes(file), Charset.defaultCharset());
+        List<String> lines = new ArrayList<>();
+        for (String line : content.split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> toLines(Map<String, Set<String>> dependencies) {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> entry : dependencies.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                lines.add(entry.getKey());
+            }
+            for (String dependency : entry.getValue()) {
+                lines.add(entry.getKey() + "\t" + dependency);
+            }
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+}
@@ -0,0 +1,147 @@
+package org.craftercms.studio.impl.v1.service.deployment.job;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Publishes fake sites on the worker pool and checks a site is never published by two workers, sites with items left
+ * go back to the end of the queue and the queue wait is reported.
+ */
+public class PublishingWorkerPoolTest {
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    @Test
+    public void testSitesTakeTurns() throws Exception {
+        Map<String, AtomicInteger> turnsLeft = new ConcurrentHashMap<>();
+        turnsLeft.put("big", new AtomicInteger(4));
+        turnsLeft.put("small-1", new AtomicInteger(1));
+        turnsLeft.put("small-2", new AtomicInteger(1));
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(6);
+
+        PublishingWorkerPool workerPool = new PublishingWorkerPool(1, site -> {
+            order.add(site);
+            done.countDown();
+            return turnsLeft.get(site).decrementAndGet() > 0;
+        });
+        try {
+            for (String site : Arrays.asList("big", "small-1", "small-2")) {
+                assertTrue(workerPool.submit(site));
+            }
+            assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+            assertEquals(order.subList(0, 4), Arrays.asList("big", "small-1", "small-2", "big"));
+            assertEquals(order.size(), 6);
+        } finally {
+            workerPool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSiteIsNeverPublishedTwiceAtOnce() throws Exception {
+        Set<String> publishing = ConcurrentHashMap.newKeySet();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        PublishingWorkerPool workerPool = new PublishingWorkerPool(3, site -> {
+            if (!publishing.add(site)) {
+                overlaps.incrementAndGet();
+            }
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            publishing.remove(site);
+            return false;
+        });
+        try {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(workerPool.submit("site-" + i));
+            }
+            assertFalse(workerPool.submit("site-0"));
+            release.countDown();
+
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+            Map<String, Object> statistics = workerPool.getStatistics();
+            while (((Number) statistics.get("turns")).longValue() < 5 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                statistics = workerPool.getStatistics();
+            }
+
+            assertEquals(statistics.get("turns"), 5L);
+            assertEquals(overlaps.get(), 0);
+            assertTrue(maxRunning.get() <= 3);
+            @SuppressWarnings("unchecked")
+            Map<String, Map<String, Object>> sites = (Map<String, Map<String, Object>>) statistics.get("sites");
+            assertEquals(sites.size(), 5);
+            for (Map<String, Object> site : sites.values()) {
+                assertEquals(site.get("turns"), 1L);
+                assertTrue(((Number) site.get("maxWaitMs")).longValue() >= 0);
+            }
+            assertTrue(workerPool.submit("site-0"));
+        } finally {
+            workerPool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRemovedSiteIsForgotten() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch recreated = new CountDownLatch(1);
+
+        PublishingWorkerPool workerPool = new PublishingWorkerPool(1, site -> {
+            order.add(site);
+            if (site.equals("busy")) {
+                started.countDown();
+                try {
+                    release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                recreated.countDown();
+            }
+            return false;
+        });
+        try {
+            assertTrue(workerPool.submit("busy"));
+            assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            // Deleted while waiting for the only worker
+            assertTrue(workerPool.submit("deleted"));
+            workerPool.remove("deleted");
+            @SuppressWarnings("unchecked")
+            Map<String, Object> sites = (Map<String, Object>) workerPool.getStatistics().get("sites");
+            assertEquals(sites.keySet(), Collections.singleton("busy"));
+
+            // A site created again with the same name is published once, its old turn is skipped
+            assertTrue(workerPool.submit("deleted"));
+            release.countDown();
+            assertTrue(recreated.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            workerPool.shutdown();
+            assertTrue(workerPool.executor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertEquals(order, Arrays.asList("busy", "deleted"));
+        } finally {
+            workerPool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.craftercms.studio.impl.v1.service.site;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.craftercms.studio.api.v1.constant.RepoOperation;
+import org.craftercms.studio.api.v1.to.RepoOperationTO;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Checks the pipeline hands out the operations in their original order with their dependencies, rethrows errors
+ * reading the operations and stops reading them once closed.
+ */
+public class RepoOperationsPipelineTest {
+
+    private static final String SITE = "pipeline";
+    private static final int OPERATIONS = 200;
+    private static final int THREADS = 3;
+    private static final int QUEUE_SIZE = 4;
+    private static final RepoOperation[] TYPES = {
+            RepoOperation.CREATE, RepoOperation.UPDATE, RepoOperation.MOVE, RepoOperation.DELETE
+    };
+
+    private static final Function<String, Map<String, Set<String>>> RESOLVER =
+            path -> Collections.singletonMap("component", Collections.singleton(path + ".dependency"));
+
+    @DataProvider(name = "errors")
+    public Object[][] errors() {
+        return new Object[][] {
+                { new IllegalArgumentException("Invalid commit") },
+                { new StackOverflowError() }
+        };
+    }
+
+    @Test(timeOut = 10000)
+    public void testOrderAndDependencies() throws Exception {
+        List<RepoOperationTO> operations = getOperations(OPERATIONS);
+        List<RepoOperationTO> synced = new ArrayList<>();
+        try (RepoOperationsPipeline pipeline = new RepoOperationsPipeline(SITE, operations.iterator(), RESOLVER,
+                THREADS, QUEUE_SIZE)) {
+            pipeline.start();
+            while (pipeline.hasNext()) {
+                RepoOperationTO operation = pipeline.next();
+                String path = RepoOperationsPipeline.getDependenciesPath(operation);
+                if (path != null) {
+                    Future<Map<String, Set<String>>> dependencies = pipeline.getDependencies(path);
+                    assertNotNull(dependencies, path);
+                    assertEquals(dependencies.get(), RESOLVER.apply(path));
+                }
+                pipeline.release(operation);
+                synced.add(operation);
+            }
+            assertFalse(pipeline.hasNext());
+        }
+        assertEquals(synced, operations);
+    }
+
+    @Test(dataProvider = "errors", timeOut = 10000)
+    public void testProducerFailure(Throwable error) {
+        Iterator<RepoOperationTO> operations = getOperations(3).iterator();
+        Iterator<RepoOperationTO> failing = new Iterator<RepoOperationTO>() {
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public RepoOperationTO next() {
+                if (!operations.hasNext()) {
+                    if (error instanceof Error) {
+                        throw (Error) error;
+                    }
+                    throw (RuntimeException) error;
+                }
+                return operations.next();
+            }
+        };
+        try (RepoOperationsPipeline pipeline = new RepoOperationsPipeline(SITE, failing, RESOLVER, THREADS,
+                QUEUE_SIZE)) {
+            pipeline.start();
+            // Operations read before the error are synced first
+            for (int i = 0; i < 3; i++) {
+                assertTrue(pipeline.hasNext());
+                assertNotNull(pipeline.next());
+            }
+            try {
+                pipeline.hasNext();
+                fail("Error reading the operations not rethrown by hasNext");
+            } catch (IllegalStateException e) {
+                assertSame(e.getCause(), error);
+            }
+            try {
+                pipeline.next();
+                fail("Error reading the operations not rethrown by next");
+            } catch (IllegalStateException e) {
+                assertSame(e.getCause(), error);
+            }
+        }
+    }
+
+    @Test(timeOut = 10000)
+    public void testEarlyClose() {
+        AtomicInteger read = new AtomicInteger();
+        Iterator<RepoOperationTO> endless = new Iterator<RepoOperationTO>() {
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public RepoOperationTO next() {
+                return getOperation(read.getAndIncrement());
+            }
+        };
+        RepoOperationsPipeline pipeline = new RepoOperationsPipeline(SITE, endless, RESOLVER, THREADS, QUEUE_SIZE);
+        pipeline.start();
+        RepoOperationTO operation = pipeline.next();
+        String path = RepoOperationsPipeline.getDependenciesPath(operation);
+        assertNotNull(pipeline.getDependencies(path));
+
+        // Returns once the producer has stopped, even if it was waiting for room in the queue
+        pipeline.close();
+        int readWhenClosed = read.get();
+        assertTrue(readWhenClosed <= 1 + QUEUE_SIZE + 1, "Operations read after the queue was full");
+        assertNull(pipeline.getDependencies(path));
+        assertEquals(read.get(), readWhenClosed);
+    }
+
+    private static List<RepoOperationTO> getOperations(int count) {
+        List<RepoOperationTO> operations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            operations.add(getOperation(i));
+        }
+        return operations;
+    }
+
+    /**
+     * Operations of all types over a few paths, so several operations in the queue share a path
+     */
+    private static RepoOperationTO getOperation(int i) {
+        RepoOperation type = TYPES[i % TYPES.length];
+        String path = "/site/website/page-" + (i % 7) + "/index.xml";
+        String moveToPath = type == RepoOperation.MOVE ? "/site/website/page-" + (i % 5) + "/index.xml" : null;
+        ZonedDateTime dateTime = ZonedDateTime.of(2018, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC).plusSeconds(i);
+        return new RepoOperationTO(type, path, dateTime, moveToPath, "c" + (i / 10));
+    }
+}
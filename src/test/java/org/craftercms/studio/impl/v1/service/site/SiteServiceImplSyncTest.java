@@ -0,0 +1,440 @@
+package org.craftercms.studio.impl.v1.service.site;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.craftercms.studio.api.v1.constant.RepoOperation;
+import org.craftercms.studio.api.v1.dal.AuditFeedMapper;
+import org.craftercms.studio.api.v1.dal.DependencyEntity;
+import org.craftercms.studio.api.v1.dal.DependencyMapper;
+import org.craftercms.studio.api.v1.dal.EmbeddedDatabase;
+import org.craftercms.studio.api.v1.dal.GitLog;
+import org.craftercms.studio.api.v1.dal.GitLogMapper;
+import org.craftercms.studio.api.v1.dal.ItemMetadataMapper;
+import org.craftercms.studio.api.v1.dal.ItemStateMapper;
+import org.craftercms.studio.api.v1.dal.SiteFeedMapper;
+import org.craftercms.studio.api.v1.repository.ContentRepository;
+import org.craftercms.studio.api.v1.repository.RepoOperationIterator;
+import org.craftercms.studio.api.v1.service.ServicesManager;
+import org.craftercms.studio.api.v1.service.configuration.ServicesConfig;
+import org.craftercms.studio.api.v1.service.content.ContentService;
+import org.craftercms.studio.api.v1.service.dependency.DependencyResolver;
+import org.craftercms.studio.api.v1.service.deployment.DeploymentService;
+import org.craftercms.studio.api.v1.service.objectstate.State;
+import org.craftercms.studio.api.v1.service.objectstate.TransitionEvent;
+import org.craftercms.studio.api.v1.service.site.SiteService;
+import org.craftercms.studio.api.v1.to.RepoOperationTO;
+import org.craftercms.studio.api.v1.util.PatternSet;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.craftercms.studio.impl.v1.repository.job.SiteJobStatusRegistry;
+import org.craftercms.studio.impl.v1.service.GeneralLockServiceImpl;
+import org.craftercms.studio.impl.v1.service.activity.ActivityServiceImpl;
+import org.craftercms.studio.impl.v1.service.content.ObjectMetadataManagerImpl;
+import org.craftercms.studio.impl.v1.service.dependency.DependencyServiceImpl;
+import org.craftercms.studio.impl.v1.service.objectstate.ObjectStateServiceImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.craftercms.studio.api.v1.constant.StudioConstants.JSON_PROPERTY_DEPENDENCIES;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_SYNC_DATABASE_BATCH_ENABLED;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_SYNC_DATABASE_BATCH_SIZE;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_SYNC_DATABASE_PIPELINE_ENABLED;
+import static org.testng.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks syncing the database with the repository in batches leaves the same item state, item metadata,
+ * dependency, git log and audit rows as syncing the operations one by one, with the batches split at different
+ * operations.
+ */
+public class SiteServiceImplSyncTest {
+
+    private static final String ONE_BY_ONE_SITE = "one-by-one";
+    private static final String AUTHOR = "admin";
+    private static final String FROM_COMMIT_ID = "c0";
+    private static final String LAST_COMMIT_ID = "c4";
+    private static final String COMPONENT_PATH = "/site/components/header.xml";
+    private static final String CSS_PATH = "/static-assets/css/main.css";
+    private static final int[] BATCH_SIZES = { 1000, 3, 2, 1 };
+
+    private static final String[] QUERIES = {
+            "SELECT path, state, system_processing FROM item_state WHERE site = ? ORDER BY path",
+            "SELECT * FROM item_metadata WHERE site = ? ORDER BY path",
+            "SELECT * FROM dependency WHERE site = ? ORDER BY source_path, target_path, type",
+            "SELECT commit_id, processed FROM gitlog WHERE site_id = ? ORDER BY commit_id",
+            "SELECT activity_type, content_id, content_type, post_user_id, source, summary FROM audit " +
+            "WHERE site_network = ? ORDER BY id"
+    };
+    private static final Set<String> IGNORED_COLUMNS = new HashSet<>(Arrays.asList("id", "site"));
+
+    private EmbeddedDatabase db;
+    private SqlSessionManager sqlSessionManager;
+    private SqlSession batchSqlSession;
+    private GeneralLockServiceImpl generalLockService;
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        db = new EmbeddedDatabase();
+        db.start();
+        SqlSessionFactory sqlSessionFactory = new SqlSessionFactoryBuilder().build(db.newConfiguration(
+                ItemStateMapper.class, ItemMetadataMapper.class, DependencyMapper.class, GitLogMapper.class,
+                AuditFeedMapper.class));
+        sqlSessionManager = SqlSessionManager.newInstance(sqlSessionFactory);
+        batchSqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH, true);
+        generalLockService = new GeneralLockServiceImpl();
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any(TransactionDefinition.class)))
+                .thenAnswer(invocation -> new SimpleTransactionStatus());
+
+        seed(ONE_BY_ONE_SITE);
+        assertTrue(createService(createObjectStateService(), false, 0).syncDatabaseWithRepo(ONE_BY_ONE_SITE,
+                FROM_COMMIT_ID));
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        batchSqlSession.close();
+        db.stop();
+    }
+
+    @DataProvider(name = "batchSizes")
+    public Object[][] batchSizes() {
+        List<Object[]> cases = new ArrayList<>();
+        for (int batchSize : BATCH_SIZES) {
+            cases.add(new Object[] { batchSize });
+        }
+        return cases.toArray(new Object[cases.size()][]);
+    }
+
+    @Test
+    public void testOneByOneSync() throws Exception {
+        List<Object> paths = new ArrayList<>();
+        for (Map<String, Object> row : getRows(QUERIES[0], ONE_BY_ONE_SITE)) {
+            paths.add(row.get("path"));
+        }
+        assertEquals(paths, Arrays.asList(COMPONENT_PATH, "/site/website/company/index.xml",
+                "/site/website/index.xml", "/site/website/news/index.xml", "/site/website/tracked/index.xml",
+                CSS_PATH, "/static-assets/images/logo.png"));
+    }
+
+    @Test(dataProvider = "batchSizes")
+    public void testBatchedSyncMatchesOneByOne(int batchSize) throws Exception {
+        String site = "batch-" + batchSize;
+        seed(site);
+        ObjectStateServiceImpl objectStateService = spy(createObjectStateService());
+        assertTrue(createService(objectStateService, true, batchSize).syncDatabaseWithRepo(site, FROM_COMMIT_ID));
+
+        // Every operation went through the batches, none was synced one by one
+        verify(objectStateService, never()).transition(anyString(), anyString(), any(TransitionEvent.class));
+        assertSameRows(site);
+    }
+
+    @Test(dataProvider = "batchSizes")
+    public void testBatchWithLockedItemIsSyncedOneByOne(int batchSize) throws Exception {
+        String site = "locked-" + batchSize;
+        seed(site);
+        ObjectStateServiceImpl objectStateService = spy(createObjectStateService());
+        SiteServiceImpl service = createService(objectStateService, true, batchSize);
+
+        // Deleting an item takes no item lock, so the batch falls back without waiting for the other thread
+        String lockKey = site + ":/site/website/old/index.xml";
+        ExecutorService lockHolder = Executors.newSingleThreadExecutor();
+        try {
+            lockHolder.submit(() -> generalLockService.lock(lockKey)).get();
+            assertTrue(service.syncDatabaseWithRepo(site, FROM_COMMIT_ID));
+        } finally {
+            lockHolder.submit(() -> generalLockService.unlock(lockKey)).get();
+            lockHolder.shutdown();
+        }
+
+        if (batchSize > 1) {
+            verify(objectStateService, atLeastOnce())
+                    .transition(anyString(), anyString(), any(TransitionEvent.class));
+        }
+        assertSameRows(site);
+    }
+
+    private void assertSameRows(String site) throws Exception {
+        for (String query : QUERIES) {
+            assertEquals(getRows(query, site), getRows(query, ONE_BY_ONE_SITE), query);
+        }
+    }
+
+    /**
+     * Operations of four commits: the first one was already processed, the next ones create, update, move and
+     * delete items, including items without state or metadata and an item moved and deleted in the same commit
+     */
+    private static List<RepoOperationTO> getOperations() {
+        List<RepoOperationTO> operations = new ArrayList<>();
+        addOperation(operations, RepoOperation.UPDATE, "/site/website/index.xml", null, "c1");
+        addOperation(operations, RepoOperation.CREATE, "/site/website/news/index.xml", null, "c2");
+        addOperation(operations, RepoOperation.CREATE, COMPONENT_PATH, null, "c2");
+        addOperation(operations, RepoOperation.UPDATE, "/site/website/index.xml", null, "c2");
+        addOperation(operations, RepoOperation.UPDATE, CSS_PATH, null, "c2");
+        addOperation(operations, RepoOperation.UPDATE, "/static-assets/images/logo.png", null, "c2");
+        addOperation(operations, RepoOperation.MOVE, "/site/website/about/index.xml",
+                "/site/website/company/index.xml", "c3");
+        addOperation(operations, RepoOperation.DELETE, "/site/website/old/index.xml", null, "c3");
+        addOperation(operations, RepoOperation.MOVE, "/site/website/untracked/index.xml",
+                "/site/website/tracked/index.xml", "c3");
+        addOperation(operations, RepoOperation.MOVE, "/site/website/temp/index.xml",
+                "/site/website/trash/index.xml", LAST_COMMIT_ID);
+        addOperation(operations, RepoOperation.DELETE, "/site/website/trash/index.xml", null, LAST_COMMIT_ID);
+        return operations;
+    }
+
+    private static void addOperation(List<RepoOperationTO> operations, RepoOperation operation, String path,
+                                     String moveToPath, String commitId) {
+        ZonedDateTime dateTime = ZonedDateTime.of(2018, 1, 1, 0, operations.size(), 0, 0, ZoneOffset.UTC);
+        RepoOperationTO repoOperation = new RepoOperationTO(operation, path, dateTime, moveToPath, commitId);
+        repoOperation.setAuthor(AUTHOR);
+        operations.add(repoOperation);
+    }
+
+    private static Map<String, Set<String>> resolve(String path) {
+        Map<String, Set<String>> dependencies = new HashMap<>();
+        dependencies.put("component", new HashSet<>(Arrays.asList(COMPONENT_PATH)));
+        dependencies.put("asset", new HashSet<>(Arrays.asList(CSS_PATH,
+                "/static-assets/images" + FilenameUtils.getFullPathNoEndSeparator(path) + ".png")));
+        return dependencies;
+    }
+
+    private void seed(String site) throws Exception {
+        try (Connection conn = db.getConnection(EmbeddedDatabase.DATABASE)) {
+            try (PreparedStatement statement = conn.prepareStatement(
+                    "INSERT INTO item_state (object_id, site, path, state, system_processing) " +
+                    "VALUES (?, ?, ?, ?, 0)")) {
+                insertState(statement, site, "/site/website/index.xml", State.EXISTING_UNEDITED_UNLOCKED);
+                insertState(statement, site, "/site/website/about/index.xml", State.EXISTING_UNEDITED_UNLOCKED);
+                insertState(statement, site, "/site/website/old/index.xml", State.NEW_UNPUBLISHED_UNLOCKED);
+                insertState(statement, site, "/site/website/temp/index.xml", State.EXISTING_EDITED_UNLOCKED);
+                insertState(statement, site, CSS_PATH, State.EXISTING_UNEDITED_UNLOCKED);
+            }
+            try (PreparedStatement statement = conn.prepareStatement(
+                    "INSERT INTO item_metadata (site, path, modifier, commit_id) VALUES (?, ?, ?, 'c1')")) {
+                insertMetadata(statement, site, "/site/website/index.xml");
+                insertMetadata(statement, site, "/site/website/about/index.xml");
+                insertMetadata(statement, site, "/site/website/old/index.xml");
+                insertMetadata(statement, site, "/site/website/temp/index.xml");
+            }
+            try (PreparedStatement statement = conn.prepareStatement(
+                    "INSERT INTO gitlog (site_id, commit_id, processed) VALUES (?, 'c1', 1)")) {
+                statement.setString(1, site);
+                statement.executeUpdate();
+            }
+        }
+
+        List<DependencyEntity> dependencies = new ArrayList<>();
+        addDependency(dependencies, site, "/site/website/index.xml", "/site/website/old/index.xml");
+        addDependency(dependencies, site, "/site/website/about/index.xml", COMPONENT_PATH);
+        addDependency(dependencies, site, "/site/website/old/index.xml", CSS_PATH);
+        addDependency(dependencies, site, "/site/website/temp/index.xml", "/site/website/old/index.xml");
+        addDependency(dependencies, site, "/site/website/temp/index.xml", CSS_PATH);
+        Map<String, Object> params = new HashMap<>();
+        params.put(JSON_PROPERTY_DEPENDENCIES, dependencies);
+        sqlSessionManager.getMapper(DependencyMapper.class).insertList(params);
+    }
+
+    private static void insertState(PreparedStatement statement, String site, String path, State state)
+            throws Exception {
+        statement.setString(1, site + ":" + path);
+        statement.setString(2, site);
+        statement.setString(3, path);
+        statement.setString(4, state.name());
+        statement.executeUpdate();
+    }
+
+    private static void insertMetadata(PreparedStatement statement, String site, String path) throws Exception {
+        statement.setString(1, site);
+        statement.setString(2, path);
+        statement.setString(3, AUTHOR);
+        statement.executeUpdate();
+    }
+
+    private static void addDependency(List<DependencyEntity> dependencies, String site, String sourcePath,
+                                      String targetPath) {
+        DependencyEntity dependency = new DependencyEntity();
+        dependency.setSite(site);
+        dependency.setSourcePath(sourcePath);
+        dependency.setTargetPath(targetPath);
+        dependency.setType("component");
+        dependencies.add(dependency);
+    }
+
+    private List<Map<String, Object>> getRows(String query, String site) throws Exception {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (Connection conn = db.getConnection(EmbeddedDatabase.DATABASE);
+             PreparedStatement statement = conn.prepareStatement(query)) {
+            statement.setString(1, site);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                while (resultSet.next()) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                        if (!IGNORED_COLUMNS.contains(metaData.getColumnLabel(i))) {
+                            row.put(metaData.getColumnLabel(i), resultSet.getObject(i));
+                        }
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private ObjectStateServiceImpl createObjectStateService() {
+        ObjectStateServiceImpl objectStateService = new ObjectStateServiceImpl();
+        ReflectionTestUtils.setField(objectStateService, "itemStateMapper",
+                sqlSessionManager.getMapper(ItemStateMapper.class));
+        objectStateService.setGeneralLockService(generalLockService);
+        objectStateService.setContentService(mock(ContentService.class));
+        objectStateService.setStudioConfiguration(mock(StudioConfiguration.class));
+        objectStateService.setServicesManager(mock(ServicesManager.class));
+        objectStateService.register();
+        return objectStateService;
+    }
+
+    private SiteServiceImpl createService(ObjectStateServiceImpl objectStateService, boolean batchEnabled,
+                                          int batchSize) {
+        StudioConfiguration studioConfiguration = mock(StudioConfiguration.class);
+        when(studioConfiguration.getProperty(REPO_SYNC_DATABASE_PIPELINE_ENABLED)).thenReturn("false");
+        when(studioConfiguration.getProperty(REPO_SYNC_DATABASE_BATCH_ENABLED))
+                .thenReturn(Boolean.toString(batchEnabled));
+        when(studioConfiguration.getProperty(REPO_SYNC_DATABASE_BATCH_SIZE)).thenReturn(Integer.toString(batchSize));
+
+        ContentService contentService = mock(ContentService.class);
+        when(contentService.getContentTypeClass(anyString(), anyString())).thenReturn("page");
+        ServicesConfig servicesConfig = mock(ServicesConfig.class);
+        when(servicesConfig.getRenderingTemplatePatternSet(anyString())).thenReturn(PatternSet.EMPTY);
+
+        ObjectMetadataManagerImpl objectMetadataManager = new ObjectMetadataManagerImpl();
+        ReflectionTestUtils.setField(objectMetadataManager, "itemMetadataMapper",
+                sqlSessionManager.getMapper(ItemMetadataMapper.class));
+
+        ActivityServiceImpl activityService = new ActivityServiceImpl();
+        ReflectionTestUtils.setField(activityService, "auditFeedMapper",
+                sqlSessionManager.getMapper(AuditFeedMapper.class));
+
+        DependencyResolver dependencyResolver = mock(DependencyResolver.class);
+        when(dependencyResolver.resolve(anyString(), anyString()))
+                .thenAnswer(invocation -> resolve((String) invocation.getArguments()[1]));
+        SiteService siteService = mock(SiteService.class);
+        when(siteService.exists(anyString())).thenReturn(true);
+        DependencyServiceImpl dependencyService = new DependencyServiceImpl();
+        ReflectionTestUtils.setField(dependencyService, "dependencyMapper",
+                sqlSessionManager.getMapper(DependencyMapper.class));
+        ReflectionTestUtils.setField(dependencyService, "itemStateMapper",
+                sqlSessionManager.getMapper(ItemStateMapper.class));
+        dependencyService.setStudioConfiguration(studioConfiguration);
+        dependencyService.setSiteService(siteService);
+        dependencyService.setContentService(contentService);
+        dependencyService.setDependencyResolver(dependencyResolver);
+        dependencyService.setTransactionManager(transactionManager);
+
+        SiteServiceImpl service = new SiteServiceImpl();
+        service.siteFeedMapper = mock(SiteFeedMapper.class);
+        service.setStudioConfiguration(studioConfiguration);
+        service.setServicesConfig(servicesConfig);
+        service.setContentService(contentService);
+        service.setContentRepository(createContentRepository());
+        service.setObjectStateService(objectStateService);
+        service.setObjectMetadataManager(objectMetadataManager);
+        service.setDependencyService(dependencyService);
+        service.setActivityService(activityService);
+        service.setDeploymentService(mock(DeploymentService.class));
+        service.setGeneralLockService(generalLockService);
+        service.setSiteJobStatusRegistry(new SiteJobStatusRegistry());
+        service.setTransactionManager(transactionManager);
+        service.setBatchSqlSession(batchSqlSession);
+        return service;
+    }
+
+    /**
+     * Repository returning the test operations, with the git log rows kept in the database the same way as
+     * the git repository does
+     */
+    private ContentRepository createContentRepository() {
+        GitLogMapper gitLogMapper = sqlSessionManager.getMapper(GitLogMapper.class);
+        ContentRepository contentRepository = mock(ContentRepository.class);
+        when(contentRepository.getRepoLastCommitId(anyString())).thenReturn(LAST_COMMIT_ID);
+        when(contentRepository.getOperationsIterator(anyString(), anyString(), anyString()))
+                .thenAnswer(invocation -> iterate(getOperations()));
+        when(contentRepository.getGitLog(anyString(), anyString())).thenAnswer(invocation ->
+                gitLogMapper.getGitLog(getGitLogParams(invocation.getArguments(), null)));
+        when(contentRepository.getGitLogs(anyString(), anyListOf(String.class))).thenAnswer(invocation -> {
+            Map<String, Object> params = new HashMap<>();
+            params.put("siteId", invocation.getArguments()[0]);
+            params.put("commitIds", invocation.getArguments()[1]);
+            Map<String, GitLog> gitLogs = new HashMap<>();
+            for (GitLog gitLog : gitLogMapper.getGitLogs(params)) {
+                gitLogs.put(gitLog.getCommitId(), gitLog);
+            }
+            return gitLogs;
+        });
+        doAnswer(invocation -> {
+            gitLogMapper.insertGitLog(getGitLogParams(invocation.getArguments(), invocation.getArguments()[2]));
+            return null;
+        }).when(contentRepository).insertGitLog(anyString(), anyString(), anyInt());
+        doAnswer(invocation -> {
+            gitLogMapper.markGitLogProcessed(getGitLogParams(invocation.getArguments(), 1));
+            return null;
+        }).when(contentRepository).markGitLogVerifiedProcessed(anyString(), anyString());
+        return contentRepository;
+    }
+
+    private static Map<String, Object> getGitLogParams(Object[] arguments, Object processed) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("siteId", arguments[0]);
+        params.put("commitId", arguments[1]);
+        params.put("processed", processed);
+        return params;
+    }
+
+    private static RepoOperationIterator iterate(List<RepoOperationTO> operations) {
+        Iterator<RepoOperationTO> iterator = operations.iterator();
+        return new RepoOperationIterator() {
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public RepoOperationTO next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,15 @@
+<#import "/templates/system/common/cstudio-support.ftl" as studio />
+<!DOCTYPE html>
+<html lang="en">
+<head>
+    <link rel="stylesheet" href="/static-assets/css/main.css">
+    <link rel="stylesheet" href="/static-assets/css/print.css" media="print">
+    <script src="/static-assets/js/main.js"></script>
+</head>
+<body>
+    <img src="/static-assets/images/logo.svg" alt="logo">
+    <div style="background: url(/static-assets/images/bg/pattern.png)"></div>
+    <#include "/templates/web/fragments/footer.ftl" />
+    <@studio.toolSupport />
+</body>
+</html>